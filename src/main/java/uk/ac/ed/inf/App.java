@@ -1,15 +1,38 @@
 package uk.ac.ed.inf;
 
+import com.mapbox.geojson.Polygon;
 import uk.ac.ed.inf.clients.DatabaseClient;
 import uk.ac.ed.inf.clients.WebServerClient;
+import uk.ac.ed.inf.clients.What3WordsCache;
 import uk.ac.ed.inf.domain.*;
-import uk.ac.ed.inf.controller.DroneController;
+import uk.ac.ed.inf.controller.BaseCostField;
+import uk.ac.ed.inf.controller.DroneFlight;
+import uk.ac.ed.inf.controller.Fleet;
+import uk.ac.ed.inf.controller.GridSnapshotStore;
+import uk.ac.ed.inf.controller.HierarchicalPathEngine;
+import uk.ac.ed.inf.controller.MoveLatticePlanner;
+import uk.ac.ed.inf.controller.OrderScheduler;
+import uk.ac.ed.inf.controller.PathEngine;
+import uk.ac.ed.inf.controller.Pathfinder;
+import uk.ac.ed.inf.controller.Schedule;
+import uk.ac.ed.inf.controller.ServiceArea;
+import uk.ac.ed.inf.controller.ShopSequencer;
+import uk.ac.ed.inf.controller.StepCostMatrix;
+import uk.ac.ed.inf.controller.VisibilityGraphEngine;
 import uk.ac.ed.inf.utils.Utils;
 
+import java.nio.file.Path;
 import java.sql.Date;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 /**
  * This class is the main class and the running point of the application.
@@ -19,6 +42,96 @@ public class App {
 
     private static final LongLat APPLETON_TOWER = new LongLat(-3.186874, 55.944494);
     private static final int DRONE_STEPS = 1500;
+    /**
+     * The directory in which the computed virtual grid is kept between runs.
+     */
+    private static final String GRID_CACHE_DIRECTORY = "grid-cache";
+    /**
+     * The system property that selects the path engine: "theta" (the default) for Theta* on the virtual grid,
+     * "lazy-theta" for Lazy Theta* on the virtual grid, "jps" for Jump Point Search on the virtual grid, "hpa" for
+     * hierarchical search over clusters of the virtual grid, or "visibility" for shortest paths on the visibility
+     * graph of the no-fly-zones.
+     */
+    private static final String PATH_ENGINE_PROPERTY = "ilp.pathEngine";
+    /**
+     * The system property that sets the weight of the heuristic of the grid searches. Weights above 1 make searches
+     * faster in exchange for possibly longer paths. The weight is a heuristic factor, not a bound on how much longer.
+     */
+    private static final String HEURISTIC_WEIGHT_PROPERTY = "ilp.heuristicWeight";
+    /**
+     * The system property that sets the time budget of each grid search in milliseconds. When it is set, searches
+     * start with the configured weight and keep refining the path with smaller weights until the budget runs out.
+     */
+    private static final String SEARCH_BUDGET_PROPERTY = "ilp.searchBudgetMillis";
+    /**
+     * The system property that sets the area covered by the virtual grid as "minLongitude,minLatitude,maxLongitude,
+     * maxLatitude". The default is the drone confinement area.
+     */
+    private static final String AREA_PROPERTY = "ilp.area";
+    /**
+     * The system property that sets the side of the virtual grid cells in degrees.
+     */
+    private static final String GRID_RESOLUTION_PROPERTY = "ilp.gridResolution";
+    /**
+     * The system property that sets the side in cells of the clusters of the hierarchical search.
+     */
+    private static final String CLUSTER_SIZE_PROPERTY = "ilp.clusterSize";
+    /**
+     * The system property that makes the virtual grid rasterize tiles as they are first read, and sets how many tiles
+     * are kept at most. When it is not set, the whole grid is rasterized up front.
+     */
+    private static final String GRID_TILE_CACHE_PROPERTY = "ilp.gridTileCache";
+    /**
+     * The system property that selects how the drone's moves are chosen: "steer" (the default) to steer towards each
+     * waypoint of the path engine one move at a time, or "lattice" to plan the exact moves to each target with a
+     * search over the positions the drone can reach.
+     */
+    private static final String MOVE_PLANNER_PROPERTY = "ilp.movePlanner";
+    /**
+     * The system property that selects the order in which the drone delivers the orders: "value" (the default) to
+     * choose the orders and their order with an OrderScheduler so that as much value as possible is delivered, or
+     * "cost" to deliver them by descending delivery cost.
+     */
+    private static final String SCHEDULER_PROPERTY = "ilp.scheduler";
+    /**
+     * The system property that sets how long the OrderScheduler searches for in milliseconds.
+     */
+    private static final String SCHEDULER_BUDGET_PROPERTY = "ilp.schedulerBudgetMillis";
+    /**
+     * The system property that sets the most shops an order can be collected from. The default is 2.
+     */
+    private static final String MAX_SHOPS_PROPERTY = "ilp.maxShopsPerOrder";
+    /**
+     * The system property that sets the number of drones. With more than one drone, the orders are assigned to the
+     * drones of a Fleet, which fly concurrently and each write a GeoJSON file of their own.
+     */
+    private static final String FLEET_SIZE_PROPERTY = "ilp.fleetSize";
+    /**
+     * The system property that sets the bases of the drones of a fleet as "longitude,latitude;longitude,latitude;...".
+     * Drone i takes base i modulo the number of bases. The default is Appleton Tower for every drone.
+     */
+    private static final String FLEET_BASES_PROPERTY = "ilp.fleetBases";
+    /**
+     * The system property that turns on batch mode and sets the last date of the batch as YYYY-MM-DD. Every date from
+     * the one given on the command line to this one is planned in parallel over menus, no-fly-zones and a grid that
+     * are loaded once.
+     */
+    private static final String BATCH_UNTIL_PROPERTY = "ilp.batchUntil";
+    /**
+     * The system property that selects how resolved What3Words addresses are kept: "disk" (the default) to keep them
+     * in memory and in a file of the grid cache directory between runs, "memory" to keep them for this run only, or
+     * "off" to request every address from the web server.
+     */
+    private static final String W3W_CACHE_PROPERTY = "ilp.w3wCache";
+    /**
+     * The system property that sets how many hours a cached What3Words address is used for. The default is 0, for
+     * addresses that never expire.
+     */
+    private static final String W3W_CACHE_TTL_PROPERTY = "ilp.w3wCacheTtlHours";
+    /**
+     * The file in the grid cache directory that resolved What3Words addresses are appended to.
+     */
+    private static final String W3W_CACHE_FILE = "what3words.cache";
 
     /**
      * This is the main method and starting point of the application. It is responsible for parsing the user input,
@@ -34,43 +147,67 @@ public class App {
         String serverPort = args[3];
         String dbPort = args[4];
         String outputFileName = "drone-" + args[0] + "-" + args[1] + "-" + args[2] + ".geojson";
+        LocalDate lastDate = readBatchUntil(LocalDate.parse(dateString));
 
         /* Initialise  */
         DatabaseClient databaseClient = new DatabaseClient(dbPort);
-        WebServerClient webServerClient = new WebServerClient(serverPort);
-        ItemData itemData = new ItemData(webServerClient.getMenuData());
-        List<Order> orders = databaseClient.readOrders(Date.valueOf(dateString));
+        WebServerClient webServerClient = new WebServerClient(serverPort, createWhat3WordsCache());
+        ItemData itemData = new ItemData(webServerClient.getMenuData(), readMaxShops(),
+                webServerClient::getLongLatFromW3W);
 
-        /* Sort orders by descending delivery cost */
-        orders.sort(Comparator.comparingInt(o -> itemData.calculateDeliveryCost(((Order) o).getOrderDetails())).reversed());
-
-        /* Deliver the orders */
-        DroneController droneController =
-                new DroneController(itemData, APPLETON_TOWER, DRONE_STEPS, orders, webServerClient);
+        List<Polygon> noFlyZones = webServerClient.getNoFlyZones();
+        GridSnapshotStore snapshotStore = new GridSnapshotStore(Path.of(GRID_CACHE_DIRECTORY));
+        int tileCacheSize = readTileCacheSize();
+        Pathfinder pathfinder = new Pathfinder(noFlyZones, snapshotStore, createServiceArea(), tileCacheSize);
+        PathEngine pathEngine = createPathEngine(System.getProperty(PATH_ENGINE_PROPERTY, "theta"),
+                pathfinder, noFlyZones);
+        MoveLatticePlanner movePlanner = createMovePlanner(System.getProperty(MOVE_PLANNER_PROPERTY, "steer"),
+                pathfinder);
+        DayPlanner dayPlanner = new DayPlanner(itemData, webServerClient, pathfinder, pathEngine, movePlanner,
+                /* Sweeping a tiled grid would rasterize all of it */
+                tileCacheSize == Pathfinder.UNTILED
+                        ? new BaseCostField(pathfinder, APPLETON_TOWER, snapshotStore) : null,
+                APPLETON_TOWER, DRONE_STEPS, readScheduler(), readSchedulerBudget(),
+                /* In batch mode the dates already run in parallel, so each date's scheduler runs a single chain */
+                lastDate != null ? 1 : Runtime.getRuntime().availableProcessors());
 
-        int totalMonetaryValue = 0;
-        int deliveredMonetaryValue = 0;
-        int currentCost;
+        if (lastDate != null) {
+            deliverBatch(dayPlanner, databaseClient, LocalDate.parse(dateString), lastDate);
+            printWhat3WordsStatistics(webServerClient);
+            return;
+        }
 
-        for (Order order : orders) {
-            currentCost = itemData.calculateDeliveryCost(order.getOrderDetails());
-            totalMonetaryValue += currentCost;
+        List<Order> orders = databaseClient.readOrders(Date.valueOf(dateString));
+        List<LongLat> fleetBases = readFleetBases();
+        if (fleetBases.size() > 1) {
+            deliverWithFleet(new Fleet(itemData, webServerClient, pathfinder, pathEngine, movePlanner,
+                    new StepCostMatrix(pathfinder, pathEngine, movePlanner), fleetBases, DRONE_STEPS,
+                    OrderScheduler.DEFAULT_MARGIN), orders, itemData, databaseClient, args);
+            printWhat3WordsStatistics(webServerClient);
+            return;
         }
 
-        List<Delivery> deliveries = new ArrayList<>(droneController.deliverOrders());
-        for (Delivery delivery : deliveries) {
-            deliveredMonetaryValue += delivery.getCostInPence();
+        /* Deliver the orders */
+        DayPlanner.DayPlan plan = dayPlanner.plan(orders);
+        Schedule schedule = plan.getSchedule();
+        if (schedule != null) {
+            System.out.println("Scheduled " + schedule.getScheduledOrders().size() + " orders worth "
+                    + schedule.getValue() + "p in " + schedule.getSteps() + " moves");
         }
+        List<Delivery> deliveries = plan.getDeliveries();
 
         System.out.println("Delivered " + deliveries.size() + " out of " + orders.size() + " orders");
-        System.out.printf("Percentage monetary value: %.3f%%\n", (deliveredMonetaryValue / totalMonetaryValue) * 100d);
+        System.out.printf("Percentage monetary value: %.3f%%\n",
+                percentage(plan.getDeliveredMonetaryValue(), plan.getTotalMonetaryValue()));
+        System.out.println("Grid searches: " + pathfinder.getStatistics());
+        printWhat3WordsStatistics(webServerClient);
 
         /* Write to the database */
         databaseClient.writeDeliveries(deliveries);
-        databaseClient.writeFlightpath(droneController.getFlightpathList());
+        databaseClient.writeFlightpath(plan.getFlightpaths());
 
         /* Write to file */
-        String output = Utils.GeoJsonFromFlightpath(droneController.getFlightpathList());
+        String output = Utils.GeoJsonFromFlightpath(plan.getFlightpaths());
 
         if (Utils.writeToFile(outputFileName, output)) {
             System.out.println("Output file written successfully.");
@@ -78,4 +215,383 @@ public class App {
             System.err.println("Could not write to file.");
         }
     }
+
+    /**
+     * Plans every date from the first to the last in parallel over the data loaded once, writes the deliveries and
+     * flightpaths of every date to the dated tables of the database and the flightpath of each date to a file of its
+     * own, and reports how many dates were planned per second and how much of the orders' value was delivered.
+     */
+    private static void deliverBatch(DayPlanner dayPlanner, DatabaseClient databaseClient, LocalDate firstDate,
+                                     LocalDate lastDate) {
+        /* The database connection is not shared between threads, so the orders are read up front */
+        List<LocalDate> dates = new ArrayList<>();
+        Map<LocalDate, List<Order>> ordersByDate = new HashMap<>();
+        for (LocalDate date = firstDate; !date.isAfter(lastDate); date = date.plusDays(1)) {
+            dates.add(date);
+            ordersByDate.put(date, databaseClient.readOrders(Date.valueOf(date)));
+        }
+
+        long begin = System.nanoTime();
+        List<DayPlanner.DayPlan> plans = ForkJoinPool.commonPool().submit(() -> dates.parallelStream()
+                .map(date -> dayPlanner.plan(ordersByDate.get(date)))
+                .collect(Collectors.toList())).join();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+
+        long totalMonetaryValue = 0;
+        long deliveredMonetaryValue = 0;
+        Map<Date, List<Delivery>> deliveries = new LinkedHashMap<>();
+        Map<Date, List<Flightpath>> flightpaths = new LinkedHashMap<>();
+        for (int i = 0; i < dates.size(); i++) {
+            LocalDate date = dates.get(i);
+            DayPlanner.DayPlan plan = plans.get(i);
+            totalMonetaryValue += plan.getTotalMonetaryValue();
+            deliveredMonetaryValue += plan.getDeliveredMonetaryValue();
+            deliveries.put(Date.valueOf(date), plan.getDeliveries());
+            flightpaths.put(Date.valueOf(date), plan.getFlightpaths());
+            System.out.printf("%s: delivered %d out of %d orders, %.3f%% of their value%n", date,
+                    plan.getDeliveries().size(), plan.getOrders().size(),
+                    percentage(plan.getDeliveredMonetaryValue(), plan.getTotalMonetaryValue()));
+
+            if (!plan.getFlightpaths().isEmpty()) {
+                String outputFileName = String.format("drone-%02d-%02d-%04d.geojson", date.getDayOfMonth(),
+                        date.getMonthValue(), date.getYear());
+                if (!Utils.writeToFile(outputFileName, Utils.GeoJsonFromFlightpath(plan.getFlightpaths()))) {
+                    System.err.println("Could not write to file.");
+                }
+            }
+        }
+        databaseClient.writeDatedDeliveries(deliveries);
+        databaseClient.writeDatedFlightpath(flightpaths);
+
+        System.out.printf("Planned %d dates in %.2f s on %d threads: %.2f dates/s%n", dates.size(), seconds,
+                ForkJoinPool.commonPool().getParallelism(), dates.size() / seconds);
+        System.out.printf("Percentage monetary value: %.3f%%\n",
+                percentage(deliveredMonetaryValue, totalMonetaryValue));
+    }
+
+    /**
+     * @return the part as a percentage of the whole, or 0 if the whole is 0, as for a date without orders.
+     */
+    private static double percentage(long part, long whole) {
+        return whole == 0 ? 0 : part * 100d / whole;
+    }
+
+    /**
+     * Delivers the orders with a fleet of drones, and writes the deliveries and the flightpaths of every drone to the
+     * database and the flightpath of each drone to a file of its own.
+     */
+    private static void deliverWithFleet(Fleet fleet, List<Order> orders, ItemData itemData,
+                                         DatabaseClient databaseClient, String[] args) {
+        fleet.prepare(orders, ForkJoinPool.commonPool());
+        long begin = System.nanoTime();
+        List<DroneFlight> flights = fleet.deliver(orders, ForkJoinPool.commonPool());
+        double millis = (System.nanoTime() - begin) / 1e6;
+
+        int totalMonetaryValue = 0;
+        for (Order order : orders) {
+            totalMonetaryValue += itemData.calculateDeliveryCost(order.getOrderDetails());
+        }
+        int deliveredMonetaryValue = 0;
+        List<Delivery> deliveries = new ArrayList<>();
+        List<Flightpath> flightpaths = new ArrayList<>();
+        for (DroneFlight flight : flights) {
+            deliveries.addAll(flight.getDeliveries());
+            flightpaths.addAll(flight.getFlightpaths());
+            for (Delivery delivery : flight.getDeliveries()) {
+                deliveredMonetaryValue += delivery.getCostInPence();
+            }
+            System.out.println("Drone " + flight.getDroneId() + " delivered " + flight.getDeliveries().size()
+                    + " out of " + flight.getAssignedOrders().size() + " assigned orders in "
+                    + flight.getFlightpaths().size() + " moves");
+        }
+        System.out.println("Delivered " + deliveries.size() + " out of " + orders.size() + " orders with "
+                + fleet.size() + " drones in " + String.format("%.1f", millis) + " ms");
+        System.out.printf("Percentage monetary value: %.3f%%\n",
+                percentage(deliveredMonetaryValue, totalMonetaryValue));
+
+        databaseClient.writeDeliveries(deliveries);
+        databaseClient.writeFlightpath(flightpaths);
+
+        for (DroneFlight flight : flights) {
+            if (flight.getFlightpaths().isEmpty()) {
+                continue;
+            }
+            String outputFileName = "drone-" + flight.getDroneId() + "-" + args[0] + "-" + args[1] + "-" + args[2]
+                    + ".geojson";
+            if (!Utils.writeToFile(outputFileName, Utils.GeoJsonFromFlightpath(flight.getFlightpaths()))) {
+                System.err.println("Could not write to file.");
+            }
+        }
+    }
+
+    /**
+     * Reads the ilp.fleetSize and ilp.fleetBases system properties.
+     * @return the base of each drone.
+     */
+    private static List<LongLat> readFleetBases() {
+        List<LongLat> bases = new ArrayList<>();
+        try {
+            int size = Integer.parseInt(System.getProperty(FLEET_SIZE_PROPERTY, "1"));
+            if (size < 1) {
+                System.err.println("The fleet must have at least one drone");
+                System.exit(1);
+            }
+            List<LongLat> configured = new ArrayList<>();
+            String property = System.getProperty(FLEET_BASES_PROPERTY);
+            if (property == null) {
+                configured.add(APPLETON_TOWER);
+            } else {
+                for (String base : property.split(";")) {
+                    String[] coordinates = base.split(",");
+                    if (coordinates.length != 2) {
+                        System.err.println("Each base must be given as longitude,latitude");
+                        System.exit(1);
+                    }
+                    configured.add(new LongLat(Double.parseDouble(coordinates[0].trim()),
+                            Double.parseDouble(coordinates[1].trim())));
+                }
+            }
+            for (int drone = 0; drone < size; drone++) {
+                bases.add(configured.get(drone % configured.size()));
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid fleet configuration: " + e.getMessage());
+            System.exit(1);
+        }
+        return bases;
+    }
+
+    /**
+     * Creates the area covered by the virtual grid from the ilp.area and ilp.gridResolution system properties.
+     * @return the configured area, or the confinement area at the default resolution if neither is set.
+     */
+    private static ServiceArea createServiceArea() {
+        ServiceArea area = ServiceArea.DEFAULT;
+        try {
+            String bounds = System.getProperty(AREA_PROPERTY);
+            double resolution = Double.parseDouble(System.getProperty(GRID_RESOLUTION_PROPERTY,
+                    String.valueOf(area.getResolution())));
+            if (bounds == null) {
+                return new ServiceArea(area.getMinLongitude(), area.getMinLatitude(), area.getMaxLongitude(),
+                        area.getMaxLatitude(), resolution);
+            }
+            String[] corners = bounds.split(",");
+            if (corners.length != 4) {
+                System.err.println("The area must be given as minLongitude,minLatitude,maxLongitude,maxLatitude");
+                System.exit(1);
+            }
+            return new ServiceArea(Double.parseDouble(corners[0].trim()), Double.parseDouble(corners[1].trim()),
+                    Double.parseDouble(corners[2].trim()), Double.parseDouble(corners[3].trim()), resolution);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid area configuration: " + e.getMessage());
+            System.exit(1);
+        }
+        return area;
+    }
+
+    /**
+     * Reads the ilp.gridTileCache system property.
+     * @return the number of tiles the virtual grid keeps, or Pathfinder.UNTILED if the property is not set.
+     */
+    private static int readTileCacheSize() {
+        try {
+            int tiles = Integer.parseInt(System.getProperty(GRID_TILE_CACHE_PROPERTY,
+                    String.valueOf(Pathfinder.UNTILED)));
+            if (tiles >= 0) {
+                return tiles;
+            }
+        } catch (NumberFormatException e) {
+            /* Reported below */
+        }
+        System.err.println("The grid tile cache must be a number of tiles");
+        System.exit(1);
+        return Pathfinder.UNTILED;
+    }
+
+    /**
+     * Prints how well the What3Words cache of the client did, if it has one.
+     */
+    private static void printWhat3WordsStatistics(WebServerClient webServerClient) {
+        What3WordsCache cache = webServerClient.getWhat3WordsCache();
+        if (cache != null) {
+            System.out.println("What3Words lookups: " + cache);
+        }
+    }
+
+    /**
+     * Creates the What3Words cache selected by the ilp.w3wCache and ilp.w3wCacheTtlHours system properties.
+     * @return the cache, or null if every address is requested from the web server.
+     */
+    private static What3WordsCache createWhat3WordsCache() {
+        String mode = System.getProperty(W3W_CACHE_PROPERTY, "disk");
+        if (mode.equals("off")) {
+            return null;
+        }
+        if (!mode.equals("disk") && !mode.equals("memory")) {
+            System.err.println("Unknown What3Words cache: " + mode);
+            System.exit(1);
+        }
+        Duration timeToLive = What3WordsCache.NO_EXPIRY;
+        try {
+            long hours = Long.parseLong(System.getProperty(W3W_CACHE_TTL_PROPERTY, "0"));
+            if (hours < 0) {
+                throw new NumberFormatException();
+            }
+            timeToLive = Duration.ofHours(hours);
+        } catch (NumberFormatException e) {
+            System.err.println("The What3Words cache time to live must be a number of hours");
+            System.exit(1);
+        }
+        return new What3WordsCache(mode.equals("disk") ? Path.of(GRID_CACHE_DIRECTORY, W3W_CACHE_FILE) : null,
+                timeToLive);
+    }
+
+    /**
+     * Reads the ilp.batchUntil system property.
+     * @param firstDate the date given on the command line.
+     * @return the last date of the batch, or null if only the given date is planned.
+     */
+    private static LocalDate readBatchUntil(LocalDate firstDate) {
+        String property = System.getProperty(BATCH_UNTIL_PROPERTY);
+        if (property == null) {
+            return null;
+        }
+        try {
+            LocalDate lastDate = LocalDate.parse(property);
+            if (!lastDate.isBefore(firstDate)) {
+                return lastDate;
+            }
+        } catch (DateTimeParseException e) {
+            /* Reported below */
+        }
+        System.err.println("The last date of the batch must be given as YYYY-MM-DD, on or after the first date");
+        System.exit(1);
+        return null;
+    }
+
+    /**
+     * Reads the ilp.scheduler system property.
+     * @return the name of the scheduler.
+     */
+    private static String readScheduler() {
+        String scheduler = System.getProperty(SCHEDULER_PROPERTY, DayPlanner.VALUE_SCHEDULER);
+        if (!scheduler.equals(DayPlanner.VALUE_SCHEDULER) && !scheduler.equals(DayPlanner.COST_SCHEDULER)) {
+            System.err.println("Unknown scheduler: " + scheduler);
+            System.exit(1);
+        }
+        return scheduler;
+    }
+
+    /**
+     * Reads the ilp.maxShopsPerOrder system property.
+     * @return the most shops an order can be collected from.
+     */
+    private static int readMaxShops() {
+        try {
+            int shops = Integer.parseInt(System.getProperty(MAX_SHOPS_PROPERTY,
+                    String.valueOf(ItemData.DEFAULT_MAX_SHOPS)));
+            if (shops >= 1 && shops <= ShopSequencer.MAX_SHOPS) {
+                return shops;
+            }
+        } catch (NumberFormatException e) {
+            /* Reported below */
+        }
+        System.err.println("The most shops per order must be a number from 1 to " + ShopSequencer.MAX_SHOPS);
+        System.exit(1);
+        return ItemData.DEFAULT_MAX_SHOPS;
+    }
+
+    /**
+     * Reads the ilp.schedulerBudgetMillis system property.
+     * @return the time the OrderScheduler searches for.
+     */
+    private static Duration readSchedulerBudget() {
+        try {
+            long millis = Long.parseLong(System.getProperty(SCHEDULER_BUDGET_PROPERTY,
+                    String.valueOf(OrderScheduler.DEFAULT_BUDGET.toMillis())));
+            if (millis >= 0) {
+                return Duration.ofMillis(millis);
+            }
+        } catch (NumberFormatException e) {
+            /* Reported below */
+        }
+        System.err.println("The scheduler budget must be a number of milliseconds");
+        System.exit(1);
+        return OrderScheduler.DEFAULT_BUDGET;
+    }
+
+    /**
+     * Creates the move planner with the given name.
+     * @param name the name of the planner, as given by the ilp.movePlanner system property.
+     * @param pathfinder the Pathfinder that decides which moves are legal.
+     * @return the move planner, or null if the drone steers towards the waypoints of the path engine.
+     */
+    private static MoveLatticePlanner createMovePlanner(String name, Pathfinder pathfinder) {
+        switch (name) {
+            case "steer":
+                return null;
+            case "lattice":
+                return new MoveLatticePlanner(pathfinder);
+            default:
+                System.err.println("Unknown move planner: " + name);
+                System.exit(1);
+                return null;
+        }
+    }
+
+    /**
+     * Creates the path engine with the given name.
+     * @param name the name of the engine, as given by the ilp.pathEngine system property.
+     * @param pathfinder the Pathfinder over the no-fly-zones, which is also the Theta* engine.
+     * @param noFlyZones the no-fly-zone polygons.
+     * @return the path engine.
+     */
+    private static PathEngine createPathEngine(String name, Pathfinder pathfinder, List<Polygon> noFlyZones) {
+        Pathfinder.Algorithm algorithm;
+        switch (name) {
+            case "theta":
+                algorithm = Pathfinder.Algorithm.THETA_STAR;
+                break;
+            case "lazy-theta":
+                algorithm = Pathfinder.Algorithm.LAZY_THETA_STAR;
+                break;
+            case "jps":
+                algorithm = Pathfinder.Algorithm.JUMP_POINT_SEARCH;
+                break;
+            case "visibility":
+                return new VisibilityGraphEngine(pathfinder, noFlyZones);
+            case "hpa":
+                try {
+                    return new HierarchicalPathEngine(pathfinder, Integer.parseInt(System.getProperty(
+                            CLUSTER_SIZE_PROPERTY, String.valueOf(HierarchicalPathEngine.DEFAULT_CLUSTER_SIZE))));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Invalid cluster configuration: " + e.getMessage());
+                    System.exit(1);
+                    return null;
+                }
+            default:
+                System.err.println("Unknown path engine: " + name);
+                System.exit(1);
+                return null;
+        }
+
+        double weight = Pathfinder.DEFAULT_HEURISTIC_WEIGHT;
+        long budgetMillis = 0;
+        try {
+            weight = Double.parseDouble(System.getProperty(HEURISTIC_WEIGHT_PROPERTY,
+                    String.valueOf(Pathfinder.DEFAULT_HEURISTIC_WEIGHT)));
+            budgetMillis = Long.parseLong(System.getProperty(SEARCH_BUDGET_PROPERTY, "0"));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid search configuration: " + e.getMessage());
+            System.exit(1);
+        }
+        if (weight < 1) {
+            System.err.println("The heuristic weight must be at least 1");
+            System.exit(1);
+        }
+        if (budgetMillis > 0) {
+            return pathfinder.anytimeEngine(algorithm, weight, Duration.ofMillis(budgetMillis));
+        }
+        return pathfinder.engine(algorithm, weight);
+    }
 }
@@ -0,0 +1,174 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.clients.WebServerClient;
+import uk.ac.ed.inf.controller.BaseCostField;
+import uk.ac.ed.inf.controller.DroneController;
+import uk.ac.ed.inf.controller.MoveLatticePlanner;
+import uk.ac.ed.inf.controller.OrderScheduler;
+import uk.ac.ed.inf.controller.PathEngine;
+import uk.ac.ed.inf.controller.Pathfinder;
+import uk.ac.ed.inf.controller.Schedule;
+import uk.ac.ed.inf.controller.StepCostMatrix;
+import uk.ac.ed.inf.domain.Delivery;
+import uk.ac.ed.inf.domain.Flightpath;
+import uk.ac.ed.inf.domain.ItemData;
+import uk.ac.ed.inf.domain.LongLat;
+import uk.ac.ed.inf.domain.Order;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Plans and flies the drone's deliveries of one date over data that is loaded once: the menus, the map and the paths
+ * back to the base. Each date gets its own StepCostMatrix, schedule and DroneController, so several dates can be
+ * planned at once from different threads.
+ */
+class DayPlanner {
+
+    /**
+     * Orders the orders by descending delivery cost.
+     */
+    static final String COST_SCHEDULER = "cost";
+    /**
+     * Chooses the orders and their order with an OrderScheduler.
+     */
+    static final String VALUE_SCHEDULER = "value";
+
+    private final ItemData itemData;
+    private final WebServerClient webServerClient;
+    private final Pathfinder pathfinder;
+    private final PathEngine pathEngine;
+    private final MoveLatticePlanner movePlanner;
+    private final BaseCostField baseCostField;
+    private final LongLat base;
+    private final int steps;
+    private final String scheduler;
+    private final Duration schedulerBudget;
+    private final int schedulerChains;
+
+    /**
+     * Creates a planner whose OrderScheduler runs one annealing chain per processor on each date.
+     * @param baseCostField the paths back to the base, or null to search for them.
+     * @param scheduler COST_SCHEDULER or VALUE_SCHEDULER.
+     * @param schedulerBudget how long the OrderScheduler searches for on each date.
+     */
+    DayPlanner(ItemData itemData, WebServerClient webServerClient, Pathfinder pathfinder, PathEngine pathEngine,
+               MoveLatticePlanner movePlanner, BaseCostField baseCostField, LongLat base, int steps,
+               String scheduler, Duration schedulerBudget) {
+        this(itemData, webServerClient, pathfinder, pathEngine, movePlanner, baseCostField, base, steps, scheduler,
+                schedulerBudget, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param baseCostField the paths back to the base, or null to search for them.
+     * @param scheduler COST_SCHEDULER or VALUE_SCHEDULER.
+     * @param schedulerBudget how long the OrderScheduler searches for on each date.
+     * @param schedulerChains the annealing chains the OrderScheduler runs on each date, at least 1. Dates that are
+     * planned in parallel already keep the processors busy, so they only need one chain each.
+     */
+    DayPlanner(ItemData itemData, WebServerClient webServerClient, Pathfinder pathfinder, PathEngine pathEngine,
+               MoveLatticePlanner movePlanner, BaseCostField baseCostField, LongLat base, int steps,
+               String scheduler, Duration schedulerBudget, int schedulerChains) {
+        if (!scheduler.equals(COST_SCHEDULER) && !scheduler.equals(VALUE_SCHEDULER)) {
+            throw new IllegalArgumentException("Unknown scheduler: " + scheduler);
+        }
+        this.itemData = itemData;
+        this.webServerClient = webServerClient;
+        this.pathfinder = pathfinder;
+        this.pathEngine = pathEngine;
+        this.movePlanner = movePlanner;
+        this.baseCostField = baseCostField;
+        this.base = base;
+        this.steps = steps;
+        this.scheduler = scheduler;
+        this.schedulerBudget = schedulerBudget;
+        this.schedulerChains = schedulerChains;
+    }
+
+    /**
+     * Plans the order of the date's orders and flies the drone.
+     * @param orders the orders of the date.
+     * @return the deliveries and flightpath of the drone.
+     */
+    DayPlan plan(List<Order> orders) {
+        /* Find the paths and moves between the base, the shops and the customers of the day */
+        StepCostMatrix legs = new StepCostMatrix(pathfinder, pathEngine, movePlanner);
+        legs.addOrders(base, orders, itemData, webServerClient);
+        legs.precompute(ForkJoinPool.commonPool());
+
+        /* Choose the order in which to deliver the orders */
+        List<Order> sequence = new ArrayList<>(orders);
+        Schedule schedule = null;
+        if (scheduler.equals(VALUE_SCHEDULER)) {
+            schedule = new OrderScheduler(itemData, webServerClient, legs, base, steps, OrderScheduler.DEFAULT_MARGIN,
+                    schedulerBudget, schedulerChains, OrderScheduler.DEFAULT_ITERATIONS, 0)
+                    .schedule(orders);
+            sequence = new ArrayList<>(schedule.getOrders());
+        } else {
+            /* Sort orders by descending delivery cost */
+            sequence.sort(Comparator.comparingInt(
+                    (Order o) -> itemData.calculateDeliveryCost(o.getOrderDetails())).reversed());
+        }
+
+        /* Deliver the orders */
+        DroneController droneController = new DroneController(itemData, base, steps, sequence, webServerClient,
+                pathfinder, pathEngine, movePlanner, baseCostField, legs);
+        List<Delivery> deliveries = new ArrayList<>(droneController.deliverOrders());
+
+        int totalMonetaryValue = 0;
+        for (Order order : orders) {
+            totalMonetaryValue += itemData.calculateDeliveryCost(order.getOrderDetails());
+        }
+        return new DayPlan(orders, schedule, deliveries, droneController.getFlightpathList(), totalMonetaryValue);
+    }
+
+    /**
+     * The orders of a date and what the drone did with them.
+     */
+    static class DayPlan {
+        private final List<Order> orders;
+        private final Schedule schedule;
+        private final List<Delivery> deliveries;
+        private final List<Flightpath> flightpaths;
+        private final int totalMonetaryValue;
+
+        DayPlan(List<Order> orders, Schedule schedule, List<Delivery> deliveries, List<Flightpath> flightpaths,
+                int totalMonetaryValue) {
+            this.orders = orders;
+            this.schedule = schedule;
+            this.deliveries = deliveries;
+            this.flightpaths = flightpaths;
+            this.totalMonetaryValue = totalMonetaryValue;
+        }
+
+        List<Order> getOrders() {
+            return orders;
+        }
+
+        /**
+         * @return the schedule the orders were delivered in, or null if they were sorted by delivery cost.
+         */
+        Schedule getSchedule() {
+            return schedule;
+        }
+
+        List<Delivery> getDeliveries() {
+            return deliveries;
+        }
+
+        List<Flightpath> getFlightpaths() {
+            return flightpaths;
+        }
+
+        int getTotalMonetaryValue() {
+            return totalMonetaryValue;
+        }
+
+        int getDeliveredMonetaryValue() {
+            return deliveries.stream().mapToInt(Delivery::getCostInPence).sum();
+        }
+    }
+}
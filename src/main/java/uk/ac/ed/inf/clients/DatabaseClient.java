@@ -6,7 +6,9 @@ import uk.ac.ed.inf.domain.Order;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 /**
@@ -14,6 +16,11 @@ import java.util.Objects;
  */
 public class DatabaseClient {
 
+    private static final String DELIVERIES_TABLE = "DELIVERIES";
+    private static final String FLIGHTPATH_TABLE = "FLIGHTPATH";
+    private static final String DATED_DELIVERIES_TABLE = "DATEDDELIVERIES";
+    private static final String DATED_FLIGHTPATH_TABLE = "DATEDFLIGHTPATH";
+
     private Connection conn;
     private Statement statement;
 
@@ -36,29 +43,75 @@ public class DatabaseClient {
      */
     public void writeDeliveries(List<Delivery> content) {
         Objects.requireNonNull(content);
-        try {
-            DatabaseMetaData databaseMetadata = conn.getMetaData();
-            ResultSet resultSet =
-                    databaseMetadata.getTables(null, null, "DELIVERIES", null);
+        writeDeliveries(DELIVERIES_TABLE, Collections.singletonMap(null, content), false);
+    }
 
-            /* If the resultSet is not empty then the table exists, so we can drop it */
-            if (resultSet.next()) {
-                statement.execute("drop table deliveries");
-            }
+    /**
+     * Adds a new table to the derby database with information about the flightpath of the drone. Each step of the drone
+     * is described by a flightpath object. If the steps were made by a fleet of drones, the table has a seventh column
+     * with the id of the drone that made each step.
+     *
+     * @param content A list of Flightpath objects which will be added to the database table.
+     */
+    public void writeFlightpath(List<Flightpath> content) {
+        Objects.requireNonNull(content);
+        writeFlightpath(FLIGHTPATH_TABLE, Collections.singletonMap(null, content), false);
+    }
+
+    /**
+     * Adds a new table to the derby database with the deliveries completed by the drone on several dates. The table
+     * is kept apart from the deliveries table, which is left as it was, and has the columns of the deliveries table
+     * followed by the date of each delivery.
+     *
+     * @param content the Delivery objects of each date, which will be added to the database table.
+     */
+    public void writeDatedDeliveries(Map<java.sql.Date, List<Delivery>> content) {
+        Objects.requireNonNull(content);
+        writeDeliveries(DATED_DELIVERIES_TABLE, content, true);
+    }
+
+    /**
+     * Adds a new table to the derby database with the flightpaths of the drone on several dates. The table is kept
+     * apart from the flightpath table, which is left as it was, and has the columns of the flightpath table followed
+     * by the date of each step.
+     *
+     * @param content the Flightpath objects of each date, which will be added to the database table.
+     */
+    public void writeDatedFlightpath(Map<java.sql.Date, List<Flightpath>> content) {
+        Objects.requireNonNull(content);
+        writeFlightpath(DATED_FLIGHTPATH_TABLE, content, true);
+    }
 
+    /**
+     * Replaces a table of deliveries with the given deliveries.
+     *
+     * @param table the name of the table in upper case.
+     * @param content the Delivery objects of each date.
+     * @param dated whether the table has a fourth column with the date of each delivery.
+     */
+    private void writeDeliveries(String table, Map<java.sql.Date, List<Delivery>> content, boolean dated) {
+        try {
+            dropTable(table);
             statement.execute(
-                    "create table deliveries(" +
+                    "create table " + table.toLowerCase() + "(" +
                             "orderNo char(8), " +
                             "deliveredTo varchar(19), " +
-                            "costInPence int)");
-
-            PreparedStatement psDelivery = conn.prepareStatement("insert into deliveries values (?, ?, ?)");
-
-            for (Delivery d : content) {
-                psDelivery.setString(1, d.getOrderNo());
-                psDelivery.setString(2, d.getDeliveredTo());
-                psDelivery.setInt(3, d.getCostInPence());
-                psDelivery.execute();
+                            "costInPence int" +
+                            (dated ? ", deliveryDate date)" : ")"));
+
+            PreparedStatement psDelivery = conn.prepareStatement("insert into " + table.toLowerCase()
+                    + (dated ? " values (?, ?, ?, ?)" : " values (?, ?, ?)"));
+
+            for (Map.Entry<java.sql.Date, List<Delivery>> date : content.entrySet()) {
+                for (Delivery d : date.getValue()) {
+                    psDelivery.setString(1, d.getOrderNo());
+                    psDelivery.setString(2, d.getDeliveredTo());
+                    psDelivery.setInt(3, d.getCostInPence());
+                    if (dated) {
+                        psDelivery.setDate(4, date.getKey());
+                    }
+                    psDelivery.execute();
+                }
             }
         } catch (SQLException e) {
             System.err.println("Could not write to the database, the application will now exit");
@@ -68,42 +121,47 @@ public class DatabaseClient {
     }
 
     /**
-     * Adds a new table to the derby database with information about the flightpath of the drone. Each step of the drone
-     * is described by a flightpath object.
+     * Replaces a table of flightpaths with the given steps. If the steps were made by a fleet of drones, the table has
+     * a column with the id of the drone that made each step.
      *
-     * @param content A list of Flightpath objects which will be added to the database table.
+     * @param table the name of the table in upper case.
+     * @param content the Flightpath objects of each date.
+     * @param dated whether the table has a last column with the date of each step.
      */
-    public void writeFlightpath(List<Flightpath> content) {
-        Objects.requireNonNull(content);
+    private void writeFlightpath(String table, Map<java.sql.Date, List<Flightpath>> content, boolean dated) {
         try {
-            DatabaseMetaData databaseMetadata = conn.getMetaData();
-            ResultSet resultSet =
-                    databaseMetadata.getTables(null, null, "FLIGHTPATH", null);
-
-            /* If the resultSet is not empty then the table exists, so we can drop it */
-            if (resultSet.next()) {
-                statement.execute("drop table flightpath");
-            }
-
+            dropTable(table);
+            boolean fleet = content.values().stream().flatMap(List::stream).anyMatch(f -> f.getDroneId() != null);
+            int columns = 6 + (fleet ? 1 : 0) + (dated ? 1 : 0);
             statement.execute(
-                    "create table flightpath(orderNo char(8)," +
+                    "create table " + table.toLowerCase() + "(orderNo char(8)," +
                             "fromLongitude double," +
                             "fromLatitude double," +
                             "angle integer," +
                             "toLongitude double," +
-                            "toLatitude double)");
-
-            PreparedStatement psFlightpath = conn.prepareStatement(
-                    "insert into flightpath values (?, ?, ?, ?, ?, ?)");
-
-            for (Flightpath f : content) {
-                psFlightpath.setString(1, f.getOrderNo());
-                psFlightpath.setString(2, Double.toString(f.getStart().getLongitude()));
-                psFlightpath.setString(3, Double.toString(f.getStart().getLatitude()));
-                psFlightpath.setInt(4, f.getAngle());
-                psFlightpath.setString(5, Double.toString(f.getDest().getLongitude()));
-                psFlightpath.setString(6, Double.toString(f.getDest().getLatitude()));
-                psFlightpath.execute();
+                            "toLatitude double" +
+                            (fleet ? ", droneId varchar(8)" : "") +
+                            (dated ? ", deliveryDate date)" : ")"));
+
+            PreparedStatement psFlightpath = conn.prepareStatement("insert into " + table.toLowerCase()
+                    + " values (" + String.join(", ", Collections.nCopies(columns, "?")) + ")");
+
+            for (Map.Entry<java.sql.Date, List<Flightpath>> date : content.entrySet()) {
+                for (Flightpath f : date.getValue()) {
+                    psFlightpath.setString(1, f.getOrderNo());
+                    psFlightpath.setString(2, Double.toString(f.getStart().getLongitude()));
+                    psFlightpath.setString(3, Double.toString(f.getStart().getLatitude()));
+                    psFlightpath.setInt(4, f.getAngle());
+                    psFlightpath.setString(5, Double.toString(f.getDest().getLongitude()));
+                    psFlightpath.setString(6, Double.toString(f.getDest().getLatitude()));
+                    if (fleet) {
+                        psFlightpath.setString(7, f.getDroneId());
+                    }
+                    if (dated) {
+                        psFlightpath.setDate(columns, date.getKey());
+                    }
+                    psFlightpath.execute();
+                }
             }
         } catch (SQLException e) {
             System.err.println("Could not write to the database, the application will now exit");
@@ -112,6 +170,20 @@ public class DatabaseClient {
         }
     }
 
+    /**
+     * Drops a table if it exists.
+     *
+     * @param name the name of the table in upper case, as the database metadata reports it.
+     */
+    private void dropTable(String name) throws SQLException {
+        ResultSet resultSet = conn.getMetaData().getTables(null, null, name, null);
+
+        /* If the resultSet is not empty then the table exists, so we can drop it */
+        if (resultSet.next()) {
+            statement.execute("drop table " + name.toLowerCase());
+        }
+    }
+
     /**
      * Reads all the orders made in the specified date from the database and populates their details.
      *
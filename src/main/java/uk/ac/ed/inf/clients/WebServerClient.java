@@ -29,6 +29,7 @@ import java.util.stream.Collectors;
 public class WebServerClient {
 
     private static final HttpClient client = HttpClient.newHttpClient();
+    private static final Gson GSON = new Gson();
     private static final String FAILED_REQUEST = "";
     private static final int VALID_RESPONSE = 200;
     private static final String MACHINE_NAME = "localhost";
@@ -38,10 +39,19 @@ public class WebServerClient {
     public static final String WORDS_LAST_PATHNAME = "/details.json";
 
     private final String baseUrl;
+    private final What3WordsCache what3WordsCache;
 
     public WebServerClient(String port) {
-        this.baseUrl = "http://" + MACHINE_NAME + ":" + port + "/";
+        this(port, null);
+    }
 
+    /**
+     * @param port the port of the web server.
+     * @param what3WordsCache the cache What3Words addresses are resolved through, or null to request every address.
+     */
+    public WebServerClient(String port, What3WordsCache what3WordsCache) {
+        this.baseUrl = "http://" + MACHINE_NAME + ":" + port + "/";
+        this.what3WordsCache = what3WordsCache;
     }
 
     /**
@@ -91,19 +101,34 @@ public class WebServerClient {
     public ArrayList<Shop> getMenuData() {
         ArrayList<Shop> menuData;
         Type listType = new TypeToken<ArrayList<Shop>>() {}.getType();
-        menuData = new Gson().fromJson(fetchFromServer(WebServerClient.MENUS_PATHNAME), listType);
+        menuData = GSON.fromJson(fetchFromServer(WebServerClient.MENUS_PATHNAME), listType);
         return menuData;
     }
 
     /**
-     * Returns the LongLat object represented by the given What3Words address.
+     * Returns the LongLat object represented by the given What3Words address. The address is only requested from the
+     * server if it is not in the What3Words cache.
      * @param what3WordsText the What3Words address.
      * @return A LongLat object.
      */
     public LongLat getLongLatFromW3W(String what3WordsText) {
+        if (what3WordsCache != null) {
+            return what3WordsCache.resolve(what3WordsText, this::requestLongLatFromW3W);
+        }
+        return requestLongLatFromW3W(what3WordsText);
+    }
+
+    /**
+     * @return the What3Words cache of this client, or null if every address is requested.
+     */
+    public What3WordsCache getWhat3WordsCache() {
+        return what3WordsCache;
+    }
+
+    private LongLat requestLongLatFromW3W(String what3WordsText) {
         String wordPath = "/" + what3WordsText.replace('.','/');
         String finalPath = WORDS_FIRST_PATHNAME + wordPath + WORDS_LAST_PATHNAME;
-        Address address =  new Gson().fromJson(fetchFromServer(finalPath), Address.class);
+        Address address = GSON.fromJson(fetchFromServer(finalPath), Address.class);
         return new LongLat(address.coordinates.getLng(), address.coordinates.getLat());
     }
 
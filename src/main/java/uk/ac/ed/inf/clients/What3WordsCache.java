@@ -0,0 +1,240 @@
+package uk.ac.ed.inf.clients;
+
+import uk.ac.ed.inf.domain.LongLat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Remembers the position of every What3Words address that has been resolved, so that each address is requested from
+ * the web server once instead of once for every order that goes through it. The positions are kept in a concurrent
+ * map and, if a store is given, appended to a file as they are resolved, so that they survive restarts. The file is
+ * read back when the cache is created, and a line that appears later replaces an earlier one for the same address.
+ * Positions can be given a time to live, after which they are requested again.
+ * The cache counts its hits and misses, and how long the requests it saved took when they were first made.
+ */
+public class What3WordsCache {
+
+    /**
+     * Positions that never expire.
+     */
+    public static final Duration NO_EXPIRY = Duration.ZERO;
+    private static final String SEPARATOR = "\t";
+    private static final int FIELDS = 5;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Path store;
+    private final Duration timeToLive;
+    private final Clock clock;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder requestNanos = new LongAdder();
+    private final LongAdder savedNanos = new LongAdder();
+
+    /**
+     * @param store the file the positions are appended to, or null to keep them in memory only.
+     * @param timeToLive how long a position is used for after it was requested, or NO_EXPIRY.
+     */
+    public What3WordsCache(Path store, Duration timeToLive) {
+        this(store, timeToLive, Clock.systemUTC());
+    }
+
+    /**
+     * @param store the file the positions are appended to, or null to keep them in memory only.
+     * @param timeToLive how long a position is used for after it was requested, or NO_EXPIRY.
+     * @param clock the clock the age of the positions is measured with.
+     */
+    public What3WordsCache(Path store, Duration timeToLive, Clock clock) {
+        if (timeToLive.isNegative()) {
+            throw new IllegalArgumentException("The time to live cannot be negative, but it was " + timeToLive);
+        }
+        this.store = store;
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+        if (store != null) {
+            load();
+        }
+    }
+
+    /**
+     * Returns the position of an address, requesting it only if it is not cached or has expired. Two threads that
+     * miss the same address at once may both request it; the later position replaces the earlier one.
+     * @param words the What3Words address.
+     * @param request requests the position of an address from the web server.
+     * @return the position of the address.
+     */
+    public LongLat resolve(String words, Function<String, LongLat> request) {
+        long now = clock.millis();
+        Entry entry = entries.get(words);
+        if (entry != null && !isExpired(entry, now)) {
+            hits.increment();
+            savedNanos.add(entry.requestNanos);
+            return entry.position;
+        }
+        misses.increment();
+        long start = System.nanoTime();
+        LongLat position = request.apply(words);
+        long elapsed = System.nanoTime() - start;
+        requestNanos.add(elapsed);
+        entry = new Entry(position, now, elapsed);
+        entries.put(words, entry);
+        if (store != null) {
+            append(words, entry);
+        }
+        return position;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getHitRatio() {
+        long lookups = getHits() + getMisses();
+        return lookups == 0 ? 0 : (double) getHits() / lookups;
+    }
+
+    /**
+     * @return how long the requests made by this cache took.
+     */
+    public Duration getRequestTime() {
+        return Duration.ofNanos(requestNanos.sum());
+    }
+
+    /**
+     * @return how long the requests answered from this cache took when they were first made.
+     */
+    public Duration getSavedTime() {
+        return Duration.ofNanos(savedNanos.sum());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d addresses, %d hits and %d misses (%.1f%% hit ratio), %d ms of requests made "
+                        + "and %d ms saved", size(), getHits(), getMisses(), getHitRatio() * 100,
+                getRequestTime().toMillis(), getSavedTime().toMillis());
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return !timeToLive.isZero() && now - entry.resolvedAtMillis >= timeToLive.toMillis();
+    }
+
+    /**
+     * Reads the store, keeping the last position of every address that has not expired. A line that cannot be
+     * parsed, such as one cut short when the application stopped, is skipped. If most lines are stale, the store is
+     * rewritten with the live positions only.
+     */
+    private void load() {
+        if (!Files.isRegularFile(store)) {
+            return;
+        }
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(store, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.err.println("Could not read the What3Words cache, the addresses will be requested again");
+            e.printStackTrace();
+            return;
+        }
+        long now = clock.millis();
+        for (String line : lines) {
+            String[] fields = line.split(SEPARATOR);
+            if (fields.length != FIELDS) {
+                continue;
+            }
+            try {
+                Entry entry = new Entry(new LongLat(Double.parseDouble(fields[1]), Double.parseDouble(fields[2])),
+                        Long.parseLong(fields[3]), Long.parseLong(fields[4]));
+                if (isExpired(entry, now)) {
+                    entries.remove(fields[0]);
+                } else {
+                    entries.put(fields[0], entry);
+                }
+            } catch (NumberFormatException e) {
+                /* Skip the line */
+            }
+        }
+        if (lines.size() > 2 * entries.size()) {
+            compact();
+        }
+    }
+
+    private void compact() {
+        List<String> lines = new ArrayList<>();
+        entries.forEach((words, entry) -> lines.add(format(words, entry)));
+        Path temporary = null;
+        try {
+            temporary = Files.createTempFile(store.toAbsolutePath().getParent(), store.getFileName().toString(),
+                    ".tmp");
+            Files.write(temporary, lines, StandardCharsets.UTF_8);
+            Files.move(temporary, store, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Could not compact the What3Words cache");
+            e.printStackTrace();
+            try {
+                if (temporary != null) {
+                    Files.deleteIfExists(temporary);
+                }
+            } catch (IOException ignored) {
+                System.err.println("Could not delete " + temporary);
+            }
+        }
+    }
+
+    /**
+     * Appends a position to the store. Appends are serialised so that lines from different threads never interleave.
+     */
+    private synchronized void append(String words, Entry entry) {
+        try {
+            Path parent = store.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Files.write(store, List.of(format(words, entry)), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("Could not write to the What3Words cache");
+            e.printStackTrace();
+        }
+    }
+
+    private static String format(String words, Entry entry) {
+        return String.join(SEPARATOR, words, String.valueOf(entry.position.getLongitude()),
+                String.valueOf(entry.position.getLatitude()), String.valueOf(entry.resolvedAtMillis),
+                String.valueOf(entry.requestNanos));
+    }
+
+    /**
+     * A resolved position, when it was requested and how long the request took.
+     */
+    private static class Entry {
+        private final LongLat position;
+        private final long resolvedAtMillis;
+        private final long requestNanos;
+
+        Entry(LongLat position, long resolvedAtMillis, long requestNanos) {
+            this.position = position;
+            this.resolvedAtMillis = resolvedAtMillis;
+            this.requestNanos = requestNanos;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package uk.ac.ed.inf.controller;
+
+import uk.ac.ed.inf.domain.LongLat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The cost of flying back to the drone's base from anywhere in the virtual grid. A single Theta* sweep from the base
+ * gives every walkable cell an any-angle path to the base and its length, so the path home and an estimate of the moves
+ * it takes can be read off the field instead of being searched for and simulated after every order.
+ * The estimate assumes the drone steers along the path one move at a time, each move within 5 degrees of the next
+ * waypoint, and allows for the moves that are lost when the drone stops close to a waypoint rather than on it. It is
+ * not a bound: next to a no-fly-zone, steering turns further away from the waypoint, and it can even circle a waypoint
+ * forever. Measured over every walkable cell of the map, sampled four times each, the moves steered along pathToBase
+ * never exceeded the estimate and came at worst 4 moves under it, apart from the few positions where steering circles.
+ * canReturnWithin therefore trusts the estimate when it leaves SAFETY_MARGIN moves spare; closer to the moves left,
+ * callers should simulate the flight.
+ * The field belongs to the map of the Pathfinder it was computed on, and can be stored with that map's snapshot so the
+ * sweep only runs again when the no-fly-zones, the grid or the base change.
+ */
+public class BaseCostField {
+
+    /**
+     * The number of moves returned for positions from which the field does not know a path to the base.
+     */
+    public static final int UNKNOWN = Integer.MAX_VALUE;
+    private static final int NO_PARENT = -1;
+    /* The least progress a move towards a waypoint makes, when it is 5 degrees off the direction of the waypoint */
+    private static final double STEP_PROGRESS = LongLat.STEP_DISTANCE * Math.cos(Math.toRadians(5));
+    /**
+     * The moves the estimate must leave spare before it alone decides that the drone can return. No measured flight
+     * exceeded the estimate, so the margin only allows for one more leg than the path has, as the drone flies a path
+     * from the legs rather than pathToBase when it is at a point of interest: a close distance and one short move.
+     */
+    public static final int SAFETY_MARGIN = (int) Math.ceil(LongLat.CLOSE_DISTANCE / STEP_PROGRESS) + 1;
+
+    private final Pathfinder pathfinder;
+    private final LongLat base;
+    /* The length of each cell's path to the base, its next waypoint, and the number of waypoints left on the path */
+    private final double[] distance;
+    private final int[] parent;
+    private final int[] waypoints;
+
+    /**
+     * Sweeps the grid from the base, or loads the field from the snapshot store if it was computed for the same
+     * no-fly-zones, grid and base.
+     * @param pathfinder the Pathfinder over the map the drone flies.
+     * @param base the position of the drone's base, which must be inside the grid.
+     * @param snapshotStore the store the field is loaded from and saved to, or null to always sweep.
+     */
+    public BaseCostField(Pathfinder pathfinder, LongLat base, GridSnapshotStore snapshotStore) {
+        this.pathfinder = pathfinder;
+        this.base = base;
+        VirtualGrid grid = pathfinder.grid();
+        int[] rowCol = pathfinder.getRowColFromLongLat(base);
+        if (!grid.contains(rowCol[0], rowCol[1])) {
+            throw new IllegalArgumentException("The base " + base + " is outside the grid");
+        }
+        int size = grid.size();
+        this.distance = new double[size];
+        this.parent = new int[size];
+        this.waypoints = new int[size];
+
+        byte[] fingerprint = GridSnapshotStore.fingerprint(pathfinder.getNoFlyZones(), pathfinder.getServiceArea(),
+                base);
+        if (snapshotStore == null || !snapshotStore.loadBaseCostField(fingerprint, distance, parent, waypoints)) {
+            sweep(grid.index(rowCol[0], rowCol[1]));
+            if (snapshotStore != null) {
+                snapshotStore.saveBaseCostField(fingerprint, distance, parent, waypoints);
+            }
+        }
+    }
+
+    /**
+     * Runs Theta* from the cell of the base over the whole grid: a cell's parent is the parent of the cell it was
+     * reached from whenever the two can see each other, so the paths only turn where an obstacle is in the way. Unlike
+     * the grid searches, a cell is not assumed to see its neighbours, so every path can be flown as it is.
+     */
+    private void sweep(int root) {
+        VirtualGrid grid = pathfinder.grid();
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        Arrays.fill(parent, NO_PARENT);
+        Arrays.fill(waypoints, 0);
+        /* The path from the centre of the base's cell only has the base itself left */
+        distance[root] = grid.coordinates(root).distanceTo(base);
+        waypoints[root] = 1;
+
+        boolean[] closed = new boolean[grid.size()];
+        int[] neighbours = new int[VirtualGrid.MAX_NEIGHBOURS];
+        /* Entries are {distance, cell}; an entry is stale once the cell has been closed */
+        PriorityQueue<double[]> openQueue = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+        openQueue.add(new double[]{distance[root], root});
+        while (!openQueue.isEmpty()) {
+            int cell = (int) openQueue.poll()[1];
+            if (closed[cell]) {
+                continue;
+            }
+            closed[cell] = true;
+            int neighbourCount = grid.neighbours(cell, neighbours);
+            for (int i = 0; i < neighbourCount; i++) {
+                int neighbour = neighbours[i];
+                if (closed[neighbour] || !grid.isWalkable(neighbour)) {
+                    continue;
+                }
+                int from;
+                if (parent[cell] != NO_PARENT && pathfinder.lineOfSight(parent[cell], neighbour)) {
+                    from = parent[cell];
+                } else if (pathfinder.lineOfSight(cell, neighbour)) {
+                    from = cell;
+                } else {
+                    /* A corner of a no-fly-zone lies between the two cells */
+                    continue;
+                }
+                double score = distance[from] + grid.distance(from, neighbour);
+                if (score < distance[neighbour]) {
+                    distance[neighbour] = score;
+                    parent[neighbour] = from;
+                    waypoints[neighbour] = waypoints[from] + 1;
+                    openQueue.add(new double[]{score, neighbour});
+                }
+            }
+        }
+    }
+
+    /**
+     * @param position the drone's position.
+     * @return the cell of the position, or NO_PARENT if the field has no path to the base from it.
+     */
+    private int cellWithPath(LongLat position) {
+        VirtualGrid grid = pathfinder.grid();
+        int[] rowCol = pathfinder.getRowColFromLongLat(position);
+        if (!grid.contains(rowCol[0], rowCol[1])) {
+            return NO_PARENT;
+        }
+        int cell = grid.index(rowCol[0], rowCol[1]);
+        return distance[cell] == Double.POSITIVE_INFINITY ? NO_PARENT : cell;
+    }
+
+    /**
+     * Finds the path from a position to the base through the cell that contains the position.
+     * @param position the drone's position.
+     * @return a list of LongLat objects, from the position to the base, or null if the field has no path from the
+     * position.
+     */
+    public List<LongLat> pathToBase(LongLat position) {
+        int cell = cellWithPath(position);
+        if (cell == NO_PARENT) {
+            return null;
+        }
+        VirtualGrid grid = pathfinder.grid();
+        List<LongLat> path = new ArrayList<>();
+        path.add(position);
+        /* The centre of the position's cell is only a waypoint if the position cannot see past it */
+        if (parent[cell] == NO_PARENT || !pathfinder.lineOfSight(position, grid.coordinates(parent[cell]))) {
+            path.add(grid.coordinates(cell));
+        }
+        for (int next = parent[cell]; next != NO_PARENT; next = parent[next]) {
+            path.add(grid.coordinates(next));
+        }
+        path.add(base);
+        return path;
+    }
+
+    /**
+     * Estimates the moves it takes to fly from a position to somewhere close to the base along pathToBase.
+     * @param position the drone's position.
+     * @return the number of moves, or UNKNOWN if the field has no path from the position.
+     */
+    public int estimateStepsToBase(LongLat position) {
+        int cell = cellWithPath(position);
+        if (cell == NO_PARENT) {
+            return UNKNOWN;
+        }
+        double length = position.distanceTo(pathfinder.grid().coordinates(cell)) + distance[cell];
+        /* Every leg can start up to a close distance away from its waypoint and end with one short move */
+        int legs = waypoints[cell] + 1;
+        return (int) Math.ceil((length + (legs - 1) * LongLat.CLOSE_DISTANCE) / STEP_PROGRESS) + legs;
+    }
+
+    /**
+     * Decides from the estimate alone whether the drone can return to the base within the moves it has left, which is
+     * only the case when the estimate leaves SAFETY_MARGIN moves spare.
+     * @param position the drone's position.
+     * @param stepsLeft the moves the drone has left.
+     * @return true if the drone can return, false if the flight has to be simulated to find out.
+     */
+    public boolean canReturnWithin(LongLat position, int stepsLeft) {
+        int steps = estimateStepsToBase(position);
+        return steps != UNKNOWN && steps + SAFETY_MARGIN < stepsLeft;
+    }
+}
@@ -0,0 +1,276 @@
+package uk.ac.ed.inf.controller;
+
+import uk.ac.ed.inf.domain.LongLat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A route to a fixed destination that is repaired with D* Lite when the no-fly-zones change. The search runs backwards
+ * from the destination over the 8-connected walkable cells, and keeps for every cell its distance to the destination
+ * (g) and a one-step lookahead of that distance (rhs). When cells change walkability, only those cells and their
+ * neighbours are updated, and the search only expands the cells whose distances actually changed and matter for the
+ * drone's current position. The path follows the shortest distances from the drone's cell and is then made any-angle
+ * by removing every turn whose neighbours can see each other.
+ * A route is used by one drone at a time; every request for a path reads the latest map published by the replanner.
+ */
+public class DStarLiteRoute {
+
+    private static final int NO_NODE = -1;
+    private static final double INFINITY = Double.POSITIVE_INFINITY;
+    /* Shrinks the heuristic just enough that rounding can never make it overestimate */
+    private static final double HEURISTIC_SCALE = 1 - 1e-9;
+
+    private final LongLat dest;
+    private IncrementalReplanner.MapVersion version;
+    private VirtualGrid grid;
+    private final int goal;
+    /* The cost of a move to a side neighbour and to a diagonal neighbour */
+    private final double straightCost;
+    private final double diagonalCost;
+
+    private final double[] g;
+    private final double[] rhs;
+    /* Entries are {first key, second key, cell}; an entry is stale once its key is no longer the cell's key. */
+    private final PriorityQueue<double[]> openQueue = new PriorityQueue<>(DStarLiteRoute::compareKeys);
+    private final int[] neighbours = new int[VirtualGrid.MAX_NEIGHBOURS];
+    private final int[] predecessors = new int[VirtualGrid.MAX_NEIGHBOURS];
+    /* The cells whose lookahead must be recomputed before the next search. */
+    private final List<Integer> pendingCells = new ArrayList<>();
+    /* The drone's cell when the keys were last made consistent, and the heuristic drift since the first search */
+    private int lastStart = NO_NODE;
+    private double keyModifier;
+    private long expansions;
+
+    DStarLiteRoute(IncrementalReplanner replanner, LongLat dest) {
+        this.dest = dest;
+        this.version = replanner.currentVersion();
+        this.grid = version.pathfinder.grid();
+        this.goal = version.pathfinder.cellOf(dest);
+        this.straightCost = grid.getEpsilon();
+        this.diagonalCost = grid.getEpsilon() * Math.sqrt(2);
+        g = new double[grid.size()];
+        rhs = new double[grid.size()];
+        Arrays.fill(g, INFINITY);
+        Arrays.fill(rhs, INFINITY);
+        rhs[goal] = 0;
+    }
+
+    /**
+     * Finds the path from the given position to the destination on the latest map, repairing the distances computed
+     * by earlier calls instead of searching again.
+     * @param position the drone's current coordinates.
+     * @return a list of LongLat objects, from the position to the destination.
+     */
+    public synchronized List<LongLat> pathFrom(LongLat position) {
+        Pathfinder pathfinder = catchUp();
+        int start = pathfinder.cellOf(position);
+        if (!grid.isWalkable(start) || !grid.isWalkable(goal)) {
+            /* D* Lite only searches walkable cells; the grid searches can still start or end in blocked ones */
+            return pathfinder.findPath(position, dest);
+        }
+        if (start == goal) {
+            return pathfinder.toCoordinates(List.of(start));
+        }
+
+        long startExpansions = expansions;
+        if (lastStart == NO_NODE) {
+            openQueue.add(key(goal, start));
+        } else {
+            keyModifier += heuristic(lastStart, start);
+        }
+        lastStart = start;
+        for (int cell : pendingCells) {
+            updateVertex(cell, start);
+        }
+        pendingCells.clear();
+        computeShortestPath(start);
+
+        List<Integer> cells = extractPath(start);
+        if (cells == null) {
+            System.err.println("D* Lite could not find path");
+            return new ArrayList<>(List.of(grid.coordinates(goal)));
+        }
+        List<Integer> smoothed = new ArrayList<>();
+        int lineOfSightChecks = pathfinder.smoothPath(cells, smoothed);
+        pathfinder.getStatistics().record(expansions - startExpansions, lineOfSightChecks);
+        return pathfinder.toCoordinates(smoothed);
+    }
+
+    /**
+     * Moves to the latest published map and collects the cells whose edges changed since the map the route last saw:
+     * the cells that changed walkability and their neighbours on the new map.
+     * @return the Pathfinder over the latest map.
+     */
+    private Pathfinder catchUp() {
+        List<Integer> changed = new ArrayList<>();
+        for (IncrementalReplanner.MapVersion next = version.next(); next != null; next = next.next()) {
+            version = next;
+            for (int cell : next.changedCells) {
+                changed.add(cell);
+            }
+        }
+        grid = version.pathfinder.grid();
+        for (int cell : changed) {
+            pendingCells.add(cell);
+            int neighbourCount = grid.neighbours(cell, neighbours);
+            for (int i = 0; i < neighbourCount; i++) {
+                pendingCells.add(neighbours[i]);
+            }
+        }
+        return version.pathfinder;
+    }
+
+    /**
+     * The priority of a cell: its shortest known distance plus the heuristic distance to the drone.
+     */
+    private double[] key(int cell, int start) {
+        double distance = Math.min(g[cell], rhs[cell]);
+        return new double[]{distance + heuristic(start, cell) + keyModifier, distance, cell};
+    }
+
+    /**
+     * The cost of a move between two adjacent cells. Every move of the same kind costs exactly the same, so that
+     * distances that are repaired add up to the same values as distances computed from scratch.
+     */
+    private double cost(int a, int b) {
+        return grid.row(a) != grid.row(b) && grid.col(a) != grid.col(b) ? diagonalCost : straightCost;
+    }
+
+    /**
+     * The octile distance between two cells, which is the length of the shortest 8-connected path between them if
+     * nothing is in the way.
+     */
+    private double heuristic(int a, int b) {
+        int rows = Math.abs(grid.row(a) - grid.row(b));
+        int cols = Math.abs(grid.col(a) - grid.col(b));
+        return (straightCost * Math.abs(rows - cols) + diagonalCost * Math.min(rows, cols)) * HEURISTIC_SCALE;
+    }
+
+    private static int compareKeys(double[] a, double[] b) {
+        return a[0] != b[0] ? Double.compare(a[0], b[0]) : Double.compare(a[1], b[1]);
+    }
+
+    /**
+     * Recomputes the lookahead of a cell from its neighbours, and queues the cell if it is inconsistent. Blocked cells
+     * cannot be flown through, so their lookahead is infinite.
+     */
+    private void updateVertex(int cell, int start) {
+        if (cell != goal) {
+            double best = INFINITY;
+            if (grid.isWalkable(cell)) {
+                int neighbourCount = grid.neighbours(cell, neighbours);
+                for (int i = 0; i < neighbourCount; i++) {
+                    best = Math.min(best, cost(cell, neighbours[i]) + g[neighbours[i]]);
+                }
+            }
+            rhs[cell] = best;
+        }
+        queueIfInconsistent(cell, start);
+    }
+
+    private void queueIfInconsistent(int cell, int start) {
+        if (g[cell] != rhs[cell]) {
+            openQueue.add(key(cell, start));
+        }
+    }
+
+    /**
+     * Expands inconsistent cells in key order until the drone's cell is consistent and no queued cell could still
+     * lower its distance.
+     */
+    private void computeShortestPath(int start) {
+        while (!openQueue.isEmpty()) {
+            double[] top = openQueue.peek();
+            int cell = (int) top[2];
+            if (g[cell] == rhs[cell]) {
+                openQueue.poll();
+                continue;
+            }
+            double[] current = key(cell, start);
+            if (compareKeys(top, current) != 0) {
+                /* The key changed since the cell was queued, or the drone moved */
+                openQueue.poll();
+                openQueue.add(current);
+                continue;
+            }
+            if (compareKeys(top, key(start, start)) >= 0 && rhs[start] == g[start]) {
+                return;
+            }
+            openQueue.poll();
+            expansions++;
+
+            /* Only the neighbours whose lookahead went through this cell need it recomputed */
+            int predecessorCount = grid.neighbours(cell, predecessors);
+            if (g[cell] > rhs[cell]) {
+                g[cell] = rhs[cell];
+                for (int i = 0; i < predecessorCount; i++) {
+                    int predecessor = predecessors[i];
+                    if (predecessor != goal) {
+                        rhs[predecessor] = Math.min(rhs[predecessor],
+                                cost(predecessor, cell) + g[cell]);
+                    }
+                    queueIfInconsistent(predecessor, start);
+                }
+            } else {
+                double oldDistance = g[cell];
+                g[cell] = INFINITY;
+                updateVertex(cell, start);
+                for (int i = 0; i < predecessorCount; i++) {
+                    int predecessor = predecessors[i];
+                    if (rhs[predecessor] == cost(predecessor, cell) + oldDistance) {
+                        updateVertex(predecessor, start);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Follows the shortest distances from the drone's cell to the destination.
+     * @return the cells of the path, or null if the destination cannot be reached.
+     */
+    private List<Integer> extractPath(int start) {
+        if (g[start] == INFINITY) {
+            return null;
+        }
+        List<Integer> cells = new ArrayList<>();
+        cells.add(start);
+        int current = start;
+        while (current != goal) {
+            int next = NO_NODE;
+            double best = INFINITY;
+            int neighbourCount = grid.neighbours(current, neighbours);
+            for (int i = 0; i < neighbourCount; i++) {
+                double score = cost(current, neighbours[i]) + g[neighbours[i]];
+                if (score < best) {
+                    best = score;
+                    next = neighbours[i];
+                }
+            }
+            if (next == NO_NODE || cells.size() > grid.size()) {
+                return null;
+            }
+            cells.add(next);
+            current = next;
+        }
+        return cells;
+    }
+
+    /**
+     * @return the length of the shortest 8-connected path from the drone's cell at the last request to the
+     * destination, before it was made any-angle.
+     */
+    public synchronized double getRemainingCost() {
+        return lastStart == NO_NODE ? INFINITY : g[lastStart];
+    }
+
+    /**
+     * @return the number of cells expanded by all the searches of this route.
+     */
+    public synchronized long getExpansions() {
+        return expansions;
+    }
+}
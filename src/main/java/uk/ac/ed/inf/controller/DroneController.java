@@ -4,6 +4,7 @@ import uk.ac.ed.inf.clients.WebServerClient;
 import uk.ac.ed.inf.domain.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
@@ -22,11 +23,15 @@ public class DroneController {
      */
     private final LongLat basePos;
     /**
-     * The drone's current position
+     * Flies the drone and logs its moves until they are committed to the flightpathList.
      */
-    private LongLat currentPos;
+    private final MoveKernel kernel;
     /**
-     * The drone's position after completing its most recent order.
+     * Simulates flights without logging them, to test whether the drone can still return to its base.
+     */
+    private final MoveKernel probe;
+    /**
+     * The drone's position after completing its most recent order, or its base before it completes any.
      */
     private LongLat lastOrderPos;
     /**
@@ -50,24 +55,68 @@ public class DroneController {
      * A list of all Flightpaths performed by the drone.
      */
     private final List<Flightpath> flightpathList = new ArrayList<>();
-    /**
-     * A list of the Flightpaths performed by the drone during its current delivery.
-     */
-    private List<Flightpath> currentFlightpath = new ArrayList<>();
 
     private final WebServerClient webServerClient;
+    /**
+     * Answers whether single moves of the drone are legal.
+     */
     private final Pathfinder pathfinder;
+    /**
+     * Plans the paths between the drone's targets.
+     */
+    private final PathEngine pathEngine;
+    /**
+     * Plans the exact moves to each target, or null to steer towards the waypoints of the path engine instead.
+     */
+    private final MoveLatticePlanner movePlanner;
+    /**
+     * The paths back to the base and the moves they take, or null to search for the path back every time.
+     */
+    private final BaseCostField baseCostField;
+    /**
+     * The paths between the points of interest of the day, or null to search for the path of every leg.
+     */
+    private final StepCostMatrix legs;
+    /**
+     * The index in legs of the point the drone last flew to, or -1 if it is not a point of interest.
+     */
+    private int lastPoint;
+
+    public DroneController(ItemData itemData, LongLat basePos, int stepsLeft, List<Order> orderList,
+                           WebServerClient webServerClient, Pathfinder pathfinder, PathEngine pathEngine) {
+        this(itemData, basePos, stepsLeft, orderList, webServerClient, pathfinder, pathEngine, null, null);
+    }
 
     public DroneController(ItemData itemData, LongLat basePos, int stepsLeft, List<Order> orderList,
-                           WebServerClient webServerClient) {
+                           WebServerClient webServerClient, Pathfinder pathfinder, PathEngine pathEngine,
+                           MoveLatticePlanner movePlanner, BaseCostField baseCostField) {
+        this(itemData, basePos, stepsLeft, orderList, webServerClient, pathfinder, pathEngine, movePlanner,
+                baseCostField, null);
+    }
+
+    /**
+     * @param legs the paths between the base, the shops and the customers of the orders, which the drone follows
+     * instead of searching for a path from its exact position.
+     */
+    public DroneController(ItemData itemData, LongLat basePos, int stepsLeft, List<Order> orderList,
+                           WebServerClient webServerClient, Pathfinder pathfinder, PathEngine pathEngine,
+                           MoveLatticePlanner movePlanner, BaseCostField baseCostField, StepCostMatrix legs) {
         this.itemData = itemData;
         this.basePos = basePos;
-        this.currentPos = basePos; /* Base position and starting position are the same. */
         this.stepsLeft = stepsLeft;
         this.lastOrderSteps = stepsLeft;
+        this.lastOrderPos = basePos;
         this.orderList = new LinkedList<>(orderList);
         this.webServerClient = webServerClient;
-        this.pathfinder = new Pathfinder(webServerClient.getNoFlyZones());
+        this.pathfinder = pathfinder;
+        this.pathEngine = pathEngine;
+        this.movePlanner = movePlanner;
+        this.baseCostField = baseCostField;
+        this.legs = legs;
+        this.lastPoint = pointOf(basePos);
+        this.kernel = new MoveKernel(pathfinder, true);
+        this.kernel.moveTo(basePos); /* Base position and starting position are the same. */
+        this.probe = new MoveKernel(pathfinder, false);
     }
 
     public List<Flightpath> getFlightpathList() {
@@ -77,130 +126,142 @@ public class DroneController {
 
     /**
      * Attempts to deliver all orders in the orderList and returns a list of Delivery objects representing the completed
-     * orders.
+     * orders. An order that does not fit in the steps left is skipped, and the drone goes on with the next one from
+     * where it completed its most recent order. Once every order has been attempted, the drone returns to its base.
      * @return the deliveries completed as a list of Delivery objects.
      */
     public List<Delivery> deliverOrders() {
         List<Delivery> completedDeliveries = new ArrayList<>();
-        for (Order order : new ArrayList<>(orderList)) {
-            boolean delivered = deliverNextOrder();
-            int currentCost = itemData.calculateDeliveryCost(order.getOrderDetails());
-            if (delivered) {
+        for (Order order : orderList) {
+            if (deliverOrder(order)) {
+                int currentCost = itemData.calculateDeliveryCost(order.getOrderDetails());
                 completedDeliveries.add(new Delivery(order.getOrderNo(), order.getDeliverTo(), currentCost));
-            } else {
-                break;
             }
         }
+        if (!completedDeliveries.isEmpty()) {
+            /* The flight back to the base is logged with the last order delivered */
+            currentOrderNo = completedDeliveries.get(completedDeliveries.size() - 1).getOrderNo();
+            goBackToBase();
+        }
         return completedDeliveries;
     }
 
     /**
-     * Attempts to deliver the next order in orderList. If the order succeeds, the flightpath of the drone and the
-     * delivery are logged and written in the database. Additionally, the flightpaths variable is updated with the
-     * complete flightpath of the order. On successful delivery, the order is removed from the orderList.
+     * Attempts to deliver an order. If the order succeeds, the flightpath of the drone is committed to the
+     * flightpathList. Otherwise, the moves made for the order are discarded and the drone is reset to where it
+     * completed its most recent order.
      *
+     * @param current the order to deliver.
      * @return True if the order was delivered, False otherwise. (Delivery can fail if the drone runs out of steps)
      */
-    private boolean deliverNextOrder() {
-        currentFlightpath = new ArrayList<>(); /* Resets the current order flightpath to empty. */
-        Order current = orderList.pollFirst();
-        if (current == null) {
-            System.err.println("orderList is empty");
-            return false;
-        }
-
-        boolean goBackToBase = orderList.size() == 0;
-
+    private boolean deliverOrder(Order current) {
         currentOrderNo = current.getOrderNo();
+        LongLat currentPos = kernel.position();
+        int orderStartPoint = lastPoint;
         LongLat customerPos = webServerClient.getLongLatFromW3W(current.getDeliverTo());
         List<String> items = current.getOrderDetails();
         List<Shop> shops = itemData.findShops(items);
 
-        /* This comparator applies only to collections of 2 shops! (which is always the case) */
-        Comparator<LongLat> shopComparatorForTwoShops = (o1, o2) -> {
-            double dist1 = o1.distanceTo(currentPos) + o2.distanceTo(customerPos);
-            double dist2 = o1.distanceTo(customerPos) + o2.distanceTo(currentPos);
-
-            return Double.compare(dist1, dist2);
-        };
-        LinkedList<LongLat> targets =  shops.stream()
-                .map(shop -> webServerClient.getLongLatFromW3W(shop.getLocation()))
-                .sorted(shopComparatorForTwoShops)
-                .collect(Collectors.toCollection(LinkedList::new));
+        List<LongLat> shopPositions = shops.stream()
+                .map(shop -> itemData.locateShop(shop, webServerClient::getLongLatFromW3W))
+                .collect(Collectors.toList());
+        LinkedList<LongLat> targets = sequenceShops(currentPos, shopPositions, customerPos);
 
         targets.add(customerPos);
 
+        int movesBefore = kernel.getMoves();
         while (!targets.isEmpty()) {
             LongLat currentTarget = targets.pollFirst();
-            LinkedList<LongLat> path = new LinkedList<>(pathfinder.findPath(currentPos, currentTarget));
-            LongLat dest;
+            MovePlan plan = planMoves(kernel.position(), currentTarget);
+            if (plan != null) {
+                followPlan(plan);
+                /* Hover to deliver/pickup items. */
+                kernel.move(LongLat.HOVER_VALUE, currentOrderNo);
+                lastPoint = pointOf(currentTarget);
+                continue;
+            }
+            List<LongLat> path = findPath(kernel.position(), lastPoint, currentTarget);
 
             /* Check if the path given has gaps */
-            if (!currentPos.closeTo(path.pollFirst())) {
+            if (!kernel.isCloseTo(path.get(0))) {
                 System.err.println("Starting position of the drone for the current target disagrees with pathfinder");
                 System.exit(1);
             }
-            while (!path.isEmpty()) {
-                dest = path.pollFirst();
-                /* Move towards the destination until the drone is close to it. */
-                while (!currentPos.closeTo(dest)) {
-                    currentPos = makeMove(currentPos, dest, true);
-                    stepsLeft--;
-                }
-            }
-            /* If drone did not reach the target, make another step towards it. This prevents an issue when currentPos
-             is close to dest, and dest is closeTo the target, but currentPos is not close to target. */
-            if (!currentPos.closeTo(currentTarget)) {
-                currentPos = makeMove(currentPos, currentTarget, true);
-                stepsLeft--;
-            }
+            kernel.followPath(path, currentTarget, currentOrderNo);
             /* Hover to deliver/pickup items. */
-            currentPos = hover(currentPos);
-            stepsLeft--;
+            kernel.move(LongLat.HOVER_VALUE, currentOrderNo);
+            lastPoint = pointOf(currentTarget);
         }
+        stepsLeft -= kernel.getMoves() - movesBefore;
 
         if (stepsLeft > 0 && canGoToBase()) {
-            flightpathList.addAll(currentFlightpath);
+            kernel.commitLog(flightpathList);
             lastOrderSteps = stepsLeft;
-            lastOrderPos = currentPos;
-            if (goBackToBase) {
-                goBackToBase();
-            }
+            lastOrderPos = kernel.position();
 
             return true;
         } else {
-            orderList.add(current); /* Order cannot be completed, add order back to the list */
-            /* Reset drone back to the previous completed order */
+            /* Order cannot be completed, reset drone back to the previous completed order */
+            kernel.discardLog();
             stepsLeft = lastOrderSteps;
-            currentPos = lastOrderPos;
-            goBackToBase();
+            kernel.moveTo(lastOrderPos);
+            lastPoint = orderStartPoint;
 
             return false;
         }
     }
 
     /**
-     * Moves the drone from its current position back to its base position and logs the flightpath.
+     * Orders the shops of an order: by the moves between them when the legs know every stop, and otherwise by the
+     * straight-line distances between them.
+     *
+     * @param currentPos the drone's position.
+     * @param shopPositions the positions of the shops.
+     * @param customerPos the position of the customer.
+     * @return the shops in the order the drone visits them.
      */
-    private void goBackToBase() {
-        currentFlightpath = new ArrayList<>();
-        LinkedList<LongLat> path = new LinkedList<>(pathfinder.findPath(currentPos, basePos));
+    private LinkedList<LongLat> sequenceShops(LongLat currentPos, List<LongLat> shopPositions, LongLat customerPos) {
+        int[] shopPoints = shopPositions.stream().mapToInt(this::pointOf).toArray();
+        int customerPoint = pointOf(customerPos);
+        if (lastPoint >= 0 && customerPoint >= 0 && Arrays.stream(shopPoints).allMatch(point -> point >= 0)) {
+            return Arrays.stream(ShopSequencer.sequence(legs, lastPoint, shopPoints, customerPoint))
+                    .mapToObj(legs::point)
+                    .collect(Collectors.toCollection(LinkedList::new));
+        }
+        if (shopPositions.size() <= 2) {
+            /* This comparator applies only to collections of 2 shops! */
+            Comparator<LongLat> shopComparatorForTwoShops = (o1, o2) -> {
+                double dist1 = o1.distanceTo(currentPos) + o2.distanceTo(customerPos);
+                double dist2 = o1.distanceTo(customerPos) + o2.distanceTo(currentPos);
 
-        LongLat dest;
-        while (!path.isEmpty()) {
-            dest = path.pollFirst();
-            /* Move towards the destination until the drone is close to it. */
-            while (!currentPos.closeTo(dest)) {
-                currentPos = makeMove(currentPos, dest, true);
-                stepsLeft--;
-            }
+                return Double.compare(dist1, dist2);
+            };
+            return shopPositions.stream()
+                    .sorted(shopComparatorForTwoShops)
+                    .collect(Collectors.toCollection(LinkedList::new));
         }
-        /* If drone did not reach AT, make another step towards it. */
-        if (!currentPos.closeTo(basePos)) {
-            currentPos = makeMove(currentPos, basePos, true);
-            stepsLeft--;
+        List<LongLat> stops = new ArrayList<>(shopPositions);
+        stops.add(currentPos);
+        stops.add(customerPos);
+        return Arrays.stream(ShopSequencer.sequence(shopPositions.size(),
+                        (from, to) -> stops.get(from).distanceTo(stops.get(to))))
+                .mapToObj(shopPositions::get)
+                .collect(Collectors.toCollection(LinkedList::new));
+    }
+
+    /**
+     * Moves the drone from its current position back to its base position and logs the flightpath.
+     */
+    private void goBackToBase() {
+        int movesBefore = kernel.getMoves();
+        MovePlan plan = planMoves(kernel.position(), basePos);
+        if (plan != null) {
+            followPlan(plan);
+        } else {
+            flyToBase(kernel, lastPoint, currentOrderNo);
         }
-        flightpathList.addAll(currentFlightpath);
+        stepsLeft -= kernel.getMoves() - movesBefore;
+        kernel.commitLog(flightpathList);
     }
 
     /**
@@ -209,100 +270,101 @@ public class DroneController {
      * @return True if the drone can return to its base, false otherwise.
      */
     private boolean canGoToBase() {
-        LongLat tempPos = currentPos;
-        int tempSteps = stepsLeft;
-
-        LinkedList<LongLat> path = new LinkedList<>(pathfinder.findPath(tempPos, basePos));
+        LongLat currentPos = kernel.position();
 
-        LongLat dest;
-        while (!path.isEmpty()) {
-            dest = path.pollFirst();
-            /* Move towards the destination until the drone is close to it. */
-            while (!tempPos.closeTo(dest)) {
-                tempPos = makeMove(tempPos, dest, false);
-                tempSteps--;
-            }
+        /* Far enough from running out of steps, the estimate of the cost field is enough to decide */
+        if (baseCostField != null && baseCostField.canReturnWithin(currentPos, stepsLeft)) {
+            return true;
         }
-        /* If drone did not reach AT, make another step towards it. */
-        if (!tempPos.closeTo(basePos)) {
-            makeMove(tempPos, basePos, false);
-            tempSteps--;
+        MovePlan plan = planMoves(currentPos, basePos);
+        if (plan != null) {
+            return stepsLeft - plan.getSteps() > 0;
         }
-        return tempSteps > 0;
+        probe.moveTo(currentPos);
+        int movesBefore = probe.getMoves();
+        flyToBase(probe, lastPoint, null);
+        return stepsLeft - (probe.getMoves() - movesBefore) > 0;
     }
 
     /**
-     * Moves the drone from its current position toward the target position and stores the Flightpath describing the
-     * move to the currentOrderFlightPath if the log flag is true.
+     * Steers a kernel from its position along the path back to the base.
      *
-     * @param origin the drone's current position.
-     * @param target the target position.
-     * @param log a flag that determines if the move made will be added to the currentFlightpath list.
-     *
-     * @return a LongLat object describing the new position of the drone.
+     * @param flier the kernel to move.
+     * @param point the index in legs of the point of interest the kernel is close to, or -1 if there is none.
+     * @param orderNo the order number its moves are logged with.
      */
-    private LongLat makeMove(LongLat origin, LongLat target, boolean log) {
-        List<Integer> possibleAngles;
-        int angle;
-        LongLat nextPos = new LongLat(0,0);
-        boolean found = false;
-        angle = origin.calculateAngle(target);
+    private void flyToBase(MoveKernel flier, int point, String orderNo) {
+        flier.followPath(findPathToBase(flier.position(), point), basePos, orderNo);
+    }
 
-        /* If the drone cannot move towards angle from currentPos, calculate alternative angles */
-        if (!pathfinder.canMoveTowards(origin, angle)) {
-            possibleAngles = origin.calculateAngles(target);
-            for (Integer possibleAngle : possibleAngles) {
-                /* If a move can be made towards possibleAngle, test further */
-                if (pathfinder.canMoveTowards(origin, possibleAngle)) {
-                    LongLat testPos = origin.nextPosition(possibleAngle);
-                    /* If there is line of sight between the new position and the target, possibleAngle is valid */
-                    if (pathfinder.lineOfSight(testPos, target)) {
-                        angle = possibleAngle;
-                        nextPos = origin.nextPosition(angle);
-                        found = true;
-                        break;
-                    }
-                }
-            }
-        } else {
-            nextPos = origin.nextPosition(angle);
-            found = true;
+    /**
+     * Finds the path from a position back to the base, from the legs or else the cost field if either knows a path
+     * from the position.
+     *
+     * @param origin the drone's position.
+     * @param point the index in legs of the point of interest the drone is close to, or -1 if there is none.
+     * @return a list of LongLat objects, from the position to the base.
+     */
+    private List<LongLat> findPathToBase(LongLat origin, int point) {
+        List<LongLat> path = lookUpPath(origin, point, basePos);
+        if (path == null && baseCostField != null) {
+            path = baseCostField.pathToBase(origin);
         }
+        return path != null ? path : pathEngine.findPath(origin, basePos);
+    }
 
-        if (!found) {
-            System.err.println("No valid move was found!");
-            angle = origin.calculateAngle(target);
-            nextPos = origin.nextPosition(angle);
-        }
+    /**
+     * Finds the path from a position to a target, looking it up in the legs if it can and searching for it otherwise.
+     *
+     * @param origin the drone's position.
+     * @param point the index in legs of the point of interest the drone is close to, or -1 if there is none.
+     * @param target the target position.
+     * @return a list of LongLat objects, from the position to the target.
+     */
+    private List<LongLat> findPath(LongLat origin, int point, LongLat target) {
+        List<LongLat> path = lookUpPath(origin, point, target);
+        return path != null ? path : pathEngine.findPath(origin, target);
+    }
 
-        if (log) {
-            logStep(origin, nextPos, angle);
+    /**
+     * @return the path of the legs from the point of interest to the target, or null if either is not a point of
+     * interest or the path does not start close to the drone's position.
+     */
+    private List<LongLat> lookUpPath(LongLat origin, int point, LongLat target) {
+        int targetPoint = pointOf(target);
+        if (point < 0 || targetPoint < 0 || point == targetPoint) {
+            return null;
         }
-        return nextPos;
+        List<LongLat> path = legs.path(point, targetPoint);
+        return origin.closeTo(path.get(0)) ? path : null;
     }
 
     /**
-     * Makes the drone hover for one move in order to deliver or pick up items and stores the appropriate Flightpath object to the
-     * currentOrderFlightpath list.
+     * @return the index in legs of a point of interest, or -1 if there are no legs or the point is not one of them.
+     */
+    private int pointOf(LongLat position) {
+        return legs == null ? -1 : legs.indexOf(position);
+    }
+
+    /**
+     * Plans the exact moves from a position to a target with the move planner, if there is one.
      *
-     * @param origin the drone's current position.
-     * @return a LongLat object describing the new position of the drone.
+     * @param origin the drone's position.
+     * @param target the target position.
+     * @return the moves, or null if there is no move planner or it could not reach the target.
      */
-    private LongLat hover(LongLat origin) {
-        int angle = LongLat.HOVER_VALUE;
-        LongLat nextPos = origin.nextPosition(angle);
-        logStep(origin, nextPos, angle);
-        return nextPos;
+    private MovePlan planMoves(LongLat origin, LongLat target) {
+        return movePlanner == null ? null : movePlanner.plan(origin, target);
     }
 
     /**
-     * Logs a new Flightpath object to the currentOrderFlightpath and updates the steps left and the current position.
+     * Makes every move of a plan from the drone's position and logs each move.
      *
-     * @param origin the drone's starting position
-     * @param nextPos the next position of the drone.
-     * @param angle the angle the drone moved towards.
+     * @param plan the moves to make.
      */
-    private void logStep(LongLat origin, LongLat nextPos, int angle) {
-        currentFlightpath.add(new Flightpath(currentOrderNo, origin, nextPos, angle));
+    private void followPlan(MovePlan plan) {
+        for (int angle : plan.getAngles()) {
+            kernel.move(angle, currentOrderNo);
+        }
     }
 }
@@ -0,0 +1,51 @@
+package uk.ac.ed.inf.controller;
+
+import uk.ac.ed.inf.domain.Delivery;
+import uk.ac.ed.inf.domain.Flightpath;
+import uk.ac.ed.inf.domain.LongLat;
+import uk.ac.ed.inf.domain.Order;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What one drone of a Fleet was given to deliver and what it did: the orders assigned to it, the deliveries it
+ * completed and its flightpath, with every step tagged with the drone's id.
+ */
+public class DroneFlight {
+
+    private final String droneId;
+    private final LongLat base;
+    private final List<Order> assignedOrders;
+    private final List<Delivery> deliveries;
+    private final List<Flightpath> flightpaths;
+
+    DroneFlight(String droneId, LongLat base, List<Order> assignedOrders, List<Delivery> deliveries,
+                List<Flightpath> flightpaths) {
+        this.droneId = droneId;
+        this.base = base;
+        this.assignedOrders = Collections.unmodifiableList(assignedOrders);
+        this.deliveries = Collections.unmodifiableList(deliveries);
+        this.flightpaths = Collections.unmodifiableList(flightpaths);
+    }
+
+    public String getDroneId() {
+        return droneId;
+    }
+
+    public LongLat getBase() {
+        return base;
+    }
+
+    public List<Order> getAssignedOrders() {
+        return assignedOrders;
+    }
+
+    public List<Delivery> getDeliveries() {
+        return deliveries;
+    }
+
+    public List<Flightpath> getFlightpaths() {
+        return flightpaths;
+    }
+}
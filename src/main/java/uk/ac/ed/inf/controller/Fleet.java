@@ -0,0 +1,163 @@
+package uk.ac.ed.inf.controller;
+
+import uk.ac.ed.inf.clients.WebServerClient;
+import uk.ac.ed.inf.domain.Delivery;
+import uk.ac.ed.inf.domain.Flightpath;
+import uk.ac.ed.inf.domain.ItemData;
+import uk.ac.ed.inf.domain.LongLat;
+import uk.ac.ed.inf.domain.Order;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * A fleet of drones, each with its own base, moves and flight log, that deliver a day's orders between them. The
+ * orders are first assigned to the drones: by descending value, each order goes to the drone that can add it to the
+ * end of its round with the fewest moves and still return to its base, going by the moves of a StepCostMatrix. Then
+ * every drone flies its orders with its own DroneController, as a task of its own on a fork-join pool, so the drones
+ * fly concurrently.
+ * The drones share the Pathfinder, the path engine and the StepCostMatrix, which all answer many threads at once, so
+ * the grid and the paths between the points of interest are built once for the whole fleet. Only the flight logs and
+ * the move kernels of the controllers belong to one drone.
+ */
+public class Fleet {
+
+    private final ItemData itemData;
+    private final WebServerClient webServerClient;
+    private final Pathfinder pathfinder;
+    private final PathEngine pathEngine;
+    private final MoveLatticePlanner movePlanner;
+    private final StepCostMatrix legs;
+    private final List<LongLat> bases;
+    private final int steps;
+    private final int margin;
+
+    /**
+     * @param itemData the shops and prices of the items.
+     * @param webServerClient resolves the What3Words addresses of the shops and customers.
+     * @param pathfinder the Pathfinder that decides which moves are legal.
+     * @param pathEngine plans the paths the drones steer along when a path is not in the legs.
+     * @param movePlanner plans the exact moves to each target, or null to steer along the paths.
+     * @param legs the moves and paths between points of interest, which the bases and orders are added to.
+     * @param bases the base of each drone; several drones can share a base.
+     * @param steps the moves each drone has.
+     * @param margin the moves each drone keeps in reserve when orders are assigned, at least 0.
+     */
+    public Fleet(ItemData itemData, WebServerClient webServerClient, Pathfinder pathfinder, PathEngine pathEngine,
+                 MoveLatticePlanner movePlanner, StepCostMatrix legs, List<LongLat> bases, int steps, int margin) {
+        if (bases.isEmpty() || margin < 0) {
+            throw new IllegalArgumentException("A fleet needs at least one drone and a margin of at least 0, but it "
+                    + "had " + bases.size() + " drones and a margin of " + margin);
+        }
+        this.itemData = itemData;
+        this.webServerClient = webServerClient;
+        this.pathfinder = pathfinder;
+        this.pathEngine = pathEngine;
+        this.movePlanner = movePlanner;
+        this.legs = legs;
+        this.bases = List.copyOf(bases);
+        this.steps = steps;
+        this.margin = margin;
+    }
+
+    public int size() {
+        return bases.size();
+    }
+
+    /**
+     * @param drone the index of a drone.
+     * @return the id its flightpaths are tagged with.
+     */
+    public static String droneId(int drone) {
+        return String.format("D%02d", drone + 1);
+    }
+
+    /**
+     * Adds the bases, shops and customers to the legs and costs every leg between them on the pool.
+     */
+    public void prepare(List<Order> orders, ForkJoinPool pool) {
+        for (LongLat base : bases) {
+            legs.add(base);
+        }
+        legs.addOrders(bases.get(0), orders, itemData, webServerClient);
+        legs.precompute(pool);
+    }
+
+    /**
+     * Assigns each order to the drone that can add it to the end of its round with the fewest moves, from the most
+     * valuable order to the least. Orders that no drone can fit are left out.
+     * @param orders the day's orders.
+     * @return the orders of each drone, in the order it delivers them.
+     */
+    public List<List<Order>> assign(List<Order> orders) {
+        int[] position = new int[bases.size()];
+        int[] basePoint = new int[bases.size()];
+        int[] used = new int[bases.size()];
+        List<List<Order>> assigned = new ArrayList<>();
+        for (int drone = 0; drone < bases.size(); drone++) {
+            basePoint[drone] = legs.add(bases.get(drone));
+            position[drone] = basePoint[drone];
+            assigned.add(new ArrayList<>());
+        }
+        List<Order> byValue = new ArrayList<>(orders);
+        byValue.sort(Comparator.comparingInt((Order o) -> itemData.calculateDeliveryCost(o.getOrderDetails()))
+                .reversed());
+        for (Order order : byValue) {
+            int customer = legs.add(webServerClient.getLongLatFromW3W(order.getDeliverTo()));
+            int[] shops = itemData.findShops(order.getOrderDetails()).stream()
+                    .mapToInt(shop -> legs.add(itemData.locateShop(shop, webServerClient::getLongLatFromW3W)))
+                    .toArray();
+            int bestDrone = -1;
+            int bestSteps = Integer.MAX_VALUE;
+            for (int drone = 0; drone < bases.size(); drone++) {
+                int added = ShopSequencer.tourSteps(legs, position[drone], shops, customer);
+                /* The drone's controller only accepts an order if it can still return afterwards */
+                boolean fits = used[drone] + added + legs.steps(customer, basePoint[drone]) < steps - margin;
+                if (fits && added < bestSteps) {
+                    bestDrone = drone;
+                    bestSteps = added;
+                }
+            }
+            if (bestDrone >= 0) {
+                assigned.get(bestDrone).add(order);
+                used[bestDrone] += bestSteps;
+                position[bestDrone] = customer;
+            }
+        }
+        return assigned;
+    }
+
+    /**
+     * Assigns the orders and flies every drone, each as a task on the pool.
+     * @param orders the day's orders.
+     * @param pool the pool the drones fly on.
+     * @return the flight of each drone.
+     */
+    public List<DroneFlight> deliver(List<Order> orders, ForkJoinPool pool) {
+        List<List<Order>> assigned = assign(orders);
+        List<ForkJoinTask<DroneFlight>> flights = IntStream.range(0, bases.size())
+                .mapToObj(drone -> pool.submit(() -> fly(drone, assigned.get(drone))))
+                .collect(Collectors.toList());
+        return flights.stream().map(ForkJoinTask::join).collect(Collectors.toList());
+    }
+
+    private DroneFlight fly(int drone, List<Order> orders) {
+        String droneId = droneId(drone);
+        LongLat base = bases.get(drone);
+        if (orders.isEmpty()) {
+            return new DroneFlight(droneId, base, orders, new ArrayList<>(), new ArrayList<>());
+        }
+        DroneController controller = new DroneController(itemData, base, steps, orders, webServerClient, pathfinder,
+                pathEngine, movePlanner, null, legs);
+        List<Delivery> deliveries = controller.deliverOrders();
+        List<Flightpath> flightpaths = controller.getFlightpathList().stream()
+                .map(f -> new Flightpath(f.getOrderNo(), f.getStart(), f.getDest(), f.getAngle(), droneId))
+                .collect(Collectors.toList());
+        return new DroneFlight(droneId, base, orders, deliveries, flightpaths);
+    }
+}
@@ -0,0 +1,219 @@
+package uk.ac.ed.inf.controller;
+
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Computes which cells of the virtual grid are walkable. A cell is not walkable if any of its four corners is inside a
+ * no-fly-zone polygon, or if its centre is outside the confinement area.
+ * Instead of testing every corner against every polygon, each row of corners is treated as a scanline: the crossings of
+ * each polygon's edges with the scanline are computed once, and the corners are then swept from west to east.
+ * The crossing rule is the one used by java.awt.geom.Path2D.contains with the non-zero winding rule, so the result is
+ * identical to testing every corner with Path2D.
+ */
+class GridRasterizer {
+
+    /* The vertices of the outer ring of each polygon. */
+    private final double[][] polygonX;
+    private final double[][] polygonY;
+
+    GridRasterizer(List<Polygon> noFlyZones) {
+        polygonX = new double[noFlyZones.size()][];
+        polygonY = new double[noFlyZones.size()][];
+        for (int p = 0; p < noFlyZones.size(); p++) {
+            List<Point> points = noFlyZones.get(p).outer().coordinates();
+            polygonX[p] = new double[points.size()];
+            polygonY[p] = new double[points.size()];
+            for (int i = 0; i < points.size(); i++) {
+                polygonX[p][i] = points.get(i).longitude();
+                polygonY[p][i] = points.get(i).latitude();
+            }
+        }
+    }
+
+    /**
+     * Computes the walkability of every cell of a grid whose south-west corner is the south-west corner of the
+     * confinement area.
+     * @param minLongitude the lowest longitude of the confinement area (exclusive).
+     * @param minLatitude the lowest latitude of the confinement area (exclusive).
+     * @param maxLongitude the highest longitude of the confinement area (exclusive).
+     * @param maxLatitude the highest latitude of the confinement area (exclusive).
+     * @param epsilon the size of the grid cells.
+     * @param rows the number of rows of the grid.
+     * @param cols the number of columns of the grid.
+     * @param pool the pool on which rows are rasterized in parallel, or null to rasterize them on the calling thread.
+     * @return the walkable cells, indexed by row * cols + col.
+     */
+    BitSet rasterize(double minLongitude, double minLatitude, double maxLongitude, double maxLatitude,
+                     double epsilon, int rows, int cols, ForkJoinPool pool) {
+        return rasterize(minLongitude, minLatitude, maxLongitude, maxLatitude, epsilon, 0, 0, rows, cols, pool);
+    }
+
+    /**
+     * Computes the walkability of a rectangle of cells of the grid. The cells are computed exactly as they are when
+     * the whole grid is rasterized, so a grid can be rasterized piece by piece.
+     * @param firstRow the row of the grid where the rectangle starts.
+     * @param firstCol the column of the grid where the rectangle starts.
+     * @param rows the number of rows of the rectangle.
+     * @param cols the number of columns of the rectangle.
+     * @return the walkable cells, indexed by (row - firstRow) * cols + (col - firstCol).
+     * @see #rasterize(double, double, double, double, double, int, int, ForkJoinPool)
+     */
+    BitSet rasterize(double minLongitude, double minLatitude, double maxLongitude, double maxLatitude,
+                     double epsilon, int firstRow, int firstCol, int rows, int cols, ForkJoinPool pool) {
+        /* Each row writes a separate part of the array, so rows can be computed concurrently */
+        boolean[] walkable = new boolean[rows * cols];
+        IntStream rowStream = IntStream.range(0, rows);
+        if (pool == null) {
+            rowStream.forEach(row -> rasterizeRow(firstRow + row, firstCol, cols, minLongitude, minLatitude,
+                    maxLongitude, maxLatitude, epsilon, walkable, row * cols));
+        } else {
+            pool.submit(() -> rowStream.parallel().forEach(row -> rasterizeRow(firstRow + row, firstCol, cols,
+                    minLongitude, minLatitude, maxLongitude, maxLatitude, epsilon, walkable, row * cols))).join();
+        }
+
+        BitSet result = new BitSet(rows * cols);
+        for (int i = 0; i < walkable.length; i++) {
+            result.set(i, walkable[i]);
+        }
+        return result;
+    }
+
+    private void rasterizeRow(int row, int firstCol, int cols, double minLongitude, double minLatitude,
+                              double maxLongitude, double maxLatitude, double epsilon, boolean[] walkable,
+                              int offset) {
+        /* The corners are computed from the cell centres exactly as the centres are computed by VirtualGrid */
+        double latitude = minLatitude + row * epsilon + (epsilon / 2);
+        double[] westCorners = new double[cols];
+        double[] eastCorners = new double[cols];
+        for (int i = 0; i < cols; i++) {
+            double longitude = minLongitude + (firstCol + i) * epsilon + (epsilon / 2);
+            westCorners[i] = longitude - epsilon / 2;
+            eastCorners[i] = longitude + epsilon / 2;
+        }
+
+        boolean[] blocked = new boolean[cols];
+        double[] thresholds = new double[maxEdges()];
+        int[] directions = new int[thresholds.length];
+        for (int p = 0; p < polygonX.length; p++) {
+            for (double scanline : new double[]{latitude + epsilon / 2, latitude - epsilon / 2}) {
+                int crossings = scanlineCrossings(p, scanline, thresholds, directions);
+                if (crossings > 0) {
+                    markInside(thresholds, directions, crossings, westCorners, blocked);
+                    markInside(thresholds, directions, crossings, eastCorners, blocked);
+                }
+            }
+        }
+
+        boolean outOfBounds = latitude <= minLatitude || latitude >= maxLatitude;
+        for (int i = 0; i < cols; i++) {
+            double longitude = minLongitude + (firstCol + i) * epsilon + (epsilon / 2);
+            boolean cellOutOfBounds = outOfBounds || longitude <= minLongitude || longitude >= maxLongitude;
+            walkable[offset + i] = !blocked[i] && !cellOutOfBounds;
+        }
+    }
+
+    /**
+     * Checks whether a point is inside any of the polygons, with the same rule that is applied to cell corners.
+     * @return True if the point is inside a no-fly-zone.
+     */
+    boolean isInside(double longitude, double latitude) {
+        double[] thresholds = new double[maxEdges()];
+        int[] directions = new int[thresholds.length];
+        boolean[] inside = new boolean[1];
+        for (int p = 0; p < polygonX.length; p++) {
+            int crossings = scanlineCrossings(p, latitude, thresholds, directions);
+            if (crossings > 0) {
+                markInside(thresholds, directions, crossings, new double[]{longitude}, inside);
+            }
+        }
+        return inside[0];
+    }
+
+    /**
+     * Finds the edges of a polygon that cross a horizontal scanline. A point on the scanline is crossed by such an
+     * edge if it is west of the edge's threshold, and the point is inside the polygon if the directions of the edges
+     * that cross it do not add up to zero.
+     * @return the number of crossing edges, whose thresholds and directions were written to the given arrays sorted by
+     * threshold.
+     */
+    private int scanlineCrossings(int polygon, double py, double[] thresholds, int[] directions) {
+        double[] xs = polygonX[polygon];
+        double[] ys = polygonY[polygon];
+        int count = 0;
+        for (int i = 0; i < xs.length; i++) {
+            int next = i + 1;
+            if (next == xs.length) {
+                /* Path2D closes the path back to its first point unless it already ends at the same latitude */
+                if (ys[i] == ys[0]) {
+                    break;
+                }
+                next = 0;
+            }
+            double x0 = xs[i];
+            double y0 = ys[i];
+            double x1 = xs[next];
+            double y1 = ys[next];
+            /* The same tests as sun.awt.geom.Curve.pointCrossingsForLine, but independent of the point's longitude */
+            if ((py < y0 && py < y1) || (py >= y0 && py >= y1)) {
+                continue;
+            }
+            double xIntercept = x0 + (py - y0) * (x1 - x0) / (y1 - y0);
+            thresholds[count] = Math.max(Math.min(x0, x1), Math.min(Math.max(x0, x1), xIntercept));
+            directions[count] = (y0 < y1) ? 1 : -1;
+            count++;
+        }
+        sortByThreshold(thresholds, directions, count);
+        return count;
+    }
+
+    /**
+     * Sweeps the given points from west to east and marks the points that are inside the polygon.
+     * @param points the longitudes of the points, in ascending order.
+     */
+    private static void markInside(double[] thresholds, int[] directions, int crossings, double[] points,
+                                   boolean[] blocked) {
+        int winding = 0;
+        for (int k = 0; k < crossings; k++) {
+            winding += directions[k];
+        }
+        int k = 0;
+        for (int col = 0; col < points.length; col++) {
+            /* Edges stop counting once the point is at or east of their threshold */
+            while (k < crossings && thresholds[k] <= points[col]) {
+                winding -= directions[k++];
+            }
+            if (winding != 0) {
+                blocked[col] = true;
+            }
+        }
+    }
+
+    /**
+     * Insertion sort of the crossings by threshold; a scanline only crosses a handful of edges of each polygon.
+     */
+    private static void sortByThreshold(double[] thresholds, int[] directions, int count) {
+        for (int i = 1; i < count; i++) {
+            double threshold = thresholds[i];
+            int direction = directions[i];
+            int j = i - 1;
+            while (j >= 0 && thresholds[j] > threshold) {
+                thresholds[j + 1] = thresholds[j];
+                directions[j + 1] = directions[j];
+                j--;
+            }
+            thresholds[j + 1] = threshold;
+            directions[j + 1] = direction;
+        }
+    }
+
+    private int maxEdges() {
+        return Arrays.stream(polygonX).mapToInt(xs -> xs.length).max().orElse(0);
+    }
+}
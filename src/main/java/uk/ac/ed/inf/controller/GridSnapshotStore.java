@@ -0,0 +1,314 @@
+package uk.ac.ed.inf.controller;
+
+import com.mapbox.geojson.Polygon;
+import uk.ac.ed.inf.domain.LongLat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Stores the computed virtual grid on disk, so that it does not have to be rasterized again every time the application
+ * starts. A snapshot holds the grid dimensions, cell size, bounds and walkable cells, and is identified by a fingerprint
+ * of the no-fly-zone GeoJSON and the grid parameters it was computed from. A snapshot whose fingerprint does not match
+ * is ignored and overwritten by the next save, so changes to the no-fly-zones are picked up automatically.
+ * The store also keeps the return-to-base cost field of the grid in a file of its own, identified by the fingerprint
+ * of the grid and the position of the base, and the heading masks of the grid's cells, identified by the fingerprint
+ * of the grid.
+ */
+public class GridSnapshotStore {
+
+    private static final String FILE_NAME = "virtual-grid.snapshot";
+    private static final String BASE_COST_FIELD_FILE_NAME = "base-cost-field.snapshot";
+    private static final String HEADING_MASKS_FILE_NAME = "heading-masks.snapshot";
+    private static final int MAGIC = 0x494C5047; /* "ILPG" */
+    private static final int BASE_COST_FIELD_MAGIC = 0x494C5042; /* "ILPB" */
+    private static final int HEADING_MASKS_MAGIC = 0x494C504D; /* "ILPM" */
+    private static final int VERSION = 1;
+    private static final int FINGERPRINT_LENGTH = 32;
+    private static final int HEADER_LENGTH = 4 + 4 + FINGERPRINT_LENGTH + 5 * 8 + 4 + 4 + 4;
+    private static final int BASE_COST_FIELD_HEADER_LENGTH = 4 + 4 + FINGERPRINT_LENGTH + 4;
+    private static final int HEADING_MASKS_HEADER_LENGTH = 4 + 4 + FINGERPRINT_LENGTH + 4;
+    /* The distance, next waypoint and waypoint count of a cell */
+    private static final int BASE_COST_FIELD_CELL_LENGTH = 8 + 4 + 4;
+
+    private final Path file;
+    private final Path baseCostFieldFile;
+    private final Path headingMasksFile;
+
+    /**
+     * @param directory the directory in which the snapshot file is kept. It is created if it does not exist.
+     */
+    public GridSnapshotStore(Path directory) {
+        this.file = directory.resolve(FILE_NAME);
+        this.baseCostFieldFile = directory.resolve(BASE_COST_FIELD_FILE_NAME);
+        this.headingMasksFile = directory.resolve(HEADING_MASKS_FILE_NAME);
+    }
+
+    /**
+     * Computes the fingerprint of a grid: a SHA-256 hash of the GeoJSON of every no-fly-zone and of the parameters
+     * of the grid.
+     */
+    static byte[] fingerprint(List<Polygon> noFlyZones, double minLongitude, double minLatitude,
+                              double maxLongitude, double maxLatitude, double epsilon, int rows, int cols) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Polygon polygon : noFlyZones) {
+                digest.update(polygon.toJson().getBytes(StandardCharsets.UTF_8));
+            }
+            ByteBuffer parameters = ByteBuffer.allocate(5 * 8 + 2 * 4);
+            parameters.putDouble(minLongitude).putDouble(minLatitude).putDouble(maxLongitude).putDouble(maxLatitude)
+                    .putDouble(epsilon).putInt(rows).putInt(cols);
+            digest.update(parameters.array());
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Computes the fingerprint of a return-to-base cost field: a SHA-256 hash of the fingerprint of its grid and of
+     * the position of the base.
+     */
+    static byte[] fingerprint(List<Polygon> noFlyZones, ServiceArea area, LongLat base) {
+        byte[] gridFingerprint = fingerprint(noFlyZones, area.getMinLongitude(), area.getMinLatitude(),
+                area.getMaxLongitude(), area.getMaxLatitude(), area.getResolution(), area.getRows(), area.getCols());
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(gridFingerprint);
+            digest.update(ByteBuffer.allocate(2 * 8).putDouble(base.getLongitude()).putDouble(base.getLatitude())
+                    .array());
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Loads the snapshot by memory-mapping the snapshot file. The header is read first, and the file is only mapped if
+     * its fingerprint matches, so that a stale snapshot is never mapped while it is being replaced.
+     * @param fingerprint the fingerprint of the grid that is needed.
+     * @return the stored grid, or null if there is no snapshot or it was computed from different no-fly-zones or grid
+     * parameters.
+     */
+    VirtualGrid load(byte[] fingerprint) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                /* Keep reading until the header is complete or the file ends */
+            }
+            header.flip();
+            if (header.remaining() < HEADER_LENGTH || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                return null;
+            }
+            byte[] storedFingerprint = new byte[FINGERPRINT_LENGTH];
+            header.get(storedFingerprint);
+            if (!Arrays.equals(storedFingerprint, fingerprint)) {
+                return null;
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.position(4 + 4 + FINGERPRINT_LENGTH);
+            double epsilon = buffer.getDouble();
+            double originLongitude = buffer.getDouble();
+            double originLatitude = buffer.getDouble();
+            buffer.getDouble(); /* The far corner is covered by the fingerprint and not needed to rebuild the grid */
+            buffer.getDouble();
+            int rows = buffer.getInt();
+            int cols = buffer.getInt();
+            int wordCount = buffer.getInt();
+            if (buffer.remaining() != wordCount * 8L) {
+                System.err.println("Grid snapshot is truncated, the grid will be recomputed");
+                return null;
+            }
+            long[] words = new long[wordCount];
+            buffer.asLongBuffer().get(words);
+            return new VirtualGrid(originLongitude, originLatitude, epsilon, rows, cols, BitSet.valueOf(words));
+        } catch (IOException e) {
+            System.err.println("Could not read the grid snapshot, the grid will be recomputed");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Writes the grid to the snapshot file, replacing any previous snapshot. The file is written next to the snapshot
+     * and then moved over it, so a concurrent load never sees a partially written snapshot.
+     * @param fingerprint the fingerprint of the grid.
+     * @param grid the grid to be stored.
+     * @param maxLongitude the highest longitude of the area the grid was computed for.
+     * @param maxLatitude the highest latitude of the area the grid was computed for.
+     */
+    void save(byte[] fingerprint, VirtualGrid grid, double maxLongitude, double maxLatitude) {
+        long[] words = grid.walkableWords();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + words.length * 8);
+        buffer.putInt(MAGIC).putInt(VERSION).put(fingerprint)
+                .putDouble(grid.getEpsilon())
+                .putDouble(grid.getOriginLongitude())
+                .putDouble(grid.getOriginLatitude())
+                .putDouble(maxLongitude)
+                .putDouble(maxLatitude)
+                .putInt(grid.getRows())
+                .putInt(grid.getCols())
+                .putInt(words.length);
+        buffer.asLongBuffer().put(words);
+
+        writeAtomically(file, buffer.array(), "grid snapshot");
+    }
+
+    /**
+     * Loads the stored return-to-base cost field into the given arrays, one entry per cell of the grid.
+     * @param fingerprint the fingerprint of the field that is needed.
+     * @return true if the arrays were filled, false if there is no stored field or it was computed for a different
+     * grid or base.
+     */
+    boolean loadBaseCostField(byte[] fingerprint, double[] distance, int[] parent, int[] waypoints) {
+        if (!Files.isRegularFile(baseCostFieldFile)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(baseCostFieldFile, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(BASE_COST_FIELD_HEADER_LENGTH);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                /* Keep reading until the header is complete or the file ends */
+            }
+            header.flip();
+            if (header.remaining() < BASE_COST_FIELD_HEADER_LENGTH || header.getInt() != BASE_COST_FIELD_MAGIC
+                    || header.getInt() != VERSION) {
+                return false;
+            }
+            byte[] storedFingerprint = new byte[FINGERPRINT_LENGTH];
+            header.get(storedFingerprint);
+            int cells = header.getInt();
+            if (!Arrays.equals(storedFingerprint, fingerprint) || cells != distance.length) {
+                return false;
+            }
+            if (channel.size() != BASE_COST_FIELD_HEADER_LENGTH + (long) cells * BASE_COST_FIELD_CELL_LENGTH) {
+                System.err.println("Base cost field snapshot is truncated, the field will be recomputed");
+                return false;
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.position(BASE_COST_FIELD_HEADER_LENGTH);
+            for (int cell = 0; cell < cells; cell++) {
+                distance[cell] = buffer.getDouble();
+                parent[cell] = buffer.getInt();
+                waypoints[cell] = buffer.getInt();
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("Could not read the base cost field snapshot, the field will be recomputed");
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Writes a return-to-base cost field, replacing any previous one, in the same way as the grid snapshot.
+     * @param fingerprint the fingerprint of the field.
+     */
+    void saveBaseCostField(byte[] fingerprint, double[] distance, int[] parent, int[] waypoints) {
+        ByteBuffer buffer = ByteBuffer.allocate(BASE_COST_FIELD_HEADER_LENGTH
+                + distance.length * BASE_COST_FIELD_CELL_LENGTH);
+        buffer.putInt(BASE_COST_FIELD_MAGIC).putInt(VERSION).put(fingerprint).putInt(distance.length);
+        for (int cell = 0; cell < distance.length; cell++) {
+            buffer.putDouble(distance[cell]).putInt(parent[cell]).putInt(waypoints[cell]);
+        }
+        writeAtomically(baseCostFieldFile, buffer.array(), "base cost field snapshot");
+    }
+
+    /**
+     * Loads the stored heading masks of a grid.
+     * @param fingerprint the fingerprint of the grid.
+     * @param cells the number of cells of the grid.
+     * @return the mask of every cell, or null if there are no stored masks or they were computed for a different grid.
+     */
+    long[] loadHeadingMasks(byte[] fingerprint, int cells) {
+        if (!Files.isRegularFile(headingMasksFile)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(headingMasksFile, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADING_MASKS_HEADER_LENGTH);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                /* Keep reading until the header is complete or the file ends */
+            }
+            header.flip();
+            if (header.remaining() < HEADING_MASKS_HEADER_LENGTH || header.getInt() != HEADING_MASKS_MAGIC
+                    || header.getInt() != VERSION) {
+                return null;
+            }
+            byte[] storedFingerprint = new byte[FINGERPRINT_LENGTH];
+            header.get(storedFingerprint);
+            if (!Arrays.equals(storedFingerprint, fingerprint) || header.getInt() != cells) {
+                return null;
+            }
+            if (channel.size() != HEADING_MASKS_HEADER_LENGTH + cells * 8L) {
+                System.err.println("Heading mask snapshot is truncated, the masks will be recomputed");
+                return null;
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.position(HEADING_MASKS_HEADER_LENGTH);
+            long[] masks = new long[cells];
+            buffer.asLongBuffer().get(masks);
+            return masks;
+        } catch (IOException e) {
+            System.err.println("Could not read the heading mask snapshot, the masks will be recomputed");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Writes the heading masks of a grid, replacing any previous ones, in the same way as the grid snapshot.
+     * @param fingerprint the fingerprint of the grid.
+     */
+    void saveHeadingMasks(byte[] fingerprint, long[] masks) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADING_MASKS_HEADER_LENGTH + masks.length * 8);
+        buffer.putInt(HEADING_MASKS_MAGIC).putInt(VERSION).put(fingerprint).putInt(masks.length);
+        buffer.asLongBuffer().put(masks);
+        writeAtomically(headingMasksFile, buffer.array(), "heading mask snapshot");
+    }
+
+    /**
+     * Writes a file next to the target and then moves it over the target, so a concurrent load never sees a
+     * partially written file.
+     */
+    private static void writeAtomically(Path target, byte[] contents, String description) {
+        Path temporary = null;
+        try {
+            Files.createDirectories(target.getParent());
+            temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+            Files.write(temporary, contents);
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Could not write the " + description);
+            e.printStackTrace();
+            deleteQuietly(temporary);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.err.println("Could not delete " + path);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package uk.ac.ed.inf.controller;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The walkability of a virtual grid, rasterized one square tile of cells at a time when a cell of the tile is first
+ * read. At most a fixed number of tiles are kept; when another tile is needed, one that has not been read recently is
+ * dropped and rasterized again if it is read later. Since tiles are rasterized exactly like the whole grid, the
+ * walkability read through the cache is the same as that of an eagerly rasterized grid.
+ * Tiles are chosen for eviction with the clock algorithm: every read marks its tile as used, and the clock hand skips
+ * and unmarks used tiles until it finds one that was not read since it last passed. Reads never lock; a thread that
+ * still holds a tile that was evicted simply keeps reading it.
+ */
+class GridTileCache {
+
+    /**
+     * The side of a tile in cells. A tile is stored as one 64-bit word per row.
+     */
+    static final int TILE_SIZE = 64;
+    static final int TILE_SHIFT = 6;
+    private static final int TILE_MASK = TILE_SIZE - 1;
+
+    private final GridRasterizer rasterizer;
+    private final ServiceArea area;
+    private final int tileCols;
+    private final int maxTiles;
+
+    /* The rows of each tile that is resident, indexed by tile, or null. */
+    private final AtomicReferenceArray<long[]> tiles;
+    /* Whether each tile was read since the clock hand last passed it. Races on these flags only affect eviction. */
+    private final boolean[] used;
+    private int clockHand;
+    private int residentTiles;
+    private final LongAdder rasterizedTiles = new LongAdder();
+
+    /**
+     * @param rasterizer the rasterizer of the no-fly-zones.
+     * @param area the area covered by the grid.
+     * @param maxTiles the number of tiles that are kept at most, at least 1.
+     */
+    GridTileCache(GridRasterizer rasterizer, ServiceArea area, int maxTiles) {
+        if (maxTiles < 1) {
+            throw new IllegalArgumentException("At least one tile must be cached, but the limit was " + maxTiles);
+        }
+        this.rasterizer = rasterizer;
+        this.area = area;
+        this.maxTiles = maxTiles;
+        this.tileCols = (area.getCols() + TILE_MASK) >> TILE_SHIFT;
+        int tileRows = (area.getRows() + TILE_MASK) >> TILE_SHIFT;
+        this.tiles = new AtomicReferenceArray<>(tileRows * tileCols);
+        this.used = new boolean[tileRows * tileCols];
+    }
+
+    /**
+     * @param row the row of a cell inside the grid.
+     * @param col the column of a cell inside the grid.
+     * @return true if the cell is walkable.
+     */
+    boolean isWalkable(int row, int col) {
+        int tile = (row >> TILE_SHIFT) * tileCols + (col >> TILE_SHIFT);
+        long[] rows = tiles.get(tile);
+        if (rows == null) {
+            rows = load(tile);
+        } else if (!used[tile]) {
+            used[tile] = true;
+        }
+        return (rows[row & TILE_MASK] & (1L << (col & TILE_MASK))) != 0;
+    }
+
+    /**
+     * Rasterizes a tile and makes it resident, evicting another tile if the cache is full. Two threads may rasterize
+     * the same tile at once, in which case the first one to finish is kept.
+     */
+    private long[] load(int tile) {
+        int firstRow = (tile / tileCols) << TILE_SHIFT;
+        int firstCol = (tile % tileCols) << TILE_SHIFT;
+        long[] words = rasterizer.rasterize(area.getMinLongitude(), area.getMinLatitude(), area.getMaxLongitude(),
+                area.getMaxLatitude(), area.getResolution(), firstRow, firstCol, TILE_SIZE, TILE_SIZE, null)
+                .toLongArray();
+        long[] rows = Arrays.copyOf(words, TILE_SIZE);
+        rasterizedTiles.increment();
+
+        synchronized (this) {
+            long[] resident = tiles.get(tile);
+            if (resident != null) {
+                return resident;
+            }
+            if (residentTiles == maxTiles) {
+                evict();
+            }
+            tiles.set(tile, rows);
+            used[tile] = true;
+            residentTiles++;
+        }
+        return rows;
+    }
+
+    /**
+     * Advances the clock hand to the first resident tile that was not read since the hand last passed it, and drops
+     * that tile. Must be called while holding the lock, with at least one tile resident.
+     */
+    private void evict() {
+        while (true) {
+            int tile = clockHand;
+            clockHand = (clockHand + 1) % used.length;
+            if (tiles.get(tile) == null) {
+                continue;
+            }
+            if (used[tile]) {
+                used[tile] = false;
+            } else {
+                tiles.set(tile, null);
+                residentTiles--;
+                return;
+            }
+        }
+    }
+
+    int getMaxTiles() {
+        return maxTiles;
+    }
+
+    /**
+     * @return the number of tiles that are currently resident.
+     */
+    synchronized int getResidentTiles() {
+        return residentTiles;
+    }
+
+    /**
+     * @return the number of times a tile was rasterized, including tiles that were rasterized again after eviction.
+     */
+    long getRasterizedTiles() {
+        return rasterizedTiles.sum();
+    }
+}
@@ -0,0 +1,157 @@
+package uk.ac.ed.inf.controller;
+
+import uk.ac.ed.inf.domain.LongLat;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+/**
+ * The headings the drone can certainly move towards from anywhere in each cell of the virtual grid, as one 36-bit mask
+ * per cell with bit i standing for the heading of i * 10 degrees. A heading is set when every cell the move can end in
+ * is walkable and the cell swept along the move touches no no-fly-zone edge, so the move is legal from every position
+ * in the cell. Cells next to a no-fly-zone keep their headings towards it unset, and only those headings still need the
+ * exact walkability and line of sight checks.
+ * The cells and the swept areas are widened by a millionth of a cell, far more than the rounding of a move, so a set
+ * heading never disagrees with the exact checks. A mask is computed the first time its cell is asked about, or for the
+ * whole grid at once, and can be read and computed from many threads.
+ */
+class HeadingMasks {
+
+    static final int HEADING_COUNT = 36;
+    private static final int ANGLE_MULTIPLE = 10;
+    /* Marks a mask as computed, so that a cell without any legal heading is not computed again */
+    private static final long COMPUTED = 1L << 63;
+    private static final long HEADINGS = (1L << HEADING_COUNT) - 1;
+    private static final double MARGIN = 1e-6;
+
+    private final VirtualGrid grid;
+    private final NoFlyZoneIndex noFlyZoneIndex;
+    private final AtomicLongArray masks;
+
+    /**
+     * Creates the masks of a grid without computing any of them.
+     */
+    HeadingMasks(VirtualGrid grid, NoFlyZoneIndex noFlyZoneIndex) {
+        this.grid = grid;
+        this.noFlyZoneIndex = noFlyZoneIndex;
+        this.masks = new AtomicLongArray(grid.size());
+    }
+
+    /**
+     * Computes the mask of every cell, a row at a time on the given pool.
+     */
+    void computeAll(ForkJoinPool pool) {
+        int cols = grid.getCols();
+        pool.submit(() -> IntStream.range(0, grid.getRows()).parallel().forEach(row -> {
+            for (int cell = row * cols; cell < (row + 1) * cols; cell++) {
+                masks.setRelease(cell, compute(cell));
+            }
+        })).join();
+    }
+
+    /**
+     * Fills in masks computed earlier for the same grid and no-fly-zones.
+     * @param stored the masks returned by toArray.
+     */
+    void load(long[] stored) {
+        for (int cell = 0; cell < stored.length; cell++) {
+            masks.setRelease(cell, stored[cell]);
+        }
+    }
+
+    /**
+     * @return the masks of every cell, computing the ones that are missing.
+     */
+    long[] toArray() {
+        long[] result = new long[masks.length()];
+        for (int cell = 0; cell < result.length; cell++) {
+            result[cell] = mask(cell);
+        }
+        return result;
+    }
+
+    int size() {
+        return masks.length();
+    }
+
+    /**
+     * @param row the row of the drone's cell.
+     * @param col the column of the drone's cell.
+     * @param angle the angle of the move.
+     * @return true if the move is legal from anywhere in the cell, false if it may not be or the angle is not one of
+     * the 36 headings.
+     */
+    boolean isLegal(int row, int col, int angle) {
+        if (!grid.contains(row, col) || angle < 0 || angle > 360 || angle % ANGLE_MULTIPLE != 0) {
+            return false;
+        }
+        int heading = angle / ANGLE_MULTIPLE % HEADING_COUNT;
+        return (mask(grid.index(row, col)) & 1L << heading) != 0;
+    }
+
+    /**
+     * @return the legal headings of the cell, as the lowest 36 bits.
+     */
+    long headings(int cell) {
+        return mask(cell) & HEADINGS;
+    }
+
+    private long mask(int cell) {
+        long mask = masks.getAcquire(cell);
+        if (mask == 0) {
+            /* Another thread may compute the same mask at the same time, which gives the same value */
+            mask = compute(cell);
+            masks.setRelease(cell, mask);
+        }
+        return mask;
+    }
+
+    private long compute(int cell) {
+        double epsilon = grid.getEpsilon();
+        double margin = epsilon * MARGIN;
+        /* The positions that fall in the cell, as Pathfinder rounds them */
+        double minX = grid.getOriginLongitude() + grid.col(cell) * epsilon - margin;
+        double minY = grid.getOriginLatitude() + grid.row(cell) * epsilon - margin;
+        double maxX = minX + epsilon + 2 * margin;
+        double maxY = minY + epsilon + 2 * margin;
+
+        long mask = COMPUTED;
+        for (int heading = 0; heading < HEADING_COUNT; heading++) {
+            int angle = heading * ANGLE_MULTIPLE;
+            double dx = LongLat.nextLongitude(0, angle);
+            double dy = LongLat.nextLatitude(0, angle);
+            if (allWalkable(minX + dx, minY + dy, maxX + dx, maxY + dy)
+                    && noFlyZoneIndex.sweepIsClear(minX, minY, maxX, maxY, dx, dy)) {
+                mask |= 1L << heading;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @return true if every cell that overlaps the rectangle is inside the grid and walkable.
+     */
+    private boolean allWalkable(double minX, double minY, double maxX, double maxY) {
+        int lastRow = rowOf(maxY);
+        int lastCol = colOf(maxX);
+        for (int row = rowOf(minY); row <= lastRow; row++) {
+            for (int col = colOf(minX); col <= lastCol; col++) {
+                if (!grid.isWalkable(row, col)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private int rowOf(double latitude) {
+        double epsilon = grid.getEpsilon();
+        return (int) Math.round((latitude - grid.getOriginLatitude() - epsilon / 2) / epsilon);
+    }
+
+    private int colOf(double longitude) {
+        double epsilon = grid.getEpsilon();
+        return (int) Math.round((longitude - grid.getOriginLongitude() - epsilon / 2) / epsilon);
+    }
+}
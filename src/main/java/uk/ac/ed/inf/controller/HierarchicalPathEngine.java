@@ -0,0 +1,425 @@
+package uk.ac.ed.inf.controller;
+
+import uk.ac.ed.inf.domain.LongLat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Hierarchical path-finding (HPA*) over the virtual grid of a Pathfinder. The grid is split into square clusters of
+ * cells. Where the walkable cells on both sides of the border between two clusters form a run, the run gets one
+ * entrance in its middle, or one at each end if it is long. The entrances of a cluster are linked by the length of the
+ * shortest path between them that stays in the cluster, which is computed once when the engine is built.
+ * A query links its start and destination to the entrances of their clusters, searches the small graph of entrances,
+ * and only then searches the grid, one cluster at a time along the abstract path. The resulting cell path is made
+ * any-angle by removing every turn whose neighbours can see each other.
+ * Paths are slightly longer than those of Theta*, but a query only searches the few clusters the path goes through.
+ */
+public class HierarchicalPathEngine implements PathEngine {
+
+    /**
+     * The side of a cluster in cells when none is given.
+     */
+    public static final int DEFAULT_CLUSTER_SIZE = 16;
+    /**
+     * Runs of open border at least this long get an entrance at each end instead of one in the middle, so that paths
+     * along either side of a wide gap do not have to detour through its centre.
+     */
+    private static final int MIN_DOUBLE_ENTRANCE_LENGTH = 6;
+    private static final int NO_NODE = -1;
+
+    private final Pathfinder pathfinder;
+    private final VirtualGrid grid;
+    private final int clusterSize;
+    private final int clusterCols;
+
+    /* The cell of each entrance, indexed by abstract node. */
+    private final int[] entranceCells;
+    /* The entrances of cluster c are clusterEntrances[clusterStart[c]] to clusterEntrances[clusterStart[c + 1] - 1]. */
+    private final int[] clusterStart;
+    private final int[] clusterEntrances;
+    /* The edges of node v go to edgeTargets[edgeStart[v]] to edgeTargets[edgeStart[v + 1] - 1], at edgeCosts. */
+    private final int[] edgeStart;
+    private final int[] edgeTargets;
+    private final double[] edgeCosts;
+
+    /**
+     * Builds the abstract graph of the given Pathfinder's grid with clusters of the default size.
+     * @param pathfinder the Pathfinder whose grid is searched.
+     */
+    public HierarchicalPathEngine(Pathfinder pathfinder) {
+        this(pathfinder, DEFAULT_CLUSTER_SIZE);
+    }
+
+    /**
+     * Builds the abstract graph of the given Pathfinder's grid.
+     * @param pathfinder the Pathfinder whose grid is searched, and which answers the line of sight checks.
+     * @param clusterSize the side of a cluster in cells, at least 2.
+     */
+    public HierarchicalPathEngine(Pathfinder pathfinder, int clusterSize) {
+        if (clusterSize < 2) {
+            throw new IllegalArgumentException("The cluster size must be at least 2, but was " + clusterSize);
+        }
+        this.pathfinder = pathfinder;
+        this.grid = pathfinder.grid();
+        this.clusterSize = clusterSize;
+        this.clusterCols = (grid.getCols() + clusterSize - 1) / clusterSize;
+        int clusterRows = (grid.getRows() + clusterSize - 1) / clusterSize;
+        int clusterCount = clusterRows * clusterCols;
+
+        /* The entrances on every border, as pairs of cells facing each other across it */
+        Map<Integer, Integer> nodeOfCell = new LinkedHashMap<>();
+        List<int[]> crossings = new ArrayList<>();
+        for (int col = clusterSize - 1; col + 1 < grid.getCols(); col += clusterSize) {
+            for (int row = 0; row < grid.getRows(); row += clusterSize) {
+                addEntrances(row, col, 1, 0, 0, 1, Math.min(clusterSize, grid.getRows() - row), nodeOfCell, crossings);
+            }
+        }
+        for (int row = clusterSize - 1; row + 1 < grid.getRows(); row += clusterSize) {
+            for (int col = 0; col < grid.getCols(); col += clusterSize) {
+                addEntrances(row, col, 0, 1, 1, 0, Math.min(clusterSize, grid.getCols() - col), nodeOfCell, crossings);
+            }
+        }
+        int nodeCount = nodeOfCell.size();
+        entranceCells = new int[nodeCount];
+        for (Map.Entry<Integer, Integer> entry : nodeOfCell.entrySet()) {
+            entranceCells[entry.getValue()] = entry.getKey();
+        }
+
+        /* Group the entrances by cluster */
+        clusterStart = new int[clusterCount + 1];
+        for (int cell : entranceCells) {
+            clusterStart[clusterOf(cell) + 1]++;
+        }
+        for (int c = 0; c < clusterCount; c++) {
+            clusterStart[c + 1] += clusterStart[c];
+        }
+        clusterEntrances = new int[nodeCount];
+        int[] filled = Arrays.copyOf(clusterStart, clusterCount);
+        for (int v = 0; v < nodeCount; v++) {
+            clusterEntrances[filled[clusterOf(entranceCells[v])]++] = v;
+        }
+
+        /* Link the entrances across each border and, by their shortest paths, within each cluster */
+        List<List<Integer>> targets = new ArrayList<>();
+        List<List<Double>> costs = new ArrayList<>();
+        for (int v = 0; v < nodeCount; v++) {
+            targets.add(new ArrayList<>());
+            costs.add(new ArrayList<>());
+        }
+        for (int[] crossing : crossings) {
+            int a = nodeOfCell.get(crossing[0]);
+            int b = nodeOfCell.get(crossing[1]);
+            double cost = grid.distance(crossing[0], crossing[1]);
+            targets.get(a).add(b);
+            costs.get(a).add(cost);
+            targets.get(b).add(a);
+            costs.get(b).add(cost);
+        }
+        for (int v = 0; v < nodeCount; v++) {
+            int cluster = clusterOf(entranceCells[v]);
+            ClusterSearch search = new ClusterSearch(entranceCells[v], NO_NODE);
+            for (int i = clusterStart[cluster]; i < clusterStart[cluster + 1]; i++) {
+                int other = clusterEntrances[i];
+                double cost = search.distanceTo(entranceCells[other]);
+                if (other != v && cost < Double.MAX_VALUE) {
+                    targets.get(v).add(other);
+                    costs.get(v).add(cost);
+                }
+            }
+        }
+        edgeStart = new int[nodeCount + 1];
+        for (int v = 0; v < nodeCount; v++) {
+            edgeStart[v + 1] = edgeStart[v] + targets.get(v).size();
+        }
+        edgeTargets = new int[edgeStart[nodeCount]];
+        edgeCosts = new double[edgeStart[nodeCount]];
+        for (int v = 0; v < nodeCount; v++) {
+            for (int i = 0; i < targets.get(v).size(); i++) {
+                edgeTargets[edgeStart[v] + i] = targets.get(v).get(i);
+                edgeCosts[edgeStart[v] + i] = costs.get(v).get(i);
+            }
+        }
+    }
+
+    /**
+     * Adds the entrances of one border segment between two clusters. The segment starts at the given cell and runs
+     * for the given length along (stepRow, stepCol); the cells on the other side of the border are (acrossRow,
+     * acrossCol) away.
+     */
+    private void addEntrances(int row, int col, int stepRow, int stepCol, int acrossRow, int acrossCol, int length,
+                              Map<Integer, Integer> nodeOfCell, List<int[]> crossings) {
+        int runStart = NO_NODE;
+        for (int i = 0; i <= length; i++) {
+            int r = row + i * stepRow;
+            int c = col + i * stepCol;
+            boolean open = i < length && grid.isWalkable(r, c) && grid.isWalkable(r + acrossRow, c + acrossCol);
+            if (open && runStart == NO_NODE) {
+                runStart = i;
+            } else if (!open && runStart != NO_NODE) {
+                int runEnd = i - 1;
+                if (runEnd - runStart + 1 >= MIN_DOUBLE_ENTRANCE_LENGTH) {
+                    addCrossing(row + runStart * stepRow, col + runStart * stepCol, acrossRow, acrossCol,
+                            nodeOfCell, crossings);
+                    addCrossing(row + runEnd * stepRow, col + runEnd * stepCol, acrossRow, acrossCol,
+                            nodeOfCell, crossings);
+                } else {
+                    int middle = (runStart + runEnd) / 2;
+                    addCrossing(row + middle * stepRow, col + middle * stepCol, acrossRow, acrossCol,
+                            nodeOfCell, crossings);
+                }
+                runStart = NO_NODE;
+            }
+        }
+    }
+
+    private void addCrossing(int row, int col, int acrossRow, int acrossCol, Map<Integer, Integer> nodeOfCell,
+                             List<int[]> crossings) {
+        int inside = grid.index(row, col);
+        int outside = grid.index(row + acrossRow, col + acrossCol);
+        nodeOfCell.putIfAbsent(inside, nodeOfCell.size());
+        nodeOfCell.putIfAbsent(outside, nodeOfCell.size());
+        crossings.add(new int[]{inside, outside});
+    }
+
+    private int clusterOf(int cell) {
+        return (grid.row(cell) / clusterSize) * clusterCols + grid.col(cell) / clusterSize;
+    }
+
+    /**
+     * Finds a path from start to dest through the abstract graph, refined one cluster at a time. If the abstract
+     * graph has no path, which can happen when the only way through is diagonally across the corner of a cluster, the
+     * Pathfinder's Theta* search is used instead.
+     *
+     * @param start the starting coordinates.
+     * @param dest the destination coordinates.
+     * @return a list of LongLat objects, from start to dest.
+     */
+    @Override
+    public List<LongLat> findPath(LongLat start, LongLat dest) {
+        int startCell = pathfinder.cellOf(start);
+        int destCell = pathfinder.cellOf(dest);
+        if (pathfinder.hasDirectPath(startCell, destCell)) {
+            return pathfinder.directPath(startCell, destCell);
+        }
+        if (startCell == destCell) {
+            return pathfinder.toCoordinates(List.of(startCell));
+        }
+        long[] work = new long[2]; /* The expansions and line of sight checks of this query */
+        work[1] = 1;
+        List<Integer> cells = findAbstractPath(startCell, destCell, work);
+        if (cells == null) {
+            return pathfinder.findPath(start, dest);
+        }
+        List<Integer> smoothed = new ArrayList<>();
+        work[1] += pathfinder.smoothPath(cells, smoothed);
+        pathfinder.getStatistics().record(work[0], work[1]);
+        return pathfinder.toCoordinates(smoothed);
+    }
+
+    /**
+     * Runs A* over the entrances, with the start and destination as two extra nodes linked to the entrances of their
+     * clusters, and refines the result into a path of adjacent cells.
+     * @return the cells of the path from start to dest, or null if the abstract graph has no path between them.
+     */
+    private List<Integer> findAbstractPath(int startCell, int destCell, long[] work) {
+        int nodeCount = entranceCells.length;
+        int startNode = nodeCount;
+        int destNode = nodeCount + 1;
+
+        /* The entrances reachable from the start, and those the destination can be reached from, without leaving
+        their clusters */
+        ClusterSearch fromStart = new ClusterSearch(startCell, NO_NODE);
+        ClusterSearch toDest = new ClusterSearch(destCell, NO_NODE);
+        work[0] += fromStart.expansions + toDest.expansions;
+        int destCluster = clusterOf(destCell);
+
+        double[] scoreFromStart = new double[nodeCount + 2];
+        int[] parent = new int[nodeCount + 2];
+        Arrays.fill(scoreFromStart, Double.MAX_VALUE);
+        Arrays.fill(parent, NO_NODE);
+        BitSet closed = new BitSet(nodeCount + 2);
+        PriorityQueue<double[]> openQueue = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+
+        scoreFromStart[startNode] = 0;
+        openQueue.add(new double[]{grid.distance(startCell, destCell), startNode});
+        while (!openQueue.isEmpty()) {
+            int current = (int) openQueue.poll()[1];
+            if (closed.get(current)) {
+                continue;
+            }
+            work[0]++;
+            if (current == destNode) {
+                return refine(parent, destNode, startCell, destCell, work);
+            }
+            closed.set(current);
+
+            if (current == startNode) {
+                int startCluster = clusterOf(startCell);
+                for (int i = clusterStart[startCluster]; i < clusterStart[startCluster + 1]; i++) {
+                    int entrance = clusterEntrances[i];
+                    relax(current, entrance, fromStart.distanceTo(entranceCells[entrance]), destCell,
+                            scoreFromStart, parent, openQueue);
+                }
+                if (startCluster == destCluster) {
+                    relax(current, destNode, fromStart.distanceTo(destCell), destCell, scoreFromStart, parent,
+                            openQueue);
+                }
+                continue;
+            }
+            for (int i = edgeStart[current]; i < edgeStart[current + 1]; i++) {
+                relax(current, edgeTargets[i], edgeCosts[i], destCell, scoreFromStart, parent, openQueue);
+            }
+            if (clusterOf(entranceCells[current]) == destCluster) {
+                relax(current, destNode, toDest.distanceTo(entranceCells[current]), destCell, scoreFromStart, parent,
+                        openQueue);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Lowers the score of a node if it is shorter to reach it through the current node, and queues it again.
+     */
+    private void relax(int current, int next, double cost, int destCell, double[] scoreFromStart, int[] parent,
+                       PriorityQueue<double[]> openQueue) {
+        if (cost == Double.MAX_VALUE) {
+            return;
+        }
+        double score = scoreFromStart[current] + cost;
+        if (score < scoreFromStart[next]) {
+            scoreFromStart[next] = score;
+            parent[next] = current;
+            int nextCell = next < entranceCells.length ? entranceCells[next] : destCell;
+            openQueue.add(new double[]{score + grid.distance(nextCell, destCell), next});
+        }
+    }
+
+    /**
+     * Turns the abstract path into cells: consecutive nodes in the same cluster are joined by a search of that
+     * cluster, and consecutive nodes in different clusters are adjacent cells across a border.
+     */
+    private List<Integer> refine(int[] parent, int destNode, int startCell, int destCell, long[] work) {
+        List<Integer> abstractCells = new ArrayList<>();
+        for (int v = destNode; v != NO_NODE; v = parent[v]) {
+            abstractCells.add(v < entranceCells.length ? entranceCells[v] : v == destNode ? destCell : startCell);
+        }
+        Collections.reverse(abstractCells);
+
+        List<Integer> cells = new ArrayList<>();
+        cells.add(startCell);
+        for (int i = 1; i < abstractCells.size(); i++) {
+            int from = abstractCells.get(i - 1);
+            int to = abstractCells.get(i);
+            if (from == to) {
+                continue;
+            }
+            if (clusterOf(from) != clusterOf(to)) {
+                cells.add(to);
+                continue;
+            }
+            ClusterSearch search = new ClusterSearch(from, to);
+            work[0] += search.expansions;
+            List<Integer> segment = search.pathTo(to);
+            cells.addAll(segment.subList(1, segment.size()));
+        }
+        return cells;
+    }
+
+    /**
+     * @return the number of entrances in the abstract graph.
+     */
+    public int getEntranceCount() {
+        return entranceCells.length;
+    }
+
+    /**
+     * A search over the walkable cells of the cluster that contains its source, which never leaves the cluster. With a
+     * target it is an A* search that stops at the target; without one it is a Dijkstra search of the whole cluster.
+     */
+    private class ClusterSearch {
+        private final int rowOffset;
+        private final int colOffset;
+        private final double[] distance;
+        private final int[] parent;
+        private long expansions;
+
+        ClusterSearch(int source, int target) {
+            int cluster = clusterOf(source);
+            rowOffset = (cluster / clusterCols) * clusterSize;
+            colOffset = (cluster % clusterCols) * clusterSize;
+            distance = new double[clusterSize * clusterSize];
+            parent = new int[clusterSize * clusterSize];
+            Arrays.fill(distance, Double.MAX_VALUE);
+            Arrays.fill(parent, NO_NODE);
+            BitSet closed = new BitSet(distance.length);
+            int[] neighbours = new int[VirtualGrid.MAX_NEIGHBOURS];
+            PriorityQueue<double[]> openQueue = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+
+            distance[local(source)] = 0;
+            openQueue.add(new double[]{0, source});
+            while (!openQueue.isEmpty()) {
+                int current = (int) openQueue.poll()[1];
+                int currentLocal = local(current);
+                if (closed.get(currentLocal)) {
+                    continue;
+                }
+                expansions++;
+                if (current == target) {
+                    return;
+                }
+                closed.set(currentLocal);
+                int neighbourCount = grid.neighbours(current, neighbours);
+                for (int i = 0; i < neighbourCount; i++) {
+                    int neighbour = neighbours[i];
+                    if (clusterOf(neighbour) != cluster) {
+                        continue;
+                    }
+                    int neighbourLocal = local(neighbour);
+                    double score = distance[currentLocal] + grid.distance(current, neighbour);
+                    if (score < distance[neighbourLocal]) {
+                        distance[neighbourLocal] = score;
+                        parent[neighbourLocal] = current;
+                        double estimate = target == NO_NODE ? 0 : grid.distance(neighbour, target);
+                        openQueue.add(new double[]{score + estimate, neighbour});
+                    }
+                }
+            }
+        }
+
+        private int local(int cell) {
+            return (grid.row(cell) - rowOffset) * clusterSize + grid.col(cell) - colOffset;
+        }
+
+        /**
+         * @return the length of the shortest path to the cell within the cluster, or Double.MAX_VALUE if there is
+         * none or the cell is in another cluster.
+         */
+        double distanceTo(int cell) {
+            int row = grid.row(cell) - rowOffset;
+            int col = grid.col(cell) - colOffset;
+            if (row < 0 || row >= clusterSize || col < 0 || col >= clusterSize) {
+                return Double.MAX_VALUE;
+            }
+            return distance[local(cell)];
+        }
+
+        /**
+         * @return the cells of the path from the source to the given cell, which must have been reached.
+         */
+        List<Integer> pathTo(int cell) {
+            List<Integer> path = new ArrayList<>();
+            for (int current = cell; current != NO_NODE; current = parent[local(current)]) {
+                path.add(current);
+            }
+            Collections.reverse(path);
+            return path;
+        }
+    }
+}
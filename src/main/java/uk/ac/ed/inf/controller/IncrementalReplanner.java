@@ -0,0 +1,164 @@
+package uk.ac.ed.inf.controller;
+
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+import uk.ac.ed.inf.domain.LongLat;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Keeps the map of no-fly-zones up to date while drones are flying. Each change to the no-fly-zones publishes a new
+ * immutable Pathfinder, which only re-rasterizes the cells around the polygons that were added or removed. Queries that
+ * are running on the previous Pathfinder finish on the map they started with, and later queries see the new one.
+ * Routes that were started from the replanner keep their search state and repair it with D* Lite when they are asked
+ * for a path after the map changed, instead of searching again from scratch.
+ */
+public class IncrementalReplanner {
+
+    /**
+     * One published state of the map, with the cells whose walkability changed since the previous state. The versions
+     * form a chain that routes follow to catch up with every change they missed.
+     */
+    static class MapVersion {
+        final Pathfinder pathfinder;
+        /* The cells whose walkability differs from the previous version. */
+        final int[] changedCells;
+        private volatile MapVersion next;
+
+        MapVersion(Pathfinder pathfinder, int[] changedCells) {
+            this.pathfinder = pathfinder;
+            this.changedCells = changedCells;
+        }
+
+        MapVersion next() {
+            return next;
+        }
+    }
+
+    private volatile MapVersion current;
+
+    /**
+     * @param pathfinder the Pathfinder over the current no-fly-zones.
+     */
+    public IncrementalReplanner(Pathfinder pathfinder) {
+        this.current = new MapVersion(pathfinder, new int[0]);
+    }
+
+    /**
+     * @return the Pathfinder over the latest no-fly-zones.
+     */
+    public Pathfinder getPathfinder() {
+        return current.pathfinder;
+    }
+
+    MapVersion currentVersion() {
+        return current;
+    }
+
+    /**
+     * Starts a route to the given destination, which is kept up to date with every later change to the map.
+     * @param dest the destination coordinates.
+     * @return the route.
+     */
+    public DStarLiteRoute route(LongLat dest) {
+        return new DStarLiteRoute(this, dest);
+    }
+
+    /**
+     * Adds and removes no-fly-zones and publishes the resulting map. The walkability of the cells that the changed
+     * polygons cover is rasterized again, and the rest of the grid is copied from the current map. The line of sight
+     * index is rebuilt from the new polygons, which only takes time in proportion to their edges.
+     * @param added the polygons that become no-fly-zones.
+     * @param removed the polygons that stop being no-fly-zones, which must be current no-fly-zones.
+     * @return the Pathfinder over the new map.
+     */
+    public synchronized Pathfinder applyChanges(List<Polygon> added, List<Polygon> removed) {
+        Pathfinder previous = current.pathfinder;
+        List<Polygon> noFlyZones = new ArrayList<>(previous.getNoFlyZones());
+        for (Polygon polygon : removed) {
+            if (!noFlyZones.remove(polygon)) {
+                throw new IllegalArgumentException("Only current no-fly-zones can be removed");
+            }
+        }
+        noFlyZones.addAll(added);
+
+        VirtualGrid grid = previous.grid();
+        ServiceArea area = previous.getServiceArea();
+        List<Polygon> changed = new ArrayList<>(added);
+        changed.addAll(removed);
+        int[] bounds = affectedCells(grid, changed);
+        int firstRow = bounds[0];
+        int firstCol = bounds[1];
+        int rows = bounds[2] - firstRow + 1;
+        int cols = bounds[3] - firstCol + 1;
+
+        GridRasterizer rasterizer = new GridRasterizer(noFlyZones);
+        BitSet patch = rows > 0 && cols > 0
+                ? rasterizer.rasterize(area.getMinLongitude(), area.getMinLatitude(), area.getMaxLongitude(),
+                        area.getMaxLatitude(), area.getResolution(), firstRow, firstCol, rows, cols,
+                        ForkJoinPool.commonPool())
+                : new BitSet();
+        List<Integer> changedCells = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                if (patch.get(row * cols + col) != grid.isWalkable(firstRow + row, firstCol + col)) {
+                    changedCells.add(grid.index(firstRow + row, firstCol + col));
+                }
+            }
+        }
+
+        VirtualGrid updated;
+        GridTileCache tiles = grid.tiles();
+        if (tiles == null) {
+            BitSet walkable = BitSet.valueOf(grid.walkableWords());
+            for (int cell : changedCells) {
+                walkable.flip(cell);
+            }
+            updated = new VirtualGrid(grid.getOriginLongitude(), grid.getOriginLatitude(), grid.getEpsilon(),
+                    grid.getRows(), grid.getCols(), walkable);
+        } else {
+            /* Tiles are rasterized again as they are read, from the new polygons */
+            updated = new VirtualGrid(grid.getOriginLongitude(), grid.getOriginLatitude(), grid.getEpsilon(),
+                    grid.getRows(), grid.getCols(), new GridTileCache(rasterizer, area, tiles.getMaxTiles()));
+        }
+
+        Pathfinder pathfinder = new Pathfinder(noFlyZones, area, updated);
+        MapVersion version = new MapVersion(pathfinder, changedCells.stream().mapToInt(Integer::intValue).toArray());
+        current.next = version;
+        current = version;
+        return pathfinder;
+    }
+
+    /**
+     * Finds the cells covered by the bounding boxes of the given polygons, with a margin of one cell since a cell is
+     * blocked by a polygon that covers any of its corners.
+     * @return the first row, first column, last row and last column of the cells, clamped to the grid.
+     */
+    private static int[] affectedCells(VirtualGrid grid, List<Polygon> polygons) {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (Polygon polygon : polygons) {
+            for (Point point : polygon.outer().coordinates()) {
+                minX = Math.min(minX, point.longitude());
+                minY = Math.min(minY, point.latitude());
+                maxX = Math.max(maxX, point.longitude());
+                maxY = Math.max(maxY, point.latitude());
+            }
+        }
+        if (polygons.isEmpty()) {
+            return new int[]{0, 0, -1, -1};
+        }
+        double epsilon = grid.getEpsilon();
+        int firstRow = (int) Math.floor((minY - grid.getOriginLatitude()) / epsilon) - 1;
+        int firstCol = (int) Math.floor((minX - grid.getOriginLongitude()) / epsilon) - 1;
+        int lastRow = (int) Math.floor((maxY - grid.getOriginLatitude()) / epsilon) + 1;
+        int lastCol = (int) Math.floor((maxX - grid.getOriginLongitude()) / epsilon) + 1;
+        return new int[]{Math.max(firstRow, 0), Math.max(firstCol, 0),
+                Math.min(lastRow, grid.getRows() - 1), Math.min(lastCol, grid.getCols() - 1)};
+    }
+}
@@ -0,0 +1,181 @@
+package uk.ac.ed.inf.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static uk.ac.ed.inf.controller.SearchContext.*;
+
+/**
+ * Jump Point Search over the walkable cells of the virtual grid. Instead of queueing every cell along a straight run
+ * of open sky, the search jumps along each direction until it reaches the destination or a cell with a forced
+ * neighbour, which is a cell next to an obstacle where an optimal path may have to turn. Only these jump points are
+ * queued, so long legs across the confinement area expand a few dozen cells instead of thousands.
+ * Moves follow the same rules as the Theta* search: a cell can move to any of its 8 neighbours that is walkable,
+ * including diagonally past blocked cells. The pruning rules are the ones of the original algorithm for that case.
+ * The resulting path only turns at jump points and is made any-angle by the Pathfinder afterwards.
+ */
+class JumpPointSearch {
+
+    private static final int[] ALL_ROWS = {-1, 0, 1, 0, 1, -1, 1, -1};
+    private static final int[] ALL_COLS = {0, -1, 0, 1, -1, 1, 1, -1};
+
+    private final VirtualGrid grid;
+
+    JumpPointSearch(VirtualGrid grid) {
+        this.grid = grid;
+    }
+
+    /**
+     * Finds a path between two cells through jump points.
+     * @param context the search state, which must have been reset for this search.
+     * @param start the index of the starting cell.
+     * @param end the index of the end cell.
+     * @param weight the factor by which the heuristic is inflated.
+     * @return A list of cell indices of the jump points of an 8-connected path, from the end to the start, or null if
+     * the search ran past its deadline.
+     */
+    List<Integer> findPath(SearchContext context, int start, int end, double weight) {
+        NodeHeap openHeap = context.openHeap;
+        int[] directionRows = new int[ALL_ROWS.length];
+        int[] directionCols = new int[ALL_COLS.length];
+
+        context.touch(start);
+        context.setScoreFromStart(start, 0);
+        context.setState(start, OPEN);
+        openHeap.add(start);
+
+        while (!openHeap.isEmpty()) {
+            int currentNode = openHeap.poll();
+            context.expansions++;
+            if (context.pastDeadline()) {
+                return null;
+            }
+            if (currentNode == end) {
+                return context.reconstructPath(end);
+            }
+            context.setState(currentNode, CLOSED);
+
+            int directions = prunedDirections(currentNode, context.parent(currentNode), directionRows,
+                    directionCols);
+            for (int i = 0; i < directions; i++) {
+                int jumpPoint = jump(grid.row(currentNode), grid.col(currentNode),
+                        directionRows[i], directionCols[i], end);
+                if (jumpPoint == NO_PARENT) {
+                    continue;
+                }
+                context.touch(jumpPoint);
+                if (context.state(jumpPoint) == CLOSED) {
+                    continue;
+                }
+                double score = context.scoreFromStart(currentNode) + grid.distance(currentNode, jumpPoint);
+                if (score < context.scoreFromStart(jumpPoint)) {
+                    context.setParent(jumpPoint, currentNode);
+                    context.setScoreFromStart(jumpPoint, score);
+                    context.setTotalScore(jumpPoint, (grid.distance(jumpPoint, end) * weight) + score);
+                    /* As in the Theta* search, a node that is already queued keeps its heap slot */
+                    if (context.state(jumpPoint) == UNSEEN) {
+                        context.setState(jumpPoint, OPEN);
+                        openHeap.add(jumpPoint);
+                    }
+                }
+            }
+        }
+        System.err.println("Jump point search could not find path");
+        return new ArrayList<>(List.of(end));
+    }
+
+    /**
+     * Writes the directions in which the search continues from a node: every direction for the start, otherwise the
+     * direction it was reached from and the directions around the obstacles next to it.
+     * @return the number of directions written.
+     */
+    private int prunedDirections(int node, int parentNode, int[] rows, int[] cols) {
+        if (parentNode == NO_PARENT) {
+            System.arraycopy(ALL_ROWS, 0, rows, 0, ALL_ROWS.length);
+            System.arraycopy(ALL_COLS, 0, cols, 0, ALL_COLS.length);
+            return ALL_ROWS.length;
+        }
+        int row = grid.row(node);
+        int col = grid.col(node);
+        int dr = Integer.signum(row - grid.row(parentNode));
+        int dc = Integer.signum(col - grid.col(parentNode));
+        int count = 0;
+        if (dr != 0 && dc != 0) {
+            rows[count] = dr;
+            cols[count++] = 0;
+            rows[count] = 0;
+            cols[count++] = dc;
+            rows[count] = dr;
+            cols[count++] = dc;
+            if (!grid.isWalkable(row, col - dc)) {
+                rows[count] = dr;
+                cols[count++] = -dc;
+            }
+            if (!grid.isWalkable(row - dr, col)) {
+                rows[count] = -dr;
+                cols[count++] = dc;
+            }
+        } else if (dr == 0) {
+            rows[count] = 0;
+            cols[count++] = dc;
+            if (!grid.isWalkable(row + 1, col)) {
+                rows[count] = 1;
+                cols[count++] = dc;
+            }
+            if (!grid.isWalkable(row - 1, col)) {
+                rows[count] = -1;
+                cols[count++] = dc;
+            }
+        } else {
+            rows[count] = dr;
+            cols[count++] = 0;
+            if (!grid.isWalkable(row, col + 1)) {
+                rows[count] = dr;
+                cols[count++] = 1;
+            }
+            if (!grid.isWalkable(row, col - 1)) {
+                rows[count] = dr;
+                cols[count++] = -1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Moves from a cell in the given direction until reaching the destination, a cell with a forced neighbour or, for
+     * diagonal moves, a cell from which a straight jump finds a jump point.
+     * @return the index of the jump point, or NO_PARENT if the run ends at an obstacle or the edge of the grid.
+     */
+    private int jump(int row, int col, int dr, int dc, int end) {
+        while (true) {
+            row += dr;
+            col += dc;
+            if (!grid.isWalkable(row, col)) {
+                return NO_PARENT;
+            }
+            int index = grid.index(row, col);
+            if (index == end) {
+                return index;
+            }
+            if (dr != 0 && dc != 0) {
+                if ((!grid.isWalkable(row, col - dc) && grid.isWalkable(row + dr, col - dc))
+                        || (!grid.isWalkable(row - dr, col) && grid.isWalkable(row - dr, col + dc))) {
+                    return index;
+                }
+                if (jump(row, col, dr, 0, end) != NO_PARENT || jump(row, col, 0, dc, end) != NO_PARENT) {
+                    return index;
+                }
+            } else if (dr == 0) {
+                if ((!grid.isWalkable(row + 1, col) && grid.isWalkable(row + 1, col + dc))
+                        || (!grid.isWalkable(row - 1, col) && grid.isWalkable(row - 1, col + dc))) {
+                    return index;
+                }
+            } else {
+                if ((!grid.isWalkable(row, col + 1) && grid.isWalkable(row + dr, col + 1))
+                        || (!grid.isWalkable(row, col - 1) && grid.isWalkable(row + dr, col - 1))) {
+                    return index;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package uk.ac.ed.inf.controller;
+
+import uk.ac.ed.inf.domain.Flightpath;
+import uk.ac.ed.inf.domain.LongLat;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Flies the drone one move at a time on primitive coordinates. A move is chosen exactly as it is with LongLat objects:
+ * towards the angle of the target if that move is legal, and otherwise towards the first angle of LongLat's candidate
+ * angles that is legal and can see the target. The positions and angles are bit for bit those of LongLat, since the
+ * kernel uses the same heading table and closeness test, but a move creates no objects.
+ * Moves can be logged into primitive arrays that grow as needed, and are only turned into Flightpath objects when the
+ * log is committed, so moves that are discarded or only simulated leave no garbage behind.
+ * A kernel is used by one drone and is not safe to share between threads.
+ */
+class MoveKernel {
+
+    private static final int INITIAL_LOG_CAPACITY = 256;
+
+    private final Pathfinder pathfinder;
+    private final boolean logging;
+    private final int[] candidateAngles = new int[LongLat.CANDIDATE_ANGLE_COUNT];
+
+    private double longitude;
+    private double latitude;
+    private int moves;
+
+    /* One entry per logged move */
+    private String[] orderNumbers;
+    private double[] startLongitudes;
+    private double[] startLatitudes;
+    private double[] destLongitudes;
+    private double[] destLatitudes;
+    private int[] angles;
+    private int logged;
+
+    /**
+     * @param pathfinder the Pathfinder that decides which moves are legal.
+     * @param logging true to log every move, false to only count them.
+     */
+    MoveKernel(Pathfinder pathfinder, boolean logging) {
+        this.pathfinder = pathfinder;
+        this.logging = logging;
+        int capacity = logging ? INITIAL_LOG_CAPACITY : 0;
+        orderNumbers = new String[capacity];
+        startLongitudes = new double[capacity];
+        startLatitudes = new double[capacity];
+        destLongitudes = new double[capacity];
+        destLatitudes = new double[capacity];
+        angles = new int[capacity];
+    }
+
+    /**
+     * Places the drone at a position, without making a move.
+     */
+    void moveTo(LongLat position) {
+        longitude = position.getLongitude();
+        latitude = position.getLatitude();
+    }
+
+    /**
+     * @return the drone's position as a new LongLat object.
+     */
+    LongLat position() {
+        return new LongLat(longitude, latitude);
+    }
+
+    /**
+     * @return the number of moves made since the kernel was created, including hovering.
+     */
+    int getMoves() {
+        return moves;
+    }
+
+    boolean isCloseTo(LongLat target) {
+        return LongLat.closeTo(longitude, latitude, target.getLongitude(), target.getLatitude());
+    }
+
+    /**
+     * Moves towards a target until the drone is close to it.
+     */
+    void flyTo(LongLat target, String orderNo) {
+        double targetLongitude = target.getLongitude();
+        double targetLatitude = target.getLatitude();
+        while (!LongLat.closeTo(longitude, latitude, targetLongitude, targetLatitude)) {
+            steerTowards(targetLongitude, targetLatitude, orderNo);
+        }
+    }
+
+    /**
+     * Moves along the waypoints of a path until the drone is close to each of them in turn, and makes one more move
+     * towards the target if the drone is still not close to it. The last waypoint can be close to the target while the
+     * drone, close to the waypoint, is not.
+     *
+     * @param path the waypoints, starting at the drone's position.
+     * @param target the target at the end of the path.
+     */
+    void followPath(List<LongLat> path, LongLat target, String orderNo) {
+        for (LongLat waypoint : path) {
+            flyTo(waypoint, orderNo);
+        }
+        if (!isCloseTo(target)) {
+            steerTowards(target.getLongitude(), target.getLatitude(), orderNo);
+        }
+    }
+
+    /**
+     * Makes one move towards the target, choosing the angle as DroneController always has.
+     */
+    void steerTowards(double targetLongitude, double targetLatitude, String orderNo) {
+        int angle = LongLat.calculateAngle(longitude, latitude, targetLongitude, targetLatitude);
+        boolean found = true;
+
+        /* If the drone cannot move towards angle from its position, try the alternative angles */
+        if (!pathfinder.canMoveTowards(longitude, latitude, angle)) {
+            found = false;
+            LongLat.calculateAngles(longitude, latitude, targetLongitude, targetLatitude, candidateAngles);
+            for (int possibleAngle : candidateAngles) {
+                /* A legal move is only valid if the new position can see the target */
+                if (pathfinder.canMoveTowards(longitude, latitude, possibleAngle)
+                        && pathfinder.lineOfSight(LongLat.nextLongitude(longitude, possibleAngle),
+                        LongLat.nextLatitude(latitude, possibleAngle), targetLongitude, targetLatitude)) {
+                    angle = possibleAngle;
+                    found = true;
+                    break;
+                }
+            }
+        }
+        if (!found) {
+            System.err.println("No valid move was found!");
+        }
+        move(angle, orderNo);
+    }
+
+    /**
+     * Makes a move towards the given angle, or hovers, whether or not the move is legal.
+     */
+    void move(int angle, String orderNo) {
+        double nextLongitude = LongLat.nextLongitude(longitude, angle);
+        double nextLatitude = LongLat.nextLatitude(latitude, angle);
+        if (logging) {
+            log(orderNo, nextLongitude, nextLatitude, angle);
+        }
+        longitude = nextLongitude;
+        latitude = nextLatitude;
+        moves++;
+    }
+
+    private void log(String orderNo, double nextLongitude, double nextLatitude, int angle) {
+        if (logged == angles.length) {
+            int capacity = Math.max(INITIAL_LOG_CAPACITY, logged * 2);
+            orderNumbers = Arrays.copyOf(orderNumbers, capacity);
+            startLongitudes = Arrays.copyOf(startLongitudes, capacity);
+            startLatitudes = Arrays.copyOf(startLatitudes, capacity);
+            destLongitudes = Arrays.copyOf(destLongitudes, capacity);
+            destLatitudes = Arrays.copyOf(destLatitudes, capacity);
+            angles = Arrays.copyOf(angles, capacity);
+        }
+        orderNumbers[logged] = orderNo;
+        startLongitudes[logged] = longitude;
+        startLatitudes[logged] = latitude;
+        destLongitudes[logged] = nextLongitude;
+        destLatitudes[logged] = nextLatitude;
+        angles[logged] = angle;
+        logged++;
+    }
+
+    /**
+     * Drops the moves logged since the last commit or discard.
+     */
+    void discardLog() {
+        Arrays.fill(orderNumbers, 0, logged, null);
+        logged = 0;
+    }
+
+    /**
+     * Adds a Flightpath for every move logged since the last commit or discard, and empties the log.
+     * @param flightpaths the list the Flightpaths are added to, in the order the moves were made.
+     */
+    void commitLog(List<Flightpath> flightpaths) {
+        for (int i = 0; i < logged; i++) {
+            flightpaths.add(new Flightpath(orderNumbers[i], new LongLat(startLongitudes[i], startLatitudes[i]),
+                    new LongLat(destLongitudes[i], destLatitudes[i]), angles[i]));
+        }
+        discardLog();
+    }
+}
@@ -0,0 +1,167 @@
+package uk.ac.ed.inf.controller;
+
+import uk.ac.ed.inf.domain.LongLat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Plans the drone's moves directly on the lattice of positions it can actually reach: every move is a step of
+ * LongLat.STEP_DISTANCE at a multiple of 10 degrees. An A* search over these positions finds the fewest moves that
+ * bring the drone close to a target, so the steps a flight costs are known without simulating it and no move has to be
+ * improvised around a corner.
+ * Positions are computed with LongLat.nextPosition, exactly as the drone flies, and two positions closer than a
+ * quarter of a step are treated as the same state so that the search space stays finite; of two moves to the same
+ * state, the one that ends closer to the target is kept. A move is legal if Pathfinder.canMoveTowards allows it, and
+ * each of these checks counts as a line of sight check in the Pathfinder's statistics. The planner keeps no state
+ * between plans and can be used from several threads.
+ */
+public class MoveLatticePlanner {
+
+    /**
+     * The number of positions expanded by a search before it gives up, unless another limit is given.
+     */
+    public static final int DEFAULT_MAX_EXPANSIONS = 200_000;
+    /* Positions closer than this along both axes are the same state of the search */
+    private static final double STATE_RESOLUTION = LongLat.STEP_DISTANCE / 4;
+    private static final int ANGLE_COUNT = 36;
+    private static final int ANGLE_MULTIPLE = 10;
+    /* The tolerances of LongLat.closeTo and of the length of a floating point step */
+    private static final double CLOSE_ERROR = Math.pow(10, -12);
+    private static final double STEP_ERROR = 1e-9;
+
+    private final Pathfinder pathfinder;
+    private final int maxExpansions;
+
+    /**
+     * A position reached by the search, with the move that reached it.
+     */
+    private static class State {
+        final LongLat position;
+        final int steps;
+        /* The distance to the target, and the lower bound on the moves it takes */
+        final double distance;
+        final int remaining;
+        final State parent;
+        final int angle;
+
+        State(LongLat position, int steps, LongLat target, State parent, int angle) {
+            this.position = position;
+            this.steps = steps;
+            this.distance = position.distanceTo(target);
+            this.remaining = stepsRemaining(distance);
+            this.parent = parent;
+            this.angle = angle;
+        }
+
+        /**
+         * @return true if this state reaches its position in fewer moves than the other, or in as many moves but
+         * closer to the target.
+         */
+        boolean isBetterThan(State other) {
+            return steps != other.steps ? steps < other.steps : distance < other.distance;
+        }
+    }
+
+    /**
+     * @param pathfinder the Pathfinder that decides which moves are legal.
+     */
+    public MoveLatticePlanner(Pathfinder pathfinder) {
+        this(pathfinder, DEFAULT_MAX_EXPANSIONS);
+    }
+
+    /**
+     * @param pathfinder the Pathfinder that decides which moves are legal.
+     * @param maxExpansions the number of positions a search expands before it gives up, at least 1.
+     */
+    public MoveLatticePlanner(Pathfinder pathfinder, int maxExpansions) {
+        if (maxExpansions < 1) {
+            throw new IllegalArgumentException("A search must expand at least one position, but the limit was "
+                    + maxExpansions);
+        }
+        this.pathfinder = pathfinder;
+        this.maxExpansions = maxExpansions;
+    }
+
+    /**
+     * Finds the fewest moves that take the drone from its position to a position close to the target.
+     * @param start the drone's position.
+     * @param target the position to get close to.
+     * @return the moves, or null if the target cannot be reached within the expansion limit.
+     */
+    public MovePlan plan(LongLat start, LongLat target) {
+        /* Fewer moves first, and among equals the one closest to the target */
+        PriorityQueue<State> open = new PriorityQueue<>((a, b) -> a.steps + a.remaining != b.steps + b.remaining
+                ? Integer.compare(a.steps + a.remaining, b.steps + b.remaining)
+                : Double.compare(a.distance, b.distance));
+        /* The best state found so far at each position */
+        Map<Long, State> best = new HashMap<>();
+        State first = new State(start, 0, target, null, LongLat.HOVER_VALUE);
+        open.add(first);
+        best.put(stateKey(start), first);
+
+        int expansions = 0;
+        long moveChecks = 0;
+        while (!open.isEmpty()) {
+            State state = open.poll();
+            if (state.position.closeTo(target)) {
+                pathfinder.getStatistics().record(expansions, moveChecks);
+                return toPlan(state);
+            }
+            if (best.get(stateKey(state.position)) != state) {
+                continue;
+            }
+            if (++expansions > maxExpansions) {
+                break;
+            }
+            for (int i = 0; i < ANGLE_COUNT; i++) {
+                int angle = i * ANGLE_MULTIPLE;
+                moveChecks++;
+                if (!pathfinder.canMoveTowards(state.position, angle)) {
+                    continue;
+                }
+                LongLat position = state.position.nextPosition(angle);
+                State next = new State(position, state.steps + 1, target, state, angle);
+                long key = stateKey(position);
+                State known = best.get(key);
+                if (known == null || next.isBetterThan(known)) {
+                    best.put(key, next);
+                    open.add(next);
+                }
+            }
+        }
+        pathfinder.getStatistics().record(expansions, moveChecks);
+        return null;
+    }
+
+    /**
+     * A lower bound on the moves from a position at the given distance from the target to a position close to it,
+     * since no move covers more than one step of distance.
+     */
+    private static int stepsRemaining(double distance) {
+        double gap = distance - LongLat.CLOSE_DISTANCE - CLOSE_ERROR;
+        return gap <= 0 ? 0 : (int) Math.ceil(gap / LongLat.STEP_DISTANCE - STEP_ERROR);
+    }
+
+    /**
+     * The state a position belongs to: its coordinates rounded to the state resolution.
+     */
+    private static long stateKey(LongLat position) {
+        long x = Math.round(position.getLongitude() / STATE_RESOLUTION);
+        long y = Math.round(position.getLatitude() / STATE_RESOLUTION);
+        return (x << 32) ^ (y & 0xFFFFFFFFL);
+    }
+
+    private static MovePlan toPlan(State end) {
+        List<Integer> angles = new ArrayList<>();
+        for (State state = end; state.parent != null; state = state.parent) {
+            angles.add(state.angle);
+        }
+        Collections.reverse(angles);
+        return new MovePlan(angles, end.position);
+    }
+}
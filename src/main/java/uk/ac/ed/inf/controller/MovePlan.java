@@ -0,0 +1,42 @@
+package uk.ac.ed.inf.controller;
+
+import uk.ac.ed.inf.domain.LongLat;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The exact moves that take the drone from a position to somewhere close to a target. Making the moves one after the
+ * other with LongLat.nextPosition reaches the end position exactly, so the number of steps is known before flying.
+ */
+public class MovePlan {
+
+    private final List<Integer> angles;
+    private final LongLat end;
+
+    MovePlan(List<Integer> angles, LongLat end) {
+        this.angles = Collections.unmodifiableList(angles);
+        this.end = end;
+    }
+
+    /**
+     * @return the angle of each move, in the order they are made.
+     */
+    public List<Integer> getAngles() {
+        return angles;
+    }
+
+    /**
+     * @return the number of moves.
+     */
+    public int getSteps() {
+        return angles.size();
+    }
+
+    /**
+     * @return the drone's position after the last move.
+     */
+    public LongLat getEnd() {
+        return end;
+    }
+}
@@ -0,0 +1,351 @@
+package uk.ac.ed.inf.controller;
+
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+import java.awt.geom.Line2D;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A spatial index over the edges of the no-fly-zones, used to answer line of sight queries without testing every edge.
+ * The index divides the virtual grid into square buckets of a few cells and each bucket lists the edges that pass
+ * through or near it. A ray is traversed bucket by bucket and only tested against the edges of the buckets it crosses;
+ * edges whose polygon's bounding box does not overlap the ray are rejected without an intersection test.
+ * Buckets without any edge are entirely outside or entirely inside the no-fly-zones, which testing one point of each
+ * against the polygons tells apart. A ray that crosses both kinds of bucket must cross a no-fly-zone boundary, so it is
+ * blocked without any exact test, and a ray that only crosses buckets without edges is clear.
+ * Buckets along the border of the grid also hold everything beyond it, so rays and edges that leave the area are still
+ * answered exactly.
+ */
+class NoFlyZoneIndex {
+
+    /**
+     * Fraction of a bucket by which ray extents are widened, so that points lying on a bucket boundary are assigned to
+     * both adjacent buckets regardless of rounding. Edges are widened by twice as much, so any bucket a ray passes
+     * through without holding an edge is clear of every edge by at least this margin.
+     */
+    private static final double BOUNDARY_TOLERANCE = 1e-6;
+
+    private final double minX;
+    private final double minY;
+    private final double bucketSize;
+    private final int bucketCols;
+    private final int bucketRows;
+
+    /* Edge end points, indexed by edge. */
+    private final double[] x1;
+    private final double[] y1;
+    private final double[] x2;
+    private final double[] y2;
+    private final int[] edgePolygon;
+
+    /* Polygon bounding boxes, indexed by polygon. */
+    private final double[] polyMinX;
+    private final double[] polyMinY;
+    private final double[] polyMaxX;
+    private final double[] polyMaxY;
+
+    /* The edges of bucket b are bucketEdges[bucketStart[b]] to bucketEdges[bucketStart[b + 1] - 1]. */
+    private final int[] bucketStart;
+    private final int[] bucketEdges;
+
+    /* Buckets without edges that lie entirely inside, or entirely outside, the no-fly-zones. */
+    private final BitSet interior;
+    private final BitSet exterior;
+
+    /**
+     * Creates an index over the outer rings of the given polygons, with buckets aligned to the cells of the given grid.
+     * @param noFlyZones the no-fly-zone polygons.
+     * @param grid the virtual grid, whose cells the buckets are aligned to.
+     * @param cellsPerBucket the side length of each bucket, in grid cells.
+     */
+    NoFlyZoneIndex(List<Polygon> noFlyZones, VirtualGrid grid, int cellsPerBucket) {
+        this.minX = grid.longitude(0) - grid.getEpsilon() / 2;
+        this.minY = grid.latitude(0) - grid.getEpsilon() / 2;
+        this.bucketSize = grid.getEpsilon() * cellsPerBucket;
+        this.bucketCols = (grid.getCols() + cellsPerBucket - 1) / cellsPerBucket;
+        this.bucketRows = (grid.getRows() + cellsPerBucket - 1) / cellsPerBucket;
+
+        int polygonCount = noFlyZones.size();
+        polyMinX = new double[polygonCount];
+        polyMinY = new double[polygonCount];
+        polyMaxX = new double[polygonCount];
+        polyMaxY = new double[polygonCount];
+
+        List<double[]> edges = new ArrayList<>();
+        List<Integer> polygons = new ArrayList<>();
+        for (int p = 0; p < polygonCount; p++) {
+            List<Point> points = noFlyZones.get(p).outer().coordinates();
+            polyMinX[p] = Double.POSITIVE_INFINITY;
+            polyMinY[p] = Double.POSITIVE_INFINITY;
+            polyMaxX[p] = Double.NEGATIVE_INFINITY;
+            polyMaxY[p] = Double.NEGATIVE_INFINITY;
+            for (int j = 0; j < points.size(); j++) {
+                Point point = points.get(j);
+                polyMinX[p] = Math.min(polyMinX[p], point.longitude());
+                polyMinY[p] = Math.min(polyMinY[p], point.latitude());
+                polyMaxX[p] = Math.max(polyMaxX[p], point.longitude());
+                polyMaxY[p] = Math.max(polyMaxY[p], point.latitude());
+                if (j < points.size() - 1) {
+                    Point next = points.get(j + 1);
+                    edges.add(new double[]{point.longitude(), point.latitude(), next.longitude(), next.latitude()});
+                    polygons.add(p);
+                }
+            }
+        }
+
+        int edgeCount = edges.size();
+        x1 = new double[edgeCount];
+        y1 = new double[edgeCount];
+        x2 = new double[edgeCount];
+        y2 = new double[edgeCount];
+        edgePolygon = new int[edgeCount];
+        for (int e = 0; e < edgeCount; e++) {
+            double[] edge = edges.get(e);
+            x1[e] = edge[0];
+            y1[e] = edge[1];
+            x2[e] = edge[2];
+            y2[e] = edge[3];
+            edgePolygon[e] = polygons.get(e);
+        }
+
+        /* Count the edges of each bucket, then fill the buckets in a second pass */
+        int bucketCount = bucketCols * bucketRows;
+        int[] counts = new int[bucketCount + 1];
+        int[] cover = new int[bucketCount];
+        for (int e = 0; e < edgeCount; e++) {
+            int covered = coveredBuckets(x1[e], y1[e], x2[e], y2[e], 2 * tolerance(), cover);
+            for (int i = 0; i < covered; i++) {
+                counts[cover[i] + 1]++;
+            }
+        }
+        for (int b = 0; b < bucketCount; b++) {
+            counts[b + 1] += counts[b];
+        }
+        bucketStart = counts.clone();
+        bucketEdges = new int[counts[bucketCount]];
+        for (int e = 0; e < edgeCount; e++) {
+            int covered = coveredBuckets(x1[e], y1[e], x2[e], y2[e], 2 * tolerance(), cover);
+            for (int i = 0; i < covered; i++) {
+                bucketEdges[counts[cover[i]]++] = e;
+            }
+        }
+
+        /* Border buckets also stand for everything beyond the grid, so they are never classified. Every point of a
+         bucket without edges is on the same side of the no-fly-zone boundaries, so the centre of its first cell
+         decides. The polygons are tested directly so that a lazily rasterized grid does not have to be read. */
+        GridRasterizer rasterizer = new GridRasterizer(noFlyZones);
+        interior = new BitSet(bucketCount);
+        exterior = new BitSet(bucketCount);
+        for (int row = 1; row < bucketRows - 1; row++) {
+            for (int col = 1; col < bucketCols - 1; col++) {
+                int bucket = row * bucketCols + col;
+                if (bucketStart[bucket] == bucketStart[bucket + 1]) {
+                    int cell = grid.index(row * cellsPerBucket, col * cellsPerBucket);
+                    double x = grid.longitude(cell);
+                    double y = grid.latitude(cell);
+                    boolean inside = insideBoundingBox(x, y) && rasterizer.isInside(x, y);
+                    (inside ? interior : exterior).set(bucket);
+                }
+            }
+        }
+    }
+
+    private boolean insideBoundingBox(double x, double y) {
+        for (int p = 0; p < polyMinX.length; p++) {
+            if (x >= polyMinX[p] && x <= polyMaxX[p] && y >= polyMinY[p] && y <= polyMaxY[p]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the segment between two points crosses or touches any no-fly-zone edge. The result is the same as
+     * testing the segment against every edge with Line2D.linesIntersect.
+     * @return True if the segment does not intersect any edge.
+     */
+    boolean lineOfSight(double ax, double ay, double bx, double by) {
+        double rayMinX = Math.min(ax, bx);
+        double rayMaxX = Math.max(ax, bx);
+        double rayMinY = Math.min(ay, by);
+        double rayMaxY = Math.max(ay, by);
+
+        boolean crossedInterior = false;
+        boolean crossedExterior = false;
+        double tolerance = tolerance();
+
+        int firstRow = bucketRow(rayMinY - tolerance);
+        int lastRow = bucketRow(rayMaxY + tolerance);
+        for (int row = firstRow; row <= lastRow; row++) {
+            int firstCol = bucketCol(rowMinX(row, ax, ay, bx, by, tolerance));
+            int lastCol = bucketCol(rowMaxX(row, ax, ay, bx, by, tolerance));
+            for (int col = firstCol; col <= lastCol; col++) {
+                int bucket = row * bucketCols + col;
+                if (bucketStart[bucket] == bucketStart[bucket + 1]) {
+                    /* A ray that is both inside and outside the no-fly-zones must cross an edge */
+                    crossedInterior |= interior.get(bucket);
+                    crossedExterior |= exterior.get(bucket);
+                    if (crossedInterior && crossedExterior) {
+                        return false;
+                    }
+                    continue;
+                }
+                for (int i = bucketStart[bucket]; i < bucketStart[bucket + 1]; i++) {
+                    int e = bucketEdges[i];
+                    int p = edgePolygon[e];
+                    /* Skip edges of polygons whose bounding box does not overlap the ray */
+                    if (polyMaxX[p] < rayMinX || polyMinX[p] > rayMaxX
+                            || polyMaxY[p] < rayMinY || polyMinY[p] > rayMaxY) {
+                        continue;
+                    }
+                    if (Line2D.linesIntersect(ax, ay, bx, by, x1[e], y1[e], x2[e], y2[e])) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a rectangle swept along a vector stays clear of every no-fly-zone edge, which means that every
+     * segment from a point of the rectangle along the vector has line of sight. Edges that only touch the swept area
+     * count as crossing it.
+     * @param minX the lowest longitude of the rectangle.
+     * @param minY the lowest latitude of the rectangle.
+     * @param maxX the highest longitude of the rectangle.
+     * @param maxY the highest latitude of the rectangle.
+     * @param dx the change in longitude of the sweep.
+     * @param dy the change in latitude of the sweep.
+     * @return True if no edge crosses or touches the swept area.
+     */
+    boolean sweepIsClear(double minX, double minY, double maxX, double maxY, double dx, double dy) {
+        double sweepMinX = minX + Math.min(0, dx);
+        double sweepMaxX = maxX + Math.max(0, dx);
+        double sweepMinY = minY + Math.min(0, dy);
+        double sweepMaxY = maxY + Math.max(0, dy);
+        double tolerance = tolerance();
+
+        int lastRow = bucketRow(sweepMaxY + tolerance);
+        int firstCol = bucketCol(sweepMinX - tolerance);
+        int lastCol = bucketCol(sweepMaxX + tolerance);
+        for (int row = bucketRow(sweepMinY - tolerance); row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                int bucket = row * bucketCols + col;
+                for (int i = bucketStart[bucket]; i < bucketStart[bucket + 1]; i++) {
+                    int e = bucketEdges[i];
+                    if (sweepTouchesEdge(minX, minY, maxX, maxY, dx, dy, x1[e], y1[e], x2[e], y2[e])) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tests a rectangle swept along a vector against an edge. The edge meets the swept area exactly when the rectangle
+     * meets the parallelogram swept by the edge along the opposite vector, and two convex shapes are apart exactly when
+     * one of their sides' normals separates them.
+     */
+    private static boolean sweepTouchesEdge(double minX, double minY, double maxX, double maxY, double dx, double dy,
+                                            double ax, double ay, double bx, double by) {
+        if (Math.max(ax, bx) < minX + Math.min(0, dx) || Math.min(ax, bx) > maxX + Math.max(0, dx)
+                || Math.max(ay, by) < minY + Math.min(0, dy) || Math.min(ay, by) > maxY + Math.max(0, dy)) {
+            return false;
+        }
+        return !separates(ay - by, bx - ax, minX, minY, maxX, maxY, dx, dy, ax, ay, bx, by)
+                && !separates(-dy, dx, minX, minY, maxX, maxY, dx, dy, ax, ay, bx, by);
+    }
+
+    /**
+     * @return true if the projections of the rectangle and of the swept edge onto the axis (nx, ny) do not overlap.
+     */
+    private static boolean separates(double nx, double ny, double minX, double minY, double maxX, double maxY,
+                                     double dx, double dy, double ax, double ay, double bx, double by) {
+        double cornerLow = Math.min(nx * minX, nx * maxX) + Math.min(ny * minY, ny * maxY);
+        double cornerHigh = Math.max(nx * minX, nx * maxX) + Math.max(ny * minY, ny * maxY);
+        double a = nx * ax + ny * ay;
+        double b = nx * bx + ny * by;
+        double shift = nx * dx + ny * dy;
+        double edgeLow = Math.min(Math.min(a, b), Math.min(a, b) - shift);
+        double edgeHigh = Math.max(Math.max(a, b), Math.max(a, b) - shift);
+        return edgeHigh < cornerLow || edgeLow > cornerHigh;
+    }
+
+    /**
+     * Writes the buckets that a segment passes through into the given array. Every bucket that contains a point of the
+     * segment is included, along with every bucket that is within the given tolerance of it.
+     * @return the number of buckets written.
+     */
+    private int coveredBuckets(double ax, double ay, double bx, double by, double tolerance, int[] out) {
+        int count = 0;
+        int firstRow = bucketRow(Math.min(ay, by) - tolerance);
+        int lastRow = bucketRow(Math.max(ay, by) + tolerance);
+        for (int row = firstRow; row <= lastRow; row++) {
+            int firstCol = bucketCol(rowMinX(row, ax, ay, bx, by, tolerance));
+            int lastCol = bucketCol(rowMaxX(row, ax, ay, bx, by, tolerance));
+            for (int col = firstCol; col <= lastCol; col++) {
+                out[count++] = row * bucketCols + col;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The lowest longitude of the segment inside the latitude band of a bucket row, widened by the tolerance.
+     */
+    private double rowMinX(int row, double ax, double ay, double bx, double by, double tolerance) {
+        if (ay == by) {
+            return Math.min(ax, bx) - tolerance;
+        }
+        double low = bandX(bandLow(row, tolerance), ax, ay, bx, by);
+        double high = bandX(bandHigh(row, tolerance), ax, ay, bx, by);
+        return Math.min(low, high) - tolerance;
+    }
+
+    /**
+     * The highest longitude of the segment inside the latitude band of a bucket row, widened by the tolerance.
+     */
+    private double rowMaxX(int row, double ax, double ay, double bx, double by, double tolerance) {
+        if (ay == by) {
+            return Math.max(ax, bx) + tolerance;
+        }
+        double low = bandX(bandLow(row, tolerance), ax, ay, bx, by);
+        double high = bandX(bandHigh(row, tolerance), ax, ay, bx, by);
+        return Math.max(low, high) + tolerance;
+    }
+
+    /**
+     * The longitude of a non-horizontal segment at the given latitude, or at its nearest end point if the segment does
+     * not reach that latitude.
+     */
+    private static double bandX(double y, double ax, double ay, double bx, double by) {
+        double t = Math.max(0, Math.min(1, (y - ay) / (by - ay)));
+        return ax + t * (bx - ax);
+    }
+
+    /* The first and last rows extend without limit, so they also cover anything beyond the indexed area. */
+    private double bandLow(int row, double tolerance) {
+        return row == 0 ? Double.NEGATIVE_INFINITY : minY + row * bucketSize - tolerance;
+    }
+
+    private double bandHigh(int row, double tolerance) {
+        return row == bucketRows - 1 ? Double.POSITIVE_INFINITY : minY + (row + 1) * bucketSize + tolerance;
+    }
+
+    private double tolerance() {
+        return bucketSize * BOUNDARY_TOLERANCE;
+    }
+
+    private int bucketRow(double y) {
+        return (int) Math.max(0, Math.min(bucketRows - 1, Math.floor((y - minY) / bucketSize)));
+    }
+
+    private int bucketCol(double x) {
+        return (int) Math.max(0, Math.min(bucketCols - 1, Math.floor((x - minX) / bucketSize)));
+    }
+}
@@ -0,0 +1,91 @@
+package uk.ac.ed.inf.controller;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of grid cell indices ordered by their total score, used as the open set of the Theta* algorithm.
+ * The scores are read from the search context of the search. Membership of the open set is tracked by the search state
+ * of each cell rather than by searching the heap.
+ * The sift operations mirror those of java.util.PriorityQueue, so cells are polled in exactly the same order as with
+ * the PriorityQueue the Pathfinder used before, including when the score of a queued cell is lowered in place.
+ */
+class NodeHeap {
+
+    private final SearchContext context;
+    private int[] heap;
+    private int size;
+
+    NodeHeap(SearchContext context, int initialCapacity) {
+        this.context = context;
+        this.heap = new int[Math.max(1, initialCapacity)];
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Inserts a cell that is not already queued.
+     * @param node the index of the cell to be added.
+     */
+    void add(int node) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, heap.length * 2);
+        }
+        siftUp(size++, node);
+    }
+
+    /**
+     * Removes and returns the cell with the lowest total score. The heap must not be empty.
+     * @return the index of the cell with the lowest total score.
+     */
+    int poll() {
+        int result = heap[0];
+        int last = heap[--size];
+        if (size > 0) {
+            siftDown(0, last);
+        }
+        return result;
+    }
+
+    /**
+     * Removes every cell from the heap.
+     */
+    void clear() {
+        size = 0;
+    }
+
+    private void siftUp(int index, int node) {
+        double score = context.totalScore(node);
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            int parentNode = heap[parent];
+            if (Double.compare(score, context.totalScore(parentNode)) >= 0) {
+                break;
+            }
+            heap[index] = parentNode;
+            index = parent;
+        }
+        heap[index] = node;
+    }
+
+    private void siftDown(int index, int node) {
+        double score = context.totalScore(node);
+        int half = size >>> 1;
+        while (index < half) {
+            int child = (index << 1) + 1;
+            int childNode = heap[child];
+            int right = child + 1;
+            if (right < size && Double.compare(context.totalScore(childNode), context.totalScore(heap[right])) > 0) {
+                child = right;
+                childNode = heap[child];
+            }
+            if (Double.compare(score, context.totalScore(childNode)) <= 0) {
+                break;
+            }
+            heap[index] = childNode;
+            index = child;
+        }
+        heap[index] = node;
+    }
+}
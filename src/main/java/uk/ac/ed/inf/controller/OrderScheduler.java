@@ -0,0 +1,467 @@
+package uk.ac.ed.inf.controller;
+
+import uk.ac.ed.inf.clients.WebServerClient;
+import uk.ac.ed.inf.domain.ItemData;
+import uk.ac.ed.inf.domain.LongLat;
+import uk.ac.ed.inf.domain.Order;
+import uk.ac.ed.inf.domain.Shop;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Chooses which of a day's orders the drone delivers, and in which order, to deliver as much value as its moves
+ * allow. Every order is costed from wherever the previous one left the drone with a StepCostMatrix: the legs to its
+ * shops, in the order ShopSequencer chooses over the same matrix, and to its customer, with a hover at each stop.
+ * A sequence fits if after every order the drone can still fly back to its base, which is what DroneController checks
+ * before it accepts an order.
+ * The sequence is built by greedy insertion of the orders with the most value per move, then shortened with 2-opt and
+ * or-opt moves and filled with any order that still fits. Several chains of simulated annealing then start from that
+ * sequence in parallel, each adding, removing, swapping, moving and reversing orders until it runs out of iterations or
+ * time, and the best sequence any chain finds is improved once more in the same way. Each chain has its own seed, so
+ * with enough time the result only depends on the seed.
+ */
+public class OrderScheduler {
+
+    /**
+     * The time the annealing chains run for when no other budget is given.
+     */
+    public static final Duration DEFAULT_BUDGET = Duration.ofSeconds(1);
+    /**
+     * The iterations each annealing chain runs for at most when no other limit is given.
+     */
+    public static final int DEFAULT_ITERATIONS = 200_000;
+    /**
+     * The moves kept in reserve when no other margin is given, for the moves lost when the drone starts a leg close to
+     * its first point rather than on it.
+     */
+    public static final int DEFAULT_MARGIN = 15;
+    /* Of two sequences of the same value, the shorter one is better, but no number of moves is worth a penny */
+    private static final double STEP_WEIGHT = 1e-4;
+    /* The annealing temperature starts at this fraction of the mean value of an order and cools to a thousandth of it */
+    private static final double INITIAL_TEMPERATURE = 0.3;
+    private static final double FINAL_TEMPERATURE = 0.3e-3;
+    private static final int MAX_SEGMENT = 3;
+
+    private final ItemData itemData;
+    private final WebServerClient webServerClient;
+    private final StepCostMatrix costs;
+    private final LongLat base;
+    private final int budgetSteps;
+    private final Duration timeBudget;
+    private final int chains;
+    private final int maxIterations;
+    private final long seed;
+
+    /**
+     * Creates a scheduler that runs one annealing chain per processor for the default time and iterations.
+     * @param steps the moves the drone has.
+     */
+    public OrderScheduler(ItemData itemData, WebServerClient webServerClient, StepCostMatrix costs, LongLat base,
+                          int steps) {
+        this(itemData, webServerClient, costs, base, steps, DEFAULT_MARGIN, DEFAULT_BUDGET,
+                Runtime.getRuntime().availableProcessors(), DEFAULT_ITERATIONS, 0);
+    }
+
+    /**
+     * @param itemData the shops of the items.
+     * @param webServerClient resolves the What3Words addresses of the shops and customers.
+     * @param costs the moves between points, to which the base, shops and customers are added.
+     * @param base the position of the drone's base, where its flight starts and ends.
+     * @param steps the moves the drone has.
+     * @param margin the moves kept in reserve, at least 0.
+     * @param timeBudget the time after which the annealing chains stop.
+     * @param chains the number of annealing chains, which run in parallel, at least 1.
+     * @param maxIterations the iterations after which each chain stops, at least 0.
+     * @param seed the seed of the first chain; chain i uses seed + i.
+     */
+    public OrderScheduler(ItemData itemData, WebServerClient webServerClient, StepCostMatrix costs, LongLat base,
+                          int steps, int margin, Duration timeBudget, int chains, int maxIterations, long seed) {
+        if (margin < 0 || chains < 1 || maxIterations < 0) {
+            throw new IllegalArgumentException("The margin and iterations cannot be negative and there must be at "
+                    + "least one chain, but they were " + margin + ", " + maxIterations + " and " + chains);
+        }
+        this.itemData = itemData;
+        this.webServerClient = webServerClient;
+        this.costs = costs;
+        this.base = base;
+        this.budgetSteps = steps - margin;
+        this.timeBudget = timeBudget;
+        this.chains = chains;
+        this.maxIterations = maxIterations;
+        this.seed = seed;
+    }
+
+    /**
+     * Chooses the orders to deliver and their order.
+     * @param orders the day's orders.
+     * @return the schedule.
+     */
+    public Schedule schedule(List<Order> orders) {
+        Model model = new Model(orders);
+        Sequence start = model.improve(model.greedy());
+        long deadline = System.nanoTime() + timeBudget.toNanos();
+        List<Sequence> results = ForkJoinPool.commonPool().submit(() -> IntStream.range(0, chains).parallel()
+                .mapToObj(chain -> model.anneal(start, new Random(seed + chain), deadline))
+                .collect(Collectors.toList())).join();
+        Sequence best = start;
+        for (Sequence result : results) {
+            if (result.isBetterThan(best)) {
+                best = result;
+            }
+        }
+        best = model.improve(best);
+
+        List<Order> sequence = new ArrayList<>();
+        boolean[] scheduled = new boolean[orders.size()];
+        for (int i = 0; i < best.length; i++) {
+            sequence.add(orders.get(best.orders[i]));
+            scheduled[best.orders[i]] = true;
+        }
+        List<Integer> rest = IntStream.range(0, orders.size()).filter(i -> !scheduled[i]).boxed()
+                .sorted(Comparator.comparingInt((Integer i) -> model.value[i]).reversed())
+                .collect(Collectors.toList());
+        for (int i : rest) {
+            sequence.add(orders.get(i));
+        }
+        return new Schedule(sequence, best.length, best.value, best.steps);
+    }
+
+    /**
+     * An ordered selection of orders, with its value and the moves it takes, or an infeasible one.
+     */
+    private static class Sequence {
+        final int[] orders;
+        final int length;
+        final int value;
+        final int steps;
+
+        Sequence(int[] orders, int length, int value, int steps) {
+            this.orders = orders;
+            this.length = length;
+            this.value = value;
+            this.steps = steps;
+        }
+
+        double score() {
+            return value - steps * STEP_WEIGHT;
+        }
+
+        boolean isBetterThan(Sequence other) {
+            return value != other.value ? value > other.value : steps < other.steps;
+        }
+    }
+
+    /**
+     * The orders of a day as the points they start and end at and the moves between them.
+     */
+    private class Model {
+        final int orderCount;
+        final int[] value;
+        /* The point each order ends at, its customer, and the moves an order takes from each point it can start at */
+        final int[] customer;
+        final int[][] orderSteps;
+        /* The moves back to the base from each point */
+        final int[] backSteps;
+        final int basePoint;
+        final double meanValue;
+
+        Model(List<Order> orders) {
+            orderCount = orders.size();
+            value = new int[orderCount];
+            customer = new int[orderCount];
+            basePoint = costs.add(base);
+            List<int[]> shopPoints = new ArrayList<>();
+            for (int i = 0; i < orderCount; i++) {
+                Order order = orders.get(i);
+                value[i] = itemData.calculateDeliveryCost(order.getOrderDetails());
+                customer[i] = costs.add(webServerClient.getLongLatFromW3W(order.getDeliverTo()));
+                List<Shop> shops = itemData.findShops(order.getOrderDetails());
+                int[] points = new int[shops.size()];
+                for (int s = 0; s < points.length; s++) {
+                    points[s] = costs.add(itemData.locateShop(shops.get(s), webServerClient::getLongLatFromW3W));
+                }
+                shopPoints.add(points);
+            }
+            meanValue = orderCount == 0 ? 0 : Arrays.stream(value).average().orElse(0);
+            costs.precompute(ForkJoinPool.commonPool());
+
+            /* An order starts at the base or at the customer of another order */
+            orderSteps = new int[costs.size()][];
+            backSteps = new int[costs.size()];
+            List<Integer> starts = new ArrayList<>();
+            starts.add(basePoint);
+            for (int c : customer) {
+                starts.add(c);
+            }
+            for (int start : starts) {
+                if (orderSteps[start] != null) {
+                    continue;
+                }
+                orderSteps[start] = new int[orderCount];
+                backSteps[start] = costs.steps(start, basePoint);
+                for (int i = 0; i < orderCount; i++) {
+                    orderSteps[start][i] = ShopSequencer.tourSteps(costs, start, shopPoints.get(i), customer[i]);
+                }
+            }
+        }
+
+        /**
+         * @return the sequence of the given orders, or null if the drone cannot deliver them all and return.
+         */
+        Sequence evaluate(int[] orders, int length) {
+            int steps = 0;
+            int total = 0;
+            int point = basePoint;
+            for (int k = 0; k < length; k++) {
+                int order = orders[k];
+                steps += orderSteps[point][order];
+                point = customer[order];
+                /* DroneController only accepts an order if the drone can still return afterwards */
+                if (steps + backSteps[point] >= budgetSteps) {
+                    return null;
+                }
+                total += value[order];
+            }
+            return new Sequence(orders, length, total, steps + backSteps[point]);
+        }
+
+        /**
+         * Inserts the order with the most value per added move, at the position where it adds the fewest moves, until
+         * no order fits.
+         */
+        Sequence greedy() {
+            return fill(evaluate(new int[orderCount], 0));
+        }
+
+        private Sequence fill(Sequence sequence) {
+            boolean[] scheduled = scheduled(sequence);
+            while (true) {
+                Sequence best = null;
+                double bestRatio = -1;
+                for (int order = 0; order < orderCount; order++) {
+                    if (scheduled[order]) {
+                        continue;
+                    }
+                    for (int position = 0; position <= sequence.length; position++) {
+                        Sequence candidate = evaluate(inserted(sequence, order, position), sequence.length + 1);
+                        if (candidate == null) {
+                            continue;
+                        }
+                        double ratio = value[order] / (double) Math.max(1, candidate.steps - sequence.steps);
+                        if (ratio > bestRatio) {
+                            bestRatio = ratio;
+                            best = candidate;
+                        }
+                    }
+                }
+                if (best == null) {
+                    return sequence;
+                }
+                sequence = best;
+                scheduled = scheduled(sequence);
+            }
+        }
+
+        /**
+         * Shortens the sequence with 2-opt and or-opt moves, then adds any order that fits and swaps scheduled orders
+         * for more valuable ones, until none of these improve it.
+         */
+        Sequence improve(Sequence sequence) {
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                for (int i = 0; i < sequence.length; i++) {
+                    for (int j = i + 1; j < sequence.length; j++) {
+                        Sequence candidate = evaluate(reversed(sequence, i, j), sequence.length);
+                        if (candidate != null && candidate.isBetterThan(sequence)) {
+                            sequence = candidate;
+                            improved = true;
+                        }
+                    }
+                }
+                for (int segment = 1; segment <= MAX_SEGMENT; segment++) {
+                    for (int i = 0; i + segment <= sequence.length; i++) {
+                        for (int to = 0; to <= sequence.length - segment; to++) {
+                            Sequence candidate = evaluate(moved(sequence, i, segment, to), sequence.length);
+                            if (candidate != null && candidate.isBetterThan(sequence)) {
+                                sequence = candidate;
+                                improved = true;
+                            }
+                        }
+                    }
+                }
+                Sequence filled = fill(sequence);
+                if (filled.isBetterThan(sequence)) {
+                    sequence = filled;
+                    improved = true;
+                }
+                boolean[] scheduled = scheduled(sequence);
+                for (int k = 0; k < sequence.length; k++) {
+                    for (int order = 0; order < orderCount; order++) {
+                        if (scheduled[order] || value[order] <= value[sequence.orders[k]]) {
+                            continue;
+                        }
+                        Sequence candidate = evaluate(replaced(sequence, k, order), sequence.length);
+                        if (candidate != null) {
+                            sequence = candidate;
+                            scheduled = scheduled(sequence);
+                            improved = true;
+                        }
+                    }
+                }
+            }
+            return sequence;
+        }
+
+        /**
+         * Runs one chain of simulated annealing from the given sequence.
+         * @return the best sequence the chain visited.
+         */
+        Sequence anneal(Sequence start, Random random, long deadline) {
+            Sequence current = start;
+            Sequence best = start;
+            long begin = System.nanoTime();
+            long span = Math.max(1, deadline - begin);
+            for (int iteration = 0; iteration < maxIterations; iteration++) {
+                long now = System.nanoTime();
+                if (now - deadline >= 0) {
+                    break;
+                }
+                double progress = Math.max((double) iteration / maxIterations, (double) (now - begin) / span);
+                double temperature = meanValue * INITIAL_TEMPERATURE
+                        * Math.pow(FINAL_TEMPERATURE / INITIAL_TEMPERATURE, progress);
+                Sequence candidate = neighbour(current, random);
+                if (candidate == null) {
+                    continue;
+                }
+                double delta = candidate.score() - current.score();
+                if (delta >= 0 || random.nextDouble() < Math.exp(delta / temperature)) {
+                    current = candidate;
+                    if (current.isBetterThan(best)) {
+                        best = current;
+                    }
+                }
+            }
+            return best;
+        }
+
+        /**
+         * @return a random change to the sequence, or null if the change does not fit.
+         */
+        private Sequence neighbour(Sequence sequence, Random random) {
+            int length = sequence.length;
+            boolean[] scheduled = scheduled(sequence);
+            int unscheduled = orderCount - length;
+            switch (random.nextInt(5)) {
+                case 0:
+                    if (unscheduled == 0) {
+                        return null;
+                    }
+                    return evaluate(inserted(sequence, randomOrder(scheduled, false, random),
+                            random.nextInt(length + 1)), length + 1);
+                case 1:
+                    if (length == 0) {
+                        return null;
+                    }
+                    return evaluate(removed(sequence, random.nextInt(length)), length - 1);
+                case 2:
+                    if (length == 0 || unscheduled == 0) {
+                        return null;
+                    }
+                    return evaluate(replaced(sequence, random.nextInt(length),
+                            randomOrder(scheduled, false, random)), length);
+                case 3:
+                    if (length < 2) {
+                        return null;
+                    }
+                    int segment = 1 + random.nextInt(Math.min(MAX_SEGMENT, length - 1));
+                    return evaluate(moved(sequence, random.nextInt(length - segment + 1), segment,
+                            random.nextInt(length - segment + 1)), length);
+                default:
+                    if (length < 2) {
+                        return null;
+                    }
+                    int i = random.nextInt(length - 1);
+                    return evaluate(reversed(sequence, i, i + 1 + random.nextInt(length - i - 1)), length);
+            }
+        }
+
+        private int randomOrder(boolean[] scheduled, boolean wanted, Random random) {
+            while (true) {
+                int order = random.nextInt(orderCount);
+                if (scheduled[order] == wanted) {
+                    return order;
+                }
+            }
+        }
+
+        private boolean[] scheduled(Sequence sequence) {
+            boolean[] scheduled = new boolean[orderCount];
+            for (int k = 0; k < sequence.length; k++) {
+                scheduled[sequence.orders[k]] = true;
+            }
+            return scheduled;
+        }
+    }
+
+    private static int[] inserted(Sequence sequence, int order, int position) {
+        int[] orders = new int[sequence.orders.length];
+        System.arraycopy(sequence.orders, 0, orders, 0, position);
+        orders[position] = order;
+        System.arraycopy(sequence.orders, position, orders, position + 1, sequence.length - position);
+        return orders;
+    }
+
+    private static int[] removed(Sequence sequence, int position) {
+        int[] orders = new int[sequence.orders.length];
+        System.arraycopy(sequence.orders, 0, orders, 0, position);
+        System.arraycopy(sequence.orders, position + 1, orders, position, sequence.length - position - 1);
+        return orders;
+    }
+
+    private static int[] replaced(Sequence sequence, int position, int order) {
+        int[] orders = sequence.orders.clone();
+        orders[position] = order;
+        return orders;
+    }
+
+    /**
+     * @return the orders with the ones from i to j, inclusive, in reverse.
+     */
+    private static int[] reversed(Sequence sequence, int i, int j) {
+        int[] orders = sequence.orders.clone();
+        for (int a = i, b = j; a < b; a++, b--) {
+            int swap = orders[a];
+            orders[a] = orders[b];
+            orders[b] = swap;
+        }
+        return orders;
+    }
+
+    /**
+     * @return the orders with the segment starting at i moved so that it starts at position to.
+     */
+    private static int[] moved(Sequence sequence, int i, int segment, int to) {
+        int[] rest = removedSegment(sequence, i, segment);
+        int[] orders = new int[sequence.orders.length];
+        System.arraycopy(rest, 0, orders, 0, to);
+        System.arraycopy(sequence.orders, i, orders, to, segment);
+        System.arraycopy(rest, to, orders, to + segment, sequence.length - segment - to);
+        return orders;
+    }
+
+    private static int[] removedSegment(Sequence sequence, int i, int segment) {
+        int[] rest = new int[sequence.orders.length];
+        System.arraycopy(sequence.orders, 0, rest, 0, i);
+        System.arraycopy(sequence.orders, i + segment, rest, i, sequence.length - i - segment);
+        return rest;
+    }
+}
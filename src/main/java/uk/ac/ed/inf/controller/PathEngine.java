@@ -0,0 +1,22 @@
+package uk.ac.ed.inf.controller;
+
+import uk.ac.ed.inf.domain.LongLat;
+
+import java.util.List;
+
+/**
+ * A strategy for finding a path that avoids the no-fly-zones between two points of the confinement area.
+ * Implementations must be safe to call from several threads at once.
+ */
+public interface PathEngine {
+
+    /**
+     * Form a path that avoids no-fly-zones given a start and a destination.
+     *
+     * @param start the starting coordinates.
+     * @param dest the destination coordinates.
+     * @return a list of LongLat objects, the first close to start and the last close to dest, each with line of sight
+     * to the next.
+     */
+    List<LongLat> findPath(LongLat start, LongLat dest);
+}
@@ -1,56 +1,258 @@
 package uk.ac.ed.inf.controller;
 
-import com.mapbox.geojson.Point;
 import com.mapbox.geojson.Polygon;
 
 import uk.ac.ed.inf.domain.LongLat;
 
-import java.awt.geom.Line2D;
-import java.awt.geom.Path2D;
-
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
+import static uk.ac.ed.inf.controller.SearchContext.*;
+
 /*
   * This class contains the pathfinding algorithm that dictates the path of the drone for a given order.
+  * The virtual grid and the no-fly-zone index are immutable once the Pathfinder is created, and every search keeps its
+  * state in a SearchContext borrowed from a pool, so one Pathfinder can answer queries from many threads at once.
  */
-public class Pathfinder {
-    private static final LongLat TOP_LEFT = new LongLat(-3.192473, 55.946233);  // FORREST HILL
-    private static final LongLat TOP_RIGHT = new LongLat(-3.184319, 55.946233); // KFC
-    private static final LongLat BOT_LEFT = new LongLat(-3.192473, 55.942617);  // MEADOWS
-    private static final LongLat BOT_RIGHT = new LongLat(-3.184319, 55.942617); // BUS STOP
-
-    private static final double C_AREA_LENGTH_X = Math.abs(TOP_LEFT.getLongitude() - TOP_RIGHT.getLongitude());
-    private static final double C_AREA_LENGTH_Y = Math.abs(TOP_LEFT.getLatitude() - BOT_LEFT.getLatitude());
-    public static final double EPSILON = LongLat.CLOSE_DISTANCE / 4; /* Determines the size of the grid cells */
+public class Pathfinder implements PathEngine {
+    public static final double EPSILON = LongLat.CLOSE_DISTANCE / 4; /* The default size of the grid cells */
+    /**
+     * The weight of the heuristic when none is given. A weight of 1 makes the searches find their best path.
+     */
+    public static final double DEFAULT_HEURISTIC_WEIGHT = 1;
+    /**
+     * Anytime searches stop lowering the weight and run a final unweighted search once it is this close to 1.
+     */
+    private static final double MIN_WEIGHT_STEP = 0.05;
+    private static final int LINE_OF_SIGHT_BUCKET_CELLS = 4; /* Side of the no-fly-zone index buckets in cells */
+    /**
+     * The tile limit that makes the Pathfinder rasterize its whole grid up front instead of one tile at a time.
+     */
+    public static final int UNTILED = 0;
+    /**
+     * The side in cells of the tiles of a tiled grid.
+     */
+    public static final int TILE_SIZE = GridTileCache.TILE_SIZE;
 
     /**
-     * The grid of nodes used by the Theta* algorithm.
+     * The area covered by the virtual grid and the size of its cells.
+     */
+    private final ServiceArea serviceArea;
+    /**
+     * The grid used by the Theta* algorithm.
      */
-    private static List<List<GridNode>> virtualGrid;
+    private final VirtualGrid virtualGrid;
     /**
      * The noFlyZones as a list of Polygons.
      */
     private final List<Polygon> noFlyZones;
     /**
-     * The noFlyZones as a list of Line2D objects.
+     * The edges of the noFlyZones, indexed by grid cell for line of sight checks.
      */
-    private final List<Line2D> noFlyZoneEdges = new ArrayList<>();
+    private final NoFlyZoneIndex noFlyZoneIndex;
+    private final JumpPointSearch jumpPointSearch;
     /**
-     * The noFlyZones as a list of Path2D objects.
+     * The headings that are legal from anywhere in each cell, or null for a tiled grid.
      */
-    private final List<Path2D> noFlyZonePaths = new ArrayList<>();
+    private final HeadingMasks headingMasks;
+    /**
+     * The search contexts that are not in use by any search. A search borrows one, or creates one if there are none,
+     * and returns it when it finishes, so there are never more contexts than concurrent searches.
+     */
+    private final Deque<SearchContext> idleContexts = new ConcurrentLinkedDeque<>();
+    /**
+     * The work done by all searches of this Pathfinder.
+     */
+    private final SearchStatistics statistics = new SearchStatistics();
+
+    /**
+     * The variants of the Theta* search.
+     */
+    public enum Algorithm {
+        /**
+         * Theta*, which checks line of sight between a node's parent and each neighbour when relaxing the neighbour.
+         */
+        THETA_STAR,
+        /**
+         * Lazy Theta*, which assumes line of sight when relaxing a neighbour and only checks it when the neighbour is
+         * expanded, so most of the checks made by Theta* are never needed.
+         */
+        LAZY_THETA_STAR,
+        /**
+         * Jump Point Search, which only expands the cells where an optimal 8-connected path may turn, followed by
+         * removing every turn whose neighbours can see each other.
+         */
+        JUMP_POINT_SEARCH
+    }
 
     public Pathfinder(List<Polygon> noFlyZones) {
+        this(noFlyZones, null);
+    }
+
+    /**
+     * Creates a Pathfinder that reuses the grid stored in the given snapshot store if it was computed from the same
+     * no-fly-zones, and stores the grid there otherwise.
+     * @param noFlyZones the no-fly-zone polygons.
+     * @param snapshotStore the store of the computed grid, or null to always compute the grid.
+     */
+    public Pathfinder(List<Polygon> noFlyZones, GridSnapshotStore snapshotStore) {
+        this(noFlyZones, snapshotStore, ServiceArea.DEFAULT);
+    }
+
+    /**
+     * Creates a Pathfinder whose virtual grid covers the given area.
+     * @param noFlyZones the no-fly-zone polygons.
+     * @param snapshotStore the store of the computed grid, or null to always compute the grid.
+     * @param serviceArea the area covered by the grid and the size of its cells.
+     */
+    public Pathfinder(List<Polygon> noFlyZones, GridSnapshotStore snapshotStore, ServiceArea serviceArea) {
+        this(noFlyZones, snapshotStore, serviceArea, UNTILED);
+    }
+
+    /**
+     * Creates a Pathfinder whose virtual grid covers the given area, and which either rasterizes the whole grid up
+     * front or rasterizes tiles of TILE_SIZE by TILE_SIZE cells as they are first read. A tiled grid only costs time
+     * and memory for the tiles near the paths that are searched, which suits areas much larger than the ones flown.
+     * @param noFlyZones the no-fly-zone polygons.
+     * @param snapshotStore the store of the computed grid, or null to always compute the grid. Tiled grids are never
+     * stored.
+     * @param serviceArea the area covered by the grid and the size of its cells.
+     * @param maxCachedTiles the number of tiles that are kept rasterized at most, or UNTILED.
+     */
+    public Pathfinder(List<Polygon> noFlyZones, GridSnapshotStore snapshotStore, ServiceArea serviceArea,
+                      int maxCachedTiles) {
+        this(noFlyZones, serviceArea, createGrid(noFlyZones, snapshotStore, serviceArea, maxCachedTiles));
+        if (headingMasks != null) {
+            loadHeadingMasks(snapshotStore);
+        }
+    }
+
+    /**
+     * Creates a Pathfinder over a grid that was already computed from the given no-fly-zones. The heading masks of the
+     * cells are computed as they are first needed.
+     */
+    Pathfinder(List<Polygon> noFlyZones, ServiceArea serviceArea, VirtualGrid virtualGrid) {
         this.noFlyZones = noFlyZones;
-        storeNoFlyZones(noFlyZones);
-        generateGrid();
+        this.serviceArea = Objects.requireNonNull(serviceArea);
+        this.virtualGrid = virtualGrid;
+        this.noFlyZoneIndex = new NoFlyZoneIndex(noFlyZones, virtualGrid, LINE_OF_SIGHT_BUCKET_CELLS);
+        this.jumpPointSearch = new JumpPointSearch(virtualGrid);
+        /* A tiled grid covers an area too large to keep a mask for every cell */
+        this.headingMasks = virtualGrid.tiles() == null ? new HeadingMasks(virtualGrid, noFlyZoneIndex) : null;
+    }
+
+    /**
+     * Loads the heading masks of every cell from the snapshot store, or computes them all in parallel and stores them
+     * if they are not there.
+     */
+    private void loadHeadingMasks(GridSnapshotStore snapshotStore) {
+        byte[] fingerprint = GridSnapshotStore.fingerprint(noFlyZones, serviceArea.getMinLongitude(),
+                serviceArea.getMinLatitude(), serviceArea.getMaxLongitude(), serviceArea.getMaxLatitude(),
+                serviceArea.getResolution(), serviceArea.getRows(), serviceArea.getCols());
+        long[] stored = snapshotStore == null ? null : snapshotStore.loadHeadingMasks(fingerprint, headingMasks.size());
+        if (stored != null) {
+            headingMasks.load(stored);
+            return;
+        }
+        headingMasks.computeAll(ForkJoinPool.commonPool());
+        if (snapshotStore != null) {
+            snapshotStore.saveHeadingMasks(fingerprint, headingMasks.toArray());
+        }
+    }
+
+    /**
+     * Returns a read-only view of the virtual grid as rows of GridNode objects.
+     * @return the rows of the virtual grid.
+     */
+    public List<List<GridNode>> getVirtualGrid() {
+        return virtualGrid.asRows();
     }
 
-    public static List<List<GridNode>> getVirtualGrid() {
+    /**
+     * @return the no-fly-zones this Pathfinder avoids.
+     */
+    public List<Polygon> getNoFlyZones() {
+        return Collections.unmodifiableList(noFlyZones);
+    }
+
+    public ServiceArea getServiceArea() {
+        return serviceArea;
+    }
+
+    VirtualGrid grid() {
         return virtualGrid;
     }
 
+    /**
+     * @return the number of tiles of a tiled grid that are currently rasterized, or 0 if the grid is not tiled.
+     */
+    public int getResidentTileCount() {
+        GridTileCache tiles = virtualGrid.tiles();
+        return tiles == null ? 0 : tiles.getResidentTiles();
+    }
+
+    /**
+     * @return the number of times a tile of a tiled grid was rasterized, or 0 if the grid is not tiled.
+     */
+    public long getRasterizedTileCount() {
+        GridTileCache tiles = virtualGrid.tiles();
+        return tiles == null ? 0 : tiles.getRasterizedTiles();
+    }
+
+    /**
+     * @return the number of cells the idle search contexts hold search state for: every cell of the grid for each
+     * context of a grid rasterized up front, and only the cells of the tiles its searches touched for each context of
+     * a tiled grid.
+     */
+    public long getSearchStateCells() {
+        long cells = 0;
+        for (SearchContext context : idleContexts) {
+            cells += context.allocatedCells();
+        }
+        return cells;
+    }
+
+    public SearchStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Returns a path engine that runs the given variant of the search on this Pathfinder's grid.
+     * @param algorithm the search variant.
+     * @return the path engine.
+     */
+    public PathEngine engine(Algorithm algorithm) {
+        return engine(algorithm, DEFAULT_HEURISTIC_WEIGHT);
+    }
+
+    /**
+     * Returns a path engine that runs the given variant of the search on this Pathfinder's grid, with the heuristic
+     * inflated by the given weight.
+     * @param algorithm the search variant.
+     * @param weight the factor by which the heuristic is inflated, at least 1.
+     * @return the path engine.
+     */
+    public PathEngine engine(Algorithm algorithm, double weight) {
+        checkWeight(weight);
+        return (start, dest) -> search(start, dest, algorithm, weight).getPath();
+    }
+
+    /**
+     * Returns a path engine that runs anytime searches on this Pathfinder's grid.
+     * @param algorithm the search variant.
+     * @param initialWeight the weight of the first search, at least 1.
+     * @param budget the time after which no further searches are started.
+     * @return the path engine.
+     * @see #searchAnytime(LongLat, LongLat, Algorithm, double, Duration)
+     */
+    public PathEngine anytimeEngine(Algorithm algorithm, double initialWeight, Duration budget) {
+        checkWeight(initialWeight);
+        return (start, dest) -> searchAnytime(start, dest, algorithm, initialWeight, budget).getPath();
+    }
+
     /**
      * Form a path that avoids no-fly-zones given a start and a destination.
      *
@@ -58,193 +260,406 @@ public class Pathfinder {
      * @param dest the destination coordinates.
      * @return a list of LongLat objects.
      */
+    @Override
     public List<LongLat> findPath(LongLat start, LongLat dest) {
-        resetGrid();
-        int[] startIndices = getRowColFromLongLat(start);
-        int[] destIndices = getRowColFromLongLat(dest);
+        return findPath(start, dest, Algorithm.THETA_STAR);
+    }
+
+    /**
+     * Form a path that avoids no-fly-zones given a start and a destination, using the given variant of the search.
+     *
+     * @param start the starting coordinates.
+     * @param dest the destination coordinates.
+     * @param algorithm the search variant.
+     * @return a list of LongLat objects.
+     */
+    public List<LongLat> findPath(LongLat start, LongLat dest, Algorithm algorithm) {
+        return search(start, dest, algorithm, DEFAULT_HEURISTIC_WEIGHT).getPath();
+    }
+
+    /**
+     * Form a path that avoids no-fly-zones given a start and a destination, with the heuristic inflated by the given
+     * weight. A higher weight makes the search expand fewer cells in exchange for a possibly longer path.
+     *
+     * @param start the starting coordinates.
+     * @param dest the destination coordinates.
+     * @param algorithm the search variant.
+     * @param weight the factor by which the heuristic is inflated, at least 1.
+     * @return the path and the weight of its search, which is 1 if no search was needed.
+     */
+    public SearchResult search(LongLat start, LongLat dest, Algorithm algorithm, double weight) {
+        checkWeight(weight);
+        int startNode = cellOf(start);
+        int destNode = cellOf(dest);
+        if (hasDirectPath(startNode, destNode)) {
+            return new SearchResult(directPath(startNode, destNode), 1);
+        }
+        List<Integer> nodeList = searchGrid(startNode, destNode, algorithm, weight, NO_DEADLINE);
+        return new SearchResult(toCoordinates(nodeList), weight);
+    }
 
-        GridNode startNode = virtualGrid.get(startIndices[0]).get(startIndices[1]);
-        GridNode destNode = virtualGrid.get(destIndices[0]).get(destIndices[1]);
+    /**
+     * Form a path that avoids no-fly-zones given a start and a destination within a time budget. The first search
+     * uses the initial weight and always runs to completion. While the budget lasts, the search is repeated with
+     * smaller weights down to 1, and searches that run out of time are abandoned. The shortest path found is returned.
+     *
+     * @param start the starting coordinates.
+     * @param dest the destination coordinates.
+     * @param algorithm the search variant.
+     * @param initialWeight the weight of the first search, at least 1.
+     * @param budget the time after which no further searches are started and running ones are abandoned.
+     * @return the shortest path found and the smallest weight of the searches that completed.
+     */
+    public SearchResult searchAnytime(LongLat start, LongLat dest, Algorithm algorithm, double initialWeight,
+                                      Duration budget) {
+        checkWeight(initialWeight);
+        long deadline = System.nanoTime() + budget.toNanos();
+        int startNode = cellOf(start);
+        int destNode = cellOf(dest);
+        if (hasDirectPath(startNode, destNode)) {
+            return new SearchResult(directPath(startNode, destNode), 1);
+        }
 
-        List<GridNode> nodeList = findPathOnGrid(startNode, destNode);
-        Collections.reverse(nodeList);
+        double weight = initialWeight;
+        List<Integer> best = searchGrid(startNode, destNode, algorithm, weight, NO_DEADLINE);
+        double bestLength = pathLength(best);
+        double bestWeight = weight;
+        while (weight > 1 && System.nanoTime() - deadline < 0) {
+            weight = weight - 1 < MIN_WEIGHT_STEP ? 1 : 1 + (weight - 1) / 2;
+            List<Integer> nodeList = searchGrid(startNode, destNode, algorithm, weight, deadline);
+            if (nodeList == null) {
+                break;
+            }
+            bestWeight = weight;
+            double length = pathLength(nodeList);
+            if (length < bestLength) {
+                best = nodeList;
+                bestLength = length;
+            }
+        }
+        return new SearchResult(toCoordinates(best), bestWeight);
+    }
+
+    private static void checkWeight(double weight) {
+        if (!(weight >= 1)) {
+            throw new IllegalArgumentException("The heuristic weight must be at least 1, but was " + weight);
+        }
+    }
+
+    /**
+     * @param pos the LongLat position.
+     * @return the index of the cell that contains the position.
+     * @throws IllegalArgumentException if the position lies outside the grid.
+     */
+    int cellOf(LongLat pos) {
+        int[] rowCol = getRowColFromLongLat(pos);
+        if (!virtualGrid.contains(rowCol[0], rowCol[1])) {
+            throw new IllegalArgumentException("The position " + pos + " is outside the grid");
+        }
+        return virtualGrid.index(rowCol[0], rowCol[1]);
+    }
+
+    /**
+     * If the two cells can see each other, the straight line is the shortest path and no search is needed.
+     */
+    boolean hasDirectPath(int startNode, int destNode) {
+        if (startNode != destNode && lineOfSight(startNode, destNode)) {
+            statistics.record(0, 1);
+            return true;
+        }
+        return false;
+    }
+
+    List<LongLat> directPath(int startNode, int destNode) {
+        return List.of(virtualGrid.coordinates(startNode), virtualGrid.coordinates(destNode));
+    }
+
+    /**
+     * Runs one search on a search context borrowed from the pool.
+     * @return the cell indices of the path from the start to the end, or null if the search ran past the deadline.
+     */
+    private List<Integer> searchGrid(int startNode, int destNode, Algorithm algorithm, double weight,
+                                     long deadline) {
+        SearchContext context = idleContexts.pollFirst();
+        if (context == null) {
+            context = new SearchContext(virtualGrid);
+        }
+        List<Integer> nodeList;
+        try {
+            context.reset(deadline);
+            context.lineOfSightChecks = startNode != destNode ? 1 : 0;
+            switch (algorithm) {
+                case LAZY_THETA_STAR:
+                    nodeList = findPathOnGridLazily(context, startNode, destNode, weight);
+                    break;
+                case JUMP_POINT_SEARCH:
+                    nodeList = jumpPointSearch.findPath(context, startNode, destNode, weight);
+                    if (nodeList != null) {
+                        nodeList = smoothPath(context, nodeList);
+                    }
+                    break;
+                default:
+                    nodeList = findPathOnGrid(context, startNode, destNode, weight);
+            }
+            statistics.record(context.expansions, context.lineOfSightChecks);
+        } finally {
+            idleContexts.offerFirst(context);
+        }
+        if (nodeList != null) {
+            Collections.reverse(nodeList);
+        }
+        return nodeList;
+    }
+
+    List<LongLat> toCoordinates(List<Integer> nodeList) {
         return nodeList.stream()
-                .map(GridNode::getCoordinates)
+                .map(virtualGrid::coordinates)
                 .collect(Collectors.toList());
     }
 
+    private double pathLength(List<Integer> nodeList) {
+        double length = 0;
+        for (int i = 1; i < nodeList.size(); i++) {
+            length += virtualGrid.distance(nodeList.get(i - 1), nodeList.get(i));
+        }
+        return length;
+    }
+
     /**
      * This method implements the Theta-star (θ*) algorithm that finds a near optimal any-angle path between two points.
      * This algorithm is a modified version of the A-star pathfinding algorithm.
-     * @param start the starting node.
-     * @param end the end node.
-     * @return A list of nodes that form a near-optimal path.
-     */
-    private List<GridNode> findPathOnGrid(GridNode start, GridNode end) {
-        PriorityQueue<GridNode> openQueue =
-                new PriorityQueue<>(300, Comparator.comparingDouble(GridNode::getTotalScore));
-        List<GridNode> closedList = new ArrayList<>();
-        start.setScoreFromStart(0);
-        openQueue.add(start);
-        GridNode currentNode;
-
-        while (!openQueue.isEmpty()) {
-            /* Get the best node from the queue and remove it from the list */
-            currentNode = openQueue.poll();
+     * @param context the search state, which must have been reset for this search.
+     * @param start the index of the starting cell.
+     * @param end the index of the end cell.
+     * @param weight the factor by which the heuristic is inflated.
+     * @return A list of cell indices that form a near-optimal path, from the end to the start, or null if the search
+     * ran past its deadline.
+     */
+    private List<Integer> findPathOnGrid(SearchContext context, int start, int end, double weight) {
+        NodeHeap openHeap = context.openHeap;
+        int[] neighbours = context.neighbours;
+
+        context.touch(start);
+        context.setScoreFromStart(start, 0);
+        context.setState(start, OPEN);
+        openHeap.add(start);
+        int currentNode;
+
+        while (!openHeap.isEmpty()) {
+            /* Get the best node from the heap and remove it from the open set */
+            currentNode = openHeap.poll();
+            context.expansions++;
+            if (context.pastDeadline()) {
+                return null;
+            }
 
             /* if current node is the destination, generate route and return it */
-            if (currentNode.equals(end)) {
-                return reconstructPath(end);
+            if (currentNode == end) {
+                return context.reconstructPath(end);
             }
 
-            /* Add currentNode to the closedList and consider its neighbours */
-            closedList.add(currentNode);
-            List<GridNode> neighbours = currentNode.getNeighbours();
+            /* Move currentNode to the closed set and consider its neighbours */
+            context.setState(currentNode, CLOSED);
+            int neighbourCount = virtualGrid.neighbours(currentNode, neighbours);
 
-            for (GridNode neighbour : neighbours) {
+            for (int i = 0; i < neighbourCount; i++) {
+                int neighbour = neighbours[i];
+                context.touch(neighbour);
 
-                /* If the neighbour is already in open list or closed list through a shorter path, skip it */
-                double newDistFromParent = neighbour.getCoordinates().distanceTo(currentNode.getCoordinates());
+                /* If the neighbour is already in open set or closed set through a shorter path, skip it */
+                double newDistFromParent = virtualGrid.distance(neighbour, currentNode);
 
-                if (closedList.contains(neighbour) &&
-                        neighbour.getScoreFromStart() < currentNode.getScoreFromStart() + newDistFromParent) {
-                    continue;
-                }
-                if (openQueue.contains(neighbour) &&
-                        neighbour.getScoreFromStart() < currentNode.getScoreFromStart() + newDistFromParent) {
+                if (context.state(neighbour) != UNSEEN && context.scoreFromStart(neighbour)
+                        < context.scoreFromStart(currentNode) + newDistFromParent) {
                     continue;
                 }
 
-
                 /* If the neighbour has line of sight with the parent of the current node, ignore current node */
-                if (currentNode.getParent() != null
-                        && lineOfSight(currentNode.getParent().getCoordinates(), neighbour.getCoordinates())) {
-                    neighbour.setParent(currentNode.getParent());
-                } else {
-                    neighbour.setParent(currentNode);
-                }
+                int grandParent = context.parent(currentNode);
+                int newParent = grandParent != NO_PARENT && lineOfSight(context, grandParent, neighbour)
+                        ? grandParent : currentNode;
+                context.setParent(neighbour, newParent);
 
                 /* Update neighbour scores*/
-                neighbour.calcDistanceScore(end); /* h(n), the heuristic */
-                neighbour.calcScoreFromStart();   /* g(n)                */
-                neighbour.calcTotalScore();       /* h(n) + g(n)         */
-
-                /* If block has not been visited before, add it to the open queue */
-                if (!openQueue.contains(neighbour) && !closedList.contains(neighbour)) {
-                    openQueue.add(neighbour);
+                double distanceScore = virtualGrid.distance(neighbour, end);  /* h(n), the heuristic */
+                double score = context.scoreFromStart(newParent)
+                        + virtualGrid.distance(neighbour, newParent);         /* g(n)                */
+                context.setScoreFromStart(neighbour, score);
+                context.setTotalScore(neighbour, (distanceScore * weight) + score);
+
+                /* If block has not been visited before, add it to the open set. A node that is already queued keeps its
+                 heap slot, exactly as it did in the PriorityQueue, so that the resulting paths do not change. */
+                if (context.state(neighbour) == UNSEEN) {
+                    context.setState(neighbour, OPEN);
+                    openHeap.add(neighbour);
                 }
             }
         }
         System.err.println("Pathfinder could not find path");
-        return List.of(end);
+        return new ArrayList<>(List.of(end));
     }
 
     /**
-     * Populates the virtual grid with initialised GridNode objects.
+     * This method implements the Lazy Theta* algorithm. A neighbour is always given the parent of the current node
+     * as if they had line of sight, and the line of sight is only checked when the neighbour is expanded. If it turns
+     * out to be blocked, the node takes the best of its expanded neighbours as its parent instead. Neighbours that are
+     * adjacent to their parent are never checked, since adjacent walkable cells can always see each other.
+     * @param context the search state, which must have been reset for this search.
+     * @param start the index of the starting cell.
+     * @param end the index of the end cell.
+     * @param weight the factor by which the heuristic is inflated.
+     * @return A list of cell indices that form a near-optimal path, from the end to the start, or null if the search
+     * ran past its deadline.
      */
-    private void generateGrid() {
-        virtualGrid = new ArrayList<>();
-        int gridSizeY = (int) Math.round(C_AREA_LENGTH_Y / EPSILON);
-        int gridSizeX = (int) Math.round(C_AREA_LENGTH_X / EPSILON);
+    private List<Integer> findPathOnGridLazily(SearchContext context, int start, int end, double weight) {
+        NodeHeap openHeap = context.openHeap;
+        int[] neighbours = context.neighbours;
+
+        context.touch(start);
+        context.setScoreFromStart(start, 0);
+        context.setState(start, OPEN);
+        openHeap.add(start);
+
+        while (!openHeap.isEmpty()) {
+            int currentNode = openHeap.poll();
+            context.expansions++;
+            if (context.pastDeadline()) {
+                return null;
+            }
+            int neighbourCount = virtualGrid.neighbours(currentNode, neighbours);
+
+            /* Check the line of sight that was assumed when the node was relaxed, and repair the parent if needed */
+            int assumedParent = context.parent(currentNode);
+            if (assumedParent != NO_PARENT && !isAdjacent(assumedParent, currentNode)
+                    && !lineOfSight(context, assumedParent, currentNode)) {
+                context.setScoreFromStart(currentNode, Double.MAX_VALUE);
+                for (int i = 0; i < neighbourCount; i++) {
+                    int neighbour = neighbours[i];
+                    context.touch(neighbour);
+                    if (context.state(neighbour) != CLOSED) {
+                        continue;
+                    }
+                    double score = context.scoreFromStart(neighbour) + virtualGrid.distance(neighbour, currentNode);
+                    if (score < context.scoreFromStart(currentNode)) {
+                        context.setScoreFromStart(currentNode, score);
+                        context.setParent(currentNode, neighbour);
+                    }
+                }
+            }
 
-        for (int row = 0; row < gridSizeY; row++) {
-            virtualGrid.add(new ArrayList<>());
-            for (int col = 0; col < gridSizeX; col++) {
-                virtualGrid.get(row).add(createNode(row, col));
+            /* if current node is the destination, generate route and return it */
+            if (currentNode == end) {
+                return context.reconstructPath(end);
+            }
+            context.setState(currentNode, CLOSED);
+
+            /* The parent every neighbour is given, assuming it can see the neighbour */
+            int candidateParent = context.parent(currentNode) != NO_PARENT ? context.parent(currentNode) : currentNode;
+            for (int i = 0; i < neighbourCount; i++) {
+                int neighbour = neighbours[i];
+                context.touch(neighbour);
+                if (context.state(neighbour) == CLOSED) {
+                    continue;
+                }
+                double score = context.scoreFromStart(candidateParent)
+                        + virtualGrid.distance(neighbour, candidateParent);
+                if (score < context.scoreFromStart(neighbour)) {
+                    context.setParent(neighbour, candidateParent);
+                    context.setScoreFromStart(neighbour, score);
+                    context.setTotalScore(neighbour, (virtualGrid.distance(neighbour, end) * weight) + score);
+                    /* As in findPathOnGrid, a node that is already queued keeps its heap slot */
+                    if (context.state(neighbour) == UNSEEN) {
+                        context.setState(neighbour, OPEN);
+                        openHeap.add(neighbour);
+                    }
+                }
             }
         }
+        System.err.println("Pathfinder could not find path");
+        return new ArrayList<>(List.of(end));
     }
 
     /**
-     * Resets the parent and scoreFromStart of every node back to default values. This function must be called every
-     * time the Pathfinder must find a new path.
+     * Removes every turn of a path whose previous and next turns can see each other. Each remaining turn is the last
+     * cell of the path that can be seen from the turn before it.
+     * @param context the search state, which counts the line of sight checks.
+     * @param path the cell indices of the path.
+     * @return the cell indices of the smoothed path, in the same order.
      */
-    private void resetGrid() {
-        for (List<GridNode> row : virtualGrid) {
-            for (GridNode node : row) {
-                node.setParent(null);
-                node.setScoreFromStart(Double.MAX_VALUE);
-            }
-        }
+    private List<Integer> smoothPath(SearchContext context, List<Integer> path) {
+        List<Integer> smoothed = new ArrayList<>();
+        context.lineOfSightChecks += smoothPath(path, smoothed);
+        return smoothed;
     }
 
     /**
-     * Converts the no-fly-zone polygons to Path2D and line2D objects and adds them to the noFlyZonePaths and
-     * noFlyZoneEdges lists. There is some data duplication here, but it should not cause any memory issues due to its
-     * size.
-     * @param noFlyZones List of Polygon objects
+     * Removes every turn of a path whose previous and next turns can see each other.
+     * @param path the cell indices of the path.
+     * @param smoothed receives the cell indices of the smoothed path, in the same order.
+     * @return the number of line of sight checks made.
      */
-    private void storeNoFlyZones(List<Polygon> noFlyZones) {
-        for (Polygon poly : noFlyZones) {
-            List<Point> points = poly.outer().coordinates();
-            Path2D path2D = new Path2D.Double();
-            path2D.moveTo(points.get(0).longitude(), points.get(0).latitude());
-
-            for (int i = 1; i < points.size(); i++) {
-                path2D.lineTo(points.get(i).longitude(), points.get(i).latitude());
-            }
-            noFlyZonePaths.add(path2D);
-
-            for (int j = 0; j < points.size() - 1; j++) {
-                Line2D edge = new Line2D.Double(
-                        points.get(j).longitude(),
-                        points.get(j).latitude(),
-                        points.get(j + 1).longitude(),
-                        points.get(j + 1).latitude()
-                );
-                noFlyZoneEdges.add(edge);
+    int smoothPath(List<Integer> path, List<Integer> smoothed) {
+        if (path.size() < 3) {
+            smoothed.addAll(path);
+            return 0;
+        }
+        int anchor = path.get(0);
+        smoothed.add(anchor);
+        for (int i = 1; i < path.size() - 1; i++) {
+            if (!lineOfSight(anchor, path.get(i + 1))) {
+                anchor = path.get(i);
+                smoothed.add(anchor);
             }
         }
+        smoothed.add(path.get(path.size() - 1));
+        return path.size() - 2;
+    }
+
+    private boolean isAdjacent(int a, int b) {
+        return Math.abs(virtualGrid.row(a) - virtualGrid.row(b)) <= 1
+                && Math.abs(virtualGrid.col(a) - virtualGrid.col(b)) <= 1;
     }
 
     /**
-     * Given a node, reconstruct the path from the given node to the start by repeatedly moving through the parents
-     * of the node.
-     * @param node the GridNode where the path starts.
-     * @return a list of GridNode objects that form a path from the destination to the start.
+     * Creates a grid over the given area, which is either rasterized up front or one tile at a time.
      */
-    private List<GridNode> reconstructPath(GridNode node) {
-        List<GridNode> path = new ArrayList<>();
-        GridNode current = node;
-        while (current != null) {
-            if (path.contains(current)) {
-                System.err.println("Found duplicate while reconstructing path (infinite loop)");
-                return path;
-            }
-            path.add(current);
-            current = current.getParent();
+    private static VirtualGrid createGrid(List<Polygon> noFlyZones, GridSnapshotStore snapshotStore,
+                                          ServiceArea area, int maxCachedTiles) {
+        if (maxCachedTiles == UNTILED) {
+            return generateGrid(noFlyZones, snapshotStore, area);
         }
-        return path;
+        GridTileCache tiles = new GridTileCache(new GridRasterizer(noFlyZones), area, maxCachedTiles);
+        return new VirtualGrid(area.getMinLongitude(), area.getMinLatitude(), area.getResolution(),
+                area.getRows(), area.getCols(), tiles);
     }
 
     /**
-     * Determines if a given position is walkable by taking into account the No-Fly-Zones found on the server. A
-     * position is not walkable if it is inside a No-Fly_Zone or if it is outside the drone confinement area.
-     * To determine whether a LongLat is walkable, the java.awt.Path2D class is used to model the no-fly-zone polygons,
-     * and the built-in contains method is used to check if any edges of the GridNode that surrounds the point is
-     * inside any no-fly-zone polygon.
-     * @param longLat the position to be tested.
-     * @return True if the drone can move to the GridNode at the given position, false otherwise.
+     * Loads the virtual grid from the snapshot store, or rasterizes the no-fly-zones to find the walkable cells if
+     * there is no matching snapshot.
+     * @param noFlyZones the no-fly-zone polygons.
+     * @param snapshotStore the store of the computed grid, or null to always compute the grid.
+     * @param area the area covered by the grid and the size of its cells.
+     * @return the virtual grid over the area.
      */
-    private boolean isLongLatWalkable(LongLat longLat) {
-        Objects.requireNonNull(noFlyZones);
-        List<LongLat> nodeEdges;
-        nodeEdges = getEdgePoints(longLat);
-
-        boolean insideNoFlyZone = false;
-        /* For each polygon, check if any of the edges of the GridNode are inside it */
-        for (Path2D path2D : noFlyZonePaths) {
-            for (LongLat edgePoint : nodeEdges) {
-                insideNoFlyZone = insideNoFlyZone || path2D.contains(edgePoint.getLongitude(), edgePoint.getLatitude());
+    private static VirtualGrid generateGrid(List<Polygon> noFlyZones, GridSnapshotStore snapshotStore,
+                                            ServiceArea area) {
+        int gridSizeY = area.getRows();
+        int gridSizeX = area.getCols();
+        byte[] fingerprint = GridSnapshotStore.fingerprint(noFlyZones, area.getMinLongitude(), area.getMinLatitude(),
+                area.getMaxLongitude(), area.getMaxLatitude(), area.getResolution(), gridSizeY, gridSizeX);
+
+        VirtualGrid grid = snapshotStore == null ? null : snapshotStore.load(fingerprint);
+        if (grid == null) {
+            BitSet walkable = new GridRasterizer(noFlyZones).rasterize(
+                    area.getMinLongitude(), area.getMinLatitude(), area.getMaxLongitude(), area.getMaxLatitude(),
+                    area.getResolution(), gridSizeY, gridSizeX, ForkJoinPool.commonPool());
+            grid = new VirtualGrid(area.getMinLongitude(), area.getMinLatitude(), area.getResolution(),
+                    gridSizeY, gridSizeX, walkable);
+            if (snapshotStore != null) {
+                snapshotStore.save(fingerprint, grid, area.getMaxLongitude(), area.getMaxLatitude());
             }
         }
-
-        boolean outOfBounds = longLat.getLatitude() <= LongLat.MIN_LATITUDE
-                || longLat.getLatitude() >= LongLat.MAX_LATITUDE
-                || longLat.getLongitude() <= LongLat.MIN_LONGITUDE
-                || longLat.getLongitude() >= LongLat.MAX_LONGITUDE;
-
-        return !insideNoFlyZone && !outOfBounds;
+        return grid;
     }
 
     /**
@@ -257,86 +672,88 @@ public class Pathfinder {
      */
     public boolean lineOfSight(LongLat a, LongLat b) {
         Objects.requireNonNull(noFlyZones);
-        double x_1, y_1, x_2, y_2;
-
-        /* Cast a ray between the two points*/
-        x_1 = a.getLongitude();
-        y_1 = a.getLatitude();
-        x_2 = b.getLongitude();
-        y_2 = b.getLatitude();
-        Line2D ray = new Line2D.Double(x_1, y_1, x_2, y_2);
-
-        /* If the ray intersects with any no-fly-zone edge, there is no line of sight */
-        for (Line2D edge : noFlyZoneEdges) {
-            if (ray.intersectsLine(edge)) {
-                return false;
-            }
-        }
+        return lineOfSight(a.getLongitude(), a.getLatitude(), b.getLongitude(), b.getLatitude());
+    }
 
-        return true;
+    /**
+     * Checks whether there is line of sight between the centres of two grid cells.
+     * @param a the index of the cell at the start of the segment.
+     * @param b the index of the cell at the end of the segment.
+     * @return True if there is line of sight between the start and end.
+     */
+    boolean lineOfSight(int a, int b) {
+        return lineOfSight(virtualGrid.longitude(a), virtualGrid.latitude(a),
+                virtualGrid.longitude(b), virtualGrid.latitude(b));
     }
 
     /**
-     * Checks whether a move from the current LongLat with the given angle is valid.
-     *
-     * @param currentPos the current LongLat
-     * @param angle the angle of movement.
-     * @return True if a move towards the given angle would be valid, False otherwise.
+     * Checks whether there is line of sight between the centres of two grid cells, and counts the check as part of the
+     * given search.
      */
-    public boolean canMoveTowards(LongLat currentPos, int angle) {
-        LongLat testPos = currentPos.nextPosition(angle);
-        int[] rowCol = getRowColFromLongLat(testPos);
-        boolean walkable = virtualGrid.get(rowCol[0]).get(rowCol[1]).isWalkable();
-        boolean lineOfSight = lineOfSight(currentPos, testPos);
+    private boolean lineOfSight(SearchContext context, int a, int b) {
+        context.lineOfSightChecks++;
+        return lineOfSight(a, b);
+    }
 
-        return  walkable && lineOfSight;
+    /**
+     * Casts a ray between two points and checks it against the no-fly-zone edges near it.
+     * @param x1 the longitude of the start of the segment.
+     * @param y1 the latitude of the start of the segment.
+     * @param x2 the longitude of the end of the segment.
+     * @param y2 the latitude of the end of the segment.
+     * @return True if the ray does not intersect any no-fly-zone edge.
+     */
+    public boolean lineOfSight(double x1, double y1, double x2, double y2) {
+        return noFlyZoneIndex.lineOfSight(x1, y1, x2, y2);
     }
 
     /**
-     * Create a new GridNode and initialise its instance variables.
-     *
-     * @param row the row of the GridNode on the virtual grid.
-     * @param col the column of the GridNode on the virtual grid.
-     * @return the newly created GridNode.
+     * Checks whether a position lies in a walkable cell of the virtual grid.
+     * @param pos the LongLat position.
+     * @return True if the cell containing the position exists and is walkable.
+     */
+    public boolean isWalkable(LongLat pos) {
+        return isWalkable(pos.getLongitude(), pos.getLatitude());
+    }
+
+    /**
+     * Checks whether a position lies in a walkable cell of the virtual grid.
+     * @param longitude the longitude of the position.
+     * @param latitude the latitude of the position.
+     * @return True if the cell containing the position exists and is walkable.
      */
-    private GridNode createNode(int row, int col) {
-        LongLat longLat = createNodeLongLat(row, col);
-        boolean isWalkable = isLongLatWalkable(longLat);
-        return new GridNode(row, col, longLat, isWalkable);
+    public boolean isWalkable(double longitude, double latitude) {
+        return virtualGrid.isWalkable(rowOf(latitude), colOf(longitude));
     }
 
     /**
-     * Creates and returns a LongLat object that represents the node of the given row and column. This is essentially
-     * where the virtual Grid is mapped to  real world coordinates.
+     * Checks whether a move from the current LongLat with the given angle is valid.
      *
-     * @param row the column of the node on the virtual grid.
-     * @param col the row of the node on the virtual grid.
-     * @return a LongLat object that represents the node with the given row/column.
+     * @param currentPos the current LongLat
+     * @param angle the angle of movement.
+     * @return True if a move towards the given angle would be valid, False otherwise.
      */
-    private LongLat createNodeLongLat(int row, int col) {
-        double latitude = LongLat.MIN_LATITUDE + row * EPSILON + (EPSILON / 2);
-        double longitude = LongLat.MIN_LONGITUDE + col * EPSILON + (EPSILON / 2);
-        return new LongLat(longitude, latitude);
+    public boolean canMoveTowards(LongLat currentPos, int angle) {
+        return canMoveTowards(currentPos.getLongitude(), currentPos.getLatitude(), angle);
     }
 
     /**
-     * Returns a list of LongLat objects representing the bounding box of the GridNode that the LongLat given
-     * belongs to.
+     * Checks whether a move from the given position with the given angle is valid, without allocating.
      *
-     * @param longLat A LongLat object.
-     * @return A list of LongLat Objects.
+     * @param longitude the longitude of the current position.
+     * @param latitude the latitude of the current position.
+     * @param angle the angle of movement, a multiple of 10 degrees.
+     * @return True if a move towards the given angle would be valid, False otherwise.
      */
-    private static List<LongLat> getEdgePoints(LongLat longLat) {
-        List<LongLat> edgePoints = new ArrayList<>();
-        edgePoints.add(new LongLat(
-                longLat.getLongitude() + EPSILON/2, longLat.getLatitude() + EPSILON/2));
-        edgePoints.add(new LongLat(
-                longLat.getLongitude() + EPSILON/2, longLat.getLatitude() - EPSILON/2));
-        edgePoints.add(new LongLat(
-                longLat.getLongitude() - EPSILON/2, longLat.getLatitude() + EPSILON/2));
-        edgePoints.add(new LongLat(
-                longLat.getLongitude() - EPSILON/2, longLat.getLatitude() - EPSILON/2));
-        return edgePoints;
+    public boolean canMoveTowards(double longitude, double latitude, int angle) {
+        /* Most moves are legal from anywhere in the drone's cell, and only the others need the exact checks */
+        if (headingMasks != null && headingMasks.isLegal(rowOf(latitude), colOf(longitude), angle)) {
+            return true;
+        }
+        double nextLongitude = LongLat.nextLongitude(longitude, angle);
+        double nextLatitude = LongLat.nextLatitude(latitude, angle);
+        return isWalkable(nextLongitude, nextLatitude)
+                && lineOfSight(longitude, latitude, nextLongitude, nextLatitude);
     }
 
     /**
@@ -345,10 +762,17 @@ public class Pathfinder {
      * @param pos the LongLat position.
      * @return an array of two integers which are the row and column of the GridNode that contains the given position.
      */
-    public static int[] getRowColFromLongLat(LongLat pos) {
-        int row = (int) Math.round((pos.getLatitude() - LongLat.MIN_LATITUDE - EPSILON/2) / EPSILON);
-        int col = (int) Math.round((pos.getLongitude() - LongLat.MIN_LONGITUDE - EPSILON/2) / EPSILON);
+    public int[] getRowColFromLongLat(LongLat pos) {
+        return new int[]{rowOf(pos.getLatitude()), colOf(pos.getLongitude())};
+    }
+
+    private int rowOf(double latitude) {
+        double epsilon = serviceArea.getResolution();
+        return (int) Math.round((latitude - serviceArea.getMinLatitude() - epsilon/2) / epsilon);
+    }
 
-        return new int[]{row, col};
+    private int colOf(double longitude) {
+        double epsilon = serviceArea.getResolution();
+        return (int) Math.round((longitude - serviceArea.getMinLongitude() - epsilon/2) / epsilon);
     }
 }
@@ -0,0 +1,54 @@
+package uk.ac.ed.inf.controller;
+
+import uk.ac.ed.inf.domain.Order;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The order in which the drone delivers a day's orders, as chosen by an OrderScheduler. The scheduled orders come first
+ * and are expected to fit in the drone's moves; the rest follow by descending value, so the drone still delivers them
+ * if the moves it saved leave room. The drone skips any order that turns out not to fit and goes on with the next.
+ */
+public class Schedule {
+
+    private final List<Order> orders;
+    private final int scheduledCount;
+    private final int value;
+    private final int steps;
+
+    Schedule(List<Order> orders, int scheduledCount, int value, int steps) {
+        this.orders = Collections.unmodifiableList(orders);
+        this.scheduledCount = scheduledCount;
+        this.value = value;
+        this.steps = steps;
+    }
+
+    /**
+     * @return every order, in the order the drone should deliver them.
+     */
+    public List<Order> getOrders() {
+        return orders;
+    }
+
+    /**
+     * @return the orders expected to fit in the drone's moves, in the order the drone should deliver them.
+     */
+    public List<Order> getScheduledOrders() {
+        return orders.subList(0, scheduledCount);
+    }
+
+    /**
+     * @return the value of the scheduled orders in pence.
+     */
+    public int getValue() {
+        return value;
+    }
+
+    /**
+     * @return the moves the scheduled orders are expected to take, including the flight back to the base.
+     */
+    public int getSteps() {
+        return steps;
+    }
+}
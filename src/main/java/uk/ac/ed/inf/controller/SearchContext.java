@@ -0,0 +1,267 @@
+package uk.ac.ed.inf.controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The mutable state of a single Theta* search over a virtual grid: the scores, parents and open/closed state of every
+ * cell, the open set and a scratch array for neighbours. A context is used by one search at a time and reused by the
+ * searches that follow, so its storage is only allocated once. The state is reset lazily: each search starts a new
+ * generation, and the state of a cell is reset the first time the search touches it.
+ * For a grid that is rasterized up front, the state is kept in arrays indexed by cell that cover the whole grid. For a
+ * tiled grid, it is kept in pages of the same square tiles as the grid's walkability, and a page is only allocated when
+ * a search first touches a cell of its tile, so the state takes memory in proportion to the tiles that are searched
+ * rather than to the whole grid. Between searches, once a context holds more pages than the grid keeps tiles
+ * rasterized, every page is dropped, so a context that is reused over many distant searches stays as small as the
+ * walkability it searches.
+ */
+final class SearchContext {
+
+    static final byte UNSEEN = 0;
+    static final byte OPEN = 1;
+    static final byte CLOSED = 2;
+    static final int NO_PARENT = -1;
+    static final long NO_DEADLINE = Long.MAX_VALUE;
+    /* The deadline is checked once every this many expansions. */
+    private static final int DEADLINE_CHECK_MASK = 0xFF;
+    private static final int TILE_SHIFT = GridTileCache.TILE_SHIFT;
+    private static final int TILE_MASK = GridTileCache.TILE_SIZE - 1;
+    private static final int PAGE_CELLS = GridTileCache.TILE_SIZE * GridTileCache.TILE_SIZE;
+
+    /* The search state of a grid rasterized up front, indexed by grid cell, or null for a tiled grid. */
+    private final double[] scoreFromStart;  /* g(n)        */
+    private final double[] totalScore;      /* g(n) + h(n) */
+    private final int[] parent;
+    private final byte[] state;             /* UNSEEN, OPEN or CLOSED */
+    private final int[] generation;         /* The search that last wrote the state of each cell */
+
+    /* The search state of a tiled grid, indexed by tile, with null for the tiles that were not touched, or null for
+    a grid rasterized up front. */
+    private final Page[] pages;
+    private final int cols;
+    private final int tileCols;
+    private final int maxPages;
+    private int allocatedPages;
+
+    private int currentGeneration;
+
+    final NodeHeap openHeap;
+    final int[] neighbours = new int[VirtualGrid.MAX_NEIGHBOURS];
+
+    /* The work done by the current search. */
+    long expansions;
+    long lineOfSightChecks;
+    private long deadline;
+
+    /**
+     * The search state of the cells of one tile, indexed by the row and column of the cell within the tile.
+     */
+    private static class Page {
+        final double[] scoreFromStart = new double[PAGE_CELLS];
+        final double[] totalScore = new double[PAGE_CELLS];
+        final int[] parent = new int[PAGE_CELLS];
+        final byte[] state = new byte[PAGE_CELLS];
+        final int[] generation = new int[PAGE_CELLS];
+    }
+
+    /**
+     * @param grid the grid that is searched.
+     */
+    SearchContext(VirtualGrid grid) {
+        this.cols = grid.getCols();
+        if (grid.tiles() == null) {
+            int size = grid.size();
+            scoreFromStart = new double[size];
+            totalScore = new double[size];
+            parent = new int[size];
+            state = new byte[size];
+            generation = new int[size];
+            pages = null;
+            tileCols = 0;
+            maxPages = 0;
+        } else {
+            scoreFromStart = null;
+            totalScore = null;
+            parent = null;
+            state = null;
+            generation = null;
+            tileCols = (grid.getCols() + TILE_MASK) >> TILE_SHIFT;
+            int tileRows = (grid.getRows() + TILE_MASK) >> TILE_SHIFT;
+            pages = new Page[tileRows * tileCols];
+            maxPages = grid.tiles().getMaxTiles();
+        }
+        openHeap = new NodeHeap(this, 300);
+    }
+
+    /**
+     * Starts a new search generation, which resets the parent, scoreFromStart and open/closed state of every node back
+     * to default values without visiting them. This must be called before every search. The state arrays are only
+     * swept when the generation counter wraps around.
+     * @param deadline the System.nanoTime by which the search must give up, or NO_DEADLINE.
+     */
+    void reset(long deadline) {
+        openHeap.clear();
+        expansions = 0;
+        lineOfSightChecks = 0;
+        this.deadline = deadline;
+        if (pages != null && allocatedPages > maxPages) {
+            Arrays.fill(pages, null);
+            allocatedPages = 0;
+        }
+        currentGeneration++;
+        if (currentGeneration == 0) {
+            if (pages == null) {
+                Arrays.fill(generation, 0);
+            } else {
+                for (Page page : pages) {
+                    if (page != null) {
+                        Arrays.fill(page.generation, 0);
+                    }
+                }
+            }
+            currentGeneration = 1;
+        }
+    }
+
+    /**
+     * @return the number of cells this context holds search state for.
+     */
+    long allocatedCells() {
+        return pages == null ? generation.length : (long) allocatedPages * PAGE_CELLS;
+    }
+
+    /**
+     * Checks whether the search has run past its deadline. The clock is only read every few hundred expansions, so
+     * this is cheap enough to call after every expansion.
+     * @return True if the search must give up.
+     */
+    boolean pastDeadline() {
+        return deadline != NO_DEADLINE && (expansions & DEADLINE_CHECK_MASK) == 0 && System.nanoTime() - deadline > 0;
+    }
+
+    /**
+     * Resets the search state of a node to default values if it was last written by a previous search. This must be
+     * called before the state of a node is read for the first time during a search. On a tiled grid, this allocates
+     * the page of the node's tile if no search has touched it yet.
+     * @param node the index of the cell.
+     */
+    void touch(int node) {
+        if (pages == null) {
+            if (generation[node] != currentGeneration) {
+                generation[node] = currentGeneration;
+                parent[node] = NO_PARENT;
+                scoreFromStart[node] = Double.MAX_VALUE;
+                state[node] = UNSEEN;
+            }
+            return;
+        }
+        int row = node / cols;
+        int col = node - row * cols;
+        int tile = (row >> TILE_SHIFT) * tileCols + (col >> TILE_SHIFT);
+        Page page = pages[tile];
+        if (page == null) {
+            page = new Page();
+            pages[tile] = page;
+            allocatedPages++;
+        }
+        int offset = ((row & TILE_MASK) << TILE_SHIFT) | (col & TILE_MASK);
+        if (page.generation[offset] != currentGeneration) {
+            page.generation[offset] = currentGeneration;
+            page.parent[offset] = NO_PARENT;
+            page.scoreFromStart[offset] = Double.MAX_VALUE;
+            page.state[offset] = UNSEEN;
+        }
+    }
+
+    /* The search state of a cell that was touched by the current search. */
+
+    double scoreFromStart(int node) {
+        return pages == null ? scoreFromStart[node] : page(node).scoreFromStart[offset(node)];
+    }
+
+    void setScoreFromStart(int node, double score) {
+        if (pages == null) {
+            scoreFromStart[node] = score;
+        } else {
+            page(node).scoreFromStart[offset(node)] = score;
+        }
+    }
+
+    double totalScore(int node) {
+        return pages == null ? totalScore[node] : page(node).totalScore[offset(node)];
+    }
+
+    void setTotalScore(int node, double score) {
+        if (pages == null) {
+            totalScore[node] = score;
+        } else {
+            page(node).totalScore[offset(node)] = score;
+        }
+    }
+
+    int parent(int node) {
+        return pages == null ? parent[node] : page(node).parent[offset(node)];
+    }
+
+    void setParent(int node, int parentNode) {
+        if (pages == null) {
+            parent[node] = parentNode;
+        } else {
+            page(node).parent[offset(node)] = parentNode;
+        }
+    }
+
+    byte state(int node) {
+        return pages == null ? state[node] : page(node).state[offset(node)];
+    }
+
+    void setState(int node, byte nodeState) {
+        if (pages == null) {
+            state[node] = nodeState;
+        } else {
+            page(node).state[offset(node)] = nodeState;
+        }
+    }
+
+    /**
+     * @return the page of the tile of a cell that was touched.
+     */
+    private Page page(int node) {
+        int row = node / cols;
+        int col = node - row * cols;
+        return pages[(row >> TILE_SHIFT) * tileCols + (col >> TILE_SHIFT)];
+    }
+
+    /**
+     * @return the index of a cell within the page of its tile.
+     */
+    private int offset(int node) {
+        int row = node / cols;
+        int col = node - row * cols;
+        return ((row & TILE_MASK) << TILE_SHIFT) | (col & TILE_MASK);
+    }
+
+    /**
+     * Given a node, reconstruct the path from the given node to the start by repeatedly moving through the parents
+     * of the node.
+     * @param node the index of the cell where the path starts.
+     * @return a list of cell indices that form a path from the destination to the start.
+     */
+    List<Integer> reconstructPath(int node) {
+        List<Integer> path = new ArrayList<>();
+        Set<Integer> visited = new HashSet<>();
+        int current = node;
+        while (current != NO_PARENT) {
+            if (!visited.add(current)) {
+                System.err.println("Found duplicate while reconstructing path (infinite loop)");
+                return path;
+            }
+            path.add(current);
+            current = parent(current);
+        }
+        return path;
+    }
+}
@@ -0,0 +1,31 @@
+package uk.ac.ed.inf.controller;
+
+import uk.ac.ed.inf.domain.LongLat;
+
+import java.util.List;
+
+/**
+ * A path found by a grid search, together with the weight its heuristic was inflated by. A weight of 1 means the
+ * search was not weighted. The weight is a heuristic factor rather than a bound on how much longer the path is than
+ * the one an unweighted search finds: Theta* does not find the shortest path on its grid, and the searches neither
+ * reorder a queued cell whose score drops nor reopen closed cells, so weighted paths usually stay within the weight of
+ * the unweighted ones but are not guaranteed to.
+ */
+public class SearchResult {
+
+    private final List<LongLat> path;
+    private final double heuristicWeight;
+
+    SearchResult(List<LongLat> path, double heuristicWeight) {
+        this.path = path;
+        this.heuristicWeight = heuristicWeight;
+    }
+
+    public List<LongLat> getPath() {
+        return path;
+    }
+
+    public double getHeuristicWeight() {
+        return heuristicWeight;
+    }
+}
@@ -0,0 +1,53 @@
+package uk.ac.ed.inf.controller;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the work done by the searches of a Pathfinder: how many searches ran, how many nodes they expanded and how
+ * many line of sight checks they made. The counters can be updated by concurrent searches.
+ */
+public class SearchStatistics {
+
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder expansions = new LongAdder();
+    private final LongAdder lineOfSightChecks = new LongAdder();
+
+    /**
+     * Adds the work of one search to the counters.
+     * @param searchExpansions the number of nodes the search expanded.
+     * @param searchLineOfSightChecks the number of line of sight checks the search made.
+     */
+    void record(long searchExpansions, long searchLineOfSightChecks) {
+        searches.increment();
+        expansions.add(searchExpansions);
+        lineOfSightChecks.add(searchLineOfSightChecks);
+    }
+
+    public long getSearches() {
+        return searches.sum();
+    }
+
+    public long getExpansions() {
+        return expansions.sum();
+    }
+
+    public long getLineOfSightChecks() {
+        return lineOfSightChecks.sum();
+    }
+
+    public double getExpansionsPerSearch() {
+        long count = getSearches();
+        return count == 0 ? 0 : (double) getExpansions() / count;
+    }
+
+    public double getLineOfSightChecksPerSearch() {
+        long count = getSearches();
+        return count == 0 ? 0 : (double) getLineOfSightChecks() / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d searches, %.1f expansions and %.1f line of sight checks per search",
+                getSearches(), getExpansionsPerSearch(), getLineOfSightChecksPerSearch());
+    }
+}
@@ -0,0 +1,87 @@
+package uk.ac.ed.inf.controller;
+
+import uk.ac.ed.inf.domain.LongLat;
+
+/**
+ * The rectangle covered by the virtual grid of a Pathfinder and the size of its cells. The default area is the drone
+ * confinement area with cells a quarter of the distance at which two points are close, but any area and resolution
+ * can be given, so the same search code can plan over a larger region or at a finer or coarser resolution.
+ */
+public class ServiceArea {
+
+    /**
+     * The drone confinement area, from the Meadows to KFC, with the default cell size.
+     */
+    public static final ServiceArea DEFAULT = new ServiceArea(LongLat.MIN_LONGITUDE, LongLat.MIN_LATITUDE,
+            LongLat.MAX_LONGITUDE, LongLat.MAX_LATITUDE, Pathfinder.EPSILON);
+
+    private final double minLongitude;
+    private final double minLatitude;
+    private final double maxLongitude;
+    private final double maxLatitude;
+    private final double resolution;
+
+    /**
+     * @param minLongitude the longitude of the west edge of the area.
+     * @param minLatitude the latitude of the south edge of the area.
+     * @param maxLongitude the longitude of the east edge of the area.
+     * @param maxLatitude the latitude of the north edge of the area.
+     * @param resolution the side of each grid cell in degrees.
+     */
+    public ServiceArea(double minLongitude, double minLatitude, double maxLongitude, double maxLatitude,
+                       double resolution) {
+        if (!(minLongitude < maxLongitude) || !(minLatitude < maxLatitude)) {
+            throw new IllegalArgumentException("The service area must have its minimum corner south-west of its "
+                    + "maximum corner");
+        }
+        if (!(resolution > 0) || resolution > maxLongitude - minLongitude || resolution > maxLatitude - minLatitude) {
+            throw new IllegalArgumentException("The grid resolution must be positive and fit in the service area, "
+                    + "but was " + resolution);
+        }
+        this.minLongitude = minLongitude;
+        this.minLatitude = minLatitude;
+        this.maxLongitude = maxLongitude;
+        this.maxLatitude = maxLatitude;
+        this.resolution = resolution;
+    }
+
+    public double getMinLongitude() {
+        return minLongitude;
+    }
+
+    public double getMinLatitude() {
+        return minLatitude;
+    }
+
+    public double getMaxLongitude() {
+        return maxLongitude;
+    }
+
+    public double getMaxLatitude() {
+        return maxLatitude;
+    }
+
+    public double getResolution() {
+        return resolution;
+    }
+
+    /**
+     * @return the number of rows of cells that cover the area.
+     */
+    public int getRows() {
+        return (int) Math.round((maxLatitude - minLatitude) / resolution);
+    }
+
+    /**
+     * @return the number of columns of cells that cover the area.
+     */
+    public int getCols() {
+        return (int) Math.round((maxLongitude - minLongitude) / resolution);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("(%f, %f) to (%f, %f) at %g", minLongitude, minLatitude, maxLongitude, maxLatitude,
+                resolution);
+    }
+}
@@ -0,0 +1,129 @@
+package uk.ac.ed.inf.controller;
+
+import java.util.Arrays;
+
+/**
+ * Chooses the order in which the drone visits the shops of an order, so that the flight from its position through
+ * every shop to the customer is as cheap as possible. The order is found exactly with the Held-Karp dynamic programme
+ * over subsets of the shops, which takes 2^n * n^2 steps for n shops and is quick for the handful of shops an order
+ * can have.
+ * Stops are numbered from 0: the shops are 0 to n - 1, the drone's position is n and the customer is n + 1.
+ */
+public class ShopSequencer {
+
+    /**
+     * The most shops an order can be sequenced over.
+     */
+    public static final int MAX_SHOPS = 12;
+
+    /**
+     * The cost of flying from one stop to another.
+     */
+    @FunctionalInterface
+    public interface LegCost {
+        double cost(int from, int to);
+    }
+
+    private ShopSequencer() {
+    }
+
+    /**
+     * @param shopCount the number of shops, at most MAX_SHOPS.
+     * @param cost the cost of each leg between the stops.
+     * @return the shops in the order of the cheapest flight, the same order every time for the same costs.
+     */
+    public static int[] sequence(int shopCount, LegCost cost) {
+        if (shopCount < 0 || shopCount > MAX_SHOPS) {
+            throw new IllegalArgumentException("Between 0 and " + MAX_SHOPS + " shops can be sequenced, but there "
+                    + "were " + shopCount);
+        }
+        int start = shopCount;
+        int customer = shopCount + 1;
+        int subsets = 1 << shopCount;
+        /* best[subset][last] is the cheapest flight from the start through the subset, ending at its shop last */
+        double[][] best = new double[subsets][shopCount];
+        int[][] previous = new int[subsets][shopCount];
+        for (double[] row : best) {
+            Arrays.fill(row, Double.POSITIVE_INFINITY);
+        }
+        for (int shop = 0; shop < shopCount; shop++) {
+            best[1 << shop][shop] = cost.cost(start, shop);
+            previous[1 << shop][shop] = start;
+        }
+        for (int subset = 1; subset < subsets; subset++) {
+            for (int last = 0; last < shopCount; last++) {
+                if ((subset & 1 << last) == 0 || best[subset][last] == Double.POSITIVE_INFINITY) {
+                    continue;
+                }
+                for (int next = 0; next < shopCount; next++) {
+                    if ((subset & 1 << next) != 0) {
+                        continue;
+                    }
+                    int extended = subset | 1 << next;
+                    double extendedCost = best[subset][last] + cost.cost(last, next);
+                    if (extendedCost < best[extended][next]) {
+                        best[extended][next] = extendedCost;
+                        previous[extended][next] = last;
+                    }
+                }
+            }
+        }
+
+        int[] order = new int[shopCount];
+        if (shopCount == 0) {
+            return order;
+        }
+        int full = subsets - 1;
+        int last = 0;
+        double cheapest = Double.POSITIVE_INFINITY;
+        for (int shop = 0; shop < shopCount; shop++) {
+            double total = best[full][shop] + cost.cost(shop, customer);
+            if (total < cheapest) {
+                cheapest = total;
+                last = shop;
+            }
+        }
+        int subset = full;
+        for (int i = shopCount - 1; i >= 0; i--) {
+            order[i] = last;
+            int before = previous[subset][last];
+            subset &= ~(1 << last);
+            last = before;
+        }
+        return order;
+    }
+
+    /**
+     * Sequences shops over the moves between points of interest.
+     * @param costs the moves between the points.
+     * @param start the index of the drone's position.
+     * @param shops the indices of the shops.
+     * @param customer the index of the customer.
+     * @return the indices of the shops in the order of the flight that takes the fewest moves.
+     */
+    public static int[] sequence(StepCostMatrix costs, int start, int[] shops, int customer) {
+        int[] stops = Arrays.copyOf(shops, shops.length + 2);
+        stops[shops.length] = start;
+        stops[shops.length + 1] = customer;
+        int[] order = sequence(shops.length, (from, to) -> costs.steps(stops[from], stops[to]));
+        int[] sequenced = new int[shops.length];
+        for (int i = 0; i < order.length; i++) {
+            sequenced[i] = shops[order[i]];
+        }
+        return sequenced;
+    }
+
+    /**
+     * @return the moves of an order from a point of interest: to each of its shops in the cheapest order and then to
+     * its customer, with a hover at each stop.
+     */
+    static int tourSteps(StepCostMatrix costs, int start, int[] shops, int customer) {
+        int steps = 0;
+        int from = start;
+        for (int stop : sequence(costs, start, shops, customer)) {
+            steps += costs.steps(from, stop) + 1;
+            from = stop;
+        }
+        return steps + costs.steps(from, customer) + 1;
+    }
+}
@@ -0,0 +1,174 @@
+package uk.ac.ed.inf.controller;
+
+import uk.ac.ed.inf.clients.WebServerClient;
+import uk.ac.ed.inf.domain.ItemData;
+import uk.ac.ed.inf.domain.LongLat;
+import uk.ac.ed.inf.domain.Order;
+import uk.ac.ed.inf.domain.Shop;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * The moves the drone takes to fly between points of interest, such as its base, the shops and the customers, and the
+ * paths it steers along. A leg is costed by flying it exactly as DroneController does, from one point until the drone
+ * is close to the other: along the path of the path engine, or with the move planner if there is one. The drone starts
+ * a leg close to its first point rather than on it, so the cost of a flight can differ from the sum of its legs by a
+ * move or so per leg.
+ * Legs are flown the first time they are needed, or all at once with precompute. Either way, the path between two
+ * points is searched for once and reversed for the way back, since a path is as short one way as the other.
+ * Points are added from one thread, after which legs can be looked up and costed from many threads. A leg is flown
+ * outside the maps that hold the legs and paths, so long searches never hold up other legs; two threads that need the
+ * same leg at once may both fly it, and the first result stored is kept.
+ */
+public class StepCostMatrix {
+
+    private final Pathfinder pathfinder;
+    private final PathEngine pathEngine;
+    private final MoveLatticePlanner movePlanner;
+    private final List<LongLat> points = new ArrayList<>();
+    private final Map<List<Double>, Integer> indices = new HashMap<>();
+    private final Map<Long, Integer> legs = new ConcurrentHashMap<>();
+    private final Map<Long, List<LongLat>> paths = new ConcurrentHashMap<>();
+
+    /**
+     * @param pathfinder the Pathfinder that decides which moves are legal.
+     * @param pathEngine plans the paths the drone steers along.
+     * @param movePlanner plans the exact moves of each leg, or null to steer along the paths of the path engine.
+     */
+    public StepCostMatrix(Pathfinder pathfinder, PathEngine pathEngine, MoveLatticePlanner movePlanner) {
+        this.pathfinder = pathfinder;
+        this.pathEngine = pathEngine;
+        this.movePlanner = movePlanner;
+    }
+
+    /**
+     * Adds a point of interest, unless a point with the same coordinates was already added.
+     * @param point the point.
+     * @return the index of the point.
+     */
+    public int add(LongLat point) {
+        return indices.computeIfAbsent(key(point), key -> {
+            points.add(point);
+            return points.size() - 1;
+        });
+    }
+
+    /**
+     * Adds the points of interest of a day: the base, and the shops and customer of every order.
+     * @param base the position of the drone's base.
+     * @param orders the day's orders.
+     * @param itemData the shops of the items.
+     * @param webServerClient resolves the What3Words addresses of the shops and customers.
+     */
+    public void addOrders(LongLat base, List<Order> orders, ItemData itemData, WebServerClient webServerClient) {
+        add(base);
+        for (Order order : orders) {
+            for (Shop shop : itemData.findShops(order.getOrderDetails())) {
+                add(itemData.locateShop(shop, webServerClient::getLongLatFromW3W));
+            }
+            add(webServerClient.getLongLatFromW3W(order.getDeliverTo()));
+        }
+    }
+
+    /**
+     * @return the index of the point with the same coordinates, or -1 if there is none.
+     */
+    public int indexOf(LongLat point) {
+        return indices.getOrDefault(key(point), -1);
+    }
+
+    public LongLat point(int index) {
+        return points.get(index);
+    }
+
+    public int size() {
+        return points.size();
+    }
+
+    /**
+     * Costs every leg between the points added so far, one pair of points at a time on the given pool.
+     * @param pool the pool on which the legs are costed.
+     */
+    public void precompute(ForkJoinPool pool) {
+        int count = points.size();
+        pool.submit(() -> IntStream.range(0, count * count).parallel().forEach(pair -> {
+            int from = pair / count;
+            int to = pair % count;
+            /* Each pair of points is costed both ways by the task of its lower index */
+            if (from < to) {
+                steps(from, to);
+                steps(to, from);
+            }
+        })).join();
+    }
+
+    /**
+     * @param from the index of the point the drone starts at.
+     * @param to the index of the point the drone flies to.
+     * @return the moves from the first point until the drone is close to the second, not counting any hovering.
+     */
+    public int steps(int from, int to) {
+        if (from == to) {
+            return 0;
+        }
+        long key = key(from, to);
+        Integer known = legs.get(key);
+        if (known != null) {
+            return known;
+        }
+        Integer steps = fly(from, to);
+        Integer stored = legs.putIfAbsent(key, steps);
+        return stored != null ? stored : steps;
+    }
+
+    /**
+     * @param from the index of the point the drone starts at.
+     * @param to the index of the point the drone flies to.
+     * @return the waypoints of the path engine from the first point to the second.
+     */
+    public List<LongLat> path(int from, int to) {
+        long key = key(from, to);
+        List<LongLat> path = paths.get(key);
+        if (path != null) {
+            return path;
+        }
+        List<LongLat> back = paths.get(key(to, from));
+        if (back == null) {
+            path = Collections.unmodifiableList(pathEngine.findPath(points.get(from), points.get(to)));
+        } else {
+            List<LongLat> reversed = new ArrayList<>(back);
+            Collections.reverse(reversed);
+            path = Collections.unmodifiableList(reversed);
+        }
+        List<LongLat> stored = paths.putIfAbsent(key, path);
+        return stored != null ? stored : path;
+    }
+
+    private int fly(int from, int to) {
+        LongLat start = points.get(from);
+        LongLat target = points.get(to);
+        MovePlan plan = movePlanner == null ? null : movePlanner.plan(start, target);
+        if (plan != null) {
+            return plan.getSteps();
+        }
+        MoveKernel kernel = new MoveKernel(pathfinder, false);
+        kernel.moveTo(start);
+        kernel.followPath(path(from, to), target, null);
+        return kernel.getMoves();
+    }
+
+    private static List<Double> key(LongLat point) {
+        return List.of(point.getLongitude(), point.getLatitude());
+    }
+
+    private static long key(int from, int to) {
+        return (long) from << Integer.SIZE | to;
+    }
+}
@@ -0,0 +1,219 @@
+package uk.ac.ed.inf.controller;
+
+import uk.ac.ed.inf.domain.LongLat;
+
+import java.util.AbstractList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * This class represents the virtual grid that is conceptually placed over the drone confinement area. The grid starts
+ * at the south-west corner of the area and the granularity of the grid is defined by epsilon, the size of each cell.
+ * Cells are identified by a single index (row * cols + col) and the grid only stores which cells are walkable; the
+ * coordinates and neighbours of a cell are computed from its index when they are needed. The walkable cells are either
+ * all computed up front, or computed one tile at a time by a GridTileCache when they are first read.
+ */
+public class VirtualGrid {
+
+    /**
+     * The neighbour offsets as (row, column) pairs, in the order in which neighbours are visited.
+     */
+    private static final int[] NEIGHBOUR_ROWS = {-1, 0, 1, 0, 1, -1, 1, -1};
+    private static final int[] NEIGHBOUR_COLS = {0, -1, 0, 1, -1, 1, 1, -1};
+    public static final int MAX_NEIGHBOURS = NEIGHBOUR_ROWS.length;
+
+    private final double originLongitude;
+    private final double originLatitude;
+    private final double epsilon;
+    private final int rows;
+    private final int cols;
+    /* Exactly one of these holds the walkable cells. */
+    private final BitSet walkable;
+    private final GridTileCache tiles;
+
+    VirtualGrid(double originLongitude, double originLatitude, double epsilon, int rows, int cols, BitSet walkable) {
+        this(originLongitude, originLatitude, epsilon, rows, cols, walkable, null);
+    }
+
+    VirtualGrid(double originLongitude, double originLatitude, double epsilon, int rows, int cols,
+                GridTileCache tiles) {
+        this(originLongitude, originLatitude, epsilon, rows, cols, null, tiles);
+    }
+
+    private VirtualGrid(double originLongitude, double originLatitude, double epsilon, int rows, int cols,
+                        BitSet walkable, GridTileCache tiles) {
+        this.originLongitude = originLongitude;
+        this.originLatitude = originLatitude;
+        this.epsilon = epsilon;
+        this.rows = rows;
+        this.cols = cols;
+        this.walkable = walkable;
+        this.tiles = tiles;
+    }
+
+    public double getOriginLongitude() {
+        return originLongitude;
+    }
+
+    public double getOriginLatitude() {
+        return originLatitude;
+    }
+
+    public double getEpsilon() {
+        return epsilon;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int size() {
+        return rows * cols;
+    }
+
+    public int index(int row, int col) {
+        return row * cols + col;
+    }
+
+    public int row(int index) {
+        return index / cols;
+    }
+
+    public int col(int index) {
+        return index % cols;
+    }
+
+    public boolean contains(int row, int col) {
+        return row >= 0 && row < rows && col >= 0 && col < cols;
+    }
+
+    /**
+     * @return the cache of the tiles of the grid, or null if the whole grid was rasterized up front.
+     */
+    GridTileCache tiles() {
+        return tiles;
+    }
+
+    /**
+     * The walkable cells as a little-endian array of 64-bit words, as returned by BitSet.toLongArray. Only grids that
+     * were rasterized up front have these.
+     * @return a new array holding the walkable bits.
+     */
+    long[] walkableWords() {
+        if (walkable == null) {
+            throw new IllegalStateException("A tiled grid is never rasterized whole");
+        }
+        return walkable.toLongArray();
+    }
+
+    public boolean isWalkable(int index) {
+        return tiles == null ? walkable.get(index) : tiles.isWalkable(row(index), col(index));
+    }
+
+    /**
+     * Returns true if the given row and column are inside the grid and the cell they describe is walkable.
+     * @param row the row of the cell.
+     * @param col the column of the cell.
+     * @return true if the cell exists and is walkable, false otherwise.
+     */
+    public boolean isWalkable(int row, int col) {
+        if (!contains(row, col)) {
+            return false;
+        }
+        return tiles == null ? walkable.get(index(row, col)) : tiles.isWalkable(row, col);
+    }
+
+    /**
+     * The longitude of the centre of a cell. This is essentially where the virtual grid is mapped to real world
+     * coordinates.
+     * @param index the index of the cell.
+     * @return the longitude of the centre of the cell.
+     */
+    public double longitude(int index) {
+        return originLongitude + col(index) * epsilon + (epsilon / 2);
+    }
+
+    /**
+     * The latitude of the centre of a cell.
+     * @param index the index of the cell.
+     * @return the latitude of the centre of the cell.
+     */
+    public double latitude(int index) {
+        return originLatitude + row(index) * epsilon + (epsilon / 2);
+    }
+
+    public LongLat coordinates(int index) {
+        return new LongLat(longitude(index), latitude(index));
+    }
+
+    /**
+     * Returns the Pythagorean distance between the centres of two cells. The result is identical to calling
+     * LongLat.distanceTo on the coordinates of the two cells.
+     * @param a the index of the first cell.
+     * @param b the index of the second cell.
+     * @return the distance between the two cells.
+     */
+    public double distance(int a, int b) {
+        return Math.sqrt(Math.pow(longitude(a) - longitude(b), 2) + Math.pow(latitude(a) - latitude(b), 2));
+    }
+
+    /**
+     * Writes the indices of the walkable cells adjacent to the given cell into the given array. Each cell has 8
+     * adjacent cells unless it is at the boundaries of the grid.
+     * @param index the index of the cell.
+     * @param out an array of at least MAX_NEIGHBOURS elements that receives the neighbour indices.
+     * @return the number of neighbours written to the array.
+     */
+    public int neighbours(int index, int[] out) {
+        int row = row(index);
+        int col = col(index);
+        int count = 0;
+        for (int i = 0; i < MAX_NEIGHBOURS; i++) {
+            int neighbourRow = row + NEIGHBOUR_ROWS[i];
+            int neighbourCol = col + NEIGHBOUR_COLS[i];
+            if (isWalkable(neighbourRow, neighbourCol)) {
+                out[count++] = index(neighbourRow, neighbourCol);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns a read-only view of the grid as rows of GridNode objects. The GridNode objects are created on access.
+     * @return the rows of the grid.
+     */
+    public List<List<GridNode>> asRows() {
+        return new AbstractList<>() {
+            @Override
+            public List<GridNode> get(int row) {
+                if (row < 0 || row >= rows) {
+                    throw new IndexOutOfBoundsException("Row " + row + " is outside the grid");
+                }
+                return new AbstractList<>() {
+                    @Override
+                    public GridNode get(int col) {
+                        if (col < 0 || col >= cols) {
+                            throw new IndexOutOfBoundsException("Column " + col + " is outside the grid");
+                        }
+                        int index = index(row, col);
+                        return new GridNode(row, col, coordinates(index), isWalkable(index));
+                    }
+
+                    @Override
+                    public int size() {
+                        return cols;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return rows;
+            }
+        };
+    }
+}
@@ -0,0 +1,240 @@
+package uk.ac.ed.inf.controller;
+
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+import uk.ac.ed.inf.domain.LongLat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Finds shortest paths on the visibility graph of the no-fly-zones. Since the no-fly-zones are a handful of polygons,
+ * a shortest path that avoids them only ever turns at their convex corners. Each convex corner is pushed outwards by a
+ * margin so the drone keeps clear of the buildings, and the graph connects every pair of inflated corners that can see
+ * each other. The graph is built once; a query only connects its start and destination to the corners they can see
+ * and runs A* over the result.
+ * Line of sight and walkability are answered by the Pathfinder, so both engines agree on what is a legal segment.
+ */
+public class VisibilityGraphEngine implements PathEngine {
+
+    /**
+     * Corners sharper than this are pushed out at most this many margins along their bisector, so that a very sharp
+     * corner does not create a far away waypoint.
+     */
+    private static final double MAX_INFLATION = 4;
+
+    private final Pathfinder pathfinder;
+    /**
+     * The clearance between the inflated corners and the edges next to them, one grid cell. A point this far from
+     * every no-fly-zone lies in a walkable cell of the virtual grid, since no corner of its cell can be further than
+     * one cell diagonal.
+     */
+    private final double inflationMargin;
+
+    /* The inflated corners, indexed by vertex. */
+    private final LongLat[] vertexCoordinates;
+    /* The vertices visible from vertex v are adjacency[adjacencyStart[v]] to adjacency[adjacencyStart[v + 1] - 1]. */
+    private final int[] adjacencyStart;
+    private final int[] adjacency;
+
+    /**
+     * Builds the visibility graph of the given no-fly-zones.
+     * @param pathfinder the Pathfinder over the same no-fly-zones, used for line of sight and walkability checks.
+     * @param noFlyZones the no-fly-zone polygons.
+     */
+    public VisibilityGraphEngine(Pathfinder pathfinder, List<Polygon> noFlyZones) {
+        this.pathfinder = pathfinder;
+        this.inflationMargin = pathfinder.getServiceArea().getResolution();
+
+        List<LongLat> corners = new ArrayList<>();
+        for (Polygon polygon : noFlyZones) {
+            addInflatedCorners(polygon, corners);
+        }
+        int count = corners.size();
+        vertexCoordinates = corners.toArray(new LongLat[0]);
+
+        List<List<Integer>> visible = new ArrayList<>();
+        for (int v = 0; v < count; v++) {
+            visible.add(new ArrayList<>());
+        }
+        for (int a = 0; a < count; a++) {
+            for (int b = a + 1; b < count; b++) {
+                if (pathfinder.lineOfSight(vertexCoordinates[a], vertexCoordinates[b])) {
+                    visible.get(a).add(b);
+                    visible.get(b).add(a);
+                }
+            }
+        }
+        adjacencyStart = new int[count + 1];
+        for (int v = 0; v < count; v++) {
+            adjacencyStart[v + 1] = adjacencyStart[v] + visible.get(v).size();
+        }
+        adjacency = new int[adjacencyStart[count]];
+        for (int v = 0; v < count; v++) {
+            for (int i = 0; i < visible.get(v).size(); i++) {
+                adjacency[adjacencyStart[v] + i] = visible.get(v).get(i);
+            }
+        }
+    }
+
+    /**
+     * Pushes every convex corner of the polygon's outer ring outwards along its bisector, far enough that both edges
+     * meeting at the corner are inflationMargin away, and adds the corners that land in walkable cells.
+     */
+    private void addInflatedCorners(Polygon polygon, List<LongLat> out) {
+        List<Point> points = polygon.outer().coordinates();
+        int n = points.size();
+        if (n > 1 && points.get(0).equals(points.get(n - 1))) {
+            n--; /* The ring repeats its first point at the end */
+        }
+        if (n < 3) {
+            return;
+        }
+        double signedArea = 0;
+        for (int i = 0; i < n; i++) {
+            Point p = points.get(i);
+            Point q = points.get((i + 1) % n);
+            signedArea += p.longitude() * q.latitude() - q.longitude() * p.latitude();
+        }
+        double orientation = Math.signum(signedArea); /* 1 if counter-clockwise */
+
+        for (int i = 0; i < n; i++) {
+            Point previous = points.get((i + n - 1) % n);
+            Point corner = points.get(i);
+            Point next = points.get((i + 1) % n);
+            double inX = corner.longitude() - previous.longitude();
+            double inY = corner.latitude() - previous.latitude();
+            double outX = next.longitude() - corner.longitude();
+            double outY = next.latitude() - corner.latitude();
+            double inLength = Math.hypot(inX, inY);
+            double outLength = Math.hypot(outX, outY);
+            if (inLength == 0 || outLength == 0) {
+                continue;
+            }
+            /* Reflex corners can never be on a shortest path around the polygon */
+            double turn = (inX * outY - inY * outX) * orientation;
+            if (turn <= 0) {
+                continue;
+            }
+            /* The outward normals of the two edges; their sum points along the outward bisector */
+            double normalX = orientation * (inY / inLength + outY / outLength);
+            double normalY = -orientation * (inX / inLength + outX / outLength);
+            double normalLength = Math.hypot(normalX, normalY);
+            if (normalLength == 0) {
+                continue;
+            }
+            /* Moving d along the bisector moves d * cos(half the turn) away from each edge */
+            double cosHalfTurn = normalLength / 2;
+            double distance = inflationMargin * Math.min(MAX_INFLATION, 1 / cosHalfTurn);
+            LongLat inflated = new LongLat(corner.longitude() + normalX / normalLength * distance,
+                    corner.latitude() + normalY / normalLength * distance);
+            if (pathfinder.isWalkable(inflated)) {
+                out.add(inflated);
+            }
+        }
+    }
+
+    /**
+     * Finds the shortest path from start to dest through the inflated corners, with A* over the visibility graph.
+     * The start and destination are the last two vertices of the search.
+     *
+     * @param start the starting coordinates.
+     * @param dest the destination coordinates.
+     * @return a list of LongLat objects, from start to dest.
+     */
+    @Override
+    public List<LongLat> findPath(LongLat start, LongLat dest) {
+        if (pathfinder.lineOfSight(start, dest)) {
+            return List.of(start, dest);
+        }
+        int count = vertexCoordinates.length;
+        int startVertex = count;
+        int destVertex = count + 1;
+
+        /* The corners visible from the start and from the destination */
+        BitSet fromStart = new BitSet(count);
+        BitSet toDest = new BitSet(count);
+        for (int v = 0; v < count; v++) {
+            fromStart.set(v, pathfinder.lineOfSight(start, vertexCoordinates[v]));
+            toDest.set(v, pathfinder.lineOfSight(vertexCoordinates[v], dest));
+        }
+
+        double[] scoreFromStart = new double[count + 2];
+        double[] totalScore = new double[count + 2];
+        int[] parent = new int[count + 2];
+        Arrays.fill(scoreFromStart, Double.MAX_VALUE);
+        Arrays.fill(parent, -1);
+        BitSet closed = new BitSet(count + 2);
+        PriorityQueue<Integer> openQueue = new PriorityQueue<>(
+                (a, b) -> Double.compare(totalScore[a], totalScore[b]));
+
+        scoreFromStart[startVertex] = 0;
+        totalScore[startVertex] = start.distanceTo(dest);
+        openQueue.add(startVertex);
+        while (!openQueue.isEmpty()) {
+            int current = openQueue.poll();
+            if (closed.get(current)) {
+                continue;
+            }
+            if (current == destVertex) {
+                return reconstructPath(parent, destVertex, start, dest);
+            }
+            closed.set(current);
+            LongLat currentCoordinates = current == startVertex ? start : vertexCoordinates[current];
+
+            if (current == startVertex) {
+                for (int v = fromStart.nextSetBit(0); v >= 0; v = fromStart.nextSetBit(v + 1)) {
+                    relax(current, v, currentCoordinates, dest, scoreFromStart, totalScore, parent, openQueue);
+                }
+            } else {
+                for (int i = adjacencyStart[current]; i < adjacencyStart[current + 1]; i++) {
+                    relax(current, adjacency[i], currentCoordinates, dest, scoreFromStart, totalScore, parent,
+                            openQueue);
+                }
+                if (toDest.get(current)) {
+                    relax(current, destVertex, currentCoordinates, dest, scoreFromStart, totalScore, parent,
+                            openQueue);
+                }
+            }
+        }
+        System.err.println("Visibility graph could not find path");
+        return new ArrayList<>(List.of(dest));
+    }
+
+    /**
+     * Lowers the score of a vertex if it is shorter to reach it through the current vertex, and queues it again.
+     */
+    private void relax(int current, int next, LongLat currentCoordinates, LongLat dest, double[] scoreFromStart,
+                       double[] totalScore, int[] parent, PriorityQueue<Integer> openQueue) {
+        LongLat nextCoordinates = next < vertexCoordinates.length ? vertexCoordinates[next] : dest;
+        double score = scoreFromStart[current] + currentCoordinates.distanceTo(nextCoordinates);
+        if (score < scoreFromStart[next]) {
+            scoreFromStart[next] = score;
+            totalScore[next] = score + nextCoordinates.distanceTo(dest);
+            parent[next] = current;
+            openQueue.add(next);
+        }
+    }
+
+    private List<LongLat> reconstructPath(int[] parent, int destVertex, LongLat start, LongLat dest) {
+        List<LongLat> path = new ArrayList<>();
+        path.add(dest);
+        for (int v = parent[destVertex]; v < vertexCoordinates.length; v = parent[v]) {
+            path.add(vertexCoordinates[v]);
+        }
+        path.add(start);
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * @return the number of inflated corners in the visibility graph.
+     */
+    public int getVertexCount() {
+        return vertexCoordinates.length;
+    }
+}
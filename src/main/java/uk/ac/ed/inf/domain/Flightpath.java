@@ -9,12 +9,21 @@ public class Flightpath {
     private final LongLat start;
     private final LongLat dest;
     private final int angle;
+    /**
+     * The drone of a fleet that made the step, or null if there is only one drone.
+     */
+    private final String droneId;
 
     public Flightpath(String orderNo, LongLat start, LongLat dest, int angle) {
+        this(orderNo, start, dest, angle, null);
+    }
+
+    public Flightpath(String orderNo, LongLat start, LongLat dest, int angle, String droneId) {
         this.orderNo = orderNo;
         this.start = start;
         this.dest = dest;
         this.angle = angle;
+        this.droneId = droneId;
     }
 
     public String getOrderNo() {
@@ -33,6 +42,10 @@ public class Flightpath {
         return angle;
     }
 
+    public String getDroneId() {
+        return droneId;
+    }
+
     @Override
     public String toString() {
         return "Flightpath{" +
@@ -40,6 +53,7 @@ public class Flightpath {
                 ", start=" + start +
                 ", dest=" + dest +
                 ", angle=" + angle +
+                ", droneId='" + droneId + '\'' +
                 '}';
     }
 }
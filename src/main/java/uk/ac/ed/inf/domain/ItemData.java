@@ -3,7 +3,10 @@ package uk.ac.ed.inf.domain;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -11,11 +14,44 @@ import java.util.stream.Collectors;
  */
 public class ItemData {
 
+    /**
+     * The most shops an order can be collected from unless another bound is given.
+     */
+    public static final int DEFAULT_MAX_SHOPS = 2;
     private static final int DELIVERY_CHARGE = 50;
     private static final HashMap<String, Integer> priceMap = new HashMap<>(); /* Maps items to prices */
     private static final HashMap<String, Shop> shopMap = new HashMap<>(); /* Maps items to shops */
 
+    private final int maxShops;
+    private final Map<String, LongLat> shopPositions = new ConcurrentHashMap<>(); /* Maps shop addresses to positions */
+
     public ItemData(ArrayList<Shop> menuData) {
+        this(menuData, DEFAULT_MAX_SHOPS);
+    }
+
+    /**
+     * Resolves the What3Words address of every shop once, so that the shops of the orders need no more requests.
+     * @param menuData a list of Shops
+     * @param maxShops the most shops an order can be collected from, at least 1.
+     * @param locator resolves a What3Words address to its position.
+     */
+    public ItemData(ArrayList<Shop> menuData, int maxShops, Function<String, LongLat> locator) {
+        this(menuData, maxShops);
+        for (Shop shop : menuData) {
+            locateShop(shop, locator);
+        }
+    }
+
+    /**
+     * @param menuData a list of Shops
+     * @param maxShops the most shops an order can be collected from, at least 1.
+     */
+    public ItemData(ArrayList<Shop> menuData, int maxShops) {
+        if (maxShops < 1) {
+            throw new IllegalArgumentException("An order must be allowed at least one shop, but the bound was "
+                    + maxShops);
+        }
+        this.maxShops = maxShops;
         loadItemInfo(menuData);
     }
 
@@ -38,7 +74,8 @@ public class ItemData {
     }
 
     /**
-     * Returns all shops that the drone must pass by given an array of items. The maximum number of shops is 2.
+     * Returns all shops that the drone must pass by given an array of items. The maximum number of shops is the bound
+     * this ItemData was created with.
      *
      * @param items the list of items the drone must pick up.
      * @return the list of shops the drone should go to, to collect the orders.
@@ -51,14 +88,37 @@ public class ItemData {
                 .distinct()
                 .collect(Collectors.toList());
 
-        if (shops.size() > 2) {
-            System.err.println("Only 2 shops are allowed per order!");
+        if (shops.size() > maxShops) {
+            System.err.println("Only " + maxShops + " shops are allowed per order!");
             System.exit(1);
         }
 
         return shops;
     }
 
+    /**
+     * Returns the position of a shop, resolving its What3Words address only the first time the shop is located.
+     * The address is resolved outside the map, so a request to the web server never holds up threads locating other
+     * shops. Two threads that locate the same new shop at once may both resolve it; the first position is kept.
+     * @param shop a shop of the menus.
+     * @param locator resolves a What3Words address to its position.
+     * @return the position of the shop.
+     */
+    public LongLat locateShop(Shop shop, Function<String, LongLat> locator) {
+        String location = shop.getLocation();
+        LongLat position = shopPositions.get(location);
+        if (position != null) {
+            return position;
+        }
+        position = locator.apply(location);
+        LongLat stored = shopPositions.putIfAbsent(location, position);
+        return stored != null ? stored : position;
+    }
+
+    public int getMaxShops() {
+        return maxShops;
+    }
+
     /**
      * Returns the total cost of delivering all the given items by drone, including the standard delivery charge of 50p.
      *
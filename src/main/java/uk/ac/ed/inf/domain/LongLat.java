@@ -21,6 +21,21 @@ public class LongLat {
     public static final int HOVER_VALUE = -999; // Angle value that represents hovering
     private static final double DISTANCE_ERROR = Math.pow(10, -12); // Decimals less than this value are not considered
     private static final int ALLOWED_ANGLE_MULTIPLE = 10; // Drone movement angle must be a multiple of this value.
+    public static final int CANDIDATE_ANGLE_COUNT = 38; // The number of angles returned by calculateAngles.
+    /* The longest and shortest distances whose closeness can be decided without the exact square root. */
+    private static final double CLOSE_SQUARED_UPPER = Math.pow((CLOSE_DISTANCE + DISTANCE_ERROR) * (1 + 1e-9), 2);
+    private static final double CLOSE_SQUARED_LOWER = Math.pow((CLOSE_DISTANCE + DISTANCE_ERROR) * (1 - 1e-9), 2);
+    /* The change in longitude and latitude of a move towards each angle from 0 to 360 degrees, by angle / 10. The
+    values are computed exactly as they would be for every move. */
+    private static final double[] STEP_LONGITUDE = new double[360 / ALLOWED_ANGLE_MULTIPLE + 1];
+    private static final double[] STEP_LATITUDE = new double[360 / ALLOWED_ANGLE_MULTIPLE + 1];
+
+    static {
+        for (int i = 0; i < STEP_LONGITUDE.length; i++) {
+            STEP_LONGITUDE[i] = STEP_DISTANCE * Math.cos(Math.toRadians(i * ALLOWED_ANGLE_MULTIPLE));
+            STEP_LATITUDE[i] = STEP_DISTANCE * Math.sin(Math.toRadians(i * ALLOWED_ANGLE_MULTIPLE));
+        }
+    }
 
     private final double longitude;
     private final double latitude;
@@ -72,7 +87,31 @@ public class LongLat {
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
     public boolean closeTo(LongLat target) {
         Objects.requireNonNull(target, "LongLat target cannot be null.");
-        return distanceTo(target) - DISTANCE_ERROR <= CLOSE_DISTANCE;
+        return closeTo(this.longitude, this.latitude, target.longitude, target.latitude);
+    }
+
+    /**
+     * Returns true if two positions are close, exactly as closeTo does for LongLat objects. The squared distance
+     * decides every pair that is not within a rounding error of the close distance, and only those pairs take the
+     * square root.
+     *
+     * @param longitude the longitude of the first position.
+     * @param latitude the latitude of the first position.
+     * @param targetLongitude the longitude of the second position.
+     * @param targetLatitude the latitude of the second position.
+     * @return true if the positions are close.
+     */
+    public static boolean closeTo(double longitude, double latitude, double targetLongitude, double targetLatitude) {
+        double dx = longitude - targetLongitude;
+        double dy = latitude - targetLatitude;
+        double squared = dx * dx + dy * dy;
+        if (squared <= CLOSE_SQUARED_LOWER) {
+            return true;
+        }
+        if (squared > CLOSE_SQUARED_UPPER) {
+            return false;
+        }
+        return Math.sqrt(Math.pow(dx, 2) + Math.pow(dy, 2)) - DISTANCE_ERROR <= CLOSE_DISTANCE;
     }
 
     /**
@@ -93,9 +132,43 @@ public class LongLat {
             System.exit(1); // Unrecoverable state, program exits gracefully.
         }
 
-        double newLong = this.longitude + (STEP_DISTANCE * Math.cos(Math.toRadians(angle)));
-        double newLat = this.latitude + (STEP_DISTANCE * Math.sin(Math.toRadians(angle)));
-        return new LongLat(newLong,newLat);
+        return new LongLat(nextLongitude(this.longitude, angle), nextLatitude(this.latitude, angle));
+    }
+
+    /**
+     * Returns the longitude of the drone after a move from the given longitude towards the given angle, as
+     * nextPosition computes it.
+     *
+     * @param longitude the drone's longitude.
+     * @param angle the angle of the move in degrees, or the hover value. Multiples of 10 are looked up in a table.
+     * @return the longitude after the move.
+     */
+    public static double nextLongitude(double longitude, int angle) {
+        if (angle == HOVER_VALUE) {
+            return longitude;
+        }
+        if (angle >= 0 && angle <= 360 && angle % ALLOWED_ANGLE_MULTIPLE == 0) {
+            return longitude + STEP_LONGITUDE[angle / ALLOWED_ANGLE_MULTIPLE];
+        }
+        return longitude + (STEP_DISTANCE * Math.cos(Math.toRadians(angle)));
+    }
+
+    /**
+     * Returns the latitude of the drone after a move from the given latitude towards the given angle, as nextPosition
+     * computes it.
+     *
+     * @param latitude the drone's latitude.
+     * @param angle the angle of the move in degrees, or the hover value. Multiples of 10 are looked up in a table.
+     * @return the latitude after the move.
+     */
+    public static double nextLatitude(double latitude, int angle) {
+        if (angle == HOVER_VALUE) {
+            return latitude;
+        }
+        if (angle >= 0 && angle <= 360 && angle % ALLOWED_ANGLE_MULTIPLE == 0) {
+            return latitude + STEP_LATITUDE[angle / ALLOWED_ANGLE_MULTIPLE];
+        }
+        return latitude + (STEP_DISTANCE * Math.sin(Math.toRadians(angle)));
     }
 
     /**
@@ -106,7 +179,16 @@ public class LongLat {
      * @return the angle as an integer.
      */
     public int calculateAngle(LongLat dest) {
-        double angleToTarget = Math.toDegrees(Math.atan2(dest.latitude - this.latitude, dest.longitude - this.longitude));
+        return calculateAngle(this.longitude, this.latitude, dest.longitude, dest.latitude);
+    }
+
+    /**
+     * Calculates the angle from one position towards another, as calculateAngle does for LongLat objects.
+     *
+     * @return the angle as an integer.
+     */
+    public static int calculateAngle(double longitude, double latitude, double destLongitude, double destLatitude) {
+        double angleToTarget = Math.toDegrees(Math.atan2(destLatitude - latitude, destLongitude - longitude));
         int rounded = (int) Math.round(angleToTarget / 10) * 10;
         if (rounded < 0 ) {
             rounded += 360;
@@ -124,10 +206,26 @@ public class LongLat {
      * @return a list of angles towards the destination.
      */
     public List<Integer> calculateAngles(LongLat dest) {
+        int[] candidates = new int[CANDIDATE_ANGLE_COUNT];
+        calculateAngles(this.longitude, this.latitude, dest.longitude, dest.latitude, candidates);
         List<Integer> angles = new ArrayList<>();
-        int angleToTarget = this.calculateAngle(dest);
+        for (int angle : candidates) {
+            angles.add(angle);
+        }
+
+        return angles;
+    }
+
+    /**
+     * Calculates the same angles as calculateAngles, in the same order, into an array that can be reused.
+     *
+     * @param angles receives the angles, and must hold at least CANDIDATE_ANGLE_COUNT of them.
+     */
+    public static void calculateAngles(double longitude, double latitude, double destLongitude, double destLatitude,
+                                       int[] angles) {
+        int angleToTarget = calculateAngle(longitude, latitude, destLongitude, destLatitude);
 
-        for (int i = 0; i < 19; i++) { /* Add angles up to +-90 degrees in intervals of 10 */
+        for (int i = 0; i < CANDIDATE_ANGLE_COUNT / 2; i++) { /* Add angles up to +-90 degrees in intervals of 10 */
             int currentN = angleToTarget - i * ALLOWED_ANGLE_MULTIPLE;
             int currentP = angleToTarget + i * ALLOWED_ANGLE_MULTIPLE;
             if (currentN < 0) {
@@ -136,11 +234,9 @@ public class LongLat {
             if (currentP > 360) {
                 currentP -= 360;
             }
-            angles.add(currentN);
-            angles.add(currentP);
+            angles[2 * i] = currentN;
+            angles[2 * i + 1] = currentP;
         }
-
-        return angles;
     }
 
     @Override
@@ -0,0 +1,178 @@
+package uk.ac.ed.inf;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ed.inf.controller.BaseCostField;
+import uk.ac.ed.inf.controller.DroneController;
+import uk.ac.ed.inf.controller.GridNode;
+import uk.ac.ed.inf.controller.GridSnapshotStore;
+import uk.ac.ed.inf.controller.Pathfinder;
+import uk.ac.ed.inf.domain.Flightpath;
+import uk.ac.ed.inf.domain.ItemData;
+import uk.ac.ed.inf.domain.LongLat;
+import uk.ac.ed.inf.domain.Shop;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BaseCostFieldTest {
+
+    private static final LongLat APPLETON_TOWER = new LongLat(-3.186874, 55.944494);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Pathfinder pathfinder;
+    private static BaseCostField field;
+    private static List<LongLat> walkable;
+
+    @BeforeClass
+    public static void setUp() {
+        pathfinder = new Pathfinder(TestData.loadNoFlyZones());
+        field = new BaseCostField(pathfinder, APPLETON_TOWER, null);
+        walkable = new ArrayList<>();
+        for (List<GridNode> row : pathfinder.getVirtualGrid()) {
+            for (GridNode node : row) {
+                if (node.isWalkable()) {
+                    walkable.add(node.getCoordinates());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPathsToBaseAreLegal() {
+        int withoutPath = 0;
+        for (LongLat cell : walkable) {
+            List<LongLat> path = field.pathToBase(cell);
+            if (path == null) {
+                /* Pockets between buildings that can only be entered by cutting the corner of one */
+                withoutPath++;
+                continue;
+            }
+            assertEquals(cell, path.get(0));
+            assertEquals(APPLETON_TOWER, path.get(path.size() - 1));
+            for (int i = 1; i < path.size(); i++) {
+                assertTrue(pathfinder.lineOfSight(path.get(i - 1), path.get(i)));
+            }
+        }
+        assertTrue(withoutPath < walkable.size() / 1000);
+    }
+
+    @Test
+    public void testEstimateCoversSteeredMoves() {
+        /* Along the field's own paths, from anywhere in every walkable cell */
+        assertEstimateCoversSteering(new GreedySteering(pathfinder, (start, dest) -> field.pathToBase(start)),
+                walkable, 17);
+
+        /* Along the paths the drone searches for when neither the legs nor the field know one */
+        Random random = new Random(23);
+        List<LongLat> sampled = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            sampled.add(walkable.get(random.nextInt(walkable.size())));
+        }
+        assertEstimateCoversSteering(new GreedySteering(pathfinder, pathfinder), sampled, 29);
+    }
+
+    /**
+     * Steers home from a random position in each of the cells and checks that it takes no more moves than estimated.
+     */
+    private static void assertEstimateCoversSteering(GreedySteering steering, List<LongLat> cells, long seed) {
+        Random random = new Random(seed);
+        double epsilon = pathfinder.getServiceArea().getResolution();
+        int stuck = 0;
+        for (LongLat cell : cells) {
+            LongLat position = new LongLat(cell.getLongitude() + (random.nextDouble() - 0.5) * epsilon,
+                    cell.getLatitude() + (random.nextDouble() - 0.5) * epsilon);
+            if (!pathfinder.isWalkable(position) || field.pathToBase(position) == null) {
+                continue;
+            }
+            int steps = steering.steps(position, APPLETON_TOWER);
+            if (steps == GreedySteering.STUCK) {
+                /* Steering can circle a waypoint next to a no-fly-zone forever, which no estimate can cover */
+                stuck++;
+                continue;
+            }
+            int estimate = field.estimateStepsToBase(position);
+            assertTrue(position + " took " + steps + " moves", steps <= estimate);
+            assertTrue(estimate * LongLat.STEP_DISTANCE + LongLat.CLOSE_DISTANCE
+                    >= position.distanceTo(APPLETON_TOWER));
+        }
+        assertTrue(stuck <= cells.size() / 1000);
+    }
+
+    @Test
+    public void testEstimateJustUnderStepsLeftIsNotTrusted() {
+        LongLat position = walkable.get(walkable.size() / 3);
+        int estimate = field.estimateStepsToBase(position);
+        assertNotEquals(BaseCostField.UNKNOWN, estimate);
+        assertFalse(field.canReturnWithin(position, estimate + 1));
+        assertFalse(field.canReturnWithin(position, estimate + BaseCostField.SAFETY_MARGIN));
+        assertTrue(field.canReturnWithin(position, estimate + BaseCostField.SAFETY_MARGIN + 1));
+
+        LongLat outside = new LongLat(LongLat.MIN_LONGITUDE - 0.001, LongLat.MIN_LATITUDE);
+        assertFalse(field.canReturnWithin(outside, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testDroneReturnsWithinTightBudgets() {
+        List<Shop> shops = TestData.loadShops();
+        ItemData itemData = new ItemData(new ArrayList<>(shops));
+        List<String> customers = new ArrayList<>(TestData.loadWordLocations().keySet());
+        DroneControllerTest.LocalWebServerClient webServerClient = new DroneControllerTest.LocalWebServerClient();
+        for (int steps = 100; steps <= 400; steps += 60) {
+            LocalDate date = LocalDate.of(2023, 10, 1).plusDays(steps);
+            DroneController controller = new DroneController(itemData, APPLETON_TOWER, steps,
+                    DroneControllerTest.ordersFor(date, shops, customers), webServerClient, pathfinder, pathfinder,
+                    null, field);
+            controller.deliverOrders();
+            List<Flightpath> flightpaths = controller.getFlightpathList();
+            assertTrue(steps + " moves were exceeded", flightpaths.size() <= steps);
+            if (!flightpaths.isEmpty()) {
+                assertTrue(flightpaths.get(flightpaths.size() - 1).getDest().closeTo(APPLETON_TOWER));
+            }
+        }
+    }
+
+    @Test
+    public void testUnknownOutsideTheGrid() {
+        LongLat outside = new LongLat(LongLat.MIN_LONGITUDE - 0.001, LongLat.MIN_LATITUDE);
+        assertEquals(BaseCostField.UNKNOWN, field.estimateStepsToBase(outside));
+        assertNull(field.pathToBase(outside));
+    }
+
+    @Test
+    public void testStoredFieldIsReused() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        GridSnapshotStore store = new GridSnapshotStore(directory);
+        new BaseCostField(pathfinder, APPLETON_TOWER, store);
+        Path file = directory.resolve("base-cost-field.snapshot");
+        assertTrue(Files.isRegularFile(file));
+        long written = Files.getLastModifiedTime(file).toMillis();
+
+        BaseCostField loaded = new BaseCostField(pathfinder, APPLETON_TOWER, store);
+        assertEquals(written, Files.getLastModifiedTime(file).toMillis());
+        for (LongLat cell : walkable) {
+            if (field.pathToBase(cell) == null) {
+                continue;
+            }
+            assertEquals(field.estimateStepsToBase(cell), loaded.estimateStepsToBase(cell));
+            assertEquals(field.pathToBase(cell).toString(), loaded.pathToBase(cell).toString());
+        }
+
+        /* A different base does not match the stored field */
+        LongLat otherBase = walkable.get(walkable.size() / 2);
+        BaseCostField moved = new BaseCostField(pathfinder, otherBase, store);
+        assertEquals(otherBase, moved.pathToBase(walkable.get(0)).get(moved.pathToBase(walkable.get(0)).size() - 1));
+        assertEquals(new BaseCostField(pathfinder, otherBase, null).estimateStepsToBase(walkable.get(0)),
+                moved.estimateStepsToBase(walkable.get(0)));
+    }
+}
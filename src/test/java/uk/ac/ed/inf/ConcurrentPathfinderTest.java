@@ -0,0 +1,119 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+import org.junit.Test;
+import uk.ac.ed.inf.controller.GridNode;
+import uk.ac.ed.inf.controller.Pathfinder;
+import uk.ac.ed.inf.domain.LongLat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs many searches concurrently, on one Pathfinder and on Pathfinders with different no-fly-zones, and checks that
+ * every path is identical to the one found by a single-threaded search.
+ */
+public class ConcurrentPathfinderTest {
+
+    private static final int QUERY_COUNT = 150;
+    private static final int THREADS = 8;
+    private static final int ROUNDS_PER_THREAD = 3;
+
+    private static List<LongLat[]> randomQueries(Pathfinder pathfinder, long seed) {
+        List<LongLat> walkable = new ArrayList<>();
+        for (List<GridNode> row : pathfinder.getVirtualGrid()) {
+            for (GridNode node : row) {
+                if (node.isWalkable()) {
+                    walkable.add(node.getCoordinates());
+                }
+            }
+        }
+        Random random = new Random(seed);
+        List<LongLat[]> queries = new ArrayList<>();
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            queries.add(new LongLat[]{
+                    walkable.get(random.nextInt(walkable.size())), walkable.get(random.nextInt(walkable.size()))});
+        }
+        return queries;
+    }
+
+    private static List<List<LongLat>> expectedPaths(Pathfinder pathfinder, List<LongLat[]> queries) {
+        List<List<LongLat>> paths = new ArrayList<>();
+        for (LongLat[] query : queries) {
+            paths.add(pathfinder.findPath(query[0], query[1]));
+        }
+        return paths;
+    }
+
+    /**
+     * Every thread runs all queries of every Pathfinder, interleaved and in its own random order.
+     */
+    private static void assertConcurrentPathsMatch(List<Pathfinder> pathfinders) throws Exception {
+        List<List<LongLat[]>> queries = new ArrayList<>();
+        List<List<List<LongLat>>> expected = new ArrayList<>();
+        for (int p = 0; p < pathfinders.size(); p++) {
+            queries.add(randomQueries(pathfinders.get(p), 11 + p));
+            expected.add(expectedPaths(pathfinders.get(p), queries.get(p)));
+        }
+
+        List<int[]> jobs = new ArrayList<>();
+        for (int p = 0; p < pathfinders.size(); p++) {
+            for (int q = 0; q < QUERY_COUNT; q++) {
+                jobs.add(new int[]{p, q});
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                List<int[]> order = new ArrayList<>(jobs);
+                Collections.shuffle(order, new Random(t));
+                futures.add(executor.submit(() -> {
+                    for (int round = 0; round < ROUNDS_PER_THREAD; round++) {
+                        for (int[] job : order) {
+                            LongLat[] query = queries.get(job[0]).get(job[1]);
+                            List<LongLat> path = pathfinders.get(job[0]).findPath(query[0], query[1]);
+                            ThetaStarTest.assertSamePath(expected.get(job[0]).get(job[1]), path);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConcurrentSearchesMatchSingleThreaded() throws Exception {
+        assertConcurrentPathsMatch(List.of(new Pathfinder(TestData.loadNoFlyZones())));
+    }
+
+    @Test
+    public void testPathfindersDoNotShareState() throws Exception {
+        List<Polygon> noFlyZones = TestData.loadNoFlyZones();
+        List<Polygon> extraZones = new ArrayList<>(noFlyZones);
+        double x = -3.1890;
+        double y = 55.9430;
+        double size = 0.0008;
+        extraZones.add(Polygon.fromLngLats(List.of(List.of(Point.fromLngLat(x, y), Point.fromLngLat(x + size, y),
+                Point.fromLngLat(x + size, y + size), Point.fromLngLat(x, y + size), Point.fromLngLat(x, y)))));
+
+        Pathfinder first = new Pathfinder(noFlyZones);
+        Pathfinder second = new Pathfinder(extraZones);
+        assertNotEquals("The extra zone should change the grid",
+                first.getVirtualGrid().toString(), second.getVirtualGrid().toString());
+        assertConcurrentPathsMatch(List.of(first, second));
+    }
+}
@@ -0,0 +1,94 @@
+package uk.ac.ed.inf;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.ac.ed.inf.clients.WebServerClient;
+import uk.ac.ed.inf.controller.BaseCostField;
+import uk.ac.ed.inf.controller.Pathfinder;
+import uk.ac.ed.inf.domain.Flightpath;
+import uk.ac.ed.inf.domain.ItemData;
+import uk.ac.ed.inf.domain.LongLat;
+import uk.ac.ed.inf.domain.Order;
+import uk.ac.ed.inf.domain.Shop;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that dates planned in parallel over the shared map are planned exactly as they are one at a time.
+ */
+public class DayPlannerTest {
+
+    private static final LongLat APPLETON_TOWER = new LongLat(-3.186874, 55.944494);
+    private static final int DRONE_STEPS = 1500;
+
+    private static Pathfinder pathfinder;
+    private static ItemData itemData;
+    private static WebServerClient webServerClient;
+    private static BaseCostField baseCostField;
+    private static List<List<Order>> days;
+
+    @BeforeClass
+    public static void setUp() {
+        pathfinder = new Pathfinder(TestData.loadNoFlyZones());
+        List<Shop> shops = TestData.loadShops();
+        itemData = new ItemData(new ArrayList<>(shops));
+        List<String> customers = new ArrayList<>(TestData.loadWordLocations().keySet());
+        webServerClient = new DroneControllerTest.LocalWebServerClient();
+        baseCostField = new BaseCostField(pathfinder, APPLETON_TOWER, null);
+        days = new ArrayList<>();
+        for (LocalDate date = LocalDate.of(2023, 9, 1); date.isBefore(LocalDate.of(2023, 9, 15));
+             date = date.plusDays(1)) {
+            days.add(DroneControllerTest.ordersFor(date, shops, customers));
+        }
+    }
+
+    @Test
+    public void testParallelDatesMatchSequentialDates() {
+        DayPlanner planner = planner(DayPlanner.COST_SCHEDULER);
+        List<DayPlanner.DayPlan> sequential = days.stream().map(planner::plan).collect(Collectors.toList());
+        List<DayPlanner.DayPlan> parallel = new ForkJoinPool(4).submit(() -> days.parallelStream()
+                .map(planner::plan).collect(Collectors.toList())).join();
+
+        for (int day = 0; day < days.size(); day++) {
+            DayPlanner.DayPlan expected = sequential.get(day);
+            DayPlanner.DayPlan actual = parallel.get(day);
+            assertEquals(expected.getDeliveredMonetaryValue(), actual.getDeliveredMonetaryValue());
+            assertEquals(expected.getTotalMonetaryValue(), actual.getTotalMonetaryValue());
+            assertEquals(expected.getFlightpaths().size(), actual.getFlightpaths().size());
+            for (int i = 0; i < expected.getFlightpaths().size(); i++) {
+                Flightpath expectedStep = expected.getFlightpaths().get(i);
+                Flightpath actualStep = actual.getFlightpaths().get(i);
+                assertEquals(expectedStep.getOrderNo(), actualStep.getOrderNo());
+                assertEquals(expectedStep.getAngle(), actualStep.getAngle());
+            }
+        }
+    }
+
+    @Test
+    public void testValueSchedulerDeliversAtLeastAsMuch() {
+        DayPlanner byValue = planner(DayPlanner.VALUE_SCHEDULER);
+        DayPlanner byCost = planner(DayPlanner.COST_SCHEDULER);
+        for (List<Order> orders : days.subList(0, 3)) {
+            DayPlanner.DayPlan plan = byValue.plan(orders);
+            assertNotNull(plan.getSchedule());
+            assertTrue(plan.getDeliveredMonetaryValue() >= byCost.plan(orders).getDeliveredMonetaryValue());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsUnknownScheduler() {
+        planner("random");
+    }
+
+    private static DayPlanner planner(String scheduler) {
+        return new DayPlanner(itemData, webServerClient, pathfinder, pathfinder, null, baseCostField, APPLETON_TOWER,
+                DRONE_STEPS, scheduler, Duration.ofMillis(100));
+    }
+}
@@ -0,0 +1,210 @@
+package uk.ac.ed.inf;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.ac.ed.inf.clients.WebServerClient;
+import uk.ac.ed.inf.controller.DroneController;
+import uk.ac.ed.inf.controller.Pathfinder;
+import uk.ac.ed.inf.domain.*;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DroneControllerTest {
+
+    private static final LongLat APPLETON_TOWER = new LongLat(-3.186874, 55.944494);
+    private static final int DRONE_STEPS = 1500;
+    private static final LocalDate FIRST_DATE = LocalDate.of(2022, 1, 1);
+    private static final LocalDate LAST_DATE = LocalDate.of(2023, 12, 31);
+
+    private static Pathfinder pathfinder;
+    private static ItemData itemData;
+    private static List<Shop> shops;
+    private static List<String> customers;
+    private static WebServerClient webServerClient;
+
+    /**
+     * Answers requests from the website folder instead of the web server, with every address read up front.
+     */
+    static class LocalWebServerClient extends WebServerClient {
+        private final Map<String, LongLat> wordLocations = TestData.loadWordLocations();
+
+        LocalWebServerClient() {
+            super("0");
+        }
+
+        @Override
+        public String fetchFromServer(String target) {
+            return TestData.read(target);
+        }
+
+        @Override
+        public LongLat getLongLatFromW3W(String what3WordsText) {
+            return wordLocations.get(what3WordsText);
+        }
+    }
+
+    @BeforeClass
+    public static void setUp() {
+        pathfinder = new Pathfinder(TestData.loadNoFlyZones());
+        shops = TestData.loadShops();
+        itemData = new ItemData(new ArrayList<>(shops));
+        customers = new ArrayList<>(TestData.loadWordLocations().keySet());
+        webServerClient = new LocalWebServerClient();
+    }
+
+    @Test
+    public void testMovesMatchOriginalArithmetic() {
+        Random random = new Random(18);
+        for (int i = 0; i < 10_000; i++) {
+            LongLat origin = new LongLat(LongLat.MIN_LONGITUDE + random.nextDouble() * 0.01,
+                    LongLat.MIN_LATITUDE + random.nextDouble() * 0.01);
+            for (int angle = 0; angle <= 360; angle += 10) {
+                assertSamePosition(LegacyDroneController.nextPosition(origin, angle), origin.nextPosition(angle));
+            }
+            assertSamePosition(LegacyDroneController.nextPosition(origin, LongLat.HOVER_VALUE),
+                    origin.nextPosition(LongLat.HOVER_VALUE));
+
+            /* Around the close distance, where the squared distance cannot decide on its own */
+            double angle = random.nextDouble() * 2 * Math.PI;
+            double distance = LongLat.CLOSE_DISTANCE * (1 + (random.nextDouble() - 0.5) * 1e-6);
+            LongLat other = new LongLat(origin.getLongitude() + distance * Math.cos(angle),
+                    origin.getLatitude() + distance * Math.sin(angle));
+            assertEquals(LegacyDroneController.closeTo(origin, other), origin.closeTo(other));
+            assertEquals(LegacyDroneController.calculateAngles(origin, other), origin.calculateAngles(other));
+        }
+        /* A target straight west of the drone gives the angle 360 among the alternatives */
+        LongLat origin = new LongLat(-3.18, 55.943);
+        LongLat west = new LongLat(-3.19, 55.943);
+        assertEquals(LegacyDroneController.calculateAngles(origin, west), origin.calculateAngles(west));
+        assertTrue(origin.calculateAngles(west).contains(360));
+    }
+
+    @Test
+    public void testAnglesOffTheTableUseTrigonometry() {
+        LongLat origin = new LongLat(-3.188, 55.944);
+        for (int angle = -90; angle <= 450; angle++) {
+            double radians = Math.toRadians(angle);
+            assertEquals(origin.getLongitude() + LongLat.STEP_DISTANCE * Math.cos(radians),
+                    LongLat.nextLongitude(origin.getLongitude(), angle), 1e-15);
+            assertEquals(origin.getLatitude() + LongLat.STEP_DISTANCE * Math.sin(radians),
+                    LongLat.nextLatitude(origin.getLatitude(), angle), 1e-15);
+        }
+    }
+
+    @Test
+    public void testFlightpathsMatchLegacyControllerOnEveryDate() {
+        for (LocalDate date = FIRST_DATE; !date.isAfter(LAST_DATE); date = date.plusDays(1)) {
+            List<Order> orders = ordersFor(date, shops, customers);
+            LegacyDroneController legacy = new LegacyDroneController(itemData, APPLETON_TOWER, DRONE_STEPS,
+                    orders, webServerClient, pathfinder, pathfinder);
+            DroneController current = new DroneController(itemData, APPLETON_TOWER, DRONE_STEPS, orders,
+                    webServerClient, pathfinder, pathfinder);
+            List<Delivery> legacyDeliveries = legacy.deliverOrders();
+            List<Delivery> currentDeliveries = current.deliverOrders();
+
+            assertEquals(date.toString(), legacyDeliveries.size(), currentDeliveries.size());
+            for (int i = 0; i < legacyDeliveries.size(); i++) {
+                assertEquals(legacyDeliveries.get(i).getOrderNo(), currentDeliveries.get(i).getOrderNo());
+                assertEquals(legacyDeliveries.get(i).getCostInPence(), currentDeliveries.get(i).getCostInPence());
+            }
+            List<Flightpath> legacyFlightpaths = legacy.getFlightpathList();
+            List<Flightpath> currentFlightpaths = current.getFlightpathList();
+            assertEquals(date.toString(), legacyFlightpaths.size(), currentFlightpaths.size());
+            for (int i = 0; i < legacyFlightpaths.size(); i++) {
+                Flightpath expected = legacyFlightpaths.get(i);
+                Flightpath actual = currentFlightpaths.get(i);
+                String move = date + " move " + i;
+                assertEquals(move, expected.getOrderNo(), actual.getOrderNo());
+                assertEquals(move, expected.getAngle(), actual.getAngle());
+                assertSamePosition(expected.getStart(), actual.getStart());
+                assertSamePosition(expected.getDest(), actual.getDest());
+            }
+        }
+    }
+
+    @Test
+    public void testOrderThatDoesNotFitIsSkipped() {
+        /* The orders of a date that take the most and the fewest moves on their own */
+        List<Order> orders = ordersFor(FIRST_DATE, shops, customers);
+        Order far = null;
+        Order near = null;
+        int farMoves = 0;
+        int nearMoves = Integer.MAX_VALUE;
+        for (Order order : orders) {
+            DroneController alone = new DroneController(itemData, APPLETON_TOWER, DRONE_STEPS, List.of(order),
+                    webServerClient, pathfinder, pathfinder);
+            assertEquals(1, alone.deliverOrders().size());
+            int moves = alone.getFlightpathList().size();
+            if (moves > farMoves) {
+                far = order;
+                farMoves = moves;
+            }
+            if (moves < nearMoves) {
+                near = order;
+                nearMoves = moves;
+            }
+        }
+        assertTrue(farMoves + " vs " + nearMoves, farMoves > nearMoves + 10);
+
+        /* With room for the near order only, the far one comes first and is skipped */
+        DroneController drone = new DroneController(itemData, APPLETON_TOWER, (farMoves + nearMoves) / 2,
+                List.of(far, near), webServerClient, pathfinder, pathfinder);
+        List<Delivery> deliveries = drone.deliverOrders();
+        assertEquals(1, deliveries.size());
+        assertEquals(near.getOrderNo(), deliveries.get(0).getOrderNo());
+        List<Flightpath> flightpaths = drone.getFlightpathList();
+        assertEquals(nearMoves, flightpaths.size());
+        String nearOrderNo = near.getOrderNo();
+        assertTrue(flightpaths.stream().allMatch(f -> f.getOrderNo().equals(nearOrderNo)));
+        assertTrue(flightpaths.get(flightpaths.size() - 1).getDest().closeTo(APPLETON_TOWER));
+
+        /* When no order fits, the drone stays at its base */
+        DroneController grounded = new DroneController(itemData, APPLETON_TOWER, nearMoves / 2, List.of(far, near),
+                webServerClient, pathfinder, pathfinder);
+        assertTrue(grounded.deliverOrders().isEmpty());
+        assertTrue(grounded.getFlightpathList().isEmpty());
+    }
+
+    /**
+     * Makes up the orders of a date: a few items from one or two shops, delivered to one of the addresses of the
+     * website folder. The same date always gets the same orders.
+     */
+    static List<Order> ordersFor(LocalDate date, List<Shop> shops, List<String> customers) {
+        Random random = new Random(date.toEpochDay());
+        int orderCount = 5 + random.nextInt(20);
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < orderCount; i++) {
+            Order order = new Order(String.format("%08x", random.nextInt()), Date.valueOf(date), "s0000000",
+                    customers.get(random.nextInt(customers.size())));
+            int shopCount = 1 + random.nextInt(2);
+            List<Shop> chosen = new ArrayList<>(shops);
+            for (int s = 0; s < shopCount; s++) {
+                Item[] menu = chosen.remove(random.nextInt(chosen.size())).getMenu();
+                int itemCount = 1 + random.nextInt(2);
+                for (int j = 0; j < itemCount; j++) {
+                    order.getOrderDetails().add(menu[random.nextInt(menu.length)].getItem());
+                }
+            }
+            orders.add(order);
+        }
+        return orders;
+    }
+
+    /**
+     * Asserts that two positions have exactly the same coordinates, bit for bit.
+     */
+    private static void assertSamePosition(LongLat expected, LongLat actual) {
+        assertEquals(Arrays.toString(new double[]{expected.getLongitude(), expected.getLatitude()}),
+                Double.doubleToRawLongBits(expected.getLongitude()), Double.doubleToRawLongBits(actual.getLongitude()));
+        assertEquals(Arrays.toString(new double[]{expected.getLongitude(), expected.getLatitude()}),
+                Double.doubleToRawLongBits(expected.getLatitude()), Double.doubleToRawLongBits(actual.getLatitude()));
+    }
+}
@@ -0,0 +1,126 @@
+package uk.ac.ed.inf;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.ac.ed.inf.clients.WebServerClient;
+import uk.ac.ed.inf.controller.DroneFlight;
+import uk.ac.ed.inf.controller.Fleet;
+import uk.ac.ed.inf.controller.OrderScheduler;
+import uk.ac.ed.inf.controller.Pathfinder;
+import uk.ac.ed.inf.controller.StepCostMatrix;
+import uk.ac.ed.inf.domain.Delivery;
+import uk.ac.ed.inf.domain.Flightpath;
+import uk.ac.ed.inf.domain.ItemData;
+import uk.ac.ed.inf.domain.LongLat;
+import uk.ac.ed.inf.domain.Order;
+import uk.ac.ed.inf.domain.Shop;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a fleet delivers every order at most once, that each drone flies legal moves from and back to its own
+ * base with its steps tagged with its id, and that the drones fly the same whether they run one at a time or
+ * concurrently.
+ */
+public class FleetTest {
+
+    private static final LongLat APPLETON_TOWER = new LongLat(-3.186874, 55.944494);
+    private static final int DRONE_STEPS = 1500;
+
+    private static Pathfinder pathfinder;
+    private static ItemData itemData;
+    private static WebServerClient webServerClient;
+    private static List<Order> orders;
+    private static List<LongLat> bases;
+
+    @BeforeClass
+    public static void setUp() {
+        pathfinder = new Pathfinder(TestData.loadNoFlyZones());
+        List<Shop> shops = TestData.loadShops();
+        itemData = new ItemData(new ArrayList<>(shops));
+        List<String> customers = new ArrayList<>(TestData.loadWordLocations().keySet());
+        webServerClient = new DroneControllerTest.LocalWebServerClient();
+        /* More orders than one drone can deliver */
+        orders = new ArrayList<>();
+        for (LocalDate date = LocalDate.of(2023, 7, 1); date.isBefore(LocalDate.of(2023, 7, 5));
+             date = date.plusDays(1)) {
+            orders.addAll(DroneControllerTest.ordersFor(date, shops, customers));
+        }
+        LongLat secondBase = webServerClient.getLongLatFromW3W(customers.get(0));
+        bases = List.of(APPLETON_TOWER, secondBase, APPLETON_TOWER, secondBase);
+    }
+
+    @Test
+    public void testDronesDeliverSeparateOrders() {
+        List<DroneFlight> flights = fleet(bases).deliver(orders, ForkJoinPool.commonPool());
+        assertEquals(bases.size(), flights.size());
+        Set<String> delivered = new HashSet<>();
+        int deliveredCount = 0;
+        for (int drone = 0; drone < flights.size(); drone++) {
+            DroneFlight flight = flights.get(drone);
+            assertEquals(Fleet.droneId(drone), flight.getDroneId());
+            assertEquals(flight.getAssignedOrders().size(), flight.getDeliveries().size());
+            for (Delivery delivery : flight.getDeliveries()) {
+                delivered.add(delivery.getOrderNo());
+                deliveredCount++;
+            }
+            assertTrue(flight.getFlightpaths().size() < DRONE_STEPS);
+
+            LongLat position = flight.getBase();
+            for (Flightpath flightpath : flight.getFlightpaths()) {
+                assertEquals(flight.getDroneId(), flightpath.getDroneId());
+                assertEquals(position.getLongitude(), flightpath.getStart().getLongitude(), 0);
+                assertEquals(position.getLatitude(), flightpath.getStart().getLatitude(), 0);
+                if (flightpath.getAngle() != LongLat.HOVER_VALUE) {
+                    assertTrue(pathfinder.canMoveTowards(position, flightpath.getAngle()));
+                }
+                position = flightpath.getDest();
+            }
+            assertTrue(position.closeTo(flight.getBase()));
+        }
+        assertEquals(deliveredCount, delivered.size());
+
+        /* The fleet delivers more than a single drone */
+        List<DroneFlight> single = fleet(bases.subList(0, 1)).deliver(orders, ForkJoinPool.commonPool());
+        assertTrue(delivered.size() > single.get(0).getDeliveries().size());
+    }
+
+    @Test
+    public void testConcurrentDronesFlyAsOneAtATime() {
+        List<DroneFlight> oneAtATime = fleet(bases).deliver(orders, new ForkJoinPool(1));
+        List<DroneFlight> concurrent = fleet(bases).deliver(orders, new ForkJoinPool(bases.size()));
+        for (int drone = 0; drone < bases.size(); drone++) {
+            List<Flightpath> expected = oneAtATime.get(drone).getFlightpaths();
+            List<Flightpath> actual = concurrent.get(drone).getFlightpaths();
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getOrderNo(), actual.get(i).getOrderNo());
+                assertEquals(expected.get(i).getAngle(), actual.get(i).getAngle());
+                assertEquals(expected.get(i).getDest().getLongitude(), actual.get(i).getDest().getLongitude(), 0);
+                assertEquals(expected.get(i).getDest().getLatitude(), actual.get(i).getDest().getLatitude(), 0);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsEmptyFleet() {
+        fleet(List.of());
+    }
+
+    private static Fleet fleet(List<LongLat> droneBases) {
+        Fleet fleet = new Fleet(itemData, webServerClient, pathfinder, pathfinder, null,
+                new StepCostMatrix(pathfinder, pathfinder, null), droneBases, DRONE_STEPS,
+                OrderScheduler.DEFAULT_MARGIN);
+        if (!droneBases.isEmpty()) {
+            fleet.prepare(orders, ForkJoinPool.commonPool());
+        }
+        return fleet;
+    }
+}
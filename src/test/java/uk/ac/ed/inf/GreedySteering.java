@@ -0,0 +1,61 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.controller.PathEngine;
+import uk.ac.ed.inf.controller.Pathfinder;
+import uk.ac.ed.inf.domain.LongLat;
+
+import java.util.List;
+
+/**
+ * Flies the drone to a target the way DroneController does without a move planner: it steers towards each waypoint of
+ * a path one move at a time, turning away from the waypoint when the direct move is not legal.
+ */
+public class GreedySteering {
+
+    /**
+     * The number of moves returned when steering gets stuck, which is more than the drone can ever make in a day.
+     */
+    public static final int STUCK = 10_000;
+
+    private final Pathfinder pathfinder;
+    private final PathEngine pathEngine;
+
+    public GreedySteering(Pathfinder pathfinder, PathEngine pathEngine) {
+        this.pathfinder = pathfinder;
+        this.pathEngine = pathEngine;
+    }
+
+    /**
+     * @return the number of moves that take the drone from the start to a position close to the target, or STUCK.
+     */
+    public int steps(LongLat start, LongLat target) {
+        List<LongLat> path = pathEngine.findPath(start, target);
+        LongLat position = start;
+        int steps = 0;
+        for (LongLat waypoint : path.subList(1, path.size())) {
+            while (!position.closeTo(waypoint)) {
+                position = move(position, waypoint);
+                if (++steps >= STUCK) {
+                    return STUCK;
+                }
+            }
+        }
+        if (!position.closeTo(target)) {
+            steps++;
+        }
+        return steps;
+    }
+
+    private LongLat move(LongLat origin, LongLat target) {
+        int angle = origin.calculateAngle(target);
+        if (!pathfinder.canMoveTowards(origin, angle)) {
+            for (int possibleAngle : origin.calculateAngles(target)) {
+                if (pathfinder.canMoveTowards(origin, possibleAngle)
+                        && pathfinder.lineOfSight(origin.nextPosition(possibleAngle), target)) {
+                    return origin.nextPosition(possibleAngle);
+                }
+            }
+        }
+        return origin.nextPosition(angle);
+    }
+}
@@ -0,0 +1,118 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ed.inf.controller.GridNode;
+import uk.ac.ed.inf.controller.GridSnapshotStore;
+import uk.ac.ed.inf.controller.Pathfinder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a grid loaded from a snapshot is identical to a freshly computed one, and that stale or damaged
+ * snapshots are replaced.
+ */
+public class GridSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<Boolean> walkability(Pathfinder pathfinder) {
+        List<Boolean> walkable = new ArrayList<>();
+        for (List<GridNode> row : pathfinder.getVirtualGrid()) {
+            for (GridNode node : row) {
+                walkable.add(node.isWalkable());
+            }
+        }
+        return walkable;
+    }
+
+    private static List<Boolean> computedWalkability(List<Polygon> noFlyZones) {
+        return walkability(new Pathfinder(noFlyZones));
+    }
+
+    private static List<Boolean> snapshotWalkability(List<Polygon> noFlyZones, GridSnapshotStore store) {
+        return walkability(new Pathfinder(noFlyZones, store));
+    }
+
+    private Path snapshotFile() throws IOException {
+        try (var files = Files.list(folder.getRoot().toPath())) {
+            List<Path> snapshots = new ArrayList<>();
+            files.forEach(snapshots::add);
+            /* The grid and the heading masks of its cells, and no temporary files */
+            assertEquals("Exactly the grid and heading mask snapshots should be left", 2, snapshots.size());
+            Path grid = folder.getRoot().toPath().resolve("virtual-grid.snapshot");
+            assertTrue(snapshots.contains(grid));
+            assertTrue(snapshots.contains(folder.getRoot().toPath().resolve("heading-masks.snapshot")));
+            return grid;
+        }
+    }
+
+    @Test
+    public void testLoadedGridMatchesComputedGrid() throws IOException {
+        List<Polygon> noFlyZones = TestData.loadNoFlyZones();
+        GridSnapshotStore store = new GridSnapshotStore(folder.getRoot().toPath());
+
+        new Pathfinder(noFlyZones, store);
+        Path snapshot = snapshotFile();
+        byte[] written = Files.readAllBytes(snapshot);
+
+        List<Boolean> loaded = snapshotWalkability(noFlyZones, store);
+        assertEquals(computedWalkability(noFlyZones), loaded);
+        assertArrayEquals("A matching snapshot should not be rewritten", written, Files.readAllBytes(snapshot));
+    }
+
+    @Test
+    public void testChangedZonesRegenerateSnapshot() throws IOException {
+        List<Polygon> noFlyZones = TestData.loadNoFlyZones();
+        GridSnapshotStore store = new GridSnapshotStore(folder.getRoot().toPath());
+        new Pathfinder(noFlyZones, store);
+        byte[] original = Files.readAllBytes(snapshotFile());
+
+        List<Polygon> changedZones = new ArrayList<>(noFlyZones);
+        double x = -3.1875;
+        double y = 55.9440;
+        double size = 0.0002;
+        changedZones.add(Polygon.fromLngLats(List.of(List.of(Point.fromLngLat(x, y), Point.fromLngLat(x + size, y),
+                Point.fromLngLat(x + size, y + size), Point.fromLngLat(x, y + size), Point.fromLngLat(x, y)))));
+
+        List<Boolean> loaded = snapshotWalkability(changedZones, store);
+        assertEquals(computedWalkability(changedZones), loaded);
+        byte[] regenerated = Files.readAllBytes(snapshotFile());
+        assertFalse("The snapshot should be replaced", Arrays.equals(original, regenerated));
+
+        loaded = snapshotWalkability(changedZones, store);
+        assertEquals(computedWalkability(changedZones), loaded);
+    }
+
+    @Test
+    public void testDamagedSnapshotIsRecomputed() throws IOException {
+        List<Polygon> noFlyZones = TestData.loadNoFlyZones();
+        GridSnapshotStore store = new GridSnapshotStore(folder.getRoot().toPath());
+        new Pathfinder(noFlyZones, store);
+        Path snapshot = snapshotFile();
+        byte[] original = Files.readAllBytes(snapshot);
+
+        /* Truncate the walkable bits */
+        Files.write(snapshot, Arrays.copyOf(original, original.length / 2));
+        List<Boolean> loaded = snapshotWalkability(noFlyZones, store);
+        assertEquals(computedWalkability(noFlyZones), loaded);
+        assertArrayEquals(original, Files.readAllBytes(snapshotFile()));
+
+        /* Overwrite the header */
+        Files.write(snapshot, new byte[]{1, 2, 3});
+        loaded = snapshotWalkability(noFlyZones, store);
+        assertEquals(computedWalkability(noFlyZones), loaded);
+        assertArrayEquals(original, Files.readAllBytes(snapshotFile()));
+    }
+}
@@ -0,0 +1,108 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ed.inf.controller.GridSnapshotStore;
+import uk.ac.ed.inf.controller.IncrementalReplanner;
+import uk.ac.ed.inf.controller.Pathfinder;
+import uk.ac.ed.inf.controller.ServiceArea;
+import uk.ac.ed.inf.domain.LongLat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the moves allowed by the heading masks of the cells are exactly the moves allowed by the walkability
+ * and line of sight checks, around the no-fly-zones and across the rest of the area.
+ */
+public class HeadingMasksTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<Polygon> noFlyZones;
+    private static Pathfinder pathfinder;
+    private static List<LongLat> positions;
+
+    @BeforeClass
+    public static void setUp() {
+        noFlyZones = TestData.loadNoFlyZones();
+        pathfinder = new Pathfinder(noFlyZones);
+        Random random = new Random(19);
+        positions = new ArrayList<>();
+        /* Around every corner of the no-fly-zones, where the masks leave headings unset */
+        for (Polygon polygon : noFlyZones) {
+            for (Point point : polygon.outer().coordinates()) {
+                for (int i = 0; i < 20; i++) {
+                    double spread = 4 * LongLat.STEP_DISTANCE;
+                    positions.add(new LongLat(point.longitude() + (random.nextDouble() - 0.5) * spread,
+                            point.latitude() + (random.nextDouble() - 0.5) * spread));
+                }
+            }
+        }
+        for (int i = 0; i < 5000; i++) {
+            positions.add(new LongLat(
+                    LongLat.MIN_LONGITUDE + random.nextDouble() * (LongLat.MAX_LONGITUDE - LongLat.MIN_LONGITUDE),
+                    LongLat.MIN_LATITUDE + random.nextDouble() * (LongLat.MAX_LATITUDE - LongLat.MIN_LATITUDE)));
+        }
+    }
+
+    @Test
+    public void testMasksMatchExactChecks() {
+        assertMatchesExactChecks(pathfinder);
+    }
+
+    @Test
+    public void testLazyMasksMatchExactChecks() {
+        /* The replanner's maps compute the mask of a cell when it is first needed */
+        IncrementalReplanner replanner = new IncrementalReplanner(pathfinder);
+        LongLat centre = new LongLat(-3.1880, 55.9440);
+        double x = centre.getLongitude();
+        double y = centre.getLatitude();
+        double half = 2 * LongLat.STEP_DISTANCE;
+        Polygon square = Polygon.fromLngLats(List.of(List.of(Point.fromLngLat(x - half, y - half),
+                Point.fromLngLat(x + half, y - half), Point.fromLngLat(x + half, y + half),
+                Point.fromLngLat(x - half, y + half), Point.fromLngLat(x - half, y - half))));
+        Pathfinder updated = replanner.applyChanges(List.of(square), List.of());
+        assertFalse(updated.canMoveTowards(new LongLat(x - half - LongLat.STEP_DISTANCE / 2, y), 0));
+        assertMatchesExactChecks(updated);
+    }
+
+    @Test
+    public void testTiledGridMatchesExactChecks() {
+        assertMatchesExactChecks(new Pathfinder(noFlyZones, null, ServiceArea.DEFAULT, 4));
+    }
+
+    @Test
+    public void testStoredMasksAreReused() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        GridSnapshotStore store = new GridSnapshotStore(directory);
+        new Pathfinder(noFlyZones, store);
+        Path file = directory.resolve("heading-masks.snapshot");
+        assertTrue(Files.isRegularFile(file));
+        long written = Files.getLastModifiedTime(file).toMillis();
+
+        Pathfinder loaded = new Pathfinder(noFlyZones, store);
+        assertEquals(written, Files.getLastModifiedTime(file).toMillis());
+        assertMatchesExactChecks(loaded);
+    }
+
+    private static void assertMatchesExactChecks(Pathfinder checked) {
+        for (LongLat position : positions) {
+            for (int angle = 0; angle <= 360; angle += 10) {
+                LongLat next = position.nextPosition(angle);
+                boolean exact = checked.isWalkable(next) && checked.lineOfSight(position, next);
+                assertEquals(position + " towards " + angle, exact, checked.canMoveTowards(position, angle));
+            }
+        }
+    }
+}
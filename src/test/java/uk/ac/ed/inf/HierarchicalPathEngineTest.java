@@ -0,0 +1,123 @@
+package uk.ac.ed.inf;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.ac.ed.inf.controller.GridNode;
+import uk.ac.ed.inf.controller.HierarchicalPathEngine;
+import uk.ac.ed.inf.controller.Pathfinder;
+import uk.ac.ed.inf.controller.ServiceArea;
+import uk.ac.ed.inf.domain.LongLat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HierarchicalPathEngineTest {
+
+    private static final int SAMPLE_COUNT = 300;
+    /* Paths are only refined within the clusters on the abstract path, so they can be longer than Theta* paths */
+    private static final double LENGTH_TOLERANCE = 1.25;
+    private static final double TOTAL_LENGTH_TOLERANCE = 1.03;
+
+    private static Pathfinder pathfinder;
+    private static List<LongLat> walkable;
+
+    @BeforeClass
+    public static void setUp() {
+        pathfinder = new Pathfinder(TestData.loadNoFlyZones());
+        walkable = walkableCells(pathfinder);
+    }
+
+    private static List<LongLat> walkableCells(Pathfinder pathfinder) {
+        List<LongLat> cells = new ArrayList<>();
+        for (List<GridNode> row : pathfinder.getVirtualGrid()) {
+            for (GridNode node : row) {
+                if (node.isWalkable()) {
+                    cells.add(node.getCoordinates());
+                }
+            }
+        }
+        return cells;
+    }
+
+    private static void assertLegal(Pathfinder pathfinder, LongLat start, LongLat dest, List<LongLat> path) {
+        assertTrue(path.get(0).closeTo(start));
+        assertTrue(path.get(path.size() - 1).closeTo(dest));
+        for (int j = 1; j < path.size(); j++) {
+            assertTrue(pathfinder.lineOfSight(path.get(j - 1), path.get(j)));
+            assertTrue(pathfinder.isWalkable(path.get(j)));
+        }
+    }
+
+    @Test
+    public void testPathsAreLegal() {
+        /* Cluster sizes that do and do not divide the grid evenly */
+        for (int clusterSize : new int[]{5, 8, HierarchicalPathEngine.DEFAULT_CLUSTER_SIZE, 40}) {
+            HierarchicalPathEngine hierarchical = new HierarchicalPathEngine(pathfinder, clusterSize);
+            Random random = new Random(clusterSize);
+            for (int i = 0; i < SAMPLE_COUNT; i++) {
+                LongLat start = walkable.get(random.nextInt(walkable.size()));
+                LongLat dest = walkable.get(random.nextInt(walkable.size()));
+                assertLegal(pathfinder, start, dest, hierarchical.findPath(start, dest));
+            }
+        }
+    }
+
+    @Test
+    public void testPathLengthsAreCloseToThetaStar() {
+        HierarchicalPathEngine hierarchical = new HierarchicalPathEngine(pathfinder);
+        Random random = new Random(31);
+        double totalThetaLength = 0;
+        double totalHierarchicalLength = 0;
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            LongLat start = walkable.get(random.nextInt(walkable.size()));
+            LongLat dest = walkable.get(random.nextInt(walkable.size()));
+            double thetaLength = PathfinderBenchmarkTest.pathLength(pathfinder.findPath(start, dest));
+            double hierarchicalLength = PathfinderBenchmarkTest.pathLength(hierarchical.findPath(start, dest));
+            assertTrue(start + " to " + dest + ": " + hierarchicalLength + " vs " + thetaLength,
+                    hierarchicalLength <= thetaLength * LENGTH_TOLERANCE);
+            totalThetaLength += thetaLength;
+            totalHierarchicalLength += hierarchicalLength;
+        }
+        assertTrue(totalHierarchicalLength + " vs " + totalThetaLength,
+                totalHierarchicalLength <= totalThetaLength * TOTAL_LENGTH_TOLERANCE);
+    }
+
+    @Test
+    public void testConfiguredServiceArea() {
+        ServiceArea area = ServiceArea.DEFAULT;
+        double resolution = area.getResolution() / 2;
+        double midLongitude = (area.getMinLongitude() + area.getMaxLongitude()) / 2;
+        ServiceArea westHalf = new ServiceArea(area.getMinLongitude(), area.getMinLatitude(), midLongitude,
+                area.getMaxLatitude(), resolution);
+        Pathfinder fine = new Pathfinder(TestData.loadNoFlyZones(), null, westHalf);
+
+        List<List<GridNode>> grid = fine.getVirtualGrid();
+        assertEquals(westHalf.getRows(), grid.size());
+        assertEquals(westHalf.getCols(), grid.get(0).size());
+        LongLat corner = grid.get(0).get(0).getCoordinates();
+        assertEquals(area.getMinLongitude() + resolution / 2, corner.getLongitude(), 1e-12);
+        assertEquals(area.getMinLatitude() + resolution / 2, corner.getLatitude(), 1e-12);
+
+        List<LongLat> cells = walkableCells(fine);
+        HierarchicalPathEngine hierarchical = new HierarchicalPathEngine(fine);
+        Random random = new Random(37);
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            LongLat start = cells.get(random.nextInt(cells.size()));
+            LongLat dest = cells.get(random.nextInt(cells.size()));
+            assertLegal(fine, start, dest, hierarchical.findPath(start, dest));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsEmptyServiceArea() {
+        new ServiceArea(-3.18, 55.94, -3.19, 55.95, Pathfinder.EPSILON);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsTinyClusters() {
+        new HierarchicalPathEngine(pathfinder, 1);
+    }
+}
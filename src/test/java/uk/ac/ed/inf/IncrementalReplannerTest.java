@@ -0,0 +1,163 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+import org.junit.Test;
+import uk.ac.ed.inf.controller.DStarLiteRoute;
+import uk.ac.ed.inf.controller.GridNode;
+import uk.ac.ed.inf.controller.IncrementalReplanner;
+import uk.ac.ed.inf.controller.Pathfinder;
+import uk.ac.ed.inf.domain.LongLat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that maps published by the replanner match Pathfinders built from scratch, and that repaired routes are as
+ * short as routes planned from scratch on the new map.
+ */
+public class IncrementalReplannerTest {
+
+    private static final LongLat START = new LongLat(-3.1912, 55.9434);
+    private static final LongLat DEST = new LongLat(-3.1853, 55.9458);
+
+    private static Polygon square(LongLat centre, double halfSide) {
+        double x = centre.getLongitude();
+        double y = centre.getLatitude();
+        List<Point> ring = List.of(Point.fromLngLat(x - halfSide, y - halfSide),
+                Point.fromLngLat(x + halfSide, y - halfSide), Point.fromLngLat(x + halfSide, y + halfSide),
+                Point.fromLngLat(x - halfSide, y + halfSide), Point.fromLngLat(x - halfSide, y - halfSide));
+        return Polygon.fromLngLats(List.of(ring));
+    }
+
+    private static List<Boolean> walkability(Pathfinder pathfinder) {
+        List<Boolean> walkable = new ArrayList<>();
+        for (List<GridNode> row : pathfinder.getVirtualGrid()) {
+            for (GridNode node : row) {
+                walkable.add(node.isWalkable());
+            }
+        }
+        return walkable;
+    }
+
+    private static void assertLegal(Pathfinder pathfinder, List<LongLat> path) {
+        for (int i = 1; i < path.size(); i++) {
+            assertTrue(pathfinder.lineOfSight(path.get(i - 1), path.get(i)));
+            assertTrue(pathfinder.isWalkable(path.get(i)));
+        }
+    }
+
+    @Test
+    public void testPublishedMapMatchesRebuiltPathfinder() {
+        List<Polygon> noFlyZones = TestData.loadNoFlyZones();
+        Pathfinder original = new Pathfinder(noFlyZones);
+        List<Boolean> originalWalkability = walkability(original);
+        IncrementalReplanner replanner = new IncrementalReplanner(original);
+
+        Polygon added = square(new LongLat(-3.1885, 55.9445), 0.0002);
+        Polygon removed = noFlyZones.get(0);
+        Pathfinder updated = replanner.applyChanges(List.of(added), List.of(removed));
+        assertSame(updated, replanner.getPathfinder());
+
+        List<Polygon> expectedZones = new ArrayList<>(noFlyZones.subList(1, noFlyZones.size()));
+        expectedZones.add(added);
+        Pathfinder rebuilt = new Pathfinder(expectedZones);
+        assertEquals(walkability(rebuilt), walkability(updated));
+        assertNotEquals(originalWalkability, walkability(updated));
+        /* The previous map is left as it was for the queries still running on it */
+        assertEquals(originalWalkability, walkability(original));
+
+        Random random = new Random(43);
+        for (int i = 0; i < 500; i++) {
+            LongLat a = randomPoint(random);
+            LongLat b = randomPoint(random);
+            assertEquals(rebuilt.lineOfSight(a, b), updated.lineOfSight(a, b));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsRemovingUnknownPolygon() {
+        IncrementalReplanner replanner = new IncrementalReplanner(new Pathfinder(TestData.loadNoFlyZones()));
+        replanner.applyChanges(List.of(), List.of(square(new LongLat(-3.19, 55.944), 0.0001)));
+    }
+
+    @Test
+    public void testRepairedRouteMatchesFreshRoute() {
+        IncrementalReplanner replanner = new IncrementalReplanner(new Pathfinder(TestData.loadNoFlyZones()));
+        DStarLiteRoute route = replanner.route(DEST);
+        List<LongLat> path = route.pathFrom(START);
+        assertLegal(replanner.getPathfinder(), path);
+        assertTrue(path.get(0).closeTo(START));
+        assertTrue(path.get(path.size() - 1).closeTo(DEST));
+        double initialCost = route.getRemainingCost();
+        long initialExpansions = route.getExpansions();
+
+        /* Block the first leg just ahead of the drone, after it moved a little along it */
+        LongLat position = path.get(0).nextPosition(angleTowards(path.get(0), path.get(1)));
+        LongLat ahead = new LongLat((position.getLongitude() + path.get(1).getLongitude()) / 2,
+                (position.getLatitude() + path.get(1).getLatitude()) / 2);
+        Polygon obstacle = square(ahead, 0.0001);
+        replanner.applyChanges(List.of(obstacle), List.of());
+
+        List<LongLat> repaired = route.pathFrom(position);
+        long repairExpansions = route.getExpansions() - initialExpansions;
+        Pathfinder updated = replanner.getPathfinder();
+        assertLegal(updated, repaired);
+        assertTrue(repaired.get(repaired.size() - 1).closeTo(DEST));
+
+        DStarLiteRoute fresh = replanner.route(DEST);
+        fresh.pathFrom(position);
+        assertEquals(fresh.getRemainingCost(), route.getRemainingCost(), 1e-12);
+        assertFalse("The obstacle must block the old leg", updated.lineOfSight(position, path.get(1)));
+        assertTrue(repairExpansions + " vs " + fresh.getExpansions(), repairExpansions < fresh.getExpansions());
+
+        /* Lifting the obstacle again brings back the original distances */
+        replanner.applyChanges(List.of(), List.of(obstacle));
+        route.pathFrom(START);
+        assertEquals(initialCost, route.getRemainingCost(), 1e-12);
+    }
+
+    @Test
+    public void testRoutesMatchFreshRoutesAfterRandomChanges() {
+        IncrementalReplanner replanner = new IncrementalReplanner(new Pathfinder(TestData.loadNoFlyZones()));
+        DStarLiteRoute route = replanner.route(DEST);
+        route.pathFrom(START);
+        Random random = new Random(47);
+        List<Polygon> added = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            LongLat position = randomPoint(random);
+            if (!replanner.getPathfinder().isWalkable(position)) {
+                continue;
+            }
+            if (!added.isEmpty() && random.nextBoolean()) {
+                replanner.applyChanges(List.of(), List.of(added.remove(random.nextInt(added.size()))));
+            } else {
+                Polygon obstacle = square(randomPoint(random), 0.00005 + random.nextDouble() * 0.0002);
+                replanner.applyChanges(List.of(obstacle), List.of());
+                added.add(obstacle);
+            }
+            if (!replanner.getPathfinder().isWalkable(position) || !replanner.getPathfinder().isWalkable(DEST)) {
+                continue;
+            }
+            List<LongLat> path = route.pathFrom(position);
+            assertLegal(replanner.getPathfinder(), path);
+            DStarLiteRoute fresh = replanner.route(DEST);
+            fresh.pathFrom(position);
+            assertEquals(fresh.getRemainingCost(), route.getRemainingCost(), 1e-12);
+        }
+    }
+
+    private static LongLat randomPoint(Random random) {
+        return new LongLat(LongLat.MIN_LONGITUDE + random.nextDouble() * (LongLat.MAX_LONGITUDE - LongLat.MIN_LONGITUDE),
+                LongLat.MIN_LATITUDE + random.nextDouble() * (LongLat.MAX_LATITUDE - LongLat.MIN_LATITUDE));
+    }
+
+    private static int angleTowards(LongLat from, LongLat to) {
+        double degrees = Math.toDegrees(Math.atan2(to.getLatitude() - from.getLatitude(),
+                to.getLongitude() - from.getLongitude()));
+        return (int) ((Math.round(degrees / 10) * 10 + 360) % 360);
+    }
+}
@@ -0,0 +1,347 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.clients.WebServerClient;
+import uk.ac.ed.inf.controller.PathEngine;
+import uk.ac.ed.inf.controller.Pathfinder;
+import uk.ac.ed.inf.domain.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The drone controller as it was before moves were simulated on primitive coordinates, kept so that tests can check
+ * that the drone still makes exactly the same moves. The moves are computed with the original LongLat arithmetic,
+ * copied below, rather than with the methods of LongLat. Like the current controller, it skips an order that does not
+ * fit in the steps left and goes on with the next one, returning to the base once every order has been attempted.
+ */
+public class LegacyDroneController {
+    /**
+     * Represents the orders to be completed
+     */
+    private final LinkedList<Order> orderList;
+    /**
+     * The position of the drone's base, where it returns to at the end of its service
+     */
+    private final LongLat basePos;
+    /**
+     * The drone's current position
+     */
+    private LongLat currentPos;
+    /**
+     * The drone's position after completing its most recent order.
+     */
+    private LongLat lastOrderPos;
+    /**
+     * The number of the order currently being delivered.
+     */
+    private String currentOrderNo;
+    /**
+     * The steps left for the drone to make.
+     */
+    private int stepsLeft;
+    /**
+     * The steps left after the drone completed its most recent delivery.
+     */
+    private int lastOrderSteps;
+
+    /**
+     * Information about the items and shops the drone can interact with.
+     */
+    private final ItemData itemData;
+    /**
+     * A list of all Flightpaths performed by the drone.
+     */
+    private final List<Flightpath> flightpathList = new ArrayList<>();
+    /**
+     * A list of the Flightpaths performed by the drone during its current delivery.
+     */
+    private List<Flightpath> currentFlightpath = new ArrayList<>();
+
+    private final WebServerClient webServerClient;
+    /**
+     * Answers whether single moves of the drone are legal.
+     */
+    private final Pathfinder pathfinder;
+    /**
+     * Plans the paths between the drone's targets.
+     */
+    private final PathEngine pathEngine;
+
+    public LegacyDroneController(ItemData itemData, LongLat basePos, int stepsLeft, List<Order> orderList,
+                           WebServerClient webServerClient, Pathfinder pathfinder, PathEngine pathEngine) {
+        this.itemData = itemData;
+        this.basePos = basePos;
+        this.currentPos = basePos; /* Base position and starting position are the same. */
+        this.stepsLeft = stepsLeft;
+        this.lastOrderSteps = stepsLeft;
+        this.lastOrderPos = basePos;
+        this.orderList = new LinkedList<>(orderList);
+        this.webServerClient = webServerClient;
+        this.pathfinder = pathfinder;
+        this.pathEngine = pathEngine;
+    }
+
+    public List<Flightpath> getFlightpathList() {
+        return flightpathList;
+    }
+
+
+    /**
+     * Attempts to deliver all orders in the orderList and returns a list of Delivery objects representing the completed
+     * orders.
+     * @return the deliveries completed as a list of Delivery objects.
+     */
+    public List<Delivery> deliverOrders() {
+        List<Delivery> completedDeliveries = new ArrayList<>();
+        for (Order order : orderList) {
+            if (deliverOrder(order)) {
+                int currentCost = itemData.calculateDeliveryCost(order.getOrderDetails());
+                completedDeliveries.add(new Delivery(order.getOrderNo(), order.getDeliverTo(), currentCost));
+            }
+        }
+        if (!completedDeliveries.isEmpty()) {
+            currentOrderNo = completedDeliveries.get(completedDeliveries.size() - 1).getOrderNo();
+            goBackToBase();
+        }
+        return completedDeliveries;
+    }
+
+    /**
+     * Attempts to deliver an order. If the order succeeds, the flightpath of the order is added to the flightpathList.
+     * Otherwise, the drone is reset to where it completed its most recent order.
+     *
+     * @param current the order to deliver.
+     * @return True if the order was delivered, False otherwise. (Delivery can fail if the drone runs out of steps)
+     */
+    private boolean deliverOrder(Order current) {
+        currentFlightpath = new ArrayList<>(); /* Resets the current order flightpath to empty. */
+        currentOrderNo = current.getOrderNo();
+        LongLat customerPos = webServerClient.getLongLatFromW3W(current.getDeliverTo());
+        List<String> items = current.getOrderDetails();
+        List<Shop> shops = itemData.findShops(items);
+
+        /* This comparator applies only to collections of 2 shops! (which is always the case) */
+        Comparator<LongLat> shopComparatorForTwoShops = (o1, o2) -> {
+            double dist1 = o1.distanceTo(currentPos) + o2.distanceTo(customerPos);
+            double dist2 = o1.distanceTo(customerPos) + o2.distanceTo(currentPos);
+
+            return Double.compare(dist1, dist2);
+        };
+        LinkedList<LongLat> targets =  shops.stream()
+                .map(shop -> webServerClient.getLongLatFromW3W(shop.getLocation()))
+                .sorted(shopComparatorForTwoShops)
+                .collect(Collectors.toCollection(LinkedList::new));
+
+        targets.add(customerPos);
+
+        while (!targets.isEmpty()) {
+            LongLat currentTarget = targets.pollFirst();
+            LinkedList<LongLat> path = new LinkedList<>(pathEngine.findPath(currentPos, currentTarget));
+            LongLat dest;
+
+            /* Check if the path given has gaps */
+            if (!closeTo(currentPos, path.pollFirst())) {
+                System.err.println("Starting position of the drone for the current target disagrees with pathfinder");
+                System.exit(1);
+            }
+            while (!path.isEmpty()) {
+                dest = path.pollFirst();
+                /* Move towards the destination until the drone is close to it. */
+                while (!closeTo(currentPos, dest)) {
+                    currentPos = makeMove(currentPos, dest, true);
+                    stepsLeft--;
+                }
+            }
+            /* If drone did not reach the target, make another step towards it. This prevents an issue when currentPos
+             is close to dest, and dest is closeTo the target, but currentPos is not close to target. */
+            if (!closeTo(currentPos, currentTarget)) {
+                currentPos = makeMove(currentPos, currentTarget, true);
+                stepsLeft--;
+            }
+            /* Hover to deliver/pickup items. */
+            currentPos = hover(currentPos);
+            stepsLeft--;
+        }
+
+        if (stepsLeft > 0 && canGoToBase()) {
+            flightpathList.addAll(currentFlightpath);
+            lastOrderSteps = stepsLeft;
+            lastOrderPos = currentPos;
+
+            return true;
+        } else {
+            /* Order cannot be completed, reset drone back to the previous completed order */
+            stepsLeft = lastOrderSteps;
+            currentPos = lastOrderPos;
+
+            return false;
+        }
+    }
+
+    /**
+     * Moves the drone from its current position back to its base position and logs the flightpath.
+     */
+    private void goBackToBase() {
+        currentFlightpath = new ArrayList<>();
+        LinkedList<LongLat> path = new LinkedList<>(pathEngine.findPath(currentPos, basePos));
+
+        LongLat dest;
+        while (!path.isEmpty()) {
+            dest = path.pollFirst();
+            /* Move towards the destination until the drone is close to it. */
+            while (!closeTo(currentPos, dest)) {
+                currentPos = makeMove(currentPos, dest, true);
+                stepsLeft--;
+            }
+        }
+        /* If drone did not reach AT, make another step towards it. */
+        if (!closeTo(currentPos, basePos)) {
+            currentPos = makeMove(currentPos, basePos, true);
+            stepsLeft--;
+        }
+        flightpathList.addAll(currentFlightpath);
+    }
+
+    /**
+     * Tests whether the drone has enough moves left to reach its base from its current position.
+     *
+     * @return True if the drone can return to its base, false otherwise.
+     */
+    private boolean canGoToBase() {
+        LongLat tempPos = currentPos;
+        int tempSteps = stepsLeft;
+
+        LinkedList<LongLat> path = new LinkedList<>(pathEngine.findPath(tempPos, basePos));
+
+        LongLat dest;
+        while (!path.isEmpty()) {
+            dest = path.pollFirst();
+            /* Move towards the destination until the drone is close to it. */
+            while (!closeTo(tempPos, dest)) {
+                tempPos = makeMove(tempPos, dest, false);
+                tempSteps--;
+            }
+        }
+        /* If drone did not reach AT, make another step towards it. */
+        if (!closeTo(tempPos, basePos)) {
+            makeMove(tempPos, basePos, false);
+            tempSteps--;
+        }
+        return tempSteps > 0;
+    }
+
+    /**
+     * Moves the drone from its current position toward the target position and stores the Flightpath describing the
+     * move to the currentOrderFlightPath if the log flag is true.
+     *
+     * @param origin the drone's current position.
+     * @param target the target position.
+     * @param log a flag that determines if the move made will be added to the currentFlightpath list.
+     *
+     * @return a LongLat object describing the new position of the drone.
+     */
+    private LongLat makeMove(LongLat origin, LongLat target, boolean log) {
+        List<Integer> possibleAngles;
+        int angle;
+        LongLat nextPos = new LongLat(0,0);
+        boolean found = false;
+        angle = origin.calculateAngle(target);
+
+        /* If the drone cannot move towards angle from currentPos, calculate alternative angles */
+        if (!canMoveTowards(origin, angle)) {
+            possibleAngles = calculateAngles(origin, target);
+            for (Integer possibleAngle : possibleAngles) {
+                /* If a move can be made towards possibleAngle, test further */
+                if (canMoveTowards(origin, possibleAngle)) {
+                    LongLat testPos = nextPosition(origin, possibleAngle);
+                    /* If there is line of sight between the new position and the target, possibleAngle is valid */
+                    if (pathfinder.lineOfSight(testPos, target)) {
+                        angle = possibleAngle;
+                        nextPos = nextPosition(origin, angle);
+                        found = true;
+                        break;
+                    }
+                }
+            }
+        } else {
+            nextPos = nextPosition(origin, angle);
+            found = true;
+        }
+
+        if (!found) {
+            System.err.println("No valid move was found!");
+            angle = origin.calculateAngle(target);
+            nextPos = nextPosition(origin, angle);
+        }
+
+        if (log) {
+            logStep(origin, nextPos, angle);
+        }
+        return nextPos;
+    }
+
+    /**
+     * Makes the drone hover for one move in order to deliver or pick up items and stores the appropriate Flightpath object to the
+     * currentOrderFlightpath list.
+     *
+     * @param origin the drone's current position.
+     * @return a LongLat object describing the new position of the drone.
+     */
+    private LongLat hover(LongLat origin) {
+        int angle = LongLat.HOVER_VALUE;
+        LongLat nextPos = nextPosition(origin, angle);
+        logStep(origin, nextPos, angle);
+        return nextPos;
+    }
+
+    /**
+     * Logs a new Flightpath object to the currentOrderFlightpath and updates the steps left and the current position.
+     *
+     * @param origin the drone's starting position
+     * @param nextPos the next position of the drone.
+     * @param angle the angle the drone moved towards.
+     */
+    private void logStep(LongLat origin, LongLat nextPos, int angle) {
+        currentFlightpath.add(new Flightpath(currentOrderNo, origin, nextPos, angle));
+    }
+
+    static boolean closeTo(LongLat a, LongLat b) {
+        return Math.sqrt(Math.pow(a.getLongitude() - b.getLongitude(), 2)
+                + Math.pow(a.getLatitude() - b.getLatitude(), 2)) - Math.pow(10, -12) <= LongLat.CLOSE_DISTANCE;
+    }
+
+    static LongLat nextPosition(LongLat origin, int angle) {
+        if (angle == LongLat.HOVER_VALUE) {
+            return new LongLat(origin.getLongitude(), origin.getLatitude());
+        }
+        double newLong = origin.getLongitude() + (LongLat.STEP_DISTANCE * Math.cos(Math.toRadians(angle)));
+        double newLat = origin.getLatitude() + (LongLat.STEP_DISTANCE * Math.sin(Math.toRadians(angle)));
+        return new LongLat(newLong, newLat);
+    }
+
+    static List<Integer> calculateAngles(LongLat origin, LongLat dest) {
+        List<Integer> angles = new ArrayList<>();
+        int angleToTarget = origin.calculateAngle(dest);
+        for (int i = 0; i < 19; i++) {
+            int currentN = angleToTarget - i * 10;
+            int currentP = angleToTarget + i * 10;
+            if (currentN < 0) {
+                currentN += 360;
+            }
+            if (currentP > 360) {
+                currentP -= 360;
+            }
+            angles.add(currentN);
+            angles.add(currentP);
+        }
+        return angles;
+    }
+
+    private boolean canMoveTowards(LongLat currentPos, int angle) {
+        LongLat testPos = nextPosition(currentPos, angle);
+        return pathfinder.isWalkable(testPos) && pathfinder.lineOfSight(currentPos, testPos);
+    }
+}
@@ -0,0 +1,129 @@
+package uk.ac.ed.inf;
+
+import uk.ac.ed.inf.controller.GridNode;
+import uk.ac.ed.inf.controller.Pathfinder;
+import uk.ac.ed.inf.domain.LongLat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A copy of the original list-based Theta* search, kept as the reference that the optimised Pathfinder is compared
+ * against. It only reads walkability and coordinates from the Pathfinder's grid, and keeps its own search state.
+ */
+public class LegacyThetaStar {
+
+    private static final List<List<Integer>> DISPLACEMENT_MATRIX = List.of(
+            List.of(-1, 0), List.of(0, -1), List.of(1, 0), List.of(0, 1),
+            List.of(1, -1), List.of(-1, 1), List.of(1, 1), List.of(-1, -1));
+
+    private final Pathfinder pathfinder;
+    private final Node[][] grid;
+
+    private static class Node {
+        final int row;
+        final int col;
+        final LongLat coordinates;
+        final boolean walkable;
+        Node parent;
+        double totalScore;
+        double distanceScore;
+        double scoreFromStart = Double.MAX_VALUE;
+
+        Node(int row, int col, LongLat coordinates, boolean walkable) {
+            this.row = row;
+            this.col = col;
+            this.coordinates = coordinates;
+            this.walkable = walkable;
+        }
+    }
+
+    public LegacyThetaStar(Pathfinder pathfinder) {
+        this.pathfinder = pathfinder;
+        List<List<GridNode>> virtualGrid = pathfinder.getVirtualGrid();
+        grid = new Node[virtualGrid.size()][virtualGrid.get(0).size()];
+        for (int row = 0; row < grid.length; row++) {
+            for (int col = 0; col < grid[0].length; col++) {
+                GridNode node = virtualGrid.get(row).get(col);
+                grid[row][col] = new Node(row, col, node.getCoordinates(), node.isWalkable());
+            }
+        }
+    }
+
+    public List<LongLat> findPath(LongLat start, LongLat dest) {
+        for (Node[] row : grid) {
+            for (Node node : row) {
+                node.parent = null;
+                node.scoreFromStart = Double.MAX_VALUE;
+            }
+        }
+        int[] s = pathfinder.getRowColFromLongLat(start);
+        int[] d = pathfinder.getRowColFromLongLat(dest);
+        List<Node> nodes = findPathOnGrid(grid[s[0]][s[1]], grid[d[0]][d[1]]);
+        Collections.reverse(nodes);
+        List<LongLat> path = new ArrayList<>();
+        for (Node node : nodes) {
+            path.add(node.coordinates);
+        }
+        return path;
+    }
+
+    private List<Node> findPathOnGrid(Node start, Node end) {
+        PriorityQueue<Node> openQueue = new PriorityQueue<>(300, Comparator.comparingDouble(n -> n.totalScore));
+        List<Node> closedList = new ArrayList<>();
+        start.scoreFromStart = 0;
+        openQueue.add(start);
+
+        while (!openQueue.isEmpty()) {
+            Node current = openQueue.poll();
+            if (current == end) {
+                List<Node> path = new ArrayList<>();
+                for (Node n = end; n != null && !path.contains(n); n = n.parent) {
+                    path.add(n);
+                }
+                return path;
+            }
+            closedList.add(current);
+            for (Node neighbour : neighbours(current)) {
+                double newDist = neighbour.coordinates.distanceTo(current.coordinates);
+                if (closedList.contains(neighbour)
+                        && neighbour.scoreFromStart < current.scoreFromStart + newDist) {
+                    continue;
+                }
+                if (openQueue.contains(neighbour)
+                        && neighbour.scoreFromStart < current.scoreFromStart + newDist) {
+                    continue;
+                }
+                if (current.parent != null
+                        && pathfinder.lineOfSight(current.parent.coordinates, neighbour.coordinates)) {
+                    neighbour.parent = current.parent;
+                } else {
+                    neighbour.parent = current;
+                }
+                neighbour.distanceScore = neighbour.coordinates.distanceTo(end.coordinates);
+                neighbour.scoreFromStart = neighbour.parent.scoreFromStart
+                        + neighbour.coordinates.distanceTo(neighbour.parent.coordinates);
+                neighbour.totalScore = neighbour.distanceScore + neighbour.scoreFromStart;
+                if (!openQueue.contains(neighbour) && !closedList.contains(neighbour)) {
+                    openQueue.add(neighbour);
+                }
+            }
+        }
+        return List.of(end);
+    }
+
+    private List<Node> neighbours(Node node) {
+        List<Node> result = new ArrayList<>();
+        for (List<Integer> vector : DISPLACEMENT_MATRIX) {
+            int row = node.row + vector.get(0);
+            int col = node.col + vector.get(1);
+            if (row >= 0 && row < grid.length && col >= 0 && col < grid[0].length && grid[row][col].walkable) {
+                result.add(grid[row][col]);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,108 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.ac.ed.inf.controller.Pathfinder;
+import uk.ac.ed.inf.domain.LongLat;
+
+import java.awt.geom.Line2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares Pathfinder.lineOfSight against an exhaustive test of the ray against every no-fly-zone edge.
+ */
+public class LineOfSightTest {
+
+    private static final int SAMPLE_COUNT = 200000;
+
+    private static Pathfinder pathfinder;
+    private static List<Line2D> edges;
+    private static List<LongLat> vertices;
+
+    @BeforeClass
+    public static void setUp() {
+        List<Polygon> noFlyZones = TestData.loadNoFlyZones();
+        pathfinder = new Pathfinder(noFlyZones);
+        edges = new ArrayList<>();
+        vertices = new ArrayList<>();
+        for (Polygon polygon : noFlyZones) {
+            List<Point> points = polygon.outer().coordinates();
+            for (int i = 0; i < points.size() - 1; i++) {
+                edges.add(new Line2D.Double(points.get(i).longitude(), points.get(i).latitude(),
+                        points.get(i + 1).longitude(), points.get(i + 1).latitude()));
+                vertices.add(new LongLat(points.get(i).longitude(), points.get(i).latitude()));
+            }
+        }
+    }
+
+    public static boolean exhaustiveLineOfSight(LongLat a, LongLat b) {
+        Line2D ray = new Line2D.Double(a.getLongitude(), a.getLatitude(), b.getLongitude(), b.getLatitude());
+        for (Line2D edge : edges) {
+            if (ray.intersectsLine(edge)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A random point that is sometimes a no-fly-zone vertex and sometimes outside the confinement area.
+     */
+    public static LongLat randomPoint(Random random) {
+        int kind = random.nextInt(10);
+        if (kind == 0) {
+            return vertices.get(random.nextInt(vertices.size()));
+        }
+        double margin = kind == 1 ? 0.001 : 0;
+        double longitude = LongLat.MIN_LONGITUDE - margin
+                + random.nextDouble() * (LongLat.MAX_LONGITUDE - LongLat.MIN_LONGITUDE + 2 * margin);
+        double latitude = LongLat.MIN_LATITUDE - margin
+                + random.nextDouble() * (LongLat.MAX_LATITUDE - LongLat.MIN_LATITUDE + 2 * margin);
+        return new LongLat(longitude, latitude);
+    }
+
+    @Test
+    public void testRandomRays() {
+        Random random = new Random(1);
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            LongLat a = randomPoint(random);
+            /* Mix long rays with the short ones that Theta* and the drone moves produce */
+            LongLat b = random.nextBoolean() ? randomPoint(random) : a.nextPosition(random.nextInt(36) * 10);
+            assertEquals(a + " -> " + b, exhaustiveLineOfSight(a, b), pathfinder.lineOfSight(a, b));
+        }
+    }
+
+    @Test
+    public void testRaysAroundZones() {
+        /* Short and long rays that start, end or stay inside the no-fly-zones */
+        Random random = new Random(2);
+        for (LongLat vertex : vertices) {
+            for (int i = 0; i < 200; i++) {
+                double radius = random.nextBoolean() ? Pathfinder.EPSILON : 0.0005;
+                LongLat a = new LongLat(vertex.getLongitude() + (random.nextDouble() - 0.5) * radius,
+                        vertex.getLatitude() + (random.nextDouble() - 0.5) * radius);
+                LongLat b = new LongLat(vertex.getLongitude() + (random.nextDouble() - 0.5) * radius,
+                        vertex.getLatitude() + (random.nextDouble() - 0.5) * radius);
+                assertEquals(a + " -> " + b, exhaustiveLineOfSight(a, b), pathfinder.lineOfSight(a, b));
+            }
+        }
+    }
+
+    @Test
+    public void testRaysThroughVertices() {
+        for (LongLat vertex : vertices) {
+            for (int angle = 0; angle < 360; angle += 10) {
+                LongLat end = vertex.nextPosition(angle);
+                assertEquals(exhaustiveLineOfSight(vertex, end), pathfinder.lineOfSight(vertex, end));
+                assertEquals(exhaustiveLineOfSight(end, vertex), pathfinder.lineOfSight(end, vertex));
+            }
+            assertFalse(pathfinder.lineOfSight(vertex, vertex));
+        }
+    }
+}
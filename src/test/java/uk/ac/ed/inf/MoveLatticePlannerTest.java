@@ -0,0 +1,98 @@
+package uk.ac.ed.inf;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.ac.ed.inf.controller.MoveLatticePlanner;
+import uk.ac.ed.inf.controller.MovePlan;
+import uk.ac.ed.inf.controller.Pathfinder;
+import uk.ac.ed.inf.domain.LongLat;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MoveLatticePlannerTest {
+
+    private static final int SAMPLE_COUNT = 50;
+
+    private static Pathfinder pathfinder;
+    private static MoveLatticePlanner planner;
+
+    @BeforeClass
+    public static void setUp() {
+        pathfinder = new Pathfinder(TestData.loadNoFlyZones());
+        planner = new MoveLatticePlanner(pathfinder);
+    }
+
+    @Test
+    public void testPlansReplayExactly() {
+        Random random = new Random(16);
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            LongLat start = randomWalkablePoint(random);
+            LongLat target = randomWalkablePoint(random);
+            MovePlan plan = planner.plan(start, target);
+            assertNotNull(plan);
+
+            LongLat position = start;
+            for (int angle : plan.getAngles()) {
+                assertEquals(0, angle % 10);
+                assertTrue(pathfinder.canMoveTowards(position, angle));
+                position = position.nextPosition(angle);
+            }
+            assertEquals(plan.getEnd().getLongitude(), position.getLongitude(), 0);
+            assertEquals(plan.getEnd().getLatitude(), position.getLatitude(), 0);
+            assertTrue(position.closeTo(target));
+            assertTrue(plan.getSteps() * LongLat.STEP_DISTANCE + LongLat.CLOSE_DISTANCE
+                    >= start.distanceTo(target) - 1e-12);
+        }
+    }
+
+    @Test
+    public void testStraightPlanHasFewestSteps() {
+        LongLat start = new LongLat(-3.1920, 55.9430);
+        LongLat target = new LongLat(-3.1900, 55.9430);
+        MovePlan plan = planner.plan(start, target);
+        int fewest = (int) Math.ceil((start.distanceTo(target) - LongLat.CLOSE_DISTANCE) / LongLat.STEP_DISTANCE);
+        assertEquals(fewest, plan.getSteps());
+        assertTrue(planner.plan(start, start).getAngles().isEmpty());
+    }
+
+    @Test
+    public void testPlansAreNoLongerThanSteering() {
+        GreedySteering steering = new GreedySteering(pathfinder, pathfinder);
+        Random random = new Random(61);
+        int planned = 0;
+        int steered = 0;
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            LongLat start = randomWalkablePoint(random);
+            LongLat target = randomWalkablePoint(random);
+            planned += planner.plan(start, target).getSteps();
+            steered += steering.steps(start, target);
+        }
+        assertTrue(planned + " planned steps, " + steered + " steered", planned <= steered);
+    }
+
+    @Test
+    public void testUnreachableTargetHasNoPlan() {
+        /* Inside a no-fly-zone, away from its edges */
+        LongLat inside = new LongLat(-3.1901, 55.9452);
+        assertFalse(pathfinder.isWalkable(inside));
+        assertNull(new MoveLatticePlanner(pathfinder, 1000).plan(new LongLat(-3.1920, 55.9430), inside));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNoExpansions() {
+        new MoveLatticePlanner(pathfinder, 0);
+    }
+
+    private static LongLat randomWalkablePoint(Random random) {
+        while (true) {
+            LongLat point = new LongLat(
+                    LongLat.MIN_LONGITUDE + random.nextDouble() * (LongLat.MAX_LONGITUDE - LongLat.MIN_LONGITUDE),
+                    LongLat.MIN_LATITUDE + random.nextDouble() * (LongLat.MAX_LATITUDE - LongLat.MIN_LATITUDE));
+            if (pathfinder.isWalkable(point)) {
+                return point;
+            }
+        }
+    }
+}
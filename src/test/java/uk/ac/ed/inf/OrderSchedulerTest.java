@@ -0,0 +1,118 @@
+package uk.ac.ed.inf;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.ac.ed.inf.clients.WebServerClient;
+import uk.ac.ed.inf.controller.DroneController;
+import uk.ac.ed.inf.controller.OrderScheduler;
+import uk.ac.ed.inf.controller.Pathfinder;
+import uk.ac.ed.inf.controller.Schedule;
+import uk.ac.ed.inf.controller.StepCostMatrix;
+import uk.ac.ed.inf.domain.Delivery;
+import uk.ac.ed.inf.domain.ItemData;
+import uk.ac.ed.inf.domain.LongLat;
+import uk.ac.ed.inf.domain.Order;
+import uk.ac.ed.inf.domain.Shop;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the orders chosen by the OrderScheduler are delivered by the drone, and that they are worth at least as
+ * much as delivering the orders by descending delivery cost.
+ */
+public class OrderSchedulerTest {
+
+    private static final LongLat APPLETON_TOWER = new LongLat(-3.186874, 55.944494);
+    private static final int DRONE_STEPS = 1500;
+    /* Enough time for every chain to run all of its iterations, so that the schedules only depend on the seed */
+    private static final Duration NO_TIME_LIMIT = Duration.ofMinutes(10);
+
+    private static Pathfinder pathfinder;
+    private static ItemData itemData;
+    private static List<Shop> shops;
+    private static List<String> customers;
+    private static WebServerClient webServerClient;
+
+    @BeforeClass
+    public static void setUp() {
+        pathfinder = new Pathfinder(TestData.loadNoFlyZones());
+        shops = TestData.loadShops();
+        itemData = new ItemData(new ArrayList<>(shops));
+        customers = new ArrayList<>(TestData.loadWordLocations().keySet());
+        webServerClient = new DroneControllerTest.LocalWebServerClient();
+    }
+
+    @Test
+    public void testScheduledOrdersAreDelivered() {
+        StepCostMatrix costs = new StepCostMatrix(pathfinder, pathfinder, null);
+        for (LocalDate date = LocalDate.of(2023, 3, 1); date.isBefore(LocalDate.of(2023, 3, 21));
+             date = date.plusDays(1)) {
+            List<Order> orders = DroneControllerTest.ordersFor(date, shops, customers);
+            Schedule schedule = scheduler(costs, 2, 0).schedule(orders);
+            assertEquals(orders.size(), schedule.getOrders().size());
+            assertTrue(schedule.getSteps() < DRONE_STEPS);
+
+            List<Delivery> deliveries = new DroneController(itemData, APPLETON_TOWER, DRONE_STEPS,
+                    schedule.getOrders(), webServerClient, pathfinder, pathfinder, null, null, costs)
+                    .deliverOrders();
+            List<String> scheduled = schedule.getScheduledOrders().stream().map(Order::getOrderNo)
+                    .collect(Collectors.toList());
+            List<String> delivered = deliveries.stream().map(Delivery::getOrderNo).collect(Collectors.toList());
+            assertTrue(date.toString(), delivered.size() >= scheduled.size());
+            assertEquals(date.toString(), scheduled, delivered.subList(0, scheduled.size()));
+
+            assertTrue(date.toString(),
+                    deliveredValue(deliveries) >= deliveredValue(byDescendingCost(orders, costs)));
+        }
+    }
+
+    @Test
+    public void testSameSeedGivesSameSchedule() {
+        List<Order> orders = DroneControllerTest.ordersFor(LocalDate.of(2023, 6, 1), shops, customers);
+        StepCostMatrix costs = new StepCostMatrix(pathfinder, pathfinder, null);
+        Schedule first = scheduler(costs, 3, 5).schedule(orders);
+        Schedule second = scheduler(costs, 3, 5).schedule(orders);
+        assertEquals(first.getOrders(), second.getOrders());
+        assertEquals(first.getValue(), second.getValue());
+        assertEquals(first.getSteps(), second.getSteps());
+    }
+
+    @Test
+    public void testNoOrders() {
+        Schedule schedule = scheduler(new StepCostMatrix(pathfinder, pathfinder, null), 1, 0)
+                .schedule(new ArrayList<>());
+        assertTrue(schedule.getOrders().isEmpty());
+        assertEquals(0, schedule.getValue());
+        assertEquals(0, schedule.getSteps());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNoChains() {
+        new OrderScheduler(itemData, webServerClient, new StepCostMatrix(pathfinder, pathfinder, null),
+                APPLETON_TOWER, DRONE_STEPS, OrderScheduler.DEFAULT_MARGIN, NO_TIME_LIMIT, 0, 1000, 0);
+    }
+
+    private static OrderScheduler scheduler(StepCostMatrix costs, int chains, long seed) {
+        return new OrderScheduler(itemData, webServerClient, costs, APPLETON_TOWER, DRONE_STEPS,
+                OrderScheduler.DEFAULT_MARGIN, NO_TIME_LIMIT, chains, 20_000, seed);
+    }
+
+    private static List<Delivery> byDescendingCost(List<Order> orders, StepCostMatrix costs) {
+        List<Order> sorted = new ArrayList<>(orders);
+        sorted.sort(Comparator.comparingInt((Order o) -> itemData.calculateDeliveryCost(o.getOrderDetails()))
+                .reversed());
+        return new DroneController(itemData, APPLETON_TOWER, DRONE_STEPS, sorted, webServerClient, pathfinder,
+                pathfinder, null, null, costs).deliverOrders();
+    }
+
+    private static int deliveredValue(List<Delivery> deliveries) {
+        return deliveries.stream().mapToInt(Delivery::getCostInPence).sum();
+    }
+}
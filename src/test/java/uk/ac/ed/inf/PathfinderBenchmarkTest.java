@@ -0,0 +1,864 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.ac.ed.inf.controller.BaseCostField;
+import uk.ac.ed.inf.controller.DroneController;
+import uk.ac.ed.inf.controller.DroneFlight;
+import uk.ac.ed.inf.controller.Fleet;
+import uk.ac.ed.inf.controller.GridNode;
+import uk.ac.ed.inf.clients.WebServerClient;
+import uk.ac.ed.inf.controller.DStarLiteRoute;
+import uk.ac.ed.inf.controller.GridSnapshotStore;
+import uk.ac.ed.inf.controller.HierarchicalPathEngine;
+import uk.ac.ed.inf.controller.IncrementalReplanner;
+import uk.ac.ed.inf.controller.MoveLatticePlanner;
+import uk.ac.ed.inf.controller.OrderScheduler;
+import uk.ac.ed.inf.controller.PathEngine;
+import uk.ac.ed.inf.controller.Pathfinder;
+import uk.ac.ed.inf.controller.Schedule;
+import uk.ac.ed.inf.controller.ServiceArea;
+import uk.ac.ed.inf.controller.ShopSequencer;
+import uk.ac.ed.inf.controller.StepCostMatrix;
+import uk.ac.ed.inf.controller.VisibilityGraphEngine;
+import uk.ac.ed.inf.domain.Delivery;
+import uk.ac.ed.inf.domain.ItemData;
+import uk.ac.ed.inf.domain.LongLat;
+import uk.ac.ed.inf.domain.Order;
+import uk.ac.ed.inf.domain.Shop;
+
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Timing comparisons between pathfinding implementations. These only run when the "ilp.benchmark" system property is
+ * set, e.g. mvn test -Dtest=PathfinderBenchmarkTest -Dilp.benchmark=true
+ */
+public class PathfinderBenchmarkTest {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 10;
+
+    private static Pathfinder pathfinder;
+    private static LongLat[][] cornerQueries;
+
+    @BeforeClass
+    public static void setUp() {
+        Assume.assumeTrue(Boolean.getBoolean("ilp.benchmark"));
+        pathfinder = new Pathfinder(TestData.loadNoFlyZones());
+        List<List<GridNode>> grid = pathfinder.getVirtualGrid();
+        int lastRow = grid.size() - 2;
+        int lastCol = grid.get(0).size() - 2;
+        LongLat botLeft = grid.get(1).get(1).getCoordinates();
+        LongLat topRight = grid.get(lastRow).get(lastCol).getCoordinates();
+        LongLat topLeft = grid.get(lastRow).get(1).getCoordinates();
+        LongLat botRight = grid.get(1).get(lastCol).getCoordinates();
+        cornerQueries = new LongLat[][]{
+                {botLeft, topRight}, {topRight, botLeft}, {topLeft, botRight}, {botRight, topLeft}};
+    }
+
+    @Test
+    public void benchmarkCornerToCorner() {
+        LegacyThetaStar legacy = new LegacyThetaStar(pathfinder);
+        double legacyMillis = time(legacy::findPath);
+        double currentMillis = time(pathfinder::findPath);
+        System.out.printf("Corner-to-corner Theta*: legacy %.2f ms/query, current %.2f ms/query (%.1fx)%n",
+                legacyMillis, currentMillis, legacyMillis / currentMillis);
+    }
+
+    @Test
+    public void benchmarkGridConstruction() {
+        List<Polygon> noFlyZones = TestData.loadNoFlyZones();
+        List<Path2D> paths = WalkabilityTest.toPaths(noFlyZones);
+        List<LongLat> centres = new ArrayList<>();
+        for (List<GridNode> row : pathfinder.getVirtualGrid()) {
+            for (GridNode node : row) {
+                centres.add(node.getCoordinates());
+            }
+        }
+        int walkable = 0;
+        long begin = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (LongLat centre : centres) {
+                walkable += WalkabilityTest.legacyIsWalkable(paths, centre) ? 1 : 0;
+            }
+        }
+        double legacyMillis = (System.nanoTime() - begin) / 1e6 / ROUNDS;
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            new Pathfinder(noFlyZones);
+        }
+        begin = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            new Pathfinder(noFlyZones);
+        }
+        double currentMillis = (System.nanoTime() - begin) / 1e6 / ROUNDS;
+        System.out.printf("Grid construction (%d walkable cells): per-corner Path2D %.2f ms, Pathfinder %.2f ms%n",
+                walkable / ROUNDS, legacyMillis, currentMillis);
+    }
+
+    @Test
+    public void benchmarkGridSnapshot() throws IOException {
+        List<Polygon> noFlyZones = TestData.loadNoFlyZones();
+        Path directory = Files.createTempDirectory("grid-snapshot");
+        GridSnapshotStore store = new GridSnapshotStore(directory);
+        new Pathfinder(noFlyZones, store);
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            new Pathfinder(noFlyZones);
+            new Pathfinder(noFlyZones, store);
+        }
+        long begin = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            new Pathfinder(noFlyZones);
+        }
+        double computedMillis = (System.nanoTime() - begin) / 1e6 / ROUNDS;
+        begin = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            new Pathfinder(noFlyZones, store);
+        }
+        double loadedMillis = (System.nanoTime() - begin) / 1e6 / ROUNDS;
+        System.out.printf("Pathfinder construction: rasterized grid %.2f ms, grid snapshot %.2f ms%n",
+                computedMillis, loadedMillis);
+    }
+
+    @Test
+    public void benchmarkVisibilityGraph() {
+        List<Polygon> noFlyZones = TestData.loadNoFlyZones();
+        VisibilityGraphEngine visibility = new VisibilityGraphEngine(pathfinder, noFlyZones);
+        List<LongLat[]> queries = blockedQueries(200, 9);
+        double[] thetaLength = new double[1];
+        double[] visibilityLength = new double[1];
+        double thetaMillis = time(queries, pathfinder, thetaLength);
+        double visibilityMillis = time(queries, visibility, visibilityLength);
+        System.out.printf("Blocked random queries (%d corners): Theta* %.3f ms/query, mean length %.6f; "
+                        + "visibility graph %.3f ms/query, mean length %.6f%n", visibility.getVertexCount(),
+                thetaMillis, thetaLength[0] / queries.size(), visibilityMillis, visibilityLength[0] / queries.size());
+    }
+
+    @Test
+    public void benchmarkLazyThetaStar() {
+        List<LongLat[]> queries = blockedQueries(200, 13);
+        for (Pathfinder.Algorithm algorithm : Pathfinder.Algorithm.values()) {
+            Pathfinder counted = new Pathfinder(TestData.loadNoFlyZones());
+            double[] length = new double[1];
+            double millis = time(queries, counted.engine(algorithm), length);
+            System.out.printf("Blocked random queries, %s: %.3f ms/query, mean length %.6f, %s%n",
+                    algorithm, millis, length[0] / queries.size(), counted.getStatistics());
+        }
+    }
+
+    @Test
+    public void benchmarkJumpPointSearch() {
+        /* Every leg between a shop and a customer address, in both directions */
+        Map<String, LongLat> locations = TestData.loadWordLocations();
+        Set<String> shops = new TreeSet<>();
+        for (Shop shop : TestData.loadShops()) {
+            shops.add(shop.getLocation());
+        }
+        List<LongLat[]> legs = new ArrayList<>();
+        for (String shop : shops) {
+            for (Map.Entry<String, LongLat> customer : locations.entrySet()) {
+                if (!shops.contains(customer.getKey())) {
+                    legs.add(new LongLat[]{locations.get(shop), customer.getValue()});
+                    legs.add(new LongLat[]{customer.getValue(), locations.get(shop)});
+                }
+            }
+        }
+        for (Pathfinder.Algorithm algorithm : Pathfinder.Algorithm.values()) {
+            Pathfinder counted = new Pathfinder(TestData.loadNoFlyZones());
+            double[] length = new double[1];
+            double millis = time(legs, counted.engine(algorithm), length);
+            System.out.printf("Shop/customer legs (%d), %s: %.3f ms/query, mean length %.6f, %s%n",
+                    legs.size(), algorithm, millis, length[0] / legs.size(), counted.getStatistics());
+        }
+    }
+
+    @Test
+    public void benchmarkWeightedSearch() {
+        List<LongLat[]> queries = blockedQueries(200, 19);
+        for (double weight : new double[]{1, 1.2, 1.5, 2, 3}) {
+            Pathfinder counted = new Pathfinder(TestData.loadNoFlyZones());
+            double[] length = new double[1];
+            double millis = time(queries, counted.engine(Pathfinder.Algorithm.THETA_STAR, weight), length);
+            System.out.printf("Blocked random queries, Theta* with weight %.1f: %.3f ms/query, mean length %.6f, %s%n",
+                    weight, millis, length[0] / queries.size(), counted.getStatistics());
+        }
+    }
+
+    @Test
+    public void benchmarkHierarchicalSearch() {
+        List<LongLat[]> queries = blockedQueries(200, 29);
+        /* The confinement area at the default resolution and at a quarter of the cell size */
+        for (int scale : new int[]{1, 4}) {
+            ServiceArea area = ServiceArea.DEFAULT;
+            ServiceArea scaled = new ServiceArea(area.getMinLongitude(), area.getMinLatitude(),
+                    area.getMaxLongitude(), area.getMaxLatitude(), area.getResolution() / scale);
+            Pathfinder counted = new Pathfinder(TestData.loadNoFlyZones(), null, scaled);
+            double[] length = new double[1];
+            double millis = time(queries, counted, length);
+            System.out.printf("Blocked random queries at resolution 1/%d, Theta*: %.3f ms/query, mean length %.6f, "
+                    + "%s%n", scale, millis, length[0] / queries.size(), counted.getStatistics());
+            for (int clusterSize : new int[]{8, 16, 32}) {
+                counted = new Pathfinder(TestData.loadNoFlyZones(), null, scaled);
+                long begin = System.nanoTime();
+                HierarchicalPathEngine hierarchical = new HierarchicalPathEngine(counted, clusterSize);
+                double buildMillis = (System.nanoTime() - begin) / 1e6;
+                length[0] = 0;
+                millis = time(queries, hierarchical, length);
+                System.out.printf("Blocked random queries at resolution 1/%d, HPA* with %d-cell clusters "
+                                + "(%d entrances, built in %.1f ms): %.3f ms/query, mean length %.6f, %s%n",
+                        scale, clusterSize, hierarchical.getEntranceCount(), buildMillis, millis,
+                        length[0] / queries.size(), counted.getStatistics());
+            }
+        }
+    }
+
+    @Test
+    public void benchmarkTiledGrid() {
+        /* An area sixteen times wider and taller than the confinement area, centred on it, of which only the
+        confinement area is flown */
+        ServiceArea area = ServiceArea.DEFAULT;
+        double width = area.getMaxLongitude() - area.getMinLongitude();
+        double height = area.getMaxLatitude() - area.getMinLatitude();
+        ServiceArea large = new ServiceArea(area.getMinLongitude() - 7.5 * width, area.getMinLatitude() - 7.5 * height,
+                area.getMaxLongitude() + 7.5 * width, area.getMaxLatitude() + 7.5 * height, area.getResolution());
+        List<LongLat[]> queries = blockedQueries(200, 37);
+        for (int maxTiles : new int[]{Pathfinder.UNTILED, 64, 16}) {
+            long begin = System.nanoTime();
+            Pathfinder largePathfinder = new Pathfinder(TestData.loadNoFlyZones(), null, large, maxTiles);
+            double buildMillis = (System.nanoTime() - begin) / 1e6;
+            double[] length = new double[1];
+            double millis = time(queries, largePathfinder, length);
+            System.out.printf("Blocked random queries on a %dx%d grid, %s: built in %.1f ms, %.3f ms/query, "
+                            + "%d tiles rasterized, %d resident, search state for %d cells%n", large.getRows(),
+                    large.getCols(), maxTiles == Pathfinder.UNTILED ? "untiled" : "at most " + maxTiles + " tiles",
+                    buildMillis, millis, largePathfinder.getRasterizedTileCount(),
+                    largePathfinder.getResidentTileCount(), largePathfinder.getSearchStateCells());
+        }
+    }
+
+    @Test
+    public void benchmarkIncrementalReplanning() {
+        List<Polygon> noFlyZones = TestData.loadNoFlyZones();
+        List<LongLat[]> queries = blockedQueries(50, 43);
+        /* The times of the last round, after the others warmed up */
+        long[] nanos = new long[4];
+        long[] expansions = new long[2];
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            Arrays.fill(nanos, 0);
+            Arrays.fill(expansions, 0);
+            Random random = new Random(43);
+            for (LongLat[] query : queries) {
+                replanAroundObstacle(noFlyZones, query, random, nanos, expansions);
+            }
+        }
+        int n = queries.size();
+        System.out.printf("New no-fly-zone on the path: rebuild %.2f ms, incremental update %.2f ms; "
+                        + "fresh D* Lite search %.3f ms (%.0f expansions), repair %.3f ms (%.0f expansions)%n",
+                nanos[0] / 1e6 / n, nanos[1] / 1e6 / n, nanos[2] / 1e6 / n, (double) expansions[0] / n,
+                nanos[3] / 1e6 / n, (double) expansions[1] / n);
+    }
+
+    /**
+     * Plans a route, adds a no-fly-zone across it, and times rebuilding the map, updating it, and searching the new
+     * map from scratch and by repairing the route.
+     */
+    private static void replanAroundObstacle(List<Polygon> noFlyZones, LongLat[] query, Random random, long[] nanos,
+                                             long[] expansions) {
+        IncrementalReplanner replanner = new IncrementalReplanner(new Pathfinder(noFlyZones));
+        DStarLiteRoute route = replanner.route(query[1]);
+        List<LongLat> path = route.pathFrom(query[0]);
+        long before = route.getExpansions();
+
+        /* A new no-fly-zone somewhere along the planned path */
+        int leg = random.nextInt(path.size() - 1);
+        LongLat a = new LongLat((path.get(leg).getLongitude() + path.get(leg + 1).getLongitude()) / 2,
+                (path.get(leg).getLatitude() + path.get(leg + 1).getLatitude()) / 2);
+        double half = 0.0001;
+        List<Point> ring = List.of(Point.fromLngLat(a.getLongitude() - half, a.getLatitude() - half),
+                Point.fromLngLat(a.getLongitude() + half, a.getLatitude() - half),
+                Point.fromLngLat(a.getLongitude() + half, a.getLatitude() + half),
+                Point.fromLngLat(a.getLongitude() - half, a.getLatitude() + half),
+                Point.fromLngLat(a.getLongitude() - half, a.getLatitude() - half));
+        Polygon obstacle = Polygon.fromLngLats(List.of(ring));
+        List<Polygon> updatedZones = new ArrayList<>(noFlyZones);
+        updatedZones.add(obstacle);
+
+        long begin = System.nanoTime();
+        new Pathfinder(updatedZones);
+        nanos[0] += System.nanoTime() - begin;
+        begin = System.nanoTime();
+        replanner.applyChanges(List.of(obstacle), List.of());
+        nanos[1] += System.nanoTime() - begin;
+
+        DStarLiteRoute fresh = replanner.route(query[1]);
+        begin = System.nanoTime();
+        fresh.pathFrom(query[0]);
+        nanos[2] += System.nanoTime() - begin;
+        expansions[0] += fresh.getExpansions();
+        begin = System.nanoTime();
+        route.pathFrom(query[0]);
+        nanos[3] += System.nanoTime() - begin;
+        expansions[1] += route.getExpansions() - before;
+    }
+
+    @Test
+    public void benchmarkMoveLattice() {
+        List<LongLat[]> queries = blockedQueries(50, 47);
+        Pathfinder counted = new Pathfinder(TestData.loadNoFlyZones());
+        MoveLatticePlanner planner = new MoveLatticePlanner(counted);
+        GreedySteering steering = new GreedySteering(pathfinder, pathfinder);
+        int plannedSteps = 0;
+        int steeredSteps = 0;
+        for (LongLat[] query : queries) {
+            plannedSteps += planner.plan(query[0], query[1]).getSteps();
+            steeredSteps += steering.steps(query[0], query[1]);
+        }
+        System.out.printf("Blocked random queries, moves to the target: planned on the move lattice %d, steered "
+                + "along Theta* paths %d, %s%n", plannedSteps, steeredSteps, counted.getStatistics());
+        System.out.printf("Move lattice planning: %.3f ms/query%n",
+                time(queries, (start, dest) -> List.of(planner.plan(start, dest).getEnd()), new double[1]));
+        System.out.printf("Theta* and steering: %.3f ms/query%n", time(queries, (start, dest) -> {
+            steering.steps(start, dest);
+            return List.of(dest);
+        }, new double[1]));
+    }
+
+    @Test
+    public void benchmarkMoveKernel() {
+        LongLat base = new LongLat(-3.186874, 55.944494);
+        List<Shop> shops = TestData.loadShops();
+        List<String> customers = new ArrayList<>(TestData.loadWordLocations().keySet());
+        ItemData itemData = new ItemData(new ArrayList<>(shops));
+        WebServerClient webServerClient = new DroneControllerTest.LocalWebServerClient();
+        /* Paths are looked up rather than searched for, so that only the moves of the drone are timed */
+        Map<List<Double>, List<LongLat>> paths = new HashMap<>();
+        PathEngine memo = (start, dest) -> paths.computeIfAbsent(List.of(start.getLongitude(), start.getLatitude(),
+                dest.getLongitude(), dest.getLatitude()), key -> pathfinder.findPath(start, dest));
+        List<List<Order>> days = new ArrayList<>();
+        for (LocalDate date = LocalDate.of(2023, 1, 1); days.size() < 60; date = date.plusDays(1)) {
+            days.add(DroneControllerTest.ordersFor(date, shops, customers));
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long[] moves = new long[1];
+        long[] allocated = new long[2];
+        double legacyMillis = timeRounds(() -> {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            for (List<Order> orders : days) {
+                LegacyDroneController drone = new LegacyDroneController(itemData, base, 1500, orders,
+                        webServerClient, pathfinder, memo);
+                drone.deliverOrders();
+                moves[0] += drone.getFlightpathList().size();
+            }
+            allocated[0] += threads.getCurrentThreadAllocatedBytes() - before;
+        });
+        double currentMillis = timeRounds(() -> {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            for (List<Order> orders : days) {
+                new DroneController(itemData, base, 1500, orders, webServerClient, pathfinder, memo).deliverOrders();
+            }
+            allocated[1] += threads.getCurrentThreadAllocatedBytes() - before;
+        });
+        long rounds = WARMUP_ROUNDS + ROUNDS;
+        System.out.printf("Drone moves over %d days (%d moves each round): LongLat steering %.2f ms, %d bytes/move; "
+                        + "move kernel %.2f ms, %d bytes/move (%.1fx)%n", days.size(), moves[0] / rounds,
+                legacyMillis, allocated[0] / moves[0], currentMillis, allocated[1] / moves[0],
+                legacyMillis / currentMillis);
+    }
+
+    @Test
+    public void benchmarkHeadingMasks() throws IOException {
+        List<Polygon> noFlyZones = TestData.loadNoFlyZones();
+        Path directory = Files.createTempDirectory("heading-masks");
+        GridSnapshotStore store = new GridSnapshotStore(directory);
+        long begin = System.nanoTime();
+        Pathfinder masked = new Pathfinder(noFlyZones, store);
+        double computeMillis = (System.nanoTime() - begin) / 1e6;
+        begin = System.nanoTime();
+        new Pathfinder(noFlyZones, store);
+        double loadMillis = (System.nanoTime() - begin) / 1e6;
+        Files.delete(directory.resolve("virtual-grid.snapshot"));
+        Files.delete(directory.resolve("heading-masks.snapshot"));
+        Files.delete(directory);
+
+        System.out.printf("Pathfinder with heading masks: %.1f ms computing them, %.1f ms loading them%n",
+                computeMillis, loadMillis);
+
+        /* Every heading from next to the corners of the no-fly-zones, where the drone steers around them */
+        Random random = new Random(19);
+        List<LongLat> corners = new ArrayList<>();
+        for (Polygon polygon : noFlyZones) {
+            for (Point point : polygon.outer().coordinates()) {
+                for (int i = 0; i < 50; i++) {
+                    double spread = 4 * LongLat.STEP_DISTANCE;
+                    corners.add(new LongLat(point.longitude() + (random.nextDouble() - 0.5) * spread,
+                            point.latitude() + (random.nextDouble() - 0.5) * spread));
+                }
+            }
+        }
+        List<LongLat> anywhere = new ArrayList<>();
+        for (int i = 0; i < corners.size(); i++) {
+            anywhere.add(new LongLat(
+                    LongLat.MIN_LONGITUDE + random.nextDouble() * (LongLat.MAX_LONGITUDE - LongLat.MIN_LONGITUDE),
+                    LongLat.MIN_LATITUDE + random.nextDouble() * (LongLat.MAX_LATITUDE - LongLat.MIN_LATITUDE)));
+        }
+        timeMoveChecks("next to no-fly-zone corners", masked, corners);
+        timeMoveChecks("anywhere in the area", masked, anywhere);
+    }
+
+    private static void timeMoveChecks(String label, Pathfinder masked, List<LongLat> positions) {
+        int[] legal = new int[1];
+        double exactNanos = timeRounds(() -> {
+            for (LongLat position : positions) {
+                for (int angle = 0; angle < 360; angle += 10) {
+                    LongLat next = position.nextPosition(angle);
+                    if (masked.isWalkable(next) && masked.lineOfSight(position, next)) {
+                        legal[0]++;
+                    }
+                }
+            }
+        }) * 1e6 / (positions.size() * 36);
+        double maskedNanos = timeRounds(() -> {
+            for (LongLat position : positions) {
+                for (int angle = 0; angle < 360; angle += 10) {
+                    if (masked.canMoveTowards(position.getLongitude(), position.getLatitude(), angle)) {
+                        legal[0]--;
+                    }
+                }
+            }
+        }) * 1e6 / (positions.size() * 36);
+        System.out.printf("Move checks %s: exact %.1f ns, masked %.1f ns (%.1fx), disagreements %d%n", label,
+                exactNanos, maskedNanos, exactNanos / maskedNanos, legal[0]);
+    }
+
+    @Test
+    public void benchmarkBaseCostField() throws IOException {
+        LongLat base = new LongLat(-3.186874, 55.944494);
+        Path directory = Files.createTempDirectory("base-cost-field");
+        GridSnapshotStore store = new GridSnapshotStore(directory);
+        long begin = System.nanoTime();
+        BaseCostField field = new BaseCostField(pathfinder, base, store);
+        double sweepMillis = (System.nanoTime() - begin) / 1e6;
+        begin = System.nanoTime();
+        new BaseCostField(pathfinder, base, store);
+        double loadMillis = (System.nanoTime() - begin) / 1e6;
+
+        /* Checking whether the drone can go back to base after an order, from where the orders end */
+        List<LongLat[]> queries = blockedQueries(200, 53);
+        GreedySteering steering = new GreedySteering(pathfinder, pathfinder);
+        double simulated = time(queries, (start, dest) -> {
+            steering.steps(start, base);
+            return List.of(base);
+        }, new double[1]);
+        double looked = time(queries, (start, dest) -> {
+            field.estimateStepsToBase(start);
+            return List.of(base);
+        }, new double[1]);
+        int estimatedSteps = 0;
+        int steeredSteps = 0;
+        for (LongLat[] query : queries) {
+            estimatedSteps += field.estimateStepsToBase(query[0]);
+            steeredSteps += steering.steps(query[0], base);
+        }
+        System.out.printf("Return to base: field swept in %.1f ms and loaded in %.1f ms; Theta* and simulation "
+                        + "%.3f ms/check, field %.5f ms/check; mean estimate %.1f moves, mean simulated %.1f moves%n",
+                sweepMillis, loadMillis, simulated, looked, (double) estimatedSteps / queries.size(),
+                (double) steeredSteps / queries.size());
+    }
+
+    @Test
+    public void benchmarkOrderScheduler() {
+        LongLat base = new LongLat(-3.186874, 55.944494);
+        List<Shop> shops = TestData.loadShops();
+        List<String> customers = new ArrayList<>(TestData.loadWordLocations().keySet());
+        ItemData itemData = new ItemData(new ArrayList<>(shops));
+        WebServerClient webServerClient = new DroneControllerTest.LocalWebServerClient();
+        StepCostMatrix costs = new StepCostMatrix(pathfinder, pathfinder, null);
+        List<List<Order>> days = new ArrayList<>();
+        long total = 0;
+        for (LocalDate date = LocalDate.of(2022, 1, 1); date.getYear() < 2024; date = date.plusDays(1)) {
+            List<Order> orders = DroneControllerTest.ordersFor(date, shops, customers);
+            days.add(orders);
+            for (Order order : orders) {
+                total += itemData.calculateDeliveryCost(order.getOrderDetails());
+            }
+        }
+        /* The made up days are lighter than real ones, so fewer moves stand in for busier days */
+        for (int steps : new int[]{1500, 1000, 600}) {
+            OrderScheduler scheduler = new OrderScheduler(itemData, webServerClient, costs, base, steps,
+                    OrderScheduler.DEFAULT_MARGIN, Duration.ofMillis(100), Runtime.getRuntime().availableProcessors(),
+                    OrderScheduler.DEFAULT_ITERATIONS, 0);
+            long sorted = 0;
+            long scheduled = 0;
+            long schedulingNanos = 0;
+            int betterDays = 0;
+            int worseDays = 0;
+            for (List<Order> orders : days) {
+                List<Order> byCost = new ArrayList<>(orders);
+                byCost.sort(Comparator.comparingInt((Order o) -> itemData.calculateDeliveryCost(o.getOrderDetails()))
+                        .reversed());
+                long sortedValue = new DroneController(itemData, base, steps, byCost, webServerClient, pathfinder,
+                        pathfinder, null, null, costs).deliverOrders().stream().mapToLong(Delivery::getCostInPence)
+                        .sum();
+                long begin = System.nanoTime();
+                Schedule schedule = scheduler.schedule(orders);
+                schedulingNanos += System.nanoTime() - begin;
+                long scheduledValue = new DroneController(itemData, base, steps, schedule.getOrders(),
+                        webServerClient, pathfinder, pathfinder, null, null, costs).deliverOrders().stream()
+                        .mapToLong(Delivery::getCostInPence).sum();
+                sorted += sortedValue;
+                scheduled += scheduledValue;
+                betterDays += scheduledValue > sortedValue ? 1 : 0;
+                worseDays += scheduledValue < sortedValue ? 1 : 0;
+            }
+            System.out.printf("Delivered value over %d days with %d moves: by descending cost %.3f%%, scheduled "
+                            + "%.3f%% (better on %d days, worse on %d, %.1f ms/day to schedule)%n", days.size(), steps,
+                    sorted * 100d / total, scheduled * 100d / total, betterDays, worseDays,
+                    schedulingNanos / 1e6 / days.size());
+        }
+    }
+
+    @Test
+    public void benchmarkStepCostMatrix() {
+        LongLat base = new LongLat(-3.186874, 55.944494);
+        List<Shop> shops = TestData.loadShops();
+        List<String> customers = new ArrayList<>(TestData.loadWordLocations().keySet());
+        ItemData itemData = new ItemData(new ArrayList<>(shops));
+        WebServerClient webServerClient = new DroneControllerTest.LocalWebServerClient();
+        List<List<Order>> days = new ArrayList<>();
+        for (LocalDate date = LocalDate.of(2023, 1, 1); days.size() < 20; date = date.plusDays(1)) {
+            days.add(DroneControllerTest.ordersFor(date, shops, customers));
+        }
+        int[] points = new int[1];
+        double sequentialMillis = timeRounds(() -> {
+            for (List<Order> orders : days) {
+                StepCostMatrix legs = new StepCostMatrix(pathfinder, pathfinder, null);
+                legs.addOrders(base, orders, itemData, webServerClient);
+                for (int from = 0; from < legs.size(); from++) {
+                    for (int to = 0; to < legs.size(); to++) {
+                        /* A matrix of its own for each leg, so that no path is reversed */
+                        StepCostMatrix leg = new StepCostMatrix(pathfinder, pathfinder, null);
+                        leg.steps(leg.add(legs.point(from)), leg.add(legs.point(to)));
+                    }
+                }
+                points[0] = legs.size();
+            }
+        });
+        double parallelMillis = timeRounds(() -> {
+            for (List<Order> orders : days) {
+                StepCostMatrix legs = new StepCostMatrix(pathfinder, pathfinder, null);
+                legs.addOrders(base, orders, itemData, webServerClient);
+                legs.precompute(ForkJoinPool.commonPool());
+            }
+        });
+        double searchedMillis = timeRounds(() -> {
+            for (List<Order> orders : days) {
+                new DroneController(itemData, base, 1500, orders, webServerClient, pathfinder, pathfinder)
+                        .deliverOrders();
+            }
+        });
+        List<StepCostMatrix> matrices = new ArrayList<>();
+        for (List<Order> orders : days) {
+            StepCostMatrix legs = new StepCostMatrix(pathfinder, pathfinder, null);
+            legs.addOrders(base, orders, itemData, webServerClient);
+            legs.precompute(ForkJoinPool.commonPool());
+            matrices.add(legs);
+        }
+        double lookedUpMillis = timeRounds(() -> {
+            for (int i = 0; i < days.size(); i++) {
+                new DroneController(itemData, base, 1500, days.get(i), webServerClient, pathfinder, pathfinder,
+                        null, null, matrices.get(i)).deliverOrders();
+            }
+        });
+        System.out.printf("Leg costs of %d days (%d points of interest on the last): one at a time %.1f ms, in "
+                        + "parallel with reversed paths %.1f ms on %d threads (%.1fx); delivering with searches "
+                        + "%.1f ms, with looked up paths %.1f ms%n", days.size(), points[0], sequentialMillis,
+                parallelMillis, ForkJoinPool.commonPool().getParallelism(), sequentialMillis / parallelMillis,
+                searchedMillis, lookedUpMillis);
+    }
+
+    @Test
+    public void benchmarkShopSequencer() {
+        LongLat base = new LongLat(-3.186874, 55.944494);
+        List<Shop> shops = TestData.loadShops();
+        List<String> customers = new ArrayList<>(TestData.loadWordLocations().keySet());
+        ItemData itemData = new ItemData(new ArrayList<>(shops));
+        WebServerClient webServerClient = new DroneControllerTest.LocalWebServerClient();
+        StepCostMatrix legs = new StepCostMatrix(pathfinder, pathfinder, null);
+        List<List<Order>> days = new ArrayList<>();
+        for (LocalDate date = LocalDate.of(2022, 1, 1); date.getYear() < 2024; date = date.plusDays(1)) {
+            List<Order> orders = DroneControllerTest.ordersFor(date, shops, customers);
+            legs.addOrders(base, orders, itemData, webServerClient);
+            days.add(orders);
+        }
+        legs.precompute(ForkJoinPool.commonPool());
+
+        /* The moves of every two-shop order from the previous customer, with the shops in either order */
+        long straightLineSteps = 0;
+        long sequencedSteps = 0;
+        int improved = 0;
+        int twoShopOrders = 0;
+        for (List<Order> orders : days) {
+            int start = legs.indexOf(base);
+            for (Order order : orders) {
+                int customer = legs.indexOf(webServerClient.getLongLatFromW3W(order.getDeliverTo()));
+                int[] stops = itemData.findShops(order.getOrderDetails()).stream()
+                        .mapToInt(shop -> legs.indexOf(webServerClient.getLongLatFromW3W(shop.getLocation())))
+                        .toArray();
+                if (stops.length == 2) {
+                    LongLat position = legs.point(start);
+                    LongLat customerPos = legs.point(customer);
+                    double dist1 = legs.point(stops[0]).distanceTo(position)
+                            + legs.point(stops[1]).distanceTo(customerPos);
+                    double dist2 = legs.point(stops[0]).distanceTo(customerPos)
+                            + legs.point(stops[1]).distanceTo(position);
+                    int[] straightLine = dist2 < dist1 ? new int[]{stops[1], stops[0]} : stops;
+                    long before = tourSteps(legs, start, straightLine, customer);
+                    long after = tourSteps(legs, start, ShopSequencer.sequence(legs, start, stops, customer),
+                            customer);
+                    straightLineSteps += before;
+                    sequencedSteps += after;
+                    improved += after < before ? 1 : 0;
+                    twoShopOrders++;
+                }
+                start = customer;
+            }
+        }
+
+        Random random = new Random(22);
+        double[][] costs = new double[10][10];
+        for (double[] row : costs) {
+            for (int j = 0; j < row.length; j++) {
+                row[j] = random.nextDouble();
+            }
+        }
+        double eightShopsMillis = timeRounds(() -> {
+            for (int i = 0; i < 100; i++) {
+                ShopSequencer.sequence(8, (from, to) -> costs[from][to]);
+            }
+        }) / 100;
+        System.out.printf("Two-shop orders over %d days: %d orders, straight-line order %d moves, sequenced over "
+                        + "moves %d moves (%d orders shorter); eight shops sequenced in %.3f ms%n", days.size(),
+                twoShopOrders, straightLineSteps, sequencedSteps, improved, eightShopsMillis);
+    }
+
+    private static long tourSteps(StepCostMatrix legs, int start, int[] shops, int customer) {
+        long steps = 0;
+        int from = start;
+        for (int shop : shops) {
+            steps += legs.steps(from, shop);
+            from = shop;
+        }
+        return steps + legs.steps(from, customer);
+    }
+
+    @Test
+    public void benchmarkFleet() {
+        LongLat base = new LongLat(-3.186874, 55.944494);
+        List<Shop> shops = TestData.loadShops();
+        List<String> customers = new ArrayList<>(TestData.loadWordLocations().keySet());
+        ItemData itemData = new ItemData(new ArrayList<>(shops));
+        WebServerClient webServerClient = new DroneControllerTest.LocalWebServerClient();
+        List<Order> orders = new ArrayList<>();
+        for (LocalDate date = LocalDate.of(2023, 1, 1); date.isBefore(LocalDate.of(2023, 2, 1));
+             date = date.plusDays(1)) {
+            orders.addAll(DroneControllerTest.ordersFor(date, shops, customers));
+        }
+        /* One matrix for every fleet, as App would keep for the day */
+        StepCostMatrix legs = new StepCostMatrix(pathfinder, pathfinder, null);
+        for (int drones : new int[]{1, 4, 16, 64}) {
+            Fleet fleet = new Fleet(itemData, webServerClient, pathfinder, pathfinder, null, legs,
+                    Collections.nCopies(drones, base), 1500, OrderScheduler.DEFAULT_MARGIN);
+            fleet.prepare(orders, ForkJoinPool.commonPool());
+            int[] delivered = new int[1];
+            long[] moves = new long[1];
+            double millis = timeRounds(() -> {
+                delivered[0] = 0;
+                moves[0] = 0;
+                for (DroneFlight flight : fleet.deliver(orders, ForkJoinPool.commonPool())) {
+                    delivered[0] += flight.getDeliveries().size();
+                    moves[0] += flight.getFlightpaths().size();
+                }
+            });
+            System.out.printf("Fleet of %d drones on %d threads: %d of %d orders delivered in %d moves, %.1f ms, "
+                            + "%.0f orders/s, %.0f moves/s%n", drones, ForkJoinPool.commonPool().getParallelism(),
+                    delivered[0], orders.size(), moves[0], millis, delivered[0] * 1000 / millis,
+                    moves[0] * 1000 / millis);
+        }
+    }
+
+    /**
+     * @return the milliseconds a round of the task takes, after the warm-up rounds.
+     */
+    private static double timeRounds(Runnable task) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            task.run();
+        }
+        long begin = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            task.run();
+        }
+        return (System.nanoTime() - begin) / 1e6 / ROUNDS;
+    }
+
+    /**
+     * Random pairs of walkable cell centres that cannot see each other, so every engine has to search.
+     */
+    private static List<LongLat[]> blockedQueries(int count, long seed) {
+        List<LongLat> walkable = new ArrayList<>();
+        for (List<GridNode> row : pathfinder.getVirtualGrid()) {
+            for (GridNode node : row) {
+                if (node.isWalkable()) {
+                    walkable.add(node.getCoordinates());
+                }
+            }
+        }
+        Random random = new Random(seed);
+        List<LongLat[]> queries = new ArrayList<>();
+        while (queries.size() < count) {
+            LongLat start = walkable.get(random.nextInt(walkable.size()));
+            LongLat dest = walkable.get(random.nextInt(walkable.size()));
+            if (!pathfinder.lineOfSight(start, dest)) {
+                queries.add(new LongLat[]{start, dest});
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Times an engine over the given queries.
+     * @param totalLength receives the sum of the lengths of the paths found.
+     * @return the mean time per query in milliseconds.
+     */
+    private static double time(List<LongLat[]> queries, PathEngine engine, double[] totalLength) {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            for (LongLat[] query : queries) {
+                engine.findPath(query[0], query[1]);
+            }
+        }
+        long begin = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (LongLat[] query : queries) {
+                engine.findPath(query[0], query[1]);
+            }
+        }
+        double millis = (System.nanoTime() - begin) / 1e6 / (ROUNDS * queries.size());
+        for (LongLat[] query : queries) {
+            totalLength[0] += pathLength(engine.findPath(query[0], query[1]));
+        }
+        return millis;
+    }
+
+    static double pathLength(List<LongLat> path) {
+        double length = 0;
+        for (int i = 1; i < path.size(); i++) {
+            length += path.get(i - 1).distanceTo(path.get(i));
+        }
+        return length;
+    }
+
+    @Test
+    public void benchmarkLineOfSight() {
+        List<Polygon> noFlyZones = TestData.loadNoFlyZones();
+        timeLineOfSight("real zones", noFlyZones);
+
+        /* Add a few hundred small square buildings to see how the cost grows with the number of edges */
+        List<Polygon> manyZones = new ArrayList<>(noFlyZones);
+        Random random = new Random(3);
+        for (int i = 0; i < 400; i++) {
+            double x = LongLat.MIN_LONGITUDE + random.nextDouble() * (LongLat.MAX_LONGITUDE - LongLat.MIN_LONGITUDE);
+            double y = LongLat.MIN_LATITUDE + random.nextDouble() * (LongLat.MAX_LATITUDE - LongLat.MIN_LATITUDE);
+            double size = 0.00002;
+            manyZones.add(Polygon.fromLngLats(List.of(List.of(Point.fromLngLat(x, y), Point.fromLngLat(x + size, y),
+                    Point.fromLngLat(x + size, y + size), Point.fromLngLat(x, y + size), Point.fromLngLat(x, y)))));
+        }
+        timeLineOfSight("real zones + 400 squares", manyZones);
+    }
+
+    private static void timeLineOfSight(String label, List<Polygon> noFlyZones) {
+        Pathfinder indexed = new Pathfinder(noFlyZones);
+        List<Line2D> edges = new ArrayList<>();
+        for (Polygon polygon : noFlyZones) {
+            List<Point> points = polygon.outer().coordinates();
+            for (int i = 0; i < points.size() - 1; i++) {
+                edges.add(new Line2D.Double(points.get(i).longitude(), points.get(i).latitude(),
+                        points.get(i + 1).longitude(), points.get(i + 1).latitude()));
+            }
+        }
+        Random random = new Random(5);
+        int rays = 200000;
+        LongLat[] starts = new LongLat[rays];
+        LongLat[] ends = new LongLat[rays];
+        for (int i = 0; i < rays; i++) {
+            starts[i] = new LongLat(
+                    LongLat.MIN_LONGITUDE + random.nextDouble() * (LongLat.MAX_LONGITUDE - LongLat.MIN_LONGITUDE),
+                    LongLat.MIN_LATITUDE + random.nextDouble() * (LongLat.MAX_LATITUDE - LongLat.MIN_LATITUDE));
+            ends[i] = starts[i].nextPosition(random.nextInt(36) * 10);
+        }
+        int blocked = 0;
+        long begin = System.nanoTime();
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < rays; i++) {
+                for (Line2D edge : edges) {
+                    if (edge.intersectsLine(starts[i].getLongitude(), starts[i].getLatitude(),
+                            ends[i].getLongitude(), ends[i].getLatitude())) {
+                        blocked++;
+                        break;
+                    }
+                }
+            }
+        }
+        double exhaustiveNanos = (System.nanoTime() - begin) / (3.0 * rays);
+        begin = System.nanoTime();
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < rays; i++) {
+                if (!indexed.lineOfSight(starts[i], ends[i])) {
+                    blocked--;
+                }
+            }
+        }
+        double indexedNanos = (System.nanoTime() - begin) / (3.0 * rays);
+        System.out.printf("Line of sight, %s (%d edges): exhaustive %.0f ns/ray, pathfinder %.0f ns/ray (%d mismatches)%n",
+                label, edges.size(), exhaustiveNanos, indexedNanos, Math.abs(blocked));
+    }
+
+    private interface PathQuery {
+        List<LongLat> findPath(LongLat start, LongLat dest);
+    }
+
+    private static double time(PathQuery query) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            run(query);
+        }
+        long begin = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            run(query);
+        }
+        return (System.nanoTime() - begin) / 1e6 / (ROUNDS * cornerQueries.length);
+    }
+
+    private static void run(PathQuery query) {
+        for (LongLat[] pair : cornerQueries) {
+            query.findPath(pair[0], pair[1]);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package uk.ac.ed.inf;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.ac.ed.inf.clients.WebServerClient;
+import uk.ac.ed.inf.controller.DroneController;
+import uk.ac.ed.inf.controller.Pathfinder;
+import uk.ac.ed.inf.controller.ShopSequencer;
+import uk.ac.ed.inf.controller.StepCostMatrix;
+import uk.ac.ed.inf.domain.Delivery;
+import uk.ac.ed.inf.domain.Flightpath;
+import uk.ac.ed.inf.domain.Item;
+import uk.ac.ed.inf.domain.ItemData;
+import uk.ac.ed.inf.domain.LongLat;
+import uk.ac.ed.inf.domain.Order;
+import uk.ac.ed.inf.domain.Shop;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the shops are sequenced into the cheapest flight, and that the drone collects orders from more than two
+ * shops when it is allowed to.
+ */
+public class ShopSequencerTest {
+
+    private static final LongLat APPLETON_TOWER = new LongLat(-3.186874, 55.944494);
+    private static final int DRONE_STEPS = 1500;
+
+    private static Pathfinder pathfinder;
+    private static List<Shop> shops;
+    private static List<String> customers;
+    private static WebServerClient webServerClient;
+
+    @BeforeClass
+    public static void setUp() {
+        pathfinder = new Pathfinder(TestData.loadNoFlyZones());
+        shops = TestData.loadShops();
+        customers = new ArrayList<>(TestData.loadWordLocations().keySet());
+        webServerClient = new DroneControllerTest.LocalWebServerClient();
+    }
+
+    @Test
+    public void testSequenceIsCheapest() {
+        Random random = new Random(22);
+        for (int shopCount = 0; shopCount <= 7; shopCount++) {
+            for (int trial = 0; trial < 20; trial++) {
+                int stops = shopCount + 2;
+                double[][] costs = new double[stops][stops];
+                for (double[] row : costs) {
+                    for (int j = 0; j < stops; j++) {
+                        row[j] = random.nextInt(100);
+                    }
+                }
+                int[] order = ShopSequencer.sequence(shopCount, (from, to) -> costs[from][to]);
+                List<Integer> shopsLeft = new ArrayList<>();
+                for (int shop = 0; shop < shopCount; shop++) {
+                    shopsLeft.add(shop);
+                }
+                double cheapest = cheapest(costs, shopCount, shopCount, shopsLeft);
+                assertEquals(cheapest, cost(costs, shopCount, order), 0);
+                int[] sorted = order.clone();
+                Arrays.sort(sorted);
+                for (int shop = 0; shop < shopCount; shop++) {
+                    assertEquals(shop, sorted[shop]);
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsTooManyShops() {
+        ShopSequencer.sequence(ShopSequencer.MAX_SHOPS + 1, (from, to) -> 0);
+    }
+
+    @Test
+    public void testDroneCollectsFromEveryShop() {
+        ItemData itemData = new ItemData(new ArrayList<>(shops), shops.size());
+        Random random = new Random(5);
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Order order = new Order(String.format("%08x", random.nextInt()), Date.valueOf(LocalDate.of(2023, 5, 1)),
+                    "s0000000", customers.get(random.nextInt(customers.size())));
+            List<Shop> chosen = new ArrayList<>(shops);
+            Collections.shuffle(chosen, random);
+            for (Shop shop : chosen.subList(0, 3 + i % (shops.size() - 2))) {
+                Item[] menu = shop.getMenu();
+                order.getOrderDetails().add(menu[random.nextInt(menu.length)].getItem());
+            }
+            orders.add(order);
+        }
+        StepCostMatrix legs = new StepCostMatrix(pathfinder, pathfinder, null);
+        legs.addOrders(APPLETON_TOWER, orders, itemData, webServerClient);
+        legs.precompute(ForkJoinPool.commonPool());
+
+        for (StepCostMatrix sequencedOver : Arrays.asList(legs, null)) {
+            DroneController drone = new DroneController(itemData, APPLETON_TOWER, DRONE_STEPS, orders,
+                    webServerClient, pathfinder, pathfinder, null, null, sequencedOver);
+            List<Delivery> deliveries = drone.deliverOrders();
+            assertFalse(deliveries.isEmpty());
+
+            /* The drone hovers once at every shop of an order and at its customer */
+            for (Delivery delivery : deliveries) {
+                Order order = orders.stream().filter(o -> o.getOrderNo().equals(delivery.getOrderNo())).findFirst()
+                        .orElseThrow();
+                long hovers = drone.getFlightpathList().stream()
+                        .filter(f -> f.getOrderNo().equals(order.getOrderNo()))
+                        .filter(f -> f.getAngle() == LongLat.HOVER_VALUE).count();
+                assertEquals(itemData.findShops(order.getOrderDetails()).size() + 1, hovers);
+            }
+            LongLat position = APPLETON_TOWER;
+            for (Flightpath flightpath : drone.getFlightpathList()) {
+                if (flightpath.getAngle() != LongLat.HOVER_VALUE) {
+                    assertTrue(pathfinder.canMoveTowards(position, flightpath.getAngle()));
+                }
+                position = flightpath.getDest();
+            }
+            assertTrue(position.closeTo(APPLETON_TOWER));
+        }
+    }
+
+    /**
+     * @return the cheapest flight from a stop through every shop left to the customer, trying every order.
+     */
+    private static double cheapest(double[][] costs, int shopCount, int from, List<Integer> shopsLeft) {
+        if (shopsLeft.isEmpty()) {
+            return costs[from][shopCount + 1];
+        }
+        double best = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < shopsLeft.size(); i++) {
+            List<Integer> rest = new ArrayList<>(shopsLeft);
+            int next = rest.remove(i);
+            best = Math.min(best, costs[from][next] + cheapest(costs, shopCount, next, rest));
+        }
+        return best;
+    }
+
+    private static double cost(double[][] costs, int shopCount, int[] order) {
+        double total = 0;
+        int from = shopCount;
+        for (int shop : order) {
+            total += costs[from][shop];
+            from = shop;
+        }
+        return total + costs[from][shopCount + 1];
+    }
+}
@@ -0,0 +1,119 @@
+package uk.ac.ed.inf;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.ac.ed.inf.clients.WebServerClient;
+import uk.ac.ed.inf.controller.DroneController;
+import uk.ac.ed.inf.controller.PathEngine;
+import uk.ac.ed.inf.controller.Pathfinder;
+import uk.ac.ed.inf.controller.StepCostMatrix;
+import uk.ac.ed.inf.domain.Delivery;
+import uk.ac.ed.inf.domain.Flightpath;
+import uk.ac.ed.inf.domain.ItemData;
+import uk.ac.ed.inf.domain.LongLat;
+import uk.ac.ed.inf.domain.Order;
+import uk.ac.ed.inf.domain.Shop;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the legs costed in parallel are the legs costed one at a time, that each path is searched for once for
+ * both ways, and that a drone following the looked up paths flies legal moves without searching.
+ */
+public class StepCostMatrixTest {
+
+    private static final LongLat APPLETON_TOWER = new LongLat(-3.186874, 55.944494);
+    private static final int DRONE_STEPS = 1500;
+
+    private static Pathfinder pathfinder;
+    private static ItemData itemData;
+    private static List<Shop> shops;
+    private static List<String> customers;
+    private static WebServerClient webServerClient;
+
+    @BeforeClass
+    public static void setUp() {
+        pathfinder = new Pathfinder(TestData.loadNoFlyZones());
+        shops = TestData.loadShops();
+        itemData = new ItemData(new ArrayList<>(shops));
+        customers = new ArrayList<>(TestData.loadWordLocations().keySet());
+        webServerClient = new DroneControllerTest.LocalWebServerClient();
+    }
+
+    @Test
+    public void testPrecomputedLegsMatchLazyLegs() {
+        List<Order> orders = DroneControllerTest.ordersFor(LocalDate.of(2023, 2, 1), shops, customers);
+        AtomicInteger searches = new AtomicInteger();
+        StepCostMatrix precomputed = new StepCostMatrix(pathfinder, counting(searches), null);
+        precomputed.addOrders(APPLETON_TOWER, orders, itemData, webServerClient);
+        precomputed.precompute(new ForkJoinPool(4));
+        int count = precomputed.size();
+        assertEquals(count * (count - 1) / 2, searches.get());
+
+        StepCostMatrix lazy = new StepCostMatrix(pathfinder, pathfinder, null);
+        lazy.addOrders(APPLETON_TOWER, orders, itemData, webServerClient);
+        assertEquals(count, lazy.size());
+        for (int from = 0; from < count; from++) {
+            assertEquals(from, precomputed.indexOf(lazy.point(from)));
+            for (int to = 0; to < count; to++) {
+                assertEquals(from + " to " + to, lazy.steps(from, to), precomputed.steps(from, to));
+                if (from != to) {
+                    List<LongLat> back = new ArrayList<>(precomputed.path(to, from));
+                    Collections.reverse(back);
+                    assertEquals(precomputed.path(from, to), back);
+                }
+            }
+        }
+        assertEquals(count * (count - 1) / 2, searches.get());
+        assertEquals(-1, precomputed.indexOf(new LongLat(-3.19, 55.945)));
+    }
+
+    @Test
+    public void testDroneFollowsLookedUpPaths() {
+        for (LocalDate date = LocalDate.of(2023, 4, 1); date.isBefore(LocalDate.of(2023, 4, 11));
+             date = date.plusDays(1)) {
+            List<Order> orders = DroneControllerTest.ordersFor(date, shops, customers);
+            AtomicInteger searches = new AtomicInteger();
+            PathEngine engine = counting(searches);
+            StepCostMatrix legs = new StepCostMatrix(pathfinder, engine, null);
+            legs.addOrders(APPLETON_TOWER, orders, itemData, webServerClient);
+            legs.precompute(ForkJoinPool.commonPool());
+            int precomputed = searches.get();
+
+            DroneController drone = new DroneController(itemData, APPLETON_TOWER, DRONE_STEPS, orders,
+                    webServerClient, pathfinder, engine, null, null, legs);
+            List<Delivery> deliveries = drone.deliverOrders();
+            assertEquals(date.toString(), orders.size(), deliveries.size());
+            /* Only legs that start too far from their first waypoint are searched for again */
+            assertTrue(date + ": " + (searches.get() - precomputed) + " searches",
+                    searches.get() - precomputed <= deliveries.size());
+
+            List<Flightpath> flightpaths = drone.getFlightpathList();
+            assertTrue(flightpaths.size() < DRONE_STEPS);
+            LongLat position = APPLETON_TOWER;
+            for (Flightpath flightpath : flightpaths) {
+                assertEquals(position.getLongitude(), flightpath.getStart().getLongitude(), 0);
+                assertEquals(position.getLatitude(), flightpath.getStart().getLatitude(), 0);
+                if (flightpath.getAngle() != LongLat.HOVER_VALUE) {
+                    assertTrue(pathfinder.canMoveTowards(position, flightpath.getAngle()));
+                }
+                position = flightpath.getDest();
+            }
+            assertTrue(position.closeTo(APPLETON_TOWER));
+        }
+    }
+
+    private static PathEngine counting(AtomicInteger searches) {
+        return (start, dest) -> {
+            searches.incrementAndGet();
+            return pathfinder.findPath(start, dest);
+        };
+    }
+}
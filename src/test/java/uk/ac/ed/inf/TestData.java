@@ -0,0 +1,71 @@
+package uk.ac.ed.inf;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.FeatureCollection;
+import com.mapbox.geojson.Polygon;
+
+import uk.ac.ed.inf.domain.Address;
+import uk.ac.ed.inf.domain.LongLat;
+import uk.ac.ed.inf.domain.Shop;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Loads the web server's static data straight from the website folder, so tests can run without the web server.
+ */
+public class TestData {
+
+    public static final Path WEBSITE = Path.of("website");
+
+    public static List<Polygon> loadNoFlyZones() {
+        List<Feature> features = Objects.requireNonNull(
+                FeatureCollection.fromJson(read("buildings/no-fly-zones.geojson")).features());
+        return features.stream()
+                .map(Feature::geometry)
+                .filter(geometry -> geometry instanceof Polygon)
+                .map(geometry -> (Polygon) geometry)
+                .collect(Collectors.toList());
+    }
+
+    public static List<Shop> loadShops() {
+        return new Gson().fromJson(read("menus/menus.json"), new TypeToken<List<Shop>>() {}.getType());
+    }
+
+    /**
+     * Reads every What3Words address in the website folder.
+     * @return the coordinates of each address, by its three words separated by dots.
+     */
+    public static Map<String, LongLat> loadWordLocations() {
+        Path words = WEBSITE.resolve("words");
+        Map<String, LongLat> locations = new TreeMap<>();
+        try (Stream<Path> files = Files.walk(words)) {
+            for (Path file : files.filter(f -> f.endsWith("details.json")).collect(Collectors.toList())) {
+                Address address = new Gson().fromJson(Files.readString(file), Address.class);
+                locations.put(address.words,
+                        new LongLat(address.coordinates.getLng(), address.coordinates.getLat()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return locations;
+    }
+
+    public static String read(String pathname) {
+        try {
+            return Files.readString(WEBSITE.resolve(pathname));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
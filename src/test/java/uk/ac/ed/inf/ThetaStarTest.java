@@ -0,0 +1,235 @@
+package uk.ac.ed.inf;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.ac.ed.inf.controller.GridNode;
+import uk.ac.ed.inf.controller.PathEngine;
+import uk.ac.ed.inf.controller.Pathfinder;
+import uk.ac.ed.inf.controller.SearchResult;
+import uk.ac.ed.inf.domain.LongLat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ThetaStarTest {
+
+    private static final int SAMPLE_COUNT = 200;
+
+    private static Pathfinder pathfinder;
+    private static LegacyThetaStar legacy;
+    private static List<LongLat> walkable;
+
+    @BeforeClass
+    public static void setUp() {
+        pathfinder = new Pathfinder(TestData.loadNoFlyZones());
+        legacy = new LegacyThetaStar(pathfinder);
+        walkable = new ArrayList<>();
+        for (List<GridNode> row : pathfinder.getVirtualGrid()) {
+            for (GridNode node : row) {
+                if (node.isWalkable()) {
+                    walkable.add(node.getCoordinates());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCornerToCornerMatchesLegacy() {
+        List<List<GridNode>> grid = pathfinder.getVirtualGrid();
+        int lastRow = grid.size() - 1;
+        int lastCol = grid.get(0).size() - 1;
+        LongLat botLeft = grid.get(1).get(1).getCoordinates();
+        LongLat topRight = grid.get(lastRow - 1).get(lastCol - 1).getCoordinates();
+        LongLat topLeft = grid.get(lastRow - 1).get(1).getCoordinates();
+        LongLat botRight = grid.get(1).get(lastCol - 1).getCoordinates();
+
+        assertSamePath(legacy.findPath(botLeft, topRight), pathfinder.findPath(botLeft, topRight));
+        assertSamePath(legacy.findPath(topRight, botLeft), pathfinder.findPath(topRight, botLeft));
+        assertSamePath(legacy.findPath(topLeft, botRight), pathfinder.findPath(topLeft, botRight));
+        assertSamePath(legacy.findPath(botRight, topLeft), pathfinder.findPath(botRight, topLeft));
+    }
+
+    @Test
+    public void testRandomPathsMatchLegacy() {
+        Random random = new Random(42);
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            LongLat start = walkable.get(random.nextInt(walkable.size()));
+            LongLat dest = walkable.get(random.nextInt(walkable.size()));
+            List<LongLat> path = pathfinder.findPath(start, dest);
+            if (start != dest && pathfinder.lineOfSight(start, dest)) {
+                /* Visible destinations are returned directly without running the search */
+                assertSamePath(List.of(start, dest), path);
+            } else {
+                assertSamePath(legacy.findPath(start, dest), path);
+            }
+        }
+    }
+
+    @Test
+    public void testPathSegmentsHaveLineOfSight() {
+        Random random = new Random(7);
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            LongLat start = walkable.get(random.nextInt(walkable.size()));
+            LongLat dest = walkable.get(random.nextInt(walkable.size()));
+            List<LongLat> path = pathfinder.findPath(start, dest);
+            assertTrue(path.get(0).closeTo(start));
+            assertTrue(path.get(path.size() - 1).closeTo(dest));
+            for (int j = 1; j < path.size(); j++) {
+                assertTrue(pathfinder.lineOfSight(path.get(j - 1), path.get(j)));
+            }
+        }
+    }
+
+    @Test
+    public void testLazyPathsHaveLineOfSight() {
+        PathEngine lazy = pathfinder.engine(Pathfinder.Algorithm.LAZY_THETA_STAR);
+        Random random = new Random(7);
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            LongLat start = walkable.get(random.nextInt(walkable.size()));
+            LongLat dest = walkable.get(random.nextInt(walkable.size()));
+            List<LongLat> path = lazy.findPath(start, dest);
+            assertTrue(path.get(0).closeTo(start));
+            assertTrue(path.get(path.size() - 1).closeTo(dest));
+            for (int j = 1; j < path.size(); j++) {
+                assertTrue(pathfinder.lineOfSight(path.get(j - 1), path.get(j)));
+            }
+        }
+    }
+
+    @Test
+    public void testLazySearchMakesFewerChecks() {
+        /* A separate Pathfinder, so that the statistics only count these searches */
+        Pathfinder eager = new Pathfinder(TestData.loadNoFlyZones());
+        Pathfinder lazy = new Pathfinder(TestData.loadNoFlyZones());
+        PathEngine lazyEngine = lazy.engine(Pathfinder.Algorithm.LAZY_THETA_STAR);
+        Random random = new Random(3);
+        double eagerLength = 0;
+        double lazyLength = 0;
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            LongLat start = walkable.get(random.nextInt(walkable.size()));
+            LongLat dest = walkable.get(random.nextInt(walkable.size()));
+            eagerLength += PathfinderBenchmarkTest.pathLength(eager.findPath(start, dest));
+            lazyLength += PathfinderBenchmarkTest.pathLength(lazyEngine.findPath(start, dest));
+        }
+        assertEquals(SAMPLE_COUNT, lazy.getStatistics().getSearches());
+        assertTrue(lazy.getStatistics().getLineOfSightChecks() < eager.getStatistics().getLineOfSightChecks());
+        assertTrue(lazyLength + " vs " + eagerLength, lazyLength <= eagerLength * 1.01);
+    }
+
+    @Test
+    public void testJumpPointPathsMatchThetaStar() {
+        Pathfinder counted = new Pathfinder(TestData.loadNoFlyZones());
+        PathEngine jumpPointSearch = counted.engine(Pathfinder.Algorithm.JUMP_POINT_SEARCH);
+        Random random = new Random(5);
+        double thetaLength = 0;
+        double jumpPointLength = 0;
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            LongLat start = walkable.get(random.nextInt(walkable.size()));
+            LongLat dest = walkable.get(random.nextInt(walkable.size()));
+            List<LongLat> path = jumpPointSearch.findPath(start, dest);
+            assertTrue(path.get(0).closeTo(start));
+            assertTrue(path.get(path.size() - 1).closeTo(dest));
+            for (int j = 1; j < path.size(); j++) {
+                assertTrue(pathfinder.lineOfSight(path.get(j - 1), path.get(j)));
+            }
+            thetaLength += PathfinderBenchmarkTest.pathLength(pathfinder.findPath(start, dest));
+            jumpPointLength += PathfinderBenchmarkTest.pathLength(path);
+        }
+        assertTrue(jumpPointLength + " vs " + thetaLength, jumpPointLength <= thetaLength * 1.02);
+    }
+
+    @Test
+    public void testWeightedSearchReportsItsWeight() {
+        double weight = 1.5;
+        Random random = new Random(9);
+        for (Pathfinder.Algorithm algorithm : Pathfinder.Algorithm.values()) {
+            for (int i = 0; i < SAMPLE_COUNT / 2; i++) {
+                LongLat start = walkable.get(random.nextInt(walkable.size()));
+                LongLat dest = walkable.get(random.nextInt(walkable.size()));
+                SearchResult result = pathfinder.search(start, dest, algorithm, weight);
+                List<LongLat> path = result.getPath();
+                double expectedWeight = start != dest && pathfinder.lineOfSight(start, dest) ? 1 : weight;
+                assertEquals(expectedWeight, result.getHeuristicWeight(), 0);
+                for (int j = 1; j < path.size(); j++) {
+                    assertTrue(pathfinder.lineOfSight(path.get(j - 1), path.get(j)));
+                }
+                /* Not guaranteed, since the searches are not optimal, but it holds for every sampled pair here */
+                double unweightedLength = PathfinderBenchmarkTest.pathLength(pathfinder.findPath(start, dest,
+                        algorithm));
+                double weightedLength = PathfinderBenchmarkTest.pathLength(path);
+                assertTrue(algorithm + ": " + weightedLength + " vs " + unweightedLength,
+                        weightedLength <= unweightedLength * result.getHeuristicWeight() + 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testAnytimeSearchRefinesWithinBudget() {
+        Random random = new Random(13);
+        for (int i = 0; i < SAMPLE_COUNT / 4; i++) {
+            LongLat start = walkable.get(random.nextInt(walkable.size()));
+            LongLat dest = walkable.get(random.nextInt(walkable.size()));
+            if (pathfinder.lineOfSight(start, dest)) {
+                continue;
+            }
+            /* Without any time only the first search runs */
+            SearchResult first = pathfinder.searchAnytime(start, dest, Pathfinder.Algorithm.THETA_STAR, 3,
+                    Duration.ZERO);
+            assertEquals(3, first.getHeuristicWeight(), 0);
+            assertSamePath(pathfinder.search(start, dest, Pathfinder.Algorithm.THETA_STAR, 3).getPath(),
+                    first.getPath());
+
+            /* With plenty of time the search reaches weight 1, and keeps a path at least as short as that one */
+            SearchResult refined = pathfinder.searchAnytime(start, dest, Pathfinder.Algorithm.THETA_STAR, 3,
+                    Duration.ofSeconds(10));
+            assertEquals(1, refined.getHeuristicWeight(), 0);
+            assertTrue(PathfinderBenchmarkTest.pathLength(refined.getPath())
+                    <= PathfinderBenchmarkTest.pathLength(pathfinder.findPath(start, dest)));
+        }
+    }
+
+    @Test
+    public void testStartOutsideTheGridIsRejected() {
+        LongLat dest = walkable.get(walkable.size() / 2);
+        double epsilon = pathfinder.getServiceArea().getResolution();
+        List<List<GridNode>> grid = pathfinder.getVirtualGrid();
+        LongLat topRight = grid.get(grid.size() - 1).get(grid.get(0).size() - 1).getCoordinates();
+        LongLat botLeft = grid.get(0).get(0).getCoordinates();
+        /* Just past the east edge, which would otherwise wrap around to the first column of the next row */
+        LongLat[] outside = {
+                new LongLat(topRight.getLongitude() + epsilon, botLeft.getLatitude()),
+                new LongLat(botLeft.getLongitude() - epsilon, botLeft.getLatitude()),
+                new LongLat(botLeft.getLongitude(), botLeft.getLatitude() - epsilon),
+        };
+        for (LongLat start : outside) {
+            for (Pathfinder.Algorithm algorithm : Pathfinder.Algorithm.values()) {
+                try {
+                    pathfinder.findPath(start, dest, algorithm);
+                    fail(start + " is outside the grid");
+                } catch (IllegalArgumentException e) {
+                    /* Expected */
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWeightBelowOneIsRejected() {
+        pathfinder.engine(Pathfinder.Algorithm.THETA_STAR, 0.5);
+    }
+
+    /**
+     * Asserts that two paths consist of exactly the same coordinates.
+     */
+    public static void assertSamePath(List<LongLat> expected, List<LongLat> actual) {
+        assertEquals(expected.toString(), actual.toString());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getLongitude(), actual.get(i).getLongitude(), 0);
+            assertEquals(expected.get(i).getLatitude(), actual.get(i).getLatitude(), 0);
+        }
+    }
+}
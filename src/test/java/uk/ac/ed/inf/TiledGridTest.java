@@ -0,0 +1,152 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Polygon;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.ac.ed.inf.controller.GridNode;
+import uk.ac.ed.inf.controller.Pathfinder;
+import uk.ac.ed.inf.controller.ServiceArea;
+import uk.ac.ed.inf.domain.LongLat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a grid rasterized one tile at a time, with tiles being evicted and rasterized again, reads exactly like
+ * a grid rasterized up front.
+ */
+public class TiledGridTest {
+
+    private static final int MAX_TILES = 2;
+    private static final int SAMPLE_COUNT = 200;
+
+    private static List<Polygon> noFlyZones;
+    private static Pathfinder eager;
+
+    @BeforeClass
+    public static void setUp() {
+        noFlyZones = TestData.loadNoFlyZones();
+        eager = new Pathfinder(noFlyZones);
+    }
+
+    private static Pathfinder tiled() {
+        return new Pathfinder(noFlyZones, null, ServiceArea.DEFAULT, MAX_TILES);
+    }
+
+    @Test
+    public void testWalkabilityMatchesEagerGrid() {
+        Pathfinder tiled = tiled();
+        List<List<GridNode>> expected = eager.getVirtualGrid();
+        List<List<GridNode>> actual = tiled.getVirtualGrid();
+        assertEquals(expected.size(), actual.size());
+        /* Column by column, so that the two cached tiles are evicted over and over */
+        for (int col = 0; col < expected.get(0).size(); col++) {
+            for (int row = 0; row < expected.size(); row++) {
+                assertEquals("Cell " + row + ", " + col, expected.get(row).get(col).isWalkable(),
+                        actual.get(row).get(col).isWalkable());
+            }
+        }
+        assertTrue(tiled.getResidentTileCount() <= MAX_TILES);
+        assertTrue(tiled.getRasterizedTileCount() > MAX_TILES);
+    }
+
+    @Test
+    public void testPathsMatchEagerGrid() {
+        Pathfinder tiled = tiled();
+        List<LongLat> walkable = new ArrayList<>();
+        for (List<GridNode> row : eager.getVirtualGrid()) {
+            for (GridNode node : row) {
+                if (node.isWalkable()) {
+                    walkable.add(node.getCoordinates());
+                }
+            }
+        }
+        Random random = new Random(41);
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            LongLat start = walkable.get(random.nextInt(walkable.size()));
+            LongLat dest = walkable.get(random.nextInt(walkable.size()));
+            ThetaStarTest.assertSamePath(eager.findPath(start, dest), tiled.findPath(start, dest));
+            assertTrue(tiled.getResidentTileCount() <= MAX_TILES);
+        }
+    }
+
+    @Test
+    public void testOnlyTilesThatAreReadAreRasterized() {
+        ServiceArea area = ServiceArea.DEFAULT;
+        double resolution = area.getResolution() / 8;
+        Pathfinder tiled = new Pathfinder(noFlyZones, null, new ServiceArea(area.getMinLongitude(),
+                area.getMinLatitude(), area.getMaxLongitude(), area.getMaxLatitude(), resolution), 16);
+        assertEquals(0, tiled.getRasterizedTileCount());
+
+        /* Two points a few cells apart near the south-west corner of the area */
+        LongLat start = new LongLat(area.getMinLongitude() + 3.5 * resolution, area.getMinLatitude() + 3.5 * resolution);
+        LongLat dest = new LongLat(area.getMinLongitude() + 20.5 * resolution, area.getMinLatitude() + 9.5 * resolution);
+        assertTrue(tiled.isWalkable(start));
+        assertEquals(2, tiled.findPath(start, dest).size());
+        assertEquals(1, tiled.getRasterizedTileCount());
+    }
+
+    @Test
+    public void testSearchStateOnlyCoversTouchedTiles() {
+        /* The confinement area at a quarter of the cell size, 16 times as many cells as the default grid */
+        ServiceArea area = ServiceArea.DEFAULT;
+        ServiceArea fine = new ServiceArea(area.getMinLongitude(), area.getMinLatitude(), area.getMaxLongitude(),
+                area.getMaxLatitude(), area.getResolution() / 4);
+        int maxTiles = 64;
+        long tileCells = (long) Pathfinder.TILE_SIZE * Pathfinder.TILE_SIZE;
+        List<LongLat> walkable = new ArrayList<>();
+        for (List<GridNode> row : eager.getVirtualGrid()) {
+            for (GridNode node : row) {
+                if (node.isWalkable()) {
+                    walkable.add(node.getCoordinates());
+                }
+            }
+        }
+
+        /* Short searches around the no-fly-zones only hold state for tiles whose walkability they read */
+        Random random = new Random(43);
+        int searched = 0;
+        while (searched < 10) {
+            LongLat start = walkable.get(random.nextInt(walkable.size()));
+            LongLat dest = walkable.get(random.nextInt(walkable.size()));
+            if (start.distanceTo(dest) > 0.002 || eager.lineOfSight(start, dest)) {
+                continue;
+            }
+            Pathfinder tiled = new Pathfinder(noFlyZones, null, fine, maxTiles);
+            assertEquals(0, tiled.getSearchStateCells());
+            tiled.findPath(start, dest);
+            if (tiled.getStatistics().getExpansions() == 0) {
+                /* The centres of the finer cells can see each other */
+                continue;
+            }
+            long cells = tiled.getSearchStateCells();
+            assertEquals(0, cells % tileCells);
+            assertTrue(cells > 0);
+            assertTrue(cells / tileCells + " tiles of state", cells / tileCells <= tiled.getRasterizedTileCount());
+            assertTrue(cells * 4 < (long) fine.getRows() * fine.getCols());
+            searched++;
+        }
+
+        /* A context reused all over the area drops its state once it holds more tiles than the grid keeps */
+        Pathfinder tiled = new Pathfinder(noFlyZones, null, fine, 4);
+        for (int i = 0; i < 50; i++) {
+            tiled.findPath(walkable.get(random.nextInt(walkable.size())),
+                    walkable.get(random.nextInt(walkable.size())));
+            long tiles = tiled.getSearchStateCells() / tileCells;
+            assertTrue(tiles + " tiles of state", tiles <= tiled.getRasterizedTileCount());
+        }
+
+        /* An untiled grid keeps state for every cell */
+        eager.findPath(walkable.get(0), walkable.get(walkable.size() - 1));
+        assertEquals(0, eager.getSearchStateCells() % ((long) area.getRows() * area.getCols()));
+        assertTrue(eager.getSearchStateCells() > 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNegativeTileLimit() {
+        new Pathfinder(noFlyZones, null, ServiceArea.DEFAULT, -1);
+    }
+}
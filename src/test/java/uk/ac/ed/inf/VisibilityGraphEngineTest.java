@@ -0,0 +1,75 @@
+package uk.ac.ed.inf;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.ac.ed.inf.controller.GridNode;
+import uk.ac.ed.inf.controller.Pathfinder;
+import uk.ac.ed.inf.controller.VisibilityGraphEngine;
+import uk.ac.ed.inf.domain.LongLat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class VisibilityGraphEngineTest {
+
+    private static final int SAMPLE_COUNT = 300;
+    /* The inflated corners keep more clearance than the cell centres Theta* turns at, which matters in narrow gaps */
+    private static final double LENGTH_TOLERANCE = 1.10;
+    private static final double TOTAL_LENGTH_TOLERANCE = 1.01;
+
+    private static Pathfinder pathfinder;
+    private static VisibilityGraphEngine visibility;
+    private static List<LongLat> walkable;
+
+    @BeforeClass
+    public static void setUp() {
+        pathfinder = new Pathfinder(TestData.loadNoFlyZones());
+        visibility = new VisibilityGraphEngine(pathfinder, TestData.loadNoFlyZones());
+        walkable = new ArrayList<>();
+        for (List<GridNode> row : pathfinder.getVirtualGrid()) {
+            for (GridNode node : row) {
+                if (node.isWalkable()) {
+                    walkable.add(node.getCoordinates());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPathsAreLegal() {
+        Random random = new Random(17);
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            LongLat start = walkable.get(random.nextInt(walkable.size()));
+            LongLat dest = walkable.get(random.nextInt(walkable.size()));
+            List<LongLat> path = visibility.findPath(start, dest);
+            assertSame(start, path.get(0));
+            assertSame(dest, path.get(path.size() - 1));
+            for (int j = 1; j < path.size(); j++) {
+                assertTrue(pathfinder.lineOfSight(path.get(j - 1), path.get(j)));
+                assertTrue(pathfinder.isWalkable(path.get(j)));
+            }
+        }
+    }
+
+    @Test
+    public void testPathLengthsMatchThetaStar() {
+        Random random = new Random(23);
+        double totalThetaLength = 0;
+        double totalVisibilityLength = 0;
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            LongLat start = walkable.get(random.nextInt(walkable.size()));
+            LongLat dest = walkable.get(random.nextInt(walkable.size()));
+            double thetaLength = PathfinderBenchmarkTest.pathLength(pathfinder.findPath(start, dest));
+            double visibilityLength = PathfinderBenchmarkTest.pathLength(visibility.findPath(start, dest));
+            assertTrue(start + " to " + dest + ": " + visibilityLength + " vs " + thetaLength,
+                    visibilityLength <= thetaLength * LENGTH_TOLERANCE);
+            totalThetaLength += thetaLength;
+            totalVisibilityLength += visibilityLength;
+        }
+        assertTrue(totalVisibilityLength + " vs " + totalThetaLength,
+                totalVisibilityLength <= totalThetaLength * TOTAL_LENGTH_TOLERANCE);
+    }
+}
@@ -0,0 +1,102 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+import org.junit.Test;
+import uk.ac.ed.inf.controller.GridNode;
+import uk.ac.ed.inf.controller.Pathfinder;
+import uk.ac.ed.inf.domain.LongLat;
+
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the rasterized walkability of the virtual grid with the original test of each cell's corners against every
+ * no-fly-zone with Path2D.contains.
+ */
+public class WalkabilityTest {
+
+    public static List<Path2D> toPaths(List<Polygon> noFlyZones) {
+        List<Path2D> paths = new ArrayList<>();
+        for (Polygon poly : noFlyZones) {
+            List<Point> points = poly.outer().coordinates();
+            Path2D path2D = new Path2D.Double();
+            path2D.moveTo(points.get(0).longitude(), points.get(0).latitude());
+            for (int i = 1; i < points.size(); i++) {
+                path2D.lineTo(points.get(i).longitude(), points.get(i).latitude());
+            }
+            paths.add(path2D);
+        }
+        return paths;
+    }
+
+    /**
+     * The original walkability test: a cell is walkable if none of its corners is inside a no-fly-zone and its centre
+     * is inside the confinement area.
+     */
+    public static boolean legacyIsWalkable(List<Path2D> paths, LongLat centre) {
+        double e = Pathfinder.EPSILON / 2;
+        double[][] corners = {
+                {centre.getLongitude() + e, centre.getLatitude() + e},
+                {centre.getLongitude() + e, centre.getLatitude() - e},
+                {centre.getLongitude() - e, centre.getLatitude() + e},
+                {centre.getLongitude() - e, centre.getLatitude() - e}};
+        for (Path2D path : paths) {
+            for (double[] corner : corners) {
+                if (path.contains(corner[0], corner[1])) {
+                    return false;
+                }
+            }
+        }
+        return centre.isConfined();
+    }
+
+    private static void assertMatchesLegacy(List<Polygon> noFlyZones) {
+        Pathfinder pathfinder = new Pathfinder(noFlyZones);
+        List<Path2D> paths = toPaths(noFlyZones);
+        for (List<GridNode> row : pathfinder.getVirtualGrid()) {
+            for (GridNode node : row) {
+                assertEquals(node.toString(), legacyIsWalkable(paths, node.getCoordinates()), node.isWalkable());
+            }
+        }
+    }
+
+    @Test
+    public void testRealZones() {
+        assertMatchesLegacy(TestData.loadNoFlyZones());
+    }
+
+    @Test
+    public void testRandomZones() {
+        /* Random star-shaped, often concave, polygons, some of them with vertices exactly on cell corners */
+        Random random = new Random(11);
+        List<Polygon> noFlyZones = new ArrayList<>();
+        for (int p = 0; p < 30; p++) {
+            double cx = LongLat.MIN_LONGITUDE + random.nextDouble() * (LongLat.MAX_LONGITUDE - LongLat.MIN_LONGITUDE);
+            double cy = LongLat.MIN_LATITUDE + random.nextDouble() * (LongLat.MAX_LATITUDE - LongLat.MIN_LATITUDE);
+            int vertexCount = 3 + random.nextInt(12);
+            List<Point> ring = new ArrayList<>();
+            for (int v = 0; v < vertexCount; v++) {
+                double angle = 2 * Math.PI * v / vertexCount;
+                double radius = 0.0001 + random.nextDouble() * 0.0006;
+                double x = cx + radius * Math.cos(angle);
+                double y = cy + radius * Math.sin(angle);
+                if (random.nextInt(4) == 0) {
+                    /* Snap to a cell corner */
+                    x = LongLat.MIN_LONGITUDE + Math.round((x - LongLat.MIN_LONGITUDE) / Pathfinder.EPSILON)
+                            * Pathfinder.EPSILON;
+                    y = LongLat.MIN_LATITUDE + Math.round((y - LongLat.MIN_LATITUDE) / Pathfinder.EPSILON)
+                            * Pathfinder.EPSILON;
+                }
+                ring.add(Point.fromLngLat(x, y));
+            }
+            ring.add(ring.get(0));
+            noFlyZones.add(Polygon.fromLngLats(List.of(ring)));
+        }
+        assertMatchesLegacy(noFlyZones);
+    }
+}
@@ -0,0 +1,162 @@
+package uk.ac.ed.inf;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ed.inf.clients.WebServerClient;
+import uk.ac.ed.inf.clients.What3WordsCache;
+import uk.ac.ed.inf.domain.ItemData;
+import uk.ac.ed.inf.domain.LongLat;
+import uk.ac.ed.inf.domain.Shop;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that resolved What3Words addresses are requested once, survive a restart through the store, expire after
+ * their time to live, and that the shops of the menus are resolved once when the ItemData is built.
+ */
+public class What3WordsCacheTest {
+
+    private static final Instant NOW = Instant.parse("2023-09-01T12:00:00Z");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Answers requests from the website folder and counts the What3Words requests.
+     */
+    private static class CountingWebServerClient extends WebServerClient {
+        private final AtomicInteger requests = new AtomicInteger();
+
+        CountingWebServerClient(What3WordsCache cache) {
+            super("0", cache);
+        }
+
+        @Override
+        public String fetchFromServer(String target) {
+            if (target.startsWith(WORDS_FIRST_PATHNAME)) {
+                requests.incrementAndGet();
+            }
+            return TestData.read(target);
+        }
+    }
+
+    private Path store() {
+        return folder.getRoot().toPath().resolve("what3words.cache");
+    }
+
+    private static What3WordsCache cache(Path store, Duration timeToLive, Instant now) {
+        return new What3WordsCache(store, timeToLive, Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    @Test
+    public void testRepeatedAddressesAreRequestedOnce() {
+        Map<String, LongLat> expected = TestData.loadWordLocations();
+        CountingWebServerClient client = new CountingWebServerClient(
+                cache(null, What3WordsCache.NO_EXPIRY, NOW));
+        for (int round = 0; round < 3; round++) {
+            for (Map.Entry<String, LongLat> address : expected.entrySet()) {
+                assertSamePosition(address.getValue(), client.getLongLatFromW3W(address.getKey()));
+            }
+        }
+        What3WordsCache cache = client.getWhat3WordsCache();
+        assertEquals(expected.size(), client.requests.get());
+        assertEquals(expected.size(), cache.getMisses());
+        assertEquals(2L * expected.size(), cache.getHits());
+        assertEquals(2 / 3d, cache.getHitRatio(), 1e-9);
+        assertFalse(cache.getSavedTime().isNegative());
+    }
+
+    @Test
+    public void testStoreSurvivesRestart() {
+        Map<String, LongLat> expected = TestData.loadWordLocations();
+        CountingWebServerClient first = new CountingWebServerClient(cache(store(), What3WordsCache.NO_EXPIRY, NOW));
+        expected.keySet().forEach(first::getLongLatFromW3W);
+
+        CountingWebServerClient second = new CountingWebServerClient(
+                cache(store(), What3WordsCache.NO_EXPIRY, NOW.plus(Duration.ofDays(30))));
+        assertEquals(expected.size(), second.getWhat3WordsCache().size());
+        for (Map.Entry<String, LongLat> address : expected.entrySet()) {
+            assertSamePosition(address.getValue(), second.getLongLatFromW3W(address.getKey()));
+        }
+        assertEquals(0, second.requests.get());
+        assertEquals(first.getWhat3WordsCache().getRequestTime(), second.getWhat3WordsCache().getSavedTime());
+    }
+
+    @Test
+    public void testExpiredAddressesAreRequestedAgain() {
+        String words = TestData.loadWordLocations().keySet().iterator().next();
+        new CountingWebServerClient(cache(store(), Duration.ofHours(1), NOW)).getLongLatFromW3W(words);
+
+        CountingWebServerClient fresh = new CountingWebServerClient(
+                cache(store(), Duration.ofHours(1), NOW.plus(Duration.ofMinutes(59))));
+        fresh.getLongLatFromW3W(words);
+        assertEquals(0, fresh.requests.get());
+
+        CountingWebServerClient expired = new CountingWebServerClient(
+                cache(store(), Duration.ofHours(1), NOW.plus(Duration.ofHours(2))));
+        assertEquals(0, expired.getWhat3WordsCache().size());
+        expired.getLongLatFromW3W(words);
+        assertEquals(1, expired.requests.get());
+    }
+
+    @Test
+    public void testDamagedLinesAreSkipped() throws IOException {
+        List<String> addresses = new ArrayList<>(TestData.loadWordLocations().keySet());
+        CountingWebServerClient first = new CountingWebServerClient(cache(store(), What3WordsCache.NO_EXPIRY, NOW));
+        first.getLongLatFromW3W(addresses.get(0));
+        /* A line cut short when the application stopped */
+        Files.write(store(), (addresses.get(1) + "\t-3.18").getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        CountingWebServerClient second = new CountingWebServerClient(
+                cache(store(), What3WordsCache.NO_EXPIRY, NOW));
+        assertEquals(1, second.getWhat3WordsCache().size());
+        second.getLongLatFromW3W(addresses.get(0));
+        assertEquals(0, second.requests.get());
+    }
+
+    @Test
+    public void testShopsAreResolvedOnceByItemData() {
+        List<Shop> shops = TestData.loadShops();
+        Map<String, LongLat> locations = TestData.loadWordLocations();
+        AtomicInteger requests = new AtomicInteger();
+        ItemData itemData = new ItemData(new ArrayList<>(shops), ItemData.DEFAULT_MAX_SHOPS, words -> {
+            requests.incrementAndGet();
+            return locations.get(words);
+        });
+        long distinctLocations = shops.stream().map(Shop::getLocation).distinct().count();
+        assertEquals(distinctLocations, requests.get());
+
+        for (Shop shop : shops) {
+            LongLat position = itemData.locateShop(shop, words -> {
+                throw new AssertionError("The shop should already be resolved");
+            });
+            assertSamePosition(locations.get(shop.getLocation()), position);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNegativeTimeToLive() {
+        cache(null, Duration.ofHours(-1), NOW);
+    }
+
+    private static void assertSamePosition(LongLat expected, LongLat actual) {
+        assertEquals(expected.getLongitude(), actual.getLongitude(), 0);
+        assertEquals(expected.getLatitude(), actual.getLatitude(), 0);
+    }
+}